@@ -0,0 +1,102 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+
+/**
+ * Setup code shared by the benchmarks.
+ * <p>
+ * Groups are named by the <code>group</code> benchmark parameter: a number
+ * selects the default subgroup with that order size (see
+ * {@link DefaultSubgroupFactory}), and <code>P-256</code>,
+ * <code>P-384</code> or <code>P-521</code> select the corresponding
+ * elliptic curve group (see {@link DefaultECGroupFactory}).
+ * </p>
+ */
+final class BenchmarkSupport {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private BenchmarkSupport() {
+        super();
+    }
+
+    /**
+     * Returns the group named by a benchmark parameter.
+     * @param name the group name.
+     * @return the group.
+     */
+    static PrimeOrderGroup getGroup(final String name) {
+        if (name.startsWith("P-")) {
+            return DefaultECGroupFactory.getDefaultECGroup(
+                Integer.parseInt(name.substring(2)));
+        }
+        return DefaultSubgroupFactory.getDefaultSubroup(Integer.parseInt(name));
+    }
+
+    /**
+     * Generates Issuer key and parameters.
+     * @param group the group name.
+     * @param attributeCount the number of attributes.
+     * @return the Issuer key and parameters.
+     */
+    static IssuerKeyAndParameters generateIssuerKeyAndParameters(
+            final String group, final int attributeCount)
+            throws NoSuchProviderException, NoSuchAlgorithmException {
+        final IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setGroup(getGroup(group));
+        isp.setParametersUID(("benchmark " + group).getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        final byte[] encodingBytes = new byte[attributeCount];
+        for (int i = 0; i < attributeCount; i++) {
+            encodingBytes[i] = (byte) (i % 2);
+        }
+        isp.setEncodingBytes(encodingBytes);
+        isp.setSpecification("benchmark specification".getBytes());
+        return isp.generate();
+    }
+
+    /**
+     * Generates attribute values.
+     * @param attributeCount the number of attributes.
+     * @return the attribute values.
+     */
+    static byte[][] generateAttributes(final int attributeCount) {
+        final byte[][] retVal = new byte[attributeCount][];
+        for (int i = 0; i < attributeCount; i++) {
+            retVal[i] = ("attribute value " + i).getBytes();
+        }
+        return retVal;
+    }
+
+    /**
+     * Issues U-Prove tokens.
+     * @param ikap the Issuer key and parameters.
+     * @param attributes the attribute values.
+     * @param numberOfTokens the number of tokens to issue.
+     * @return the tokens and their private keys.
+     */
+    static UProveKeyAndToken[] issue(final IssuerKeyAndParameters ikap,
+            final byte[][] attributes, final int numberOfTokens)
+            throws IOException {
+        final Issuer issuer = new IssuerProtocolParameters(numberOfTokens,
+            ikap, attributes, null, null).generate();
+        final Prover prover = new ProverProtocolParameters(numberOfTokens,
+            ikap.getIssuerParameters(), attributes, null, null).generate();
+        return prover.generateTokens(issuer.generateThirdMessage(
+            prover.generateSecondMessage(issuer.generateFirstMessage())));
+    }
+}
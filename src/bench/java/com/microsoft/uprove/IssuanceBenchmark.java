@@ -0,0 +1,89 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the issuance protocol. Each operation issues
+ * <code>tokens</code> tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IssuanceBenchmark {
+
+    @Param({"160", "256", "512"})
+    public String group;
+
+    @Param({"1", "5", "25"})
+    public int attributes;
+
+    @Param({"1", "10"})
+    public int tokens;
+
+    private IssuerKeyAndParameters ikap;
+    private byte[][] attributeValues;
+    private IssuerProtocolParameters issuerParameters;
+    private ProverProtocolParameters proverParameters;
+    private byte[][] message1;
+
+    @Setup
+    public void setup() throws Exception {
+        ikap = BenchmarkSupport.generateIssuerKeyAndParameters(group, attributes);
+        attributeValues = BenchmarkSupport.generateAttributes(attributes);
+        issuerParameters = new IssuerProtocolParameters(tokens, ikap, attributeValues, null, null);
+        issuerParameters.validate();
+        proverParameters = new ProverProtocolParameters(tokens, ikap.getIssuerParameters(), attributeValues, null, null);
+        proverParameters.validate();
+        message1 = issuerParameters.generate().generateFirstMessage();
+    }
+
+    /**
+     * The Issuer's precomputation and first message.
+     */
+    @Benchmark
+    public byte[][] issuerFirstMessage() throws Exception {
+        return issuerParameters.generate().generateFirstMessage();
+    }
+
+    /**
+     * The Prover's precomputation and second message.
+     */
+    @Benchmark
+    public byte[][] proverSecondMessage() throws Exception {
+        return proverParameters.generate().generateSecondMessage(message1);
+    }
+
+    /**
+     * A complete protocol run, including the setup of both parties.
+     */
+    @Benchmark
+    public UProveKeyAndToken[] issuance() throws Exception {
+        return BenchmarkSupport.issue(ikap, attributeValues, tokens);
+    }
+}
@@ -0,0 +1,76 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the generation and verification of presentation proofs. Half
+ * of the attributes (rounded down) are disclosed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PresentationBenchmark {
+
+    @Param({"160", "256", "512"})
+    public String group;
+
+    @Param({"1", "5", "25"})
+    public int attributes;
+
+    private static final byte[] MESSAGE = "benchmark message".getBytes();
+
+    private IssuerParameters ip;
+    private byte[][] attributeValues;
+    private UProveKeyAndToken upkt;
+    private int[] disclosed;
+    private PresentationProof proof;
+
+    @Setup
+    public void setup() throws Exception {
+        IssuerKeyAndParameters ikap = BenchmarkSupport.generateIssuerKeyAndParameters(group, attributes);
+        ip = ikap.getIssuerParameters();
+        attributeValues = BenchmarkSupport.generateAttributes(attributes);
+        upkt = BenchmarkSupport.issue(ikap, attributeValues, 1)[0];
+        disclosed = new int[attributes / 2];
+        for (int i = 0; i < disclosed.length; i++) {
+            disclosed[i] = 2 * i + 1;
+        }
+        proof = PresentationProtocol.generatePresentationProof(ip, disclosed, MESSAGE, null, upkt, attributeValues);
+    }
+
+    @Benchmark
+    public PresentationProof generateProof() throws Exception {
+        return PresentationProtocol.generatePresentationProof(ip, disclosed, MESSAGE, null, upkt, attributeValues);
+    }
+
+    @Benchmark
+    public void verifyProof() throws Exception {
+        PresentationProtocol.verifyPresentationProof(ip, disclosed, MESSAGE, null, upkt.getToken(), proof);
+    }
+}
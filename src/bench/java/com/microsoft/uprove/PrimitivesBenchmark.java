@@ -0,0 +1,105 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+/**
+ * Benchmarks the primitives the protocols are built on, sized like the
+ * Issuer parameters of a token with <code>attributes</code> attributes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitivesBenchmark {
+
+    @Param({"160", "256", "512"})
+    public String group;
+
+    @Param({"1", "5", "25"})
+    public int attributes;
+
+    private FieldZq zq;
+    private IssuerParametersInternal ipi;
+    private GroupElement[] bases;
+    private ZqElement[] exponents;
+    private byte[][] attributeValues;
+
+    @Setup
+    public void setup() throws Exception {
+        IssuerKeyAndParameters ikap = BenchmarkSupport.generateIssuerKeyAndParameters(group, attributes);
+        ipi = IssuerParametersInternal.decode(ikap.getIssuerParameters());
+        zq = ipi.getGroup().getZq();
+        // g0, g1, ..., gn, gt
+        bases = ipi.getPublicKey();
+        exponents = zq.getRandomElements(bases.length, false);
+        attributeValues = BenchmarkSupport.generateAttributes(attributes);
+    }
+
+    /**
+     * The multi-exponentiation of the Issuer public key, as computed for
+     * every token (without fixed-base tables).
+     */
+    @Benchmark
+    public GroupElement computeProduct() {
+        return ProtocolHelper.computeProduct(bases, exponents);
+    }
+
+    /**
+     * A single exponentiation of the group generator.
+     */
+    @Benchmark
+    public GroupElement exponentiate() {
+        return ipi.getGenerator().exponentiate(exponents[0]);
+    }
+
+    /**
+     * Hashing the public key elements and attribute values.
+     */
+    @Benchmark
+    public byte[] hash() {
+        HashFunction H = ipi.getHashFunction();
+        H.update(bases.length);
+        for (int i = 0; i < bases.length; i++) {
+            H.update(bases[i]);
+        }
+        for (int i = 0; i < attributeValues.length; i++) {
+            H.update(attributeValues[i]);
+        }
+        return H.getByteDigest();
+    }
+
+    /**
+     * Generating one random exponent per attribute.
+     */
+    @Benchmark
+    public ZqElement[] randomElements() {
+        return zq.getRandomElements(attributes, false);
+    }
+}
@@ -0,0 +1,198 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * Least-recently-used cache of the <code>x_i</code> values of hashed
+ * attributes and of the <code>x_t</code> values of token information
+ * fields, for one set of Issuer parameters.
+ * <p>
+ * Every issuance and presentation hashes the token attributes and token
+ * information field, even when the same values are used over and over,
+ * e.g. when issuing tokens to a common attribute profile or presenting the
+ * same token repeatedly. Since decoded Issuer parameters are themselves
+ * cached (see {@link IssuerParametersCache}), a cache attached to them lets
+ * these runs skip the hashing.
+ * </p>
+ * <p>
+ * Entries are keyed by the attribute or token information value; a hashed
+ * attribute's <code>x_i</code> does not depend on its index. The cache
+ * holds at most {@link ConfigImpl#getAttributeHashCacheSize()} entries, and
+ * values longer than {@link #MAX_VALUE_LENGTH} bytes are not cached. Since
+ * the cache keeps copies of the values, it is disabled by default. All
+ * methods are thread-safe.
+ * </p>
+ */
+final class AttributeHashCache {
+
+    /**
+     * Entry kind for a hashed attribute value.
+     */
+    static final int ATTRIBUTE = 0;
+
+    /**
+     * Entry kind for a token information field value.
+     */
+    static final int TOKEN_INFORMATION = 1;
+
+    /**
+     * Length of the longest value that is cached.
+     */
+    static final int MAX_VALUE_LENGTH = 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    // cached values, in access order; guarded by this
+    private final LinkedHashMap<Key, ZqElement> entries =
+        new LinkedHashMap<Key, ZqElement>(16, 0.75f, true);
+
+    // metrics
+    private long hits;
+    private long misses;
+
+    /**
+     * Returns the cached <code>x</code> value of an attribute or token
+     * information field.
+     * @param kind {@link #ATTRIBUTE} or {@link #TOKEN_INFORMATION}.
+     * @param value the value, or <code>null</code>.
+     * @param size the cache size, as read from
+     * {@link ConfigImpl#attributeHashCacheSize()} by the caller.
+     * @return the <code>x</code> value, or <code>null</code> if it is not
+     * cached. Ownership of the referent is given to the caller.
+     */
+    ZqElement get(final int kind, final byte[] value, final int size) {
+        if (size == 0 || !isCacheable(value)) {
+            return null;
+        }
+        final ZqElement x;
+        synchronized (this) {
+            trim(size);
+            x = entries.get(new Key(kind, value));
+            if (x == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return x.getField().determineElement(x);
+    }
+
+    /**
+     * Caches the <code>x</code> value of an attribute or token information
+     * field.
+     * @param kind {@link #ATTRIBUTE} or {@link #TOKEN_INFORMATION}.
+     * @param value the value, or <code>null</code>. The caller's ownership
+     * of the referent is preserved.
+     * @param x the <code>x</code> value. The caller's ownership of the
+     * referent is preserved.
+     * @param size the cache size, as read from
+     * {@link ConfigImpl#attributeHashCacheSize()} by the caller.
+     */
+    void put(final int kind, final byte[] value, final ZqElement x,
+            final int size) {
+        if (size == 0 || !isCacheable(value)) {
+            return;
+        }
+        final Key key = new Key(kind,
+            value == null ? EMPTY : (byte[]) value.clone());
+        final ZqElement copy = x.getField().determineElement(x);
+        synchronized (this) {
+            entries.put(key, copy);
+            trim(size);
+        }
+    }
+
+    private static boolean isCacheable(final byte[] value) {
+        return value == null || value.length <= MAX_VALUE_LENGTH;
+    }
+
+    /**
+     * Removes least recently used entries until the cache holds at most
+     * <code>size</code> entries. Must be called while holding this
+     * object's lock.
+     * @param size the maximum number of entries.
+     */
+    private void trim(final int size) {
+        for (Iterator<Key> i = entries.keySet().iterator();
+                entries.size() > size;) {
+            i.next();
+            i.remove();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found their value in the cache.
+     * @return the number of cache hits.
+     */
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find their value in the
+     * cache.
+     * @return the number of cache misses.
+     */
+    synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     * @return the number of cached values.
+     */
+    synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * An entry kind and value. A <code>null</code> value is hashed as an
+     * empty one, and shares its entry.
+     */
+    private static final class Key {
+        private final int kind;
+        private final byte[] value;
+        private final int hashCode;
+
+        Key(final int kind, final byte[] value) {
+            this.kind = kind;
+            this.value = value == null ? EMPTY : value;
+            this.hashCode = 229 * (233 + kind) + Arrays.hashCode(this.value);
+        }
+
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key k = (Key) o;
+            return kind == k.kind && hashCode == k.hashCode
+                && Arrays.equals(value, k.value);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A token attribute value that is read when it is hashed, rather than held
+ * in memory.
+ * <p>
+ * Attributes whose encoding byte is <code>1</code> enter the protocol
+ * through their digest only, so large values such as documents or photos
+ * don't need to be loaded in memory: the value is streamed through the hash
+ * function in fixed-size chunks. The length of the value must be known
+ * beforehand, since it is hashed ahead of the value.
+ * </p>
+ * <p>
+ * A source is read every time the attribute is hashed: once by each
+ * {@link IssuerProtocolParameters} or {@link ProverProtocolParameters}
+ * instance it is given to, and once per presentation proof. Sources created
+ * from a buffer, a file channel or a file can be read any number of times;
+ * sources created from an input stream can only be read once.
+ * </p>
+ * <p>
+ * Large values read from a file or a file channel are memory-mapped and
+ * handed to the hash function as a whole, rather than copied chunk by chunk
+ * through a heap buffer.
+ * </p>
+ */
+public abstract class AttributeSource {
+
+    /**
+     * Size of the chunks read from streams, channels and files.
+     */
+    static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Length from which file and channel regions are memory-mapped rather
+     * than read; mapping a file costs more than reading a few chunks.
+     */
+    static final int MAP_THRESHOLD = 1 << 18;
+
+    /**
+     * Maximum size of a single mapping, which bounds the address space used
+     * on 32-bit virtual machines.
+     */
+    static final int MAP_SIZE = 1 << 26;
+
+    private final int length;
+
+    /**
+     * Constructs a source.
+     * @param length the length of the value, in bytes.
+     */
+    AttributeSource(final int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length must be >= 0");
+        }
+        this.length = length;
+    }
+
+    /**
+     * Returns the length of the attribute value.
+     * @return the length of the value, in bytes.
+     */
+    public final int getLength() {
+        return length;
+    }
+
+    /**
+     * Adds the attribute value to a hash function, formatted as a byte
+     * array.
+     * @param H the hash function.
+     * @throws IOException if the value cannot be read, or is not of the
+     * declared length.
+     */
+    final void addToDigest(final HashFunction H) throws IOException {
+        H.update(length);
+        if (length != 0) {
+            addValueToDigest(H);
+        }
+    }
+
+    /**
+     * Adds the attribute value to a hash function, without a length prefix.
+     * @param H the hash function.
+     * @throws IOException if the value cannot be read, or is not of the
+     * declared length.
+     */
+    abstract void addValueToDigest(HashFunction H) throws IOException;
+
+    /**
+     * Creates a source reading an attribute value from an input stream.
+     * The source can only be read once; the stream is not closed.
+     * @param in the stream.
+     * @param length the number of bytes of the value; exactly that many
+     * bytes are read from the stream.
+     * @return an attribute source.
+     * @throws IllegalArgumentException if <code>length</code> is negative.
+     */
+    public static AttributeSource fromStream(final InputStream in,
+            final int length) {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+        return new AttributeSource(length) {
+            private boolean consumed;
+
+            void addValueToDigest(final HashFunction H) throws IOException {
+                synchronized (this) {
+                    if (consumed) {
+                        throw new IllegalStateException(
+                            "stream attribute source already read");
+                    }
+                    consumed = true;
+                }
+                final byte[] chunk = new byte[Math.min(getLength(), CHUNK_SIZE)];
+                int remaining = getLength();
+                while (remaining > 0) {
+                    final int read = in.read(chunk, 0,
+                        Math.min(remaining, chunk.length));
+                    if (read < 0) {
+                        throw new EOFException("attribute stream too short");
+                    }
+                    H.updateRaw(chunk, 0, read);
+                    remaining -= read;
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a source reading an attribute value from a buffer. The value
+     * consists of the bytes between the buffer's position and its limit at
+     * the time this method is called; the buffer's position, limit and mark
+     * are not modified, neither by this method nor by the source.
+     * @param buffer the buffer.
+     * @return an attribute source.
+     */
+    public static AttributeSource fromByteBuffer(final ByteBuffer buffer) {
+        final ByteBuffer value = buffer.slice();
+        return new AttributeSource(value.remaining()) {
+            void addValueToDigest(final HashFunction H) {
+                // a duplicate has its own position, so the source can be
+                // read concurrently
+                H.updateRaw(value.duplicate());
+            }
+        };
+    }
+
+    /**
+     * Creates a source reading an attribute value from a region of a file
+     * channel. The channel is read with absolute reads, so its position is
+     * not used nor modified; it must stay open as long as the source is used.
+     * @param channel the channel.
+     * @param position the position of the value in the channel.
+     * @param length the length of the value, in bytes.
+     * @return an attribute source.
+     * @throws IllegalArgumentException if <code>position</code> or
+     * <code>length</code> is negative.
+     */
+    public static AttributeSource fromChannel(final FileChannel channel,
+            final long position, final int length) {
+        if (channel == null) {
+            throw new NullPointerException();
+        }
+        if (position < 0) {
+            throw new IllegalArgumentException("position must be >= 0");
+        }
+        return new AttributeSource(length) {
+            void addValueToDigest(final HashFunction H) throws IOException {
+                readChannel(channel, position, getLength(), H);
+            }
+        };
+    }
+
+    /**
+     * Creates a source reading an attribute value from a file. The file is
+     * opened every time the value is read, and must not change length.
+     * @param file the file.
+     * @return an attribute source.
+     * @throws IOException if the file's length cannot be determined, or is
+     * larger than <code>Integer.MAX_VALUE</code>.
+     */
+    public static AttributeSource fromFile(final File file)
+            throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("not a file: " + file);
+        }
+        final long fileLength = file.length();
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IOException("file too large: " + file);
+        }
+        return new AttributeSource((int) fileLength) {
+            void addValueToDigest(final HashFunction H) throws IOException {
+                final RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    final FileChannel channel = raf.getChannel();
+                    if (channel.size() != getLength()) {
+                        throw new IOException("file length changed: " + file);
+                    }
+                    readChannel(channel, 0, getLength(), H);
+                } finally {
+                    raf.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Streams a region of a channel through a hash function. Regions of at
+     * least {@link #MAP_THRESHOLD} bytes are memory-mapped.
+     * @param channel the channel.
+     * @param position the position of the region.
+     * @param length the length of the region.
+     * @param H the hash function.
+     * @throws IOException if the region cannot be read.
+     */
+    private static void readChannel(final FileChannel channel,
+            final long position, final int length, final HashFunction H)
+            throws IOException {
+        if (length >= MAP_THRESHOLD) {
+            mapChannel(channel, position, length, H);
+            return;
+        }
+        final ByteBuffer chunk =
+            ByteBuffer.allocate(Math.min(length, CHUNK_SIZE));
+        long offset = position;
+        int remaining = length;
+        while (remaining > 0) {
+            chunk.clear();
+            chunk.limit(Math.min(remaining, chunk.capacity()));
+            final int read = channel.read(chunk, offset);
+            if (read < 0) {
+                throw new EOFException("attribute channel too short");
+            }
+            chunk.flip();
+            H.updateRaw(chunk);
+            offset += read;
+            remaining -= read;
+        }
+    }
+
+    /**
+     * Hashes a region of a channel by memory-mapping it, at most
+     * {@link #MAP_SIZE} bytes at a time.
+     * @param channel the channel.
+     * @param position the position of the region.
+     * @param length the length of the region.
+     * @param H the hash function.
+     * @throws IOException if the region cannot be mapped.
+     */
+    private static void mapChannel(final FileChannel channel,
+            final long position, final int length, final HashFunction H)
+            throws IOException {
+        // a read-only mapping can't extend the file; fail like a read would
+        if (channel.size() - position < length) {
+            throw new EOFException("attribute channel too short");
+        }
+        long offset = position;
+        int remaining = length;
+        while (remaining > 0) {
+            final int size = Math.min(remaining, MAP_SIZE);
+            // the mapping is released when the buffer is garbage collected
+            H.updateRaw(channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                size));
+            offset += size;
+            remaining -= size;
+        }
+    }
+}
@@ -101,6 +101,39 @@ import com.microsoft.uprove.ConfigImpl;
  * <li><b>Setter</b>: {@link #setMessageDigestProvider(String)}</li>
  * <li><b>Getter</b>: {@link #getMessageDigestProvider()}</li>
  * </ul>
+ *
+ * <p><b>Issuer parameters cache</b><br>
+ * The SDK keeps the decoded form of recently used Issuer parameters, so
+ * that protocol runs under the same parameters do not decode them again.
+ * Applications can bound the number of cached entries and how long they
+ * are kept, and can monitor how effective the cache is through its
+ * statistics.</p>
+ * <p>Modifications to these options at runtime via the <code>set</code>
+ * methods take effect on the next cache access.</p>
+ * <ul>
+ * <li><b>Option Name</b>: <code>cache.issuerparameters.size</code></li>
+ * <li><b>Default Value</b>: <code>16</code></li>
+ * <li><b>Security Property Name</b>:
+ * <code>com.microsoft.uprove.cache.issuerparameters.size</code></li>
+ * <li><b>Setter</b>: {@link #setIssuerParametersCacheSize(int)}</li>
+ * <li><b>Getter</b>: {@link #getIssuerParametersCacheSize()}</li>
+ * </ul>
+ * <ul>
+ * <li><b>Option Name</b>: <code>cache.issuerparameters.ttl</code></li>
+ * <li><b>Default Value</b>: <code>0</code> (entries never expire)</li>
+ * <li><b>Security Property Name</b>:
+ * <code>com.microsoft.uprove.cache.issuerparameters.ttl</code></li>
+ * <li><b>Setter</b>: {@link #setIssuerParametersCacheTTL(long)}</li>
+ * <li><b>Getter</b>: {@link #getIssuerParametersCacheTTL()}</li>
+ * </ul>
+ * <ul>
+ * <li><b>Option Name</b>: <code>cache.issuerparameters.statistics</code></li>
+ * <li><b>Setter</b>: {@link #clearIssuerParametersCache()}</li>
+ * <li><b>Getters</b>: {@link #getIssuerParametersCacheHitCount()},
+ * {@link #getIssuerParametersCacheMissCount()},
+ * {@link #getIssuerParametersCacheEvictionCount()},
+ * {@link #getIssuerParametersCacheEntryCount()}</li>
+ * </ul>
  */
 public final class Config {
 
@@ -236,4 +269,176 @@ public final class Config {
             throws SecurityException {
         ConfigImpl.setMessageDigestProvider(provider);
     }
+
+    /**
+     * Returns the maximum number of decoded Issuer parameters kept in the
+     * Issuer parameters cache.
+     * <p>First, if there is a security manager, its
+     * <code>checkPermission</code> method is called with a
+     * <code>com.microsoft.uprove.UProveSDKPermission("getOption.cache.issuerparameters.size")</code>
+     * permission.</p>
+     * @return the Issuer parameters cache size.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access based on the current security policy.
+     * @see #setIssuerParametersCacheSize(int)
+     * @see UProveSDKPermission
+     */
+    public static int getIssuerParametersCacheSize() throws SecurityException {
+        return ConfigImpl.getIssuerParametersCacheSize();
+    }
+
+    /**
+     * Sets the maximum number of decoded Issuer parameters kept in the
+     * Issuer parameters cache.
+     * <p>First, if there is a security manager, its
+     * <code>checkPermission</code> method is called with a
+     * <code>com.microsoft.uprove.UProveSDKPermission("setOption.cache.issuerparameters.size")</code>
+     * permission.</p>
+     * @param size the Issuer parameters cache size, <code>0</code> to
+     * disable the cache, or a negative value to select the SDK's default
+     * value.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access based on the current security policy.
+     * @see #getIssuerParametersCacheSize()
+     * @see UProveSDKPermission
+     */
+    public static void setIssuerParametersCacheSize(final int size)
+            throws SecurityException {
+        ConfigImpl.setIssuerParametersCacheSize(size);
+    }
+
+    /**
+     * Returns the number of milliseconds an entry stays in the Issuer
+     * parameters cache after it was created.
+     * <p>First, if there is a security manager, its
+     * <code>checkPermission</code> method is called with a
+     * <code>com.microsoft.uprove.UProveSDKPermission("getOption.cache.issuerparameters.ttl")</code>
+     * permission.</p>
+     * @return the Issuer parameters cache time-to-live in milliseconds, or
+     * <code>0</code> if entries never expire.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access based on the current security policy.
+     * @see #setIssuerParametersCacheTTL(long)
+     * @see UProveSDKPermission
+     */
+    public static long getIssuerParametersCacheTTL() throws SecurityException {
+        return ConfigImpl.getIssuerParametersCacheTTL();
+    }
+
+    /**
+     * Sets the number of milliseconds an entry stays in the Issuer
+     * parameters cache after it was created.
+     * <p>First, if there is a security manager, its
+     * <code>checkPermission</code> method is called with a
+     * <code>com.microsoft.uprove.UProveSDKPermission("setOption.cache.issuerparameters.ttl")</code>
+     * permission.</p>
+     * @param ttl the Issuer parameters cache time-to-live in milliseconds,
+     * <code>0</code> for entries that never expire, or a negative value to
+     * select the SDK's default value.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access based on the current security policy.
+     * @see #getIssuerParametersCacheTTL()
+     * @see UProveSDKPermission
+     */
+    public static void setIssuerParametersCacheTTL(final long ttl)
+            throws SecurityException {
+        ConfigImpl.setIssuerParametersCacheTTL(ttl);
+    }
+
+    /**
+     * Returns the number of lookups that found their Issuer parameters in
+     * the Issuer parameters cache since it was last cleared.
+     * <p>First, if there is a security manager, its
+     * <code>checkPermission</code> method is called with a
+     * <code>com.microsoft.uprove.UProveSDKPermission("getOption.cache.issuerparameters.statistics")</code>
+     * permission.</p>
+     * @return the number of cache hits.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access based on the current security policy.
+     * @see #clearIssuerParametersCache()
+     * @see UProveSDKPermission
+     */
+    public static long getIssuerParametersCacheHitCount()
+            throws SecurityException {
+        return ConfigImpl.getIssuerParametersCacheHitCount();
+    }
+
+    /**
+     * Returns the number of lookups that had to decode their Issuer
+     * parameters since the Issuer parameters cache was last cleared.
+     * <p>First, if there is a security manager, its
+     * <code>checkPermission</code> method is called with a
+     * <code>com.microsoft.uprove.UProveSDKPermission("getOption.cache.issuerparameters.statistics")</code>
+     * permission.</p>
+     * @return the number of cache misses.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access based on the current security policy.
+     * @see #clearIssuerParametersCache()
+     * @see UProveSDKPermission
+     */
+    public static long getIssuerParametersCacheMissCount()
+            throws SecurityException {
+        return ConfigImpl.getIssuerParametersCacheMissCount();
+    }
+
+    /**
+     * Returns the number of entries removed from the Issuer parameters
+     * cache, because they expired or because the cache was full, since it
+     * was last cleared.
+     * <p>First, if there is a security manager, its
+     * <code>checkPermission</code> method is called with a
+     * <code>com.microsoft.uprove.UProveSDKPermission("getOption.cache.issuerparameters.statistics")</code>
+     * permission.</p>
+     * @return the number of cache evictions.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access based on the current security policy.
+     * @see #clearIssuerParametersCache()
+     * @see UProveSDKPermission
+     */
+    public static long getIssuerParametersCacheEvictionCount()
+            throws SecurityException {
+        return ConfigImpl.getIssuerParametersCacheEvictionCount();
+    }
+
+    /**
+     * Returns the number of decoded Issuer parameters currently held in
+     * the Issuer parameters cache.
+     * <p>First, if there is a security manager, its
+     * <code>checkPermission</code> method is called with a
+     * <code>com.microsoft.uprove.UProveSDKPermission("getOption.cache.issuerparameters.statistics")</code>
+     * permission.</p>
+     * @return the number of cache entries.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access based on the current security policy.
+     * @see #getIssuerParametersCacheSize()
+     * @see UProveSDKPermission
+     */
+    public static int getIssuerParametersCacheEntryCount()
+            throws SecurityException {
+        return ConfigImpl.getIssuerParametersCacheEntryCount();
+    }
+
+    /**
+     * Removes all entries from the Issuer parameters cache and resets its
+     * statistics.
+     * <p>First, if there is a security manager, its
+     * <code>checkPermission</code> method is called with a
+     * <code>com.microsoft.uprove.UProveSDKPermission("setOption.cache.issuerparameters.statistics")</code>
+     * permission.</p>
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access based on the current security policy.
+     * @see UProveSDKPermission
+     */
+    public static void clearIssuerParametersCache() throws SecurityException {
+        ConfigImpl.clearIssuerParametersCache();
+    }
 }
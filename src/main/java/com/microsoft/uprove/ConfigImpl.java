@@ -1,419 +1,1260 @@
-//*********************************************************
-//
-//    Copyright (c) Microsoft. All rights reserved.
-//    This code is licensed under the Apache License Version 2.0.
-//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
-//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
-//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
-//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
-//
-//*********************************************************
-
-package com.microsoft.uprove;
-
-import java.math.BigInteger;
-import java.security.AccessController;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.PrivilegedAction;
-import java.security.Security;
-
-import com.microsoft.uprove.UProveSDKPermission;
-
-/*
- * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
- */
-
-/**
- * Implementation for SDK configuration options.
- * <p>For more detail regarding this class's strategy for discovering defaults
- * and allowing SDK users to get and set configuration options, see
- * {@link com.microsoft.uprove.Config}.</p>
- */
-final class ConfigImpl {
-
-    // option names for which we test when we allow outside code to get/set
-    // config options
-    private static final String OPTION_SECURERANDOM_ALGORITHM =
-        "securerandom.algorithm";
-    private static final String OPTION_SECURERANDOM_PROVIDER =
-        "securerandom.provider";
-    private static final String OPTION_MESSAGEDIGEST_PROVIDER =
-        "messagedigest.provider";
-    private static final String OPTION_MATH_PRIMECONFIDENCELEVEL =
-        "math.primeconfidencelevel";
-
-    // the base for all security properties we use
-    private static final String SECURITY_PROPERTY_BASE =
-        "com.microsoft.uprove.";
-
-    // property names we use when calling java.security.Security.getProperty
-    private static final String PROPERTY_SECURERANDOM_ALGORITHM =
-        SECURITY_PROPERTY_BASE + OPTION_SECURERANDOM_ALGORITHM;
-    private static final String PROPERTY_SECURERANDOM_PROVIDER =
-        SECURITY_PROPERTY_BASE + OPTION_SECURERANDOM_PROVIDER;
-    private static final String PROPERTY_MESSAGEDIGEST_PROVIDER =
-        SECURITY_PROPERTY_BASE + OPTION_MESSAGEDIGEST_PROVIDER;
-    private static final String PROPERTY_MATH_PRIMECONFIDENCELEVEL =
-        SECURITY_PROPERTY_BASE + OPTION_MATH_PRIMECONFIDENCELEVEL;
-
-    // prefixes for permission checks
-    private static final String PREFIX_GET_OPTION = "getOption.";
-    private static final String PREFIX_SET_OPTION = "setOption.";
-
-    private static final String DEFAULT_SECURE_RANDOM_ALGORITHM = "SHA1PRNG";
-
-    /**
-     * We choose 100 as the default, because that's what Java 1.4 chooses for
-     * the default confidence for
-     * {@link BigInteger#probablePrime(int, java.util.Random)}.
-     */
-    private static final int DEFAULT_PRIME_CONFIDENCE_LEVEL = 100;
-
-    // configuration settings
-    // note: we create a new string so that our "unset" value is distinct from
-    // any value that we'll possibly get from the User. if we simply set
-    // OPTION_UNSET to "option unset", then we'd end up with an interned
-    // String that would be reference-equal to an "option unset" String
-    // given to us by a User.
-    private static final String OPTION_UNSET = new String("option unset");
-    private static final int LEVEL_UNSET = -1;
-    private static String secureRandomAlgorithm = OPTION_UNSET;
-    private static String secureRandomProvider = OPTION_UNSET;
-    private static String messageDigestProvider = OPTION_UNSET;
-    private static int primeConfidenceLevel = LEVEL_UNSET;
-
-    /**
-     * Private constructor to prevent instantiation or subclassing.
-     */
-    private ConfigImpl() {
-        super();
-    }
-
-    /**
-     * Gets the default for an option, as specified in
-     * java.security.Security's property set.
-     * @param propertyName the name of the property holding our option.
-     * @return the default setting, or <code>null</code> if either none
-     * is set or we don't have permission to read the requested property.
-     */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-	private static String getDefault(final String propertyName) {
-        try {
-            // permission java.security.SecurityPermission
-            // "getProperty.{propertyName}";
-            return (String) AccessController.doPrivileged(
-                new PrivilegedAction() {
-                    public Object run() {
-                        return Security.getProperty(propertyName);
-                    }
-            });
-        } catch (SecurityException se) {
-            // we don't have the required permission, so just...
-            return null;
-        }
-    }
-
-    /**
-     * Returns the configured secure random algorithm, selecting the default
-     * if none is configured.
-     * @return the configured secure random algorithm.
-     */
-    static synchronized String secureRandomAlgorithm() {
-        if (secureRandomAlgorithm == OPTION_UNSET) {
-            secureRandomAlgorithm =
-                getDefault(PROPERTY_SECURERANDOM_ALGORITHM);
-            // if there's none set or it's empty, use our default
-            if (secureRandomAlgorithm == null
-                || secureRandomAlgorithm.length() == 0) {
-                secureRandomAlgorithm = DEFAULT_SECURE_RANDOM_ALGORITHM;
-            }
-        }
-        return secureRandomAlgorithm;
-    }
-
-    /**
-     * Returns the name of the
-     * {@link java.security.SecureRandom SecureRandom} algorithm used by the
-     * SDK.
-     * @return a <code>SecureRandom</code> algorithm name.
-     * @throws SecurityException if a security manager exists and its
-     * {@link SecurityManager#checkPermission(java.security.Permission)}
-     * method denies access to retrieve this configuration option's value.
-     */
-    public static String getSecureRandomAlgorithm() throws SecurityException {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
-                + OPTION_SECURERANDOM_ALGORITHM));
-        }
-
-        return secureRandomAlgorithm();
-    }
-
-    /**
-     * Sets the name of the
-     * {@link java.security.SecureRandom SecureRandom} algorithm used by the
-     * SDK.
-     * @param algorithm a <code>SecureRandom</code> algorithm name, or
-     * <code>null</code> to select the default according to the site-wide
-     * default.
-     * @throws SecurityException if a security manager exists and its
-     * {@link SecurityManager#checkPermission(java.security.Permission)}
-     * method denies access to set this configuration option's value.
-     */
-    public static void setSecureRandomAlgorithm(final String algorithm) {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
-                + OPTION_SECURERANDOM_ALGORITHM));
-        }
-
-        synchronized (ConfigImpl.class) {
-            secureRandomAlgorithm =
-                algorithm != null && algorithm.length() != 0
-                    ? algorithm
-                    : OPTION_UNSET;
-            RandomSourceImpl.reset();
-        }
-    }
-
-    /**
-     * Returns the configured secure random provider.
-     * @return the configured secure random provider.
-     */
-    static synchronized String secureRandomProvider() {
-        if (secureRandomProvider == OPTION_UNSET) {
-            secureRandomProvider =
-                getDefault(PROPERTY_SECURERANDOM_PROVIDER);
-            // if we got the empty string, go with null, meaning that we'll
-            // use the first provider based on the site's java.security config
-            if (secureRandomProvider != null
-                && secureRandomProvider.length() == 0) {
-                secureRandomProvider = null;
-            }
-        }
-        return secureRandomProvider;
-    }
-
-    /**
-     * Returns the name of the
-     * {@link java.security.SecureRandom SecureRandom} provider used by the
-     * SDK.
-     * @return a <code>SecureRandom</code> provider name.
-     * @throws SecurityException if a security manager exists and its
-     * {@link SecurityManager#checkPermission(java.security.Permission)}
-     * method denies access to retrieve this configuration option's value.
-     */
-    public static String getSecureRandomProvider()
-            throws SecurityException {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
-                + OPTION_SECURERANDOM_PROVIDER));
-        }
-
-        return secureRandomProvider();
-    }
-
-    /**
-     * Sets the name of the
-     * {@link java.security.SecureRandom SecureRandom} provider to be used
-     * by the SDK.
-     * @param provider the name of a provider of a <code>SecureRandom</code>
-     * algorithm, or <code>null</code> to use the default according to the
-     * site-wide configuration.
-     * @throws SecurityException if a security manager exists and its
-     * {@link SecurityManager#checkPermission(java.security.Permission)}
-     * method denies access to set this configuration option's value.
-     */
-    public static void setSecureRandomProvider(final String provider) {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
-                + OPTION_SECURERANDOM_PROVIDER));
-        }
-
-        synchronized (ConfigImpl.class) {
-            secureRandomProvider =
-                provider != null && provider.length() != 0
-                    ? provider
-                    : OPTION_UNSET;
-            RandomSourceImpl.reset();
-        }
-    }
-
-    /**
-     * Returns the configured message digest provider.
-     * @return the configured message digest provider.
-     */
-    static synchronized String messageDigestProvider() {
-        if (messageDigestProvider == OPTION_UNSET) {
-            messageDigestProvider =
-                getDefault(PROPERTY_MESSAGEDIGEST_PROVIDER);
-            // if we got the empty string, go with null, meaning that we'll
-            // use the first provider based on the site's java.security config
-            if (messageDigestProvider != null
-                && messageDigestProvider.length() == 0) {
-                messageDigestProvider = null;
-            }
-        }
-        return messageDigestProvider;
-    }
-
-    /**
-     * Returns the name of the
-     * {@link java.security.MessageDigest MessageDigest} provider used by the
-     * SDK.
-     * @return a <code>MessageDigest</code> provider name.
-     * @throws SecurityException if a security manager exists and its
-     * {@link SecurityManager#checkPermission(java.security.Permission)}
-     * method denies access to retrieve this configuration option's value.
-     */
-    public static String getMessageDigestProvider()
-            throws SecurityException {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
-                + OPTION_MESSAGEDIGEST_PROVIDER));
-        }
-
-        return messageDigestProvider();
-    }
-
-    /**
-     * Sets the name of the
-     * {@link java.security.MessageDigest MessageDigest} provider used by the
-     * SDK.
-     * @param provider a <code>MessageDigest</code> provider name, or
-     * <code>null</code> to indicate that the SDK should use the
-     * <code>java.security</code> default.
-     * @throws SecurityException if a security manager exists and its
-     * {@link SecurityManager#checkPermission(java.security.Permission)}
-     * method denies access to set this configuration option's value.
-     */
-    public static void setMessageDigestProvider(final String provider)
-            throws SecurityException {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
-                + OPTION_MESSAGEDIGEST_PROVIDER));
-        }
-
-        synchronized (ConfigImpl.class) {
-            messageDigestProvider =
-                provider != null && provider.length() != 0
-                        ? provider
-                        : OPTION_UNSET;
-        }
-    }
-
-    /**
-     * Creates a new <code>MessageDigest</code> instance using the configured
-     * provider.
-     * @param algorithm the name of the message digest algorithm.
-     * @return a digest instance.
-     * @throws NoSuchProviderException if a provider is configured but not
-     * available.
-     * @throws NoSuchAlgorithmException if the desired algorithm is not
-     * available.
-     * @see #messageDigestProvider()
-     */
-    static MessageDigest getMessageDigest(final String algorithm)
-            throws NoSuchProviderException, NoSuchAlgorithmException {
-        final String provider = messageDigestProvider();
-        return provider != null
-                ? MessageDigest.getInstance(algorithm, provider)
-                : MessageDigest.getInstance(algorithm);
-    }
-
-    /*
-     * Prime number generation levels.
-     */
-    /**
-     * Test a prime confidence level for validity.
-     * <p>Numbers less than <code>1</code> are invalid due to the fact that
-     * you'll never find a prime with such a level. Empirical testing (and
-     * inspection of Sun's implementation) show that for integers over 1024
-     * bits in length, levels above 3 are equivalent to 3.</p>
-     * @param level a confidence level for testing.
-     * @return <code>true</code> if <code>level</code> is valid.
-     */
-    private static boolean isValidPrimeConfidenceLevel(final int level) {
-        return level >= 1;
-    }
-
-    /**
-     * Returns the configured prime number generation confidence level.
-     * @return the configured prime number generation confidence level.
-     */
-    static synchronized int primeConfidenceLevel() {
-        if (primeConfidenceLevel == LEVEL_UNSET) {
-            final String defaultLevel =
-                getDefault(PROPERTY_MATH_PRIMECONFIDENCELEVEL);
-            // pessimistically choose the default
-            primeConfidenceLevel = DEFAULT_PRIME_CONFIDENCE_LEVEL;
-            // now try to parse the default
-            if (defaultLevel != null && defaultLevel.length() != 0) {
-                try {
-                    final int level = Integer.parseInt(defaultLevel);
-                    if (isValidPrimeConfidenceLevel(level)) {
-                        // we got a good one!
-                        primeConfidenceLevel = level;
-                    }
-                } catch (NumberFormatException nfe) {
-                    // stick with the default
-                }
-            }
-        }
-        return primeConfidenceLevel;
-    }
-
-    /**
-     * Returns the confidence level for prime number generation.
-     * @return the confidence level for prime number generation.
-     * @throws SecurityException if a security manager exists and its
-     * {@link SecurityManager#checkPermission(java.security.Permission)}
-     * method denies access to retrieve this configuration option's value.
-     */
-    public static int getPrimeConfidenceLevel() throws SecurityException {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
-                + OPTION_MATH_PRIMECONFIDENCELEVEL));
-        }
-
-        return primeConfidenceLevel();
-    }
-
-    /**
-     * Sets the confidence level for prime number generation.
-     * @param aLevel the confidence level for prime number generation, or
-     * <code>0</code> to select the SDK's default value.
-     * @throws SecurityException if a security manager exists and its
-     * {@link SecurityManager#checkPermission(java.security.Permission)}
-     * method denies access to set this configuration option's value.
-     */
-    public static void setPrimeConfidenceLevel(final int aLevel)
-            throws SecurityException {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
-                + OPTION_MATH_PRIMECONFIDENCELEVEL));
-        }
-
-        final int level;
-        if (aLevel == 0) {
-            level = LEVEL_UNSET;
-        } else if (!isValidPrimeConfidenceLevel(aLevel)) {
-            throw new IllegalArgumentException("Invalid level: " + aLevel);
-        } else {
-            level = aLevel;
-        }
-
-        synchronized (ConfigImpl.class) {
-            primeConfidenceLevel = level;
-        }
-    }
-}
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivilegedAction;
+import java.security.Security;
+
+import com.microsoft.uprove.UProveSDKPermission;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * Implementation for SDK configuration options.
+ * <p>For more detail regarding this class's strategy for discovering defaults
+ * and allowing SDK users to get and set configuration options, see
+ * {@link com.microsoft.uprove.Config}.</p>
+ */
+final class ConfigImpl {
+
+    // option names for which we test when we allow outside code to get/set
+    // config options
+    private static final String OPTION_SECURERANDOM_ALGORITHM =
+        "securerandom.algorithm";
+    private static final String OPTION_SECURERANDOM_PROVIDER =
+        "securerandom.provider";
+    private static final String OPTION_SECURERANDOM_PERTHREAD =
+        "securerandom.perthread";
+    private static final String OPTION_SECURERANDOM_RESEEDINTERVAL =
+        "securerandom.reseedinterval";
+    private static final String OPTION_MESSAGEDIGEST_PROVIDER =
+        "messagedigest.provider";
+    private static final String OPTION_MATH_PRIMECONFIDENCELEVEL =
+        "math.primeconfidencelevel";
+    private static final String OPTION_MATH_FIXEDBASEMEMORYBUDGET =
+        "math.fixedbasememorybudget";
+    private static final String OPTION_CACHE_ISSUERPARAMETERS_SIZE =
+        "cache.issuerparameters.size";
+    private static final String OPTION_CACHE_ISSUERPARAMETERS_TTL =
+        "cache.issuerparameters.ttl";
+    private static final String OPTION_CACHE_ISSUERPARAMETERS_STATISTICS =
+        "cache.issuerparameters.statistics";
+    private static final String OPTION_CACHE_ATTRIBUTEHASHES_SIZE =
+        "cache.attributehashes.size";
+    private static final String OPTION_CACHE_VERIFIEDTOKENS_SIZE =
+        "cache.verifiedtokens.size";
+    private static final String OPTION_CACHE_VERIFIEDTOKENS_TTL =
+        "cache.verifiedtokens.ttl";
+    private static final String OPTION_VALIDATE_TOKENELEMENTS =
+        "validate.tokenelements";
+
+    // the base for all security properties we use
+    private static final String SECURITY_PROPERTY_BASE =
+        "com.microsoft.uprove.";
+
+    // property names we use when calling java.security.Security.getProperty
+    private static final String PROPERTY_SECURERANDOM_ALGORITHM =
+        SECURITY_PROPERTY_BASE + OPTION_SECURERANDOM_ALGORITHM;
+    private static final String PROPERTY_SECURERANDOM_PROVIDER =
+        SECURITY_PROPERTY_BASE + OPTION_SECURERANDOM_PROVIDER;
+    private static final String PROPERTY_SECURERANDOM_PERTHREAD =
+        SECURITY_PROPERTY_BASE + OPTION_SECURERANDOM_PERTHREAD;
+    private static final String PROPERTY_SECURERANDOM_RESEEDINTERVAL =
+        SECURITY_PROPERTY_BASE + OPTION_SECURERANDOM_RESEEDINTERVAL;
+    private static final String PROPERTY_MESSAGEDIGEST_PROVIDER =
+        SECURITY_PROPERTY_BASE + OPTION_MESSAGEDIGEST_PROVIDER;
+    private static final String PROPERTY_MATH_PRIMECONFIDENCELEVEL =
+        SECURITY_PROPERTY_BASE + OPTION_MATH_PRIMECONFIDENCELEVEL;
+    private static final String PROPERTY_MATH_FIXEDBASEMEMORYBUDGET =
+        SECURITY_PROPERTY_BASE + OPTION_MATH_FIXEDBASEMEMORYBUDGET;
+    private static final String PROPERTY_CACHE_ISSUERPARAMETERS_SIZE =
+        SECURITY_PROPERTY_BASE + OPTION_CACHE_ISSUERPARAMETERS_SIZE;
+    private static final String PROPERTY_CACHE_ISSUERPARAMETERS_TTL =
+        SECURITY_PROPERTY_BASE + OPTION_CACHE_ISSUERPARAMETERS_TTL;
+    private static final String PROPERTY_CACHE_ATTRIBUTEHASHES_SIZE =
+        SECURITY_PROPERTY_BASE + OPTION_CACHE_ATTRIBUTEHASHES_SIZE;
+    private static final String PROPERTY_CACHE_VERIFIEDTOKENS_SIZE =
+        SECURITY_PROPERTY_BASE + OPTION_CACHE_VERIFIEDTOKENS_SIZE;
+    private static final String PROPERTY_CACHE_VERIFIEDTOKENS_TTL =
+        SECURITY_PROPERTY_BASE + OPTION_CACHE_VERIFIEDTOKENS_TTL;
+    private static final String PROPERTY_VALIDATE_TOKENELEMENTS =
+        SECURITY_PROPERTY_BASE + OPTION_VALIDATE_TOKENELEMENTS;
+
+    // prefixes for permission checks
+    private static final String PREFIX_GET_OPTION = "getOption.";
+    private static final String PREFIX_SET_OPTION = "setOption.";
+
+    private static final String DEFAULT_SECURE_RANDOM_ALGORITHM = "SHA1PRNG";
+
+    /**
+     * A single shared <code>SecureRandom</code> is used by default, which
+     * is what single-threaded applications need.
+     */
+    private static final boolean DEFAULT_SECURE_RANDOM_PER_THREAD = false;
+
+    /**
+     * Per-thread <code>SecureRandom</code> instances are reseeded from the
+     * shared one after producing 1 MiB.
+     */
+    private static final long DEFAULT_SECURE_RANDOM_RESEED_INTERVAL = 1 << 20;
+
+    /**
+     * We choose 100 as the default, because that's what Java 1.4 chooses for
+     * the default confidence for
+     * {@link BigInteger#probablePrime(int, java.util.Random)}.
+     */
+    private static final int DEFAULT_PRIME_CONFIDENCE_LEVEL = 100;
+
+    /**
+     * Fixed-base precomputation is disabled by default, since the tables
+     * take up memory and only pay off for long-lived Issuer parameters.
+     */
+    private static final long DEFAULT_FIXED_BASE_MEMORY_BUDGET = 0;
+
+    /**
+     * Applications typically work with a handful of Issuer parameters, so
+     * a small cache is enough to avoid decoding them on every protocol run.
+     */
+    private static final int DEFAULT_ISSUER_PARAMETERS_CACHE_SIZE = 16;
+
+    /**
+     * Cached Issuer parameters do not expire by default; they are keyed by
+     * their full contents, so a cached entry can never be stale.
+     */
+    private static final long DEFAULT_ISSUER_PARAMETERS_CACHE_TTL = 0;
+
+    /**
+     * The attribute hash cache keeps copies of attribute values, so it is
+     * disabled unless the application opts in.
+     */
+    private static final int DEFAULT_ATTRIBUTE_HASH_CACHE_SIZE = 0;
+
+    /**
+     * Only Verifiers that see the same tokens repeatedly benefit from the
+     * verified token cache, so it is disabled by default.
+     */
+    private static final int DEFAULT_VERIFIED_TOKEN_CACHE_SIZE = 0;
+
+    /**
+     * Verified tokens do not expire by default; a token's signature stays
+     * valid as long as its Issuer parameters do.
+     */
+    private static final long DEFAULT_VERIFIED_TOKEN_CACHE_TTL = 0;
+
+    /**
+     * Verifiers don't check by default that the group elements of the
+     * tokens they verify belong to the group, which costs one
+     * exponentiation per element.
+     */
+    private static final boolean DEFAULT_VALIDATE_TOKEN_ELEMENTS = false;
+
+    // configuration settings
+    // note: we create a new string so that our "unset" value is distinct from
+    // any value that we'll possibly get from the User. if we simply set
+    // OPTION_UNSET to "option unset", then we'd end up with an interned
+    // String that would be reference-equal to an "option unset" String
+    // given to us by a User.
+    private static final String OPTION_UNSET = new String("option unset");
+    private static final int LEVEL_UNSET = -1;
+    private static String secureRandomAlgorithm = OPTION_UNSET;
+    private static String secureRandomProvider = OPTION_UNSET;
+    private static Boolean secureRandomPerThread; // = null;
+    private static long secureRandomReseedInterval = LEVEL_UNSET;
+    private static String messageDigestProvider = OPTION_UNSET;
+    private static int primeConfidenceLevel = LEVEL_UNSET;
+    private static long fixedBaseMemoryBudget = LEVEL_UNSET;
+    private static int issuerParametersCacheSize = LEVEL_UNSET;
+    private static long issuerParametersCacheTTL = LEVEL_UNSET;
+    private static int attributeHashCacheSize = LEVEL_UNSET;
+    private static int verifiedTokenCacheSize = LEVEL_UNSET;
+    private static long verifiedTokenCacheTTL = LEVEL_UNSET;
+    private static Boolean validateTokenElements; // = null;
+
+    /**
+     * Private constructor to prevent instantiation or subclassing.
+     */
+    private ConfigImpl() {
+        super();
+    }
+
+    /**
+     * Gets the default for an option, as specified in
+     * java.security.Security's property set.
+     * @param propertyName the name of the property holding our option.
+     * @return the default setting, or <code>null</code> if either none
+     * is set or we don't have permission to read the requested property.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+	private static String getDefault(final String propertyName) {
+        try {
+            // permission java.security.SecurityPermission
+            // "getProperty.{propertyName}";
+            return (String) AccessController.doPrivileged(
+                new PrivilegedAction() {
+                    public Object run() {
+                        return Security.getProperty(propertyName);
+                    }
+            });
+        } catch (SecurityException se) {
+            // we don't have the required permission, so just...
+            return null;
+        }
+    }
+
+    /**
+     * Returns the configured secure random algorithm, selecting the default
+     * if none is configured.
+     * @return the configured secure random algorithm.
+     */
+    static synchronized String secureRandomAlgorithm() {
+        if (secureRandomAlgorithm == OPTION_UNSET) {
+            secureRandomAlgorithm =
+                getDefault(PROPERTY_SECURERANDOM_ALGORITHM);
+            // if there's none set or it's empty, use our default
+            if (secureRandomAlgorithm == null
+                || secureRandomAlgorithm.length() == 0) {
+                secureRandomAlgorithm = DEFAULT_SECURE_RANDOM_ALGORITHM;
+            }
+        }
+        return secureRandomAlgorithm;
+    }
+
+    /**
+     * Returns the name of the
+     * {@link java.security.SecureRandom SecureRandom} algorithm used by the
+     * SDK.
+     * @return a <code>SecureRandom</code> algorithm name.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static String getSecureRandomAlgorithm() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_SECURERANDOM_ALGORITHM));
+        }
+
+        return secureRandomAlgorithm();
+    }
+
+    /**
+     * Sets the name of the
+     * {@link java.security.SecureRandom SecureRandom} algorithm used by the
+     * SDK.
+     * @param algorithm a <code>SecureRandom</code> algorithm name, or
+     * <code>null</code> to select the default according to the site-wide
+     * default.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setSecureRandomAlgorithm(final String algorithm) {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_SECURERANDOM_ALGORITHM));
+        }
+
+        synchronized (ConfigImpl.class) {
+            secureRandomAlgorithm =
+                algorithm != null && algorithm.length() != 0
+                    ? algorithm
+                    : OPTION_UNSET;
+            RandomSourceImpl.reset();
+        }
+    }
+
+    /**
+     * Returns the configured secure random provider.
+     * @return the configured secure random provider.
+     */
+    static synchronized String secureRandomProvider() {
+        if (secureRandomProvider == OPTION_UNSET) {
+            secureRandomProvider =
+                getDefault(PROPERTY_SECURERANDOM_PROVIDER);
+            // if we got the empty string, go with null, meaning that we'll
+            // use the first provider based on the site's java.security config
+            if (secureRandomProvider != null
+                && secureRandomProvider.length() == 0) {
+                secureRandomProvider = null;
+            }
+        }
+        return secureRandomProvider;
+    }
+
+    /**
+     * Returns the name of the
+     * {@link java.security.SecureRandom SecureRandom} provider used by the
+     * SDK.
+     * @return a <code>SecureRandom</code> provider name.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static String getSecureRandomProvider()
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_SECURERANDOM_PROVIDER));
+        }
+
+        return secureRandomProvider();
+    }
+
+    /**
+     * Sets the name of the
+     * {@link java.security.SecureRandom SecureRandom} provider to be used
+     * by the SDK.
+     * @param provider the name of a provider of a <code>SecureRandom</code>
+     * algorithm, or <code>null</code> to use the default according to the
+     * site-wide configuration.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setSecureRandomProvider(final String provider) {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_SECURERANDOM_PROVIDER));
+        }
+
+        synchronized (ConfigImpl.class) {
+            secureRandomProvider =
+                provider != null && provider.length() != 0
+                    ? provider
+                    : OPTION_UNSET;
+            RandomSourceImpl.reset();
+        }
+    }
+
+    /**
+     * Returns whether per-thread secure random sources are configured.
+     * @return <code>true</code> if each thread uses its own
+     * <code>SecureRandom</code>.
+     */
+    static synchronized boolean secureRandomPerThread() {
+        if (secureRandomPerThread == null) {
+            final String defaultPerThread =
+                getDefault(PROPERTY_SECURERANDOM_PERTHREAD);
+            // pessimistically choose the default
+            secureRandomPerThread =
+                Boolean.valueOf(DEFAULT_SECURE_RANDOM_PER_THREAD);
+            // now try to parse the default
+            if (defaultPerThread != null && defaultPerThread.length() != 0) {
+                secureRandomPerThread = Boolean.valueOf(defaultPerThread);
+            }
+        }
+        return secureRandomPerThread.booleanValue();
+    }
+
+    /**
+     * Returns whether each thread uses its own
+     * {@link java.security.SecureRandom SecureRandom}, seeded from a shared
+     * one, rather than all threads sharing a single instance.
+     * @return <code>true</code> if per-thread random sources are used.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static boolean getSecureRandomPerThread()
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_SECURERANDOM_PERTHREAD));
+        }
+
+        return secureRandomPerThread();
+    }
+
+    /**
+     * Sets whether each thread uses its own
+     * {@link java.security.SecureRandom SecureRandom}, seeded from a shared
+     * one, rather than all threads sharing a single instance. Per-thread
+     * random sources avoid contention when many threads run protocols at
+     * the same time.
+     * @param perThread <code>true</code> to use per-thread random sources,
+     * <code>false</code> to share a single one, or <code>null</code> to
+     * select the default according to the site-wide configuration.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setSecureRandomPerThread(final Boolean perThread)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_SECURERANDOM_PERTHREAD));
+        }
+
+        synchronized (ConfigImpl.class) {
+            secureRandomPerThread = perThread;
+            RandomSourceImpl.reset();
+        }
+    }
+
+    /**
+     * Returns the configured reseed interval of per-thread secure random
+     * sources.
+     * @return the configured reseed interval, in bytes.
+     */
+    static synchronized long secureRandomReseedInterval() {
+        if (secureRandomReseedInterval == LEVEL_UNSET) {
+            final String defaultInterval =
+                getDefault(PROPERTY_SECURERANDOM_RESEEDINTERVAL);
+            // pessimistically choose the default
+            secureRandomReseedInterval = DEFAULT_SECURE_RANDOM_RESEED_INTERVAL;
+            // now try to parse the default
+            if (defaultInterval != null && defaultInterval.length() != 0) {
+                try {
+                    final long interval = Long.parseLong(defaultInterval);
+                    if (interval >= 0) {
+                        // we got a good one!
+                        secureRandomReseedInterval = interval;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // stick with the default
+                }
+            }
+        }
+        return secureRandomReseedInterval;
+    }
+
+    /**
+     * Returns the number of bytes a per-thread
+     * {@link java.security.SecureRandom SecureRandom} produces before being
+     * reseeded from the shared one.
+     * @return the reseed interval, in bytes.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static long getSecureRandomReseedInterval()
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_SECURERANDOM_RESEEDINTERVAL));
+        }
+
+        return secureRandomReseedInterval();
+    }
+
+    /**
+     * Sets the number of bytes a per-thread
+     * {@link java.security.SecureRandom SecureRandom} produces before being
+     * reseeded from the shared one. This option has no effect unless
+     * per-thread random sources are enabled.
+     * @param interval the reseed interval in bytes, <code>0</code> to only
+     * reseed when {@link RandomSource#seed(byte[])} is called, or a negative
+     * value to select the SDK's default value.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setSecureRandomReseedInterval(final long interval)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_SECURERANDOM_RESEEDINTERVAL));
+        }
+
+        synchronized (ConfigImpl.class) {
+            secureRandomReseedInterval = interval < 0 ? LEVEL_UNSET : interval;
+            RandomSourceImpl.reset();
+        }
+    }
+
+    /**
+     * Returns the configured message digest provider.
+     * @return the configured message digest provider.
+     */
+    static synchronized String messageDigestProvider() {
+        if (messageDigestProvider == OPTION_UNSET) {
+            messageDigestProvider =
+                getDefault(PROPERTY_MESSAGEDIGEST_PROVIDER);
+            // if we got the empty string, go with null, meaning that we'll
+            // use the first provider based on the site's java.security config
+            if (messageDigestProvider != null
+                && messageDigestProvider.length() == 0) {
+                messageDigestProvider = null;
+            }
+        }
+        return messageDigestProvider;
+    }
+
+    /**
+     * Returns the name of the
+     * {@link java.security.MessageDigest MessageDigest} provider used by the
+     * SDK.
+     * @return a <code>MessageDigest</code> provider name.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static String getMessageDigestProvider()
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_MESSAGEDIGEST_PROVIDER));
+        }
+
+        return messageDigestProvider();
+    }
+
+    /**
+     * Sets the name of the
+     * {@link java.security.MessageDigest MessageDigest} provider used by the
+     * SDK.
+     * @param provider a <code>MessageDigest</code> provider name, or
+     * <code>null</code> to indicate that the SDK should use the
+     * <code>java.security</code> default.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setMessageDigestProvider(final String provider)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_MESSAGEDIGEST_PROVIDER));
+        }
+
+        synchronized (ConfigImpl.class) {
+            messageDigestProvider =
+                provider != null && provider.length() != 0
+                        ? provider
+                        : OPTION_UNSET;
+        }
+    }
+
+    /**
+     * Creates a new <code>MessageDigest</code> instance using the configured
+     * provider.
+     * @param algorithm the name of the message digest algorithm.
+     * @return a digest instance.
+     * @throws NoSuchProviderException if a provider is configured but not
+     * available.
+     * @throws NoSuchAlgorithmException if the desired algorithm is not
+     * available.
+     * @see #messageDigestProvider()
+     */
+    static MessageDigest getMessageDigest(final String algorithm)
+            throws NoSuchProviderException, NoSuchAlgorithmException {
+        final String provider = messageDigestProvider();
+        return provider != null
+                ? MessageDigest.getInstance(algorithm, provider)
+                : MessageDigest.getInstance(algorithm);
+    }
+
+    /*
+     * Prime number generation levels.
+     */
+    /**
+     * Test a prime confidence level for validity.
+     * <p>Numbers less than <code>1</code> are invalid due to the fact that
+     * you'll never find a prime with such a level. Empirical testing (and
+     * inspection of Sun's implementation) show that for integers over 1024
+     * bits in length, levels above 3 are equivalent to 3.</p>
+     * @param level a confidence level for testing.
+     * @return <code>true</code> if <code>level</code> is valid.
+     */
+    private static boolean isValidPrimeConfidenceLevel(final int level) {
+        return level >= 1;
+    }
+
+    /**
+     * Returns the configured prime number generation confidence level.
+     * @return the configured prime number generation confidence level.
+     */
+    static synchronized int primeConfidenceLevel() {
+        if (primeConfidenceLevel == LEVEL_UNSET) {
+            final String defaultLevel =
+                getDefault(PROPERTY_MATH_PRIMECONFIDENCELEVEL);
+            // pessimistically choose the default
+            primeConfidenceLevel = DEFAULT_PRIME_CONFIDENCE_LEVEL;
+            // now try to parse the default
+            if (defaultLevel != null && defaultLevel.length() != 0) {
+                try {
+                    final int level = Integer.parseInt(defaultLevel);
+                    if (isValidPrimeConfidenceLevel(level)) {
+                        // we got a good one!
+                        primeConfidenceLevel = level;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // stick with the default
+                }
+            }
+        }
+        return primeConfidenceLevel;
+    }
+
+    /**
+     * Returns the confidence level for prime number generation.
+     * @return the confidence level for prime number generation.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static int getPrimeConfidenceLevel() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_MATH_PRIMECONFIDENCELEVEL));
+        }
+
+        return primeConfidenceLevel();
+    }
+
+    /**
+     * Sets the confidence level for prime number generation.
+     * @param aLevel the confidence level for prime number generation, or
+     * <code>0</code> to select the SDK's default value.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setPrimeConfidenceLevel(final int aLevel)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_MATH_PRIMECONFIDENCELEVEL));
+        }
+
+        final int level;
+        if (aLevel == 0) {
+            level = LEVEL_UNSET;
+        } else if (!isValidPrimeConfidenceLevel(aLevel)) {
+            throw new IllegalArgumentException("Invalid level: " + aLevel);
+        } else {
+            level = aLevel;
+        }
+
+        synchronized (ConfigImpl.class) {
+            primeConfidenceLevel = level;
+        }
+    }
+
+    /*
+     * Fixed-base precomputation memory budget.
+     */
+    /**
+     * Returns the configured fixed-base precomputation memory budget.
+     * @return the configured fixed-base precomputation memory budget.
+     */
+    static synchronized long fixedBaseMemoryBudget() {
+        if (fixedBaseMemoryBudget == LEVEL_UNSET) {
+            final String defaultBudget =
+                getDefault(PROPERTY_MATH_FIXEDBASEMEMORYBUDGET);
+            // pessimistically choose the default
+            fixedBaseMemoryBudget = DEFAULT_FIXED_BASE_MEMORY_BUDGET;
+            // now try to parse the default
+            if (defaultBudget != null && defaultBudget.length() != 0) {
+                try {
+                    final long budget = Long.parseLong(defaultBudget);
+                    if (budget >= 0) {
+                        // we got a good one!
+                        fixedBaseMemoryBudget = budget;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // stick with the default
+                }
+            }
+        }
+        return fixedBaseMemoryBudget;
+    }
+
+    /**
+     * Returns the number of bytes each set of Issuer parameters may use for
+     * fixed-base precomputation tables.
+     * @return the fixed-base precomputation memory budget, in bytes.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static long getFixedBaseMemoryBudget() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_MATH_FIXEDBASEMEMORYBUDGET));
+        }
+
+        return fixedBaseMemoryBudget();
+    }
+
+    /**
+     * Sets the number of bytes each set of Issuer parameters may use for
+     * fixed-base precomputation tables.
+     * @param budget the fixed-base precomputation memory budget in bytes,
+     * <code>0</code> to disable fixed-base precomputation, or a negative
+     * value to select the SDK's default value.
+     * <p>
+     * The budget is read when a set of decoded Issuer parameters first uses
+     * its tables. Setting it clears the Issuer parameters cache so that
+     * parameters decoded afterwards use the new value; parameters already
+     * held by precomputation pools or prepared tokens are not affected.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setFixedBaseMemoryBudget(final long budget)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_MATH_FIXEDBASEMEMORYBUDGET));
+        }
+
+        synchronized (ConfigImpl.class) {
+            fixedBaseMemoryBudget = budget < 0 ? LEVEL_UNSET : budget;
+        }
+        // cached parameters have already read the old budget
+        IssuerParametersCache.clear();
+    }
+
+    /*
+     * Issuer parameters cache size.
+     */
+    /**
+     * Returns the configured maximum number of entries in the Issuer
+     * parameters cache.
+     * @return the configured Issuer parameters cache size.
+     */
+    static synchronized int issuerParametersCacheSize() {
+        if (issuerParametersCacheSize == LEVEL_UNSET) {
+            final String defaultSize =
+                getDefault(PROPERTY_CACHE_ISSUERPARAMETERS_SIZE);
+            // pessimistically choose the default
+            issuerParametersCacheSize = DEFAULT_ISSUER_PARAMETERS_CACHE_SIZE;
+            // now try to parse the default
+            if (defaultSize != null && defaultSize.length() != 0) {
+                try {
+                    final int size = Integer.parseInt(defaultSize);
+                    if (size >= 0) {
+                        // we got a good one!
+                        issuerParametersCacheSize = size;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // stick with the default
+                }
+            }
+        }
+        return issuerParametersCacheSize;
+    }
+
+    /**
+     * Returns the maximum number of decoded Issuer parameters kept in the
+     * Issuer parameters cache.
+     * @return the Issuer parameters cache size.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static int getIssuerParametersCacheSize() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_CACHE_ISSUERPARAMETERS_SIZE));
+        }
+
+        return issuerParametersCacheSize();
+    }
+
+    /**
+     * Sets the maximum number of decoded Issuer parameters kept in the
+     * Issuer parameters cache. Reducing the size evicts the least recently
+     * used entries on the next cache access.
+     * @param size the Issuer parameters cache size, <code>0</code> to
+     * disable the cache, or a negative value to select the SDK's default
+     * value.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setIssuerParametersCacheSize(final int size)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_CACHE_ISSUERPARAMETERS_SIZE));
+        }
+
+        synchronized (ConfigImpl.class) {
+            issuerParametersCacheSize = size < 0 ? LEVEL_UNSET : size;
+        }
+        IssuerParametersCache.resize();
+    }
+
+    /*
+     * Issuer parameters cache time-to-live.
+     */
+    /**
+     * Returns the configured time-to-live of Issuer parameters cache
+     * entries.
+     * @return the configured Issuer parameters cache time-to-live.
+     */
+    static synchronized long issuerParametersCacheTTL() {
+        if (issuerParametersCacheTTL == LEVEL_UNSET) {
+            final String defaultTTL =
+                getDefault(PROPERTY_CACHE_ISSUERPARAMETERS_TTL);
+            // pessimistically choose the default
+            issuerParametersCacheTTL = DEFAULT_ISSUER_PARAMETERS_CACHE_TTL;
+            // now try to parse the default
+            if (defaultTTL != null && defaultTTL.length() != 0) {
+                try {
+                    final long ttl = Long.parseLong(defaultTTL);
+                    if (ttl >= 0) {
+                        // we got a good one!
+                        issuerParametersCacheTTL = ttl;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // stick with the default
+                }
+            }
+        }
+        return issuerParametersCacheTTL;
+    }
+
+    /**
+     * Returns the number of milliseconds an entry stays in the Issuer
+     * parameters cache after it was created.
+     * @return the Issuer parameters cache time-to-live in milliseconds, or
+     * <code>0</code> if entries never expire.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static long getIssuerParametersCacheTTL() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_CACHE_ISSUERPARAMETERS_TTL));
+        }
+
+        return issuerParametersCacheTTL();
+    }
+
+    /**
+     * Sets the number of milliseconds an entry stays in the Issuer
+     * parameters cache after it was created.
+     * @param ttl the Issuer parameters cache time-to-live in milliseconds,
+     * <code>0</code> for entries that never expire, or a negative value to
+     * select the SDK's default value.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setIssuerParametersCacheTTL(final long ttl)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_CACHE_ISSUERPARAMETERS_TTL));
+        }
+
+        synchronized (ConfigImpl.class) {
+            issuerParametersCacheTTL = ttl < 0 ? LEVEL_UNSET : ttl;
+        }
+    }
+
+    /*
+     * Issuer parameters cache statistics.
+     */
+    /**
+     * Checks that the caller may read the Issuer parameters cache
+     * statistics.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to the statistics.
+     */
+    private static void checkGetIssuerParametersCacheStatistics()
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_CACHE_ISSUERPARAMETERS_STATISTICS));
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found their Issuer parameters in
+     * the Issuer parameters cache.
+     * @return the number of cache hits.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve the cache statistics.
+     */
+    public static long getIssuerParametersCacheHitCount()
+            throws SecurityException {
+        checkGetIssuerParametersCacheStatistics();
+        return IssuerParametersCache.getHitCount();
+    }
+
+    /**
+     * Returns the number of lookups that had to decode their Issuer
+     * parameters.
+     * @return the number of cache misses.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve the cache statistics.
+     */
+    public static long getIssuerParametersCacheMissCount()
+            throws SecurityException {
+        checkGetIssuerParametersCacheStatistics();
+        return IssuerParametersCache.getMissCount();
+    }
+
+    /**
+     * Returns the number of entries removed from the Issuer parameters
+     * cache because they expired or because the cache was full.
+     * @return the number of cache evictions.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve the cache statistics.
+     */
+    public static long getIssuerParametersCacheEvictionCount()
+            throws SecurityException {
+        checkGetIssuerParametersCacheStatistics();
+        return IssuerParametersCache.getEvictionCount();
+    }
+
+    /**
+     * Returns the number of decoded Issuer parameters currently held in
+     * the Issuer parameters cache.
+     * @return the number of cache entries.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve the cache statistics.
+     */
+    public static int getIssuerParametersCacheEntryCount()
+            throws SecurityException {
+        checkGetIssuerParametersCacheStatistics();
+        return IssuerParametersCache.getSize();
+    }
+
+    /**
+     * Removes all entries from the Issuer parameters cache and resets its
+     * statistics.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to reset the cache statistics.
+     */
+    public static void clearIssuerParametersCache() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_CACHE_ISSUERPARAMETERS_STATISTICS));
+        }
+
+        IssuerParametersCache.clear();
+    }
+
+    /*
+     * Attribute hash cache size.
+     */
+    /**
+     * Returns the configured maximum number of entries in the attribute
+     * hash cache of each set of Issuer parameters.
+     * @return the configured attribute hash cache size.
+     */
+    static synchronized int attributeHashCacheSize() {
+        if (attributeHashCacheSize == LEVEL_UNSET) {
+            final String defaultSize =
+                getDefault(PROPERTY_CACHE_ATTRIBUTEHASHES_SIZE);
+            // pessimistically choose the default
+            attributeHashCacheSize = DEFAULT_ATTRIBUTE_HASH_CACHE_SIZE;
+            // now try to parse the default
+            if (defaultSize != null && defaultSize.length() != 0) {
+                try {
+                    final int size = Integer.parseInt(defaultSize);
+                    if (size >= 0) {
+                        // we got a good one!
+                        attributeHashCacheSize = size;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // stick with the default
+                }
+            }
+        }
+        return attributeHashCacheSize;
+    }
+
+    /**
+     * Returns the maximum number of attribute and token information hashes
+     * cached for each set of Issuer parameters (see
+     * {@link AttributeHashCache}).
+     * @return the attribute hash cache size.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static int getAttributeHashCacheSize() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_CACHE_ATTRIBUTEHASHES_SIZE));
+        }
+
+        return attributeHashCacheSize();
+    }
+
+    /**
+     * Sets the maximum number of attribute and token information hashes
+     * cached for each set of Issuer parameters. The cache keeps copies of
+     * the attribute values it holds. Reducing the size evicts the least
+     * recently used entries on the next cache access.
+     * @param size the attribute hash cache size, <code>0</code> to disable
+     * the cache, or a negative value to select the SDK's default value.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setAttributeHashCacheSize(final int size)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_CACHE_ATTRIBUTEHASHES_SIZE));
+        }
+
+        synchronized (ConfigImpl.class) {
+            attributeHashCacheSize = size < 0 ? LEVEL_UNSET : size;
+        }
+    }
+
+    /*
+     * Verified token cache size.
+     */
+    /**
+     * Returns the configured maximum number of entries in the verified
+     * token cache.
+     * @return the configured verified token cache size.
+     */
+    static synchronized int verifiedTokenCacheSize() {
+        if (verifiedTokenCacheSize == LEVEL_UNSET) {
+            final String defaultSize =
+                getDefault(PROPERTY_CACHE_VERIFIEDTOKENS_SIZE);
+            // pessimistically choose the default
+            verifiedTokenCacheSize = DEFAULT_VERIFIED_TOKEN_CACHE_SIZE;
+            // now try to parse the default
+            if (defaultSize != null && defaultSize.length() != 0) {
+                try {
+                    final int size = Integer.parseInt(defaultSize);
+                    if (size >= 0) {
+                        // we got a good one!
+                        verifiedTokenCacheSize = size;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // stick with the default
+                }
+            }
+        }
+        return verifiedTokenCacheSize;
+    }
+
+    /**
+     * Returns the maximum number of tokens kept in the verified token cache
+     * (see {@link VerifiedTokenCache}).
+     * @return the verified token cache size.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static int getVerifiedTokenCacheSize() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_CACHE_VERIFIEDTOKENS_SIZE));
+        }
+
+        return verifiedTokenCacheSize();
+    }
+
+    /**
+     * Sets the maximum number of tokens kept in the verified token cache.
+     * Reducing the size evicts the least recently used entries on the next
+     * cache access.
+     * @param size the verified token cache size, <code>0</code> to disable
+     * the cache, or a negative value to select the SDK's default value.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setVerifiedTokenCacheSize(final int size)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_CACHE_VERIFIEDTOKENS_SIZE));
+        }
+
+        synchronized (ConfigImpl.class) {
+            verifiedTokenCacheSize = size < 0 ? LEVEL_UNSET : size;
+        }
+        VerifiedTokenCache.resize();
+    }
+
+    /*
+     * Verified token cache time-to-live.
+     */
+    /**
+     * Returns the configured time-to-live of verified token cache entries.
+     * @return the configured verified token cache time-to-live.
+     */
+    static synchronized long verifiedTokenCacheTTL() {
+        if (verifiedTokenCacheTTL == LEVEL_UNSET) {
+            final String defaultTTL =
+                getDefault(PROPERTY_CACHE_VERIFIEDTOKENS_TTL);
+            // pessimistically choose the default
+            verifiedTokenCacheTTL = DEFAULT_VERIFIED_TOKEN_CACHE_TTL;
+            // now try to parse the default
+            if (defaultTTL != null && defaultTTL.length() != 0) {
+                try {
+                    final long ttl = Long.parseLong(defaultTTL);
+                    if (ttl >= 0) {
+                        // we got a good one!
+                        verifiedTokenCacheTTL = ttl;
+                    }
+                } catch (NumberFormatException nfe) {
+                    // stick with the default
+                }
+            }
+        }
+        return verifiedTokenCacheTTL;
+    }
+
+    /**
+     * Returns the number of milliseconds an entry stays in the verified
+     * token cache after it was created.
+     * @return the verified token cache time-to-live in milliseconds, or
+     * <code>0</code> if entries never expire.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static long getVerifiedTokenCacheTTL() throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_CACHE_VERIFIEDTOKENS_TTL));
+        }
+
+        return verifiedTokenCacheTTL();
+    }
+
+    /**
+     * Sets the number of milliseconds an entry stays in the verified token
+     * cache after it was created.
+     * @param ttl the verified token cache time-to-live in milliseconds,
+     * <code>0</code> for entries that never expire, or a negative value to
+     * select the SDK's default value.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setVerifiedTokenCacheTTL(final long ttl)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_CACHE_VERIFIEDTOKENS_TTL));
+        }
+
+        synchronized (ConfigImpl.class) {
+            verifiedTokenCacheTTL = ttl < 0 ? LEVEL_UNSET : ttl;
+        }
+    }
+
+    /*
+     * Token element validation.
+     */
+    /**
+     * Returns whether Verifiers validate the group elements of tokens.
+     * @return <code>true</code> if token elements are validated.
+     */
+    static synchronized boolean validateTokenElements() {
+        if (validateTokenElements == null) {
+            final String defaultValidate =
+                getDefault(PROPERTY_VALIDATE_TOKENELEMENTS);
+            // pessimistically choose the default
+            validateTokenElements =
+                Boolean.valueOf(DEFAULT_VALIDATE_TOKEN_ELEMENTS);
+            // now try to parse the default
+            if (defaultValidate != null && defaultValidate.length() != 0) {
+                validateTokenElements = Boolean.valueOf(defaultValidate);
+            }
+        }
+        return validateTokenElements.booleanValue();
+    }
+
+    /**
+     * Returns whether Verifiers check that the public key <code>h</code>
+     * and the signature value <code>sigmaZ</code> of the tokens they verify
+     * belong to the group of the Issuer parameters.
+     * @return <code>true</code> if token elements are validated.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to retrieve this configuration option's value.
+     */
+    public static boolean getValidateTokenElements()
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_GET_OPTION
+                + OPTION_VALIDATE_TOKENELEMENTS));
+        }
+
+        return validateTokenElements();
+    }
+
+    /**
+     * Sets whether Verifiers check that the public key <code>h</code> and
+     * the signature value <code>sigmaZ</code> of the tokens they verify
+     * belong to the group of the Issuer parameters. The check costs one
+     * exponentiation per element, and is done once per token when tokens
+     * are kept in the verified token cache (see
+     * {@link #setVerifiedTokenCacheSize(int)}).
+     * @param validate <code>true</code> to validate token elements,
+     * <code>false</code> not to, or <code>null</code> to select the default
+     * according to the site-wide configuration.
+     * @throws SecurityException if a security manager exists and its
+     * {@link SecurityManager#checkPermission(java.security.Permission)}
+     * method denies access to set this configuration option's value.
+     */
+    public static void setValidateTokenElements(final Boolean validate)
+            throws SecurityException {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new UProveSDKPermission(PREFIX_SET_OPTION
+                + OPTION_VALIDATE_TOKENELEMENTS));
+        }
+
+        synchronized (ConfigImpl.class) {
+            validateTokenElements = validate;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Provides default elliptic curve group instances: the NIST curves P-256,
+ * P-384 and P-521 (FIPS 186-3), selected by the bit size of their order.
+ */
+public final class DefaultECGroupFactory {
+
+    private static Map<Integer, ECGroup> defaultSpecMap = new HashMap<Integer, ECGroup>();
+    static {
+        // P-256
+        defaultSpecMap.put(
+            Integer.valueOf(256),
+            new ECGroup(
+                // p
+                new BigInteger("ffffffff00000001000000000000000000000000ffffffffffffffffffffffff", 16),
+                // a
+                new BigInteger("ffffffff00000001000000000000000000000000fffffffffffffffffffffffc", 16),
+                // b
+                new BigInteger("5ac635d8aa3a93e7b3ebbd55769886bc651d06b0cc53b0f63bce3c3e27d2604b", 16),
+                // gx
+                new BigInteger("6b17d1f2e12c4247f8bce6e563a440f277037d812deb33a0f4a13945d898c296", 16),
+                // gy
+                new BigInteger("4fe342e2fe1a7f9b8ee7eb4a7c0f9e162bce33576b315ececbb6406837bf51f5", 16),
+                // q
+                new BigInteger("ffffffff00000000ffffffffffffffffbce6faada7179e84f3b9cac2fc632551", 16)));
+
+        // P-384
+        defaultSpecMap.put(
+            Integer.valueOf(384),
+            new ECGroup(
+                // p
+                new BigInteger("fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffeffffffff0000000000000000ffffffff", 16),
+                // a
+                new BigInteger("fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffeffffffff0000000000000000fffffffc", 16),
+                // b
+                new BigInteger("b3312fa7e23ee7e4988e056be3f82d19181d9c6efe8141120314088f5013875ac656398d8a2ed19d2a85c8edd3ec2aef", 16),
+                // gx
+                new BigInteger("aa87ca22be8b05378eb1c71ef320ad746e1d3b628ba79b9859f741e082542a385502f25dbf55296c3a545e3872760ab7", 16),
+                // gy
+                new BigInteger("3617de4a96262c6f5d9e98bf9292dc29f8f41dbd289a147ce9da3113b5f0b8c00a60b1ce1d7e819d7a431d7c90ea0e5f", 16),
+                // q
+                new BigInteger("ffffffffffffffffffffffffffffffffffffffffffffffffc7634d81f4372ddf581a0db248b0a77aecec196accc52973", 16)));
+
+        // P-521
+        defaultSpecMap.put(
+            Integer.valueOf(521),
+            new ECGroup(
+                // p
+                new BigInteger("1ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff", 16),
+                // a
+                new BigInteger("1fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffc", 16),
+                // b
+                new BigInteger("51953eb9618e1c9a1f929a21a0b68540eea2da725b99b315f3b8b489918ef109e156193951ec7e937b1652c0bd3bb1bf073573df883d2c34f1ef451fd46b503f00", 16),
+                // gx
+                new BigInteger("c6858e06b70404e9cd9e3ecb662395b4429c648139053fb521f828af606b4d3dbaa14b5e77efe75928fe1dc127a2ffa8de3348b3c1856a429bf97e7e31c2e5bd66", 16),
+                // gy
+                new BigInteger("11839296a789a3bc0045c8a5fb42c7d1bd998f54449579b446817afbd17273e662c97ee72995ef42640c550b9013fad0761353c7086a272c24088be94769fd16650", 16),
+                // q
+                new BigInteger("1fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffa51868783bf2f966b7fcc0148f709a5d03bb5c9b8899c47aebb6fb71e91386409", 16)));
+    }
+
+    /**
+     * Non-instantiable class.
+     */
+    private DefaultECGroupFactory() {
+        super();
+    }
+
+    /**
+     * Returns a standard elliptic curve group of specific order if one is
+     * available.
+     * @param orderSize the desired size of the group's order <code>q</code>:
+     * 256, 384 or 521.
+     * @return the curve P-256, P-384 or P-521, or <code>null</code> if none
+     * is available for the given <code>q</code> size.
+     */
+    public static ECGroup getDefaultECGroup(final int orderSize) {
+        return defaultSpecMap.get(Integer.valueOf(orderSize));
+    }
+
+}
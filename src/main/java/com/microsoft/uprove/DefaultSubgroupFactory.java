@@ -31,7 +31,7 @@ public final class DefaultSubgroupFactory {
         try {
             defaultSpecMap.put(
             	Integer.valueOf(160),
-                new Subgroup(
+                Subgroup.getInstance(
                 	// p
                 	new BigInteger(1, Base64.decode("ANIa6NZubGs87Q6z3xomyRve7QE8F9hJ0w7DCYE+TTeZ8m2w1JToLsYeqf3HC7XLyvLl8YqDZJT1jmfG1hZIDDen8jBhAfyfD0do+cl5PCvhdrC3yXm0Bl0+g1aGo/C4QgxoNMsXkwOG3tqysH3Uc0SaSLqrMWKGtCEFJHXRNM07")),
                     // q (ratio: 0.99987)
@@ -41,7 +41,7 @@ public final class DefaultSubgroupFactory {
 
             defaultSpecMap.put(
             	Integer.valueOf(256),
-                new Subgroup(
+                Subgroup.getInstance(
                     // p
                     new BigInteger(1, Base64.decode("AJgEaluYCdoRiTYD2LvMD4aR2S9YKmzg/qXVJ+kmFci/7wmMZBCBtnWMBf21ye4ZSSGcfxSAlfU+EdFZUK7Sw9x2SScARPXwk4IkDvIPkEh7IdaUCgWAymeZaJE6VTGevUvhX+3klPMRv8s1ztQ10nuS0t81EctSsH+vwNOvlvnughY9BI0KFJvl25qeJGQDVNvqgkDyEkLQ3yzp1GnDSF8=")),
                     // q (ratio: 0.99993)
@@ -51,7 +51,7 @@ public final class DefaultSubgroupFactory {
 
             defaultSpecMap.put(
             	Integer.valueOf(512),
-            	new Subgroup(
+            	Subgroup.getInstance(
                     // p
             		new BigInteger(1, Base64.decode("AOTD8AJWE6z1R1P8vOWL3mUtq88zBBYPnh7cag7imrMRG3p0rUjerMDi6d27yyQ0cc+vB3gpxl2Jpriyr44XVrTTWqaALwBgpNGYlsF4Z5e4MoizvDKq2ygWg/htYxCOPlENCgp2j5nq+N5d0i4eSrkALmKBZBdTcgz/Y7O8hTsLZefJd2QR7tWzun7ZvEt+wgq2xFgxHbplfEyUbUTeEahgluv9ojYCbK++WOaFQ5bm9abS58WaOJ8UfXwm6N69O9HeR2wdeoUHW1YY3D1B3Fg6CYGJCERA9tXol7TuVukGo6lNV5vBUkfRq6JXuUeESobC4QVMXyhTI012QGRCuus=")),
                     // q (ratio: 0.99948)
@@ -28,7 +28,7 @@ class DeviceImpl implements Device {
 		}
 		this.ipi = ipi;
 		this.xd = ipi.getGroup().getZq().getRandomElement(false);
-		this.hd = ipi.getDeviceGenerator().exponentiate(xd);
+		this.hd = ProtocolHelper.exponentiate(ipi, ipi.getDeviceGenerator(), xd);
 	}
 	
 	DeviceImpl(IssuerParametersInternal ipi, ZqElement xd) {
@@ -37,7 +37,7 @@ class DeviceImpl implements Device {
 		}
 		this.ipi = ipi;
 		this.xd = xd;
-		this.hd = ipi.getDeviceGenerator().exponentiate(xd);
+		this.hd = ProtocolHelper.exponentiate(ipi, ipi.getDeviceGenerator(), xd);
 	}
 	
 	@Override
@@ -55,7 +55,7 @@ class DeviceImpl implements Device {
 		if (wdPrime == null) {
 			wdPrime = ipi.getGroup().getZq().getRandomElement(false);
 		}
-		return ipi.getDeviceGenerator().exponentiate(wdPrime).toByteArray();
+		return ProtocolHelper.exponentiate(ipi, ipi.getDeviceGenerator(), wdPrime).toByteArray();
 	}
 
 	@Override
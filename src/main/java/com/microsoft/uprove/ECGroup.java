@@ -0,0 +1,889 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+/**
+ * Implements the elliptic curve construction: the group of points of a
+ * prime order curve <code>y^2 = x^3 - 3x + b</code> over the prime field
+ * <code>F<sub>p</sub></code>, such as the NIST curves P-256, P-384 and
+ * P-521 (see {@link DefaultECGroupFactory}).
+ * <p>
+ * The group is written multiplicatively to match the {@link GroupElement}
+ * interface: "multiplication" is point addition, "exponentiation" is scalar
+ * multiplication, and the identity is the point at infinity.
+ * </p>
+ * <p>
+ * Points are encoded in the compressed form of SEC 1: a <code>0x02</code> or
+ * <code>0x03</code> byte (the parity of <code>y</code>) followed by the
+ * big-endian <code>x</code> coordinate padded to the field size. The point
+ * at infinity is encoded as a single <code>0x00</code> byte. Uncompressed
+ * points (<code>0x04</code> followed by <code>x</code> and <code>y</code>)
+ * are also accepted by {@link #getElement(byte[])}.
+ * </p>
+ * <p>
+ * Internally, points are kept in homogeneous projective coordinates in the
+ * Montgomery domain, and added with the complete formulas of Renes,
+ * Costello and Batina, which have no exceptional cases. Scalar
+ * multiplications (including {@link #multiExponentiate(GroupElement[],
+ * ZqElement[]) multi-exponentiations}) use a fixed 4-bit window and scan
+ * the whole precomputed table for every digit, so their sequence of
+ * operations does not depend on the value of the scalar.
+ * </p>
+ */
+public final class ECGroup extends PrimeOrderGroup {
+
+    /**
+     * The window size of scalar multiplications.
+     */
+    private static final int WINDOW = 4;
+
+    /**
+     * The number of entries in a window table.
+     */
+    private static final int TABLE_SIZE = 1 << WINDOW;
+
+    private static final byte IDENTITY = 0x00;
+    private static final byte COMPRESSED_EVEN = 0x02;
+    private static final byte COMPRESSED_ODD = 0x03;
+    private static final byte UNCOMPRESSED = 0x04;
+
+    /**
+     * The curve's field prime <code>p</code>.
+     */
+    private final BigInteger p;
+
+    /**
+     * The curve's <code>b</code> coefficient.
+     */
+    private final BigInteger b;
+
+    /**
+     * The coordinates of the group's generator.
+     */
+    private final BigInteger gx;
+    private final BigInteger gy;
+
+    /**
+     * The size, in bytes, of an encoded field element.
+     */
+    private final int fieldSize;
+
+    /**
+     * The field arithmetic.
+     */
+    private final MontgomeryDomain field;
+
+    /**
+     * Constants in the Montgomery domain.
+     */
+    private final long[] montB;
+    private final long[] montZero;
+    private final long[] montOne;
+
+    /**
+     * The number of windows in a scalar.
+     */
+    private final int windows;
+
+    /**
+     * Per-thread temporaries for the point arithmetic.
+     */
+    private final ThreadLocal<Workspace> workspace =
+        new ThreadLocal<Workspace>() {
+            protected Workspace initialValue() {
+                return new Workspace();
+            }
+        };
+
+    /**
+     * Constructs a new <code>ECGroup</code>.
+     * @param p the encoded field prime <code>p</code>.
+     * @param a the encoded <code>a</code> coefficient.
+     * @param b the encoded <code>b</code> coefficient.
+     * @param gx the encoded <code>x</code> coordinate of the generator.
+     * @param gy the encoded <code>y</code> coordinate of the generator.
+     * @param q the encoded group order <code>q</code>.
+     * @throws IllegalArgumentException if the parameters are out of range
+     * (see {@link #ECGroup(BigInteger, BigInteger, BigInteger, BigInteger,
+     * BigInteger, BigInteger)}).
+     */
+    public ECGroup(final byte[] p, final byte[] a, final byte[] b,
+            final byte[] gx, final byte[] gy, final byte[] q) {
+        this(new BigInteger(1, p), new BigInteger(1, a), new BigInteger(1, b),
+            new BigInteger(1, gx), new BigInteger(1, gy),
+            new BigInteger(1, q));
+    }
+
+    /**
+     * Constructs the group of points of the curve
+     * <code>y^2 = x^3 + ax + b</code> over <code>F<sub>p</sub></code>,
+     * generated by <code>(gx, gy)</code> and of prime order <code>q</code>.
+     * Only the ranges of the values are checked by the constructor; the
+     * primality of <code>p</code> and <code>q</code>, the generator's
+     * membership and the curve's order should be checked once with
+     * {@link #validate()}.
+     * @param p the field prime <code>p</code>, which must be congruent to
+     * <code>3 mod 4</code>.
+     * @param a the <code>a</code> coefficient, which must be equal to
+     * <code>p - 3</code>.
+     * @param b the <code>b</code> coefficient.
+     * @param gx the <code>x</code> coordinate of the generator.
+     * @param gy the <code>y</code> coordinate of the generator.
+     * @param q the group's prime order <code>q</code>.
+     * @throws IllegalArgumentException if <code>p</code> is not congruent
+     * to <code>3 mod 4</code>, if <code>a</code> is not <code>-3</code>, or
+     * if <code>b</code>, <code>gx</code> or <code>gy</code> are not in
+     * <code>[0, p)</code>.
+     */
+    public ECGroup(final BigInteger p, final BigInteger a, final BigInteger b,
+            final BigInteger gx, final BigInteger gy, final BigInteger q) {
+        super(q);
+        // square roots are computed as x^((p + 1) / 4)
+        if (p.compareTo(BigInteger.valueOf(3)) <= 0 || !p.testBit(0)
+                || !p.testBit(1)) {
+            throw new IllegalArgumentException(
+                    "Invalid value for p (must be congruent to 3 mod 4)");
+        }
+        // the addition formulas are specialized for a = -3
+        if (!a.equals(p.subtract(BigInteger.valueOf(3)))) {
+            throw new IllegalArgumentException(
+                    "Invalid value for a (must be -3)");
+        }
+        if (!isFieldElement(p, b) || !isFieldElement(p, gx)
+                || !isFieldElement(p, gy)) {
+            throw new IllegalArgumentException(
+                    "Invalid curve coefficient or generator coordinate");
+        }
+        this.p = p;
+        this.b = b;
+        this.gx = gx;
+        this.gy = gy;
+        this.fieldSize = (p.bitLength() + 7) / 8;
+        this.field = new MontgomeryDomain(p);
+        this.montB = field.toMontgomery(b);
+        this.montZero = new long[field.getLength()];
+        this.montOne = field.getOne();
+        this.windows = (q.bitLength() + WINDOW - 1) / WINDOW;
+    }
+
+    /**
+     * Checks that an integer is in <code>[0, p)</code>.
+     * @param p the field prime.
+     * @param i an integer.
+     * @return <code>true</code> if <code>i</code> is in range.
+     */
+    private static boolean isFieldElement(final BigInteger p,
+            final BigInteger i) {
+        return i.signum() >= 0 && i.compareTo(p) < 0;
+    }
+
+    /**
+     * Returns the field prime <code>p</code> of the curve.
+     * @return the field prime <code>p</code>.
+     */
+    public BigInteger getP() {
+        return p;
+    }
+
+    /**
+     * Returns the <code>a</code> coefficient of the curve.
+     * @return the <code>a</code> coefficient, <code>p - 3</code>.
+     */
+    public BigInteger getA() {
+        return p.subtract(BigInteger.valueOf(3));
+    }
+
+    /**
+     * Returns the <code>b</code> coefficient of the curve.
+     * @return the <code>b</code> coefficient.
+     */
+    public BigInteger getB() {
+        return b;
+    }
+
+    /**
+     * Returns the <code>x</code> coordinate of the group's generator.
+     * @return the generator's <code>x</code> coordinate.
+     */
+    public BigInteger getGx() {
+        return gx;
+    }
+
+    /**
+     * Returns the <code>y</code> coordinate of the group's generator.
+     * @return the generator's <code>y</code> coordinate.
+     */
+    public BigInteger getGy() {
+        return gy;
+    }
+
+    /**
+     * Returns the parameter <code>q</code> of the group as a BigInteger.
+     * @return the parameter <code>q</code> of the group as a BigInteger.
+     */
+    public BigInteger getQ() {
+        return getOrder();
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#getGenerator()
+     */
+    public GroupElement getGenerator() {
+        return new ECPoint(field.toMontgomery(gx), field.toMontgomery(gy),
+            field.getOne());
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#getIdentity()
+     */
+    public GroupElement getIdentity() {
+        return new ECPoint(new long[field.getLength()], field.getOne(),
+            new long[field.getLength()]);
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#getElement(byte[])
+     */
+    public GroupElement getElement(final byte[] data) throws IOException {
+        if (data.length == 1 && data[0] == IDENTITY) {
+            return getIdentity();
+        }
+
+        final BigInteger x;
+        BigInteger y;
+        if (data.length == 1 + fieldSize
+                && (data[0] == COMPRESSED_EVEN || data[0] == COMPRESSED_ODD)) {
+            x = decodeCoordinate(data, 1);
+            y = computeRightHandSide(x);
+            final BigInteger root =
+                y.modPow(p.add(BigInteger.ONE).shiftRight(2), p);
+            if (!root.multiply(root).mod(p).equals(y)) {
+                throw new IOException("Encoded point is not on the curve");
+            }
+            y = root;
+            if (y.testBit(0) != (data[0] == COMPRESSED_ODD)) {
+                if (y.signum() == 0) {
+                    throw new IOException("Invalid encoded point");
+                }
+                y = p.subtract(y);
+            }
+        } else if (data.length == 1 + 2 * fieldSize
+                && data[0] == UNCOMPRESSED) {
+            x = decodeCoordinate(data, 1);
+            y = decodeCoordinate(data, 1 + fieldSize);
+            if (!y.multiply(y).mod(p).equals(computeRightHandSide(x))) {
+                throw new IOException("Encoded point is not on the curve");
+            }
+        } else {
+            throw new IOException("Invalid encoded point");
+        }
+
+        // the curve has prime order, so any point on it is in the group
+        return new ECPoint(field.toMontgomery(x), field.toMontgomery(y),
+            field.getOne());
+    }
+
+    /**
+     * Decodes a field element.
+     * @param data the encoded point.
+     * @param offset the offset of the field element.
+     * @return the field element.
+     * @throws IOException if the value is not smaller than <code>p</code>.
+     */
+    private BigInteger decodeCoordinate(final byte[] data, final int offset)
+            throws IOException {
+        final byte[] bytes = new byte[fieldSize];
+        System.arraycopy(data, offset, bytes, 0, fieldSize);
+        final BigInteger retVal = new BigInteger(1, bytes);
+        if (retVal.compareTo(p) >= 0) {
+            throw new IOException("Invalid encoded coordinate");
+        }
+        return retVal;
+    }
+
+    /**
+     * Computes <code>x^3 - 3x + b mod p</code>.
+     * @param x a field element.
+     * @return the right-hand side of the curve equation.
+     */
+    private BigInteger computeRightHandSide(final BigInteger x) {
+        return x.multiply(x).subtract(BigInteger.valueOf(3)).multiply(x)
+            .add(b).mod(p);
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#getMaxEncodedElementSize()
+     */
+    public int getMaxEncodedElementSize() {
+        return 1 + fieldSize;
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#getElementMemorySize()
+     */
+    long getElementMemorySize() {
+        // three projective coordinates of field.getLength() words each
+        final long array = 16 + 8L * field.getLength();
+        return 3 * array + 32;
+    }
+
+    /**
+     * Computes the product of a series of exponentiations.
+     * <p>
+     * All the bases share the same doublings, and the digits of every
+     * exponent are looked up in constant time, so the exponents may be
+     * secret.
+     * </p>
+     * @see PrimeOrderGroup#multiExponentiate(GroupElement[], ZqElement[])
+     */
+    protected GroupElement multiExponentiate(final GroupElement[] bases,
+            final ZqElement[] exponents) {
+        final int n = exponents.length;
+        final ECPoint[] b = new ECPoint[n];
+        final BigInteger[] e = new BigInteger[n];
+        int count = 0;
+        final Workspace w = workspace.get();
+        final ECPoint retVal = (ECPoint) getIdentity();
+        for (int i = 0; i < n; ++i) {
+            if (!bases[i].getGroup().equals(this)) {
+                throw new IllegalArgumentException(
+                        "base is not in same group");
+            }
+            if (exponents[i] == null) {
+                add(retVal, (ECPoint) bases[i], retVal, w);
+            } else {
+                b[count] = (ECPoint) bases[i];
+                e[count] = exponents[i].toBigInteger();
+                ++count;
+            }
+        }
+        if (count > 0) {
+            final ECPoint product = (ECPoint) getIdentity();
+            scalarMultiply(b, e, count, product, w);
+            add(retVal, product, retVal, w);
+        }
+        return retVal;
+    }
+
+    /**
+     * Computes <code>bases[0]^exponents[0] * ... *
+     * bases[count-1]^exponents[count-1]</code> with a fixed-window
+     * interleaved method whose operations do not depend on the exponents.
+     * @param bases the bases; not modified.
+     * @param exponents the exponents, in <code>[0, q)</code>.
+     * @param count the number of bases and exponents to use.
+     * @param result the point receiving the result.
+     * @param w the workspace.
+     */
+    private void scalarMultiply(final ECPoint[] bases,
+            final BigInteger[] exponents, final int count,
+            final ECPoint result, final Workspace w) {
+        // table[i][d] = bases[i]^d
+        final ECPoint[][] table = new ECPoint[count][TABLE_SIZE];
+        for (int i = 0; i < count; ++i) {
+            table[i][0] = (ECPoint) getIdentity();
+            table[i][1] = bases[i].copy();
+            for (int d = 2; d < TABLE_SIZE; ++d) {
+                table[i][d] = table[i][d - 1].copy();
+                add(table[i][d], bases[i], table[i][d], w);
+            }
+        }
+
+        result.set(montZero, montOne, montZero);
+        for (int window = windows - 1; window >= 0; --window) {
+            for (int j = 0; j < WINDOW; ++j) {
+                twice(result, result, w);
+            }
+            for (int i = 0; i < count; ++i) {
+                final int digit = getDigit(exponents[i], window * WINDOW);
+                select(table[i], digit, w.selected);
+                add(result, w.selected, result, w);
+            }
+        }
+    }
+
+    /**
+     * Returns a window's worth of bits of a scalar.
+     * @param e the scalar.
+     * @param offset the index of the least significant bit.
+     * @return the bits.
+     */
+    private static int getDigit(final BigInteger e, final int offset) {
+        int retVal = 0;
+        for (int i = WINDOW - 1; i >= 0; --i) {
+            retVal = (retVal << 1) | (e.testBit(offset + i) ? 1 : 0);
+        }
+        return retVal;
+    }
+
+    /**
+     * Copies a table entry, reading every entry so that the memory access
+     * pattern does not depend on the index.
+     * @param table the table, made of points of this group.
+     * @param index the index of the entry to copy.
+     * @param result the point receiving the entry.
+     */
+    private void select(final GroupElement[] table, final int index,
+            final ECPoint result) {
+        final int n = field.getLength();
+        for (int d = 0; d < table.length; ++d) {
+            // 1 if d == index, 0 otherwise
+            final long flag = ((long) (d ^ index) - 1) >>> 63;
+            final ECPoint entry = (ECPoint) table[d];
+            MontgomeryDomain.select(entry.x, result.x, flag, n);
+            MontgomeryDomain.select(entry.y, result.y, flag, n);
+            MontgomeryDomain.select(entry.z, result.z, flag, n);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#canSelect()
+     */
+    boolean canSelect() {
+        // the addition formulas are complete and branch-free
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#select(GroupElement[], int)
+     */
+    GroupElement select(final GroupElement[] table, final int index) {
+        final ECPoint retVal = (ECPoint) getIdentity();
+        select(table, index, retVal);
+        return retVal;
+    }
+
+    /**
+     * Computes <code>r = s + t</code> using algorithm 4 of Renes, Costello
+     * and Batina, "Complete addition formulas for prime order elliptic
+     * curves" (complete for all inputs, <code>a = -3</code>). The result may
+     * share storage with either operand.
+     * @param s the first point.
+     * @param t the second point.
+     * @param r the point receiving the sum.
+     * @param w the workspace.
+     */
+    private void add(final ECPoint s, final ECPoint t, final ECPoint r,
+            final Workspace w) {
+        final long[] x1 = s.x, y1 = s.y, z1 = s.z;
+        final long[] x2 = t.x, y2 = t.y, z2 = t.z;
+        final long[] t0 = w.t0, t1 = w.t1, t2 = w.t2, t3 = w.t3, t4 = w.t4;
+        final long[] x3 = w.x3, y3 = w.y3, z3 = w.z3;
+
+        w.mul(x1, x2, t0); w.mul(y1, y2, t1); w.mul(z1, z2, t2);
+        w.add(x1, y1, t3); w.add(x2, y2, t4); w.mul(t3, t4, t3);
+        w.add(t0, t1, t4); w.sub(t3, t4, t3); w.add(y1, z1, t4);
+        w.add(y2, z2, x3); w.mul(t4, x3, t4); w.add(t1, t2, x3);
+        w.sub(t4, x3, t4); w.add(x1, z1, x3); w.add(x2, z2, y3);
+        w.mul(x3, y3, x3); w.add(t0, t2, y3); w.sub(x3, y3, y3);
+        w.mul(montB, t2, z3); w.sub(y3, z3, x3); w.add(x3, x3, z3);
+        w.add(x3, z3, x3); w.sub(t1, x3, z3); w.add(t1, x3, x3);
+        w.mul(montB, y3, y3); w.add(t2, t2, t1); w.add(t1, t2, t2);
+        w.sub(y3, t2, y3); w.sub(y3, t0, y3); w.add(y3, y3, t1);
+        w.add(t1, y3, y3); w.add(t0, t0, t1); w.add(t1, t0, t0);
+        w.sub(t0, t2, t0); w.mul(t4, y3, t1); w.mul(t0, y3, t2);
+        w.mul(x3, z3, y3); w.add(y3, t2, y3); w.mul(x3, t3, x3);
+        w.sub(x3, t1, x3); w.mul(z3, t4, z3); w.mul(t3, t0, t1);
+        w.add(z3, t1, z3);
+
+        r.set(x3, y3, z3);
+    }
+
+    /**
+     * Computes <code>r = s + s</code> using algorithm 6 of Renes, Costello
+     * and Batina (complete for all inputs, <code>a = -3</code>). The result
+     * may share storage with the operand.
+     * @param s the point.
+     * @param r the point receiving the result.
+     * @param w the workspace.
+     */
+    private void twice(final ECPoint s, final ECPoint r, final Workspace w) {
+        final long[] x = s.x, y = s.y, z = s.z;
+        final long[] t0 = w.t0, t1 = w.t1, t2 = w.t2, t3 = w.t3;
+        final long[] x3 = w.x3, y3 = w.y3, z3 = w.z3;
+
+        w.mul(x, x, t0); w.mul(y, y, t1); w.mul(z, z, t2);
+        w.mul(x, y, t3); w.add(t3, t3, t3); w.mul(x, z, z3);
+        w.add(z3, z3, z3); w.mul(montB, t2, y3); w.sub(y3, z3, y3);
+        w.add(y3, y3, x3); w.add(x3, y3, y3); w.sub(t1, y3, x3);
+        w.add(t1, y3, y3); w.mul(x3, y3, y3); w.mul(x3, t3, x3);
+        w.add(t2, t2, t3); w.add(t2, t3, t2); w.mul(montB, z3, z3);
+        w.sub(z3, t2, z3); w.sub(z3, t0, z3); w.add(z3, z3, t3);
+        w.add(z3, t3, z3); w.add(t0, t0, t3); w.add(t3, t0, t0);
+        w.sub(t0, t2, t0); w.mul(t0, z3, t0); w.add(y3, t0, y3);
+        w.mul(y, z, t0); w.add(t0, t0, t0); w.mul(t0, z3, z3);
+        w.sub(x3, z3, x3); w.mul(t0, t1, z3); w.add(z3, z3, z3);
+        w.add(z3, z3, z3);
+
+        r.set(x3, y3, z3);
+    }
+
+    /**
+     * Indicates whether some other object is "equal to" this one.
+     * @param o the reference object with which to compare.
+     * @return <code>true</code> if this object is the same as the
+     * <code>o</code> argument; <code>false</code> otherwise.
+     */
+    public boolean equals(final Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof ECGroup) || !super.equals(o)) {
+            return false;
+        }
+
+        final ECGroup G = (ECGroup) o;
+        return p.equals(G.p) && b.equals(G.b) && gx.equals(G.gx)
+            && gy.equals(G.gy);
+    }
+
+    /**
+     * Returns a hash code value for the object.
+     * @return a hash code value for the object.
+     */
+    public int hashCode() {
+        int retVal = 89;
+        retVal = retVal * 601 + p.hashCode();
+        retVal = retVal * 601 + super.hashCode();
+        retVal = retVal * 601 + b.hashCode();
+        retVal = retVal * 601 + gx.hashCode();
+        retVal = retVal * 601 + gy.hashCode();
+        return retVal;
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.Hashable#addToDigest(com.microsoft.uprove.HashUpdater)
+     */
+    public void addToDigest(final HashUpdater dv) {
+        dv.update(p);
+        dv.update(getA());
+        dv.update(b);
+        dv.update(getGenerator().toByteArray());
+        dv.update(getOrder()); // q
+    }
+
+    /**
+     * Validates that the group is well-formed, i.e. that <code>p</code> is
+     * prime, that the curve is not singular, that the generator is on the
+     * curve and has order <code>q</code>, and that the curve has no other
+     * points (its cofactor is 1).
+     * @throws IllegalStateException if the group is malformed.
+     */
+    protected void doGroupSpecificValidate() throws IllegalStateException {
+        // verify that p is prime
+        if (!p.isProbablePrime(ConfigImpl.getPrimeConfidenceLevel())) {
+            throw new IllegalStateException(
+                    "Invalid value for p (not a prime)");
+        }
+
+        // verify that 4a^3 + 27b^2 != 0, i.e. 27b^2 != 108
+        if (b.multiply(b).multiply(BigInteger.valueOf(27))
+                .subtract(BigInteger.valueOf(108)).mod(p).signum() == 0) {
+            throw new IllegalStateException("Singular curve");
+        }
+
+        // verify that the generator is on the curve and has order q
+        final GroupElement g = getGenerator();
+        if (!g.isValid()) {
+            throw new IllegalStateException(
+                    "Invalid generator (not on the curve)");
+        }
+        if (getIdentity().equals(g)
+                || !getIdentity().equals(
+                    g.exponentiate(getZq().getOne().negate()).multiply(g))) {
+            throw new IllegalStateException(
+                    "Invalid generator (not of order q)");
+        }
+
+        // by Hasse's theorem the curve has at most p + 1 + 2 sqrt(p) points,
+        // and q divides that number; it is q itself if
+        // 2q > p + 1 + 2 sqrt(p), i.e. if (2q - p - 1)^2 > 4p
+        final BigInteger d = getOrder().shiftLeft(1).subtract(p)
+            .subtract(BigInteger.ONE);
+        if (d.signum() <= 0 || d.multiply(d).compareTo(p.shiftLeft(2)) <= 0) {
+            throw new IllegalStateException(
+                    "Invalid value for q (curve cofactor is not 1)");
+        }
+    }
+
+    /**
+     * Temporaries for the point arithmetic, one set per thread.
+     */
+    private final class Workspace {
+        final long[] scratch = new long[field.getLength() + 1];
+        final long[] t0 = new long[field.getLength()];
+        final long[] t1 = new long[field.getLength()];
+        final long[] t2 = new long[field.getLength()];
+        final long[] t3 = new long[field.getLength()];
+        final long[] t4 = new long[field.getLength()];
+        final long[] x3 = new long[field.getLength()];
+        final long[] y3 = new long[field.getLength()];
+        final long[] z3 = new long[field.getLength()];
+        final ECPoint selected = (ECPoint) getIdentity();
+
+        void mul(final long[] a, final long[] b, final long[] r) {
+            field.multiply(a, b, r, scratch);
+        }
+
+        void add(final long[] a, final long[] b, final long[] r) {
+            field.add(a, b, r);
+        }
+
+        void sub(final long[] a, final long[] b, final long[] r) {
+            field.subtract(a, b, r);
+        }
+    }
+
+    /**
+     * Represents a point of an ECGroup.
+     */
+    private final class ECPoint implements GroupElement {
+
+        // projective coordinates (x/z, y/z), in the Montgomery domain;
+        // the point at infinity has z = 0
+        private final long[] x;
+        private final long[] y;
+        private final long[] z;
+
+        /**
+         * Constructs a point from its coordinates, which are owned by the
+         * new object. No validation is performed; the method
+         * {@link GroupElement#isValid()} can be used to verify group
+         * membership.
+         * @param x the projective <code>x</code> coordinate.
+         * @param y the projective <code>y</code> coordinate.
+         * @param z the projective <code>z</code> coordinate.
+         */
+        ECPoint(final long[] x, final long[] y, final long[] z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        /**
+         * Returns a copy of this point.
+         * @return a new point with the same value.
+         */
+        ECPoint copy() {
+            return new ECPoint((long[]) x.clone(), (long[]) y.clone(),
+                (long[]) z.clone());
+        }
+
+        /**
+         * Assigns new coordinates to this point.
+         * @param x the projective <code>x</code> coordinate.
+         * @param y the projective <code>y</code> coordinate.
+         * @param z the projective <code>z</code> coordinate.
+         */
+        void set(final long[] x, final long[] y, final long[] z) {
+            System.arraycopy(x, 0, this.x, 0, x.length);
+            System.arraycopy(y, 0, this.y, 0, y.length);
+            System.arraycopy(z, 0, this.z, 0, z.length);
+        }
+
+        /**
+         * Indicates whether this point is the point at infinity.
+         * @return <code>true</code> if this is the identity element.
+         */
+        private boolean isIdentity() {
+            return Arrays.equals(z, montZero);
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.Element#length()
+         */
+        public int length() {
+            return isIdentity() ? 1 : 1 + fieldSize;
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.GroupElement#toByteArray()
+         */
+        public byte[] toByteArray() {
+            if (isIdentity()) {
+                return new byte[] {IDENTITY};
+            }
+            // encode straight from the limbs, without going through the
+            // affine coordinates as integers
+            final long[] zInverse =
+                field.toMontgomery(field.fromMontgomery(z).modInverse(p));
+            final long[] t = new long[field.getLength()];
+            final byte[] retVal = new byte[1 + fieldSize];
+            // write y first to get its parity, then overwrite it with x
+            field.multiply(y, zInverse, t);
+            field.fromMontgomery(t, retVal, 1, fieldSize);
+            final boolean yOdd = (retVal[fieldSize] & 1) != 0;
+            field.multiply(x, zInverse, t);
+            field.fromMontgomery(t, retVal, 1, fieldSize);
+            retVal[0] = yOdd ? COMPRESSED_ODD : COMPRESSED_EVEN;
+            return retVal;
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.GroupElement#getGroup()
+         */
+        public PrimeOrderGroup getGroup() {
+            return ECGroup.this;
+        }
+
+        /**
+         * Casts an element of this group to a point.
+         * @param val an element.
+         * @return the point.
+         * @throws IllegalArgumentException if <code>val</code> is not in the
+         * same group.
+         */
+        private ECPoint toPoint(final GroupElement val) {
+            if (!val.getGroup().equals(ECGroup.this)) {
+                throw new IllegalArgumentException("b is not in same group");
+            }
+            return (ECPoint) val;
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.GroupElement#multiply(com.microsoft.uprove.GroupElement)
+         */
+        public GroupElement multiply(final GroupElement val) {
+            return copy().multiplyAssign(val);
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.GroupElement#multiplyAssign(com.microsoft.uprove.GroupElement)
+         */
+        public GroupElement multiplyAssign(final GroupElement val) {
+            add(this, toPoint(val), this, workspace.get());
+            return this;
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.GroupElement#exponentiate(com.microsoft.uprove.FieldZq.ZqElement)
+         */
+        public GroupElement exponentiate(final ZqElement val) {
+            return copy().exponentiateAssign(val);
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.GroupElement#exponentiateAssign(com.microsoft.uprove.FieldZq.ZqElement)
+         */
+        public GroupElement exponentiateAssign(final ZqElement val) {
+            scalarMultiply(new ECPoint[] {copy()},
+                new BigInteger[] {val.toBigInteger()}, 1, this,
+                workspace.get());
+            return this;
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.GroupElement#inverse()
+         */
+        public GroupElement inverse() {
+            return copy().inverseAssign();
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.GroupElement#inverseAssign()
+         */
+        public GroupElement inverseAssign() {
+            field.subtract(montZero, y, y);
+            return this;
+        }
+
+        /**
+         * Returns the hexadecimal representation of this point's encoding.
+         * @return the hexadecimal representation of this point.
+         */
+        public String toString() {
+            return new BigInteger(1, toByteArray()).toString(16);
+        }
+
+        /**
+         * Indicates whether some other object is "equal to" this one.
+         * @param o the reference object with which to compare.
+         * @return <code>true</code> if this object is the same as the
+         * <code>o</code> argument; <code>false</code> otherwise.
+         */
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof ECPoint)) {
+                return false;
+            }
+            final ECPoint pt = (ECPoint) o;
+            if (!getGroup().equals(pt.getGroup())) {
+                return false;
+            }
+            // compare (x1 z2, y1 z2) with (x2 z1, y2 z1)
+            final int n = field.getLength();
+            final long[] a = new long[n];
+            final long[] c = new long[n];
+            field.multiply(x, pt.z, a);
+            field.multiply(pt.x, z, c);
+            if (!Arrays.equals(a, c)) {
+                return false;
+            }
+            field.multiply(y, pt.z, a);
+            field.multiply(pt.y, z, c);
+            return Arrays.equals(a, c);
+        }
+
+        /**
+         * Returns a hash code value for the object.
+         * @return a hash code value for the object.
+         */
+        public int hashCode() {
+            return Arrays.hashCode(toByteArray());
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.Hashable#addToDigest(com.microsoft.uprove.HashUpdater)
+         */
+        public void addToDigest(final HashUpdater dv) {
+            dv.update(toByteArray());
+        }
+
+        /* (non-Javadoc)
+         * @see com.microsoft.uprove.GroupElement#isValid()
+         */
+        public boolean isValid() {
+            // y^2 z = x^3 - 3 x z^2 + b z^3, and not (0 : 0 : 0)
+            if (Arrays.equals(y, montZero) && isIdentity()) {
+                return false;
+            }
+            final int n = field.getLength();
+            final long[] zz = new long[n];
+            final long[] lhs = new long[n];
+            final long[] rhs = new long[n];
+            final long[] t = new long[n];
+            field.multiply(z, z, zz);
+            field.multiply(y, y, lhs);
+            field.multiply(lhs, z, lhs);
+            // rhs = x (x^2 - 3 z^2) + b z^3
+            field.multiply(x, x, rhs);
+            field.add(zz, zz, t);
+            field.add(t, zz, t);
+            field.subtract(rhs, t, rhs);
+            field.multiply(rhs, x, rhs);
+            field.multiply(zz, z, t);
+            field.multiply(t, montB, t);
+            field.add(rhs, t, rhs);
+            return Arrays.equals(lhs, rhs);
+        }
+
+    }
+
+}
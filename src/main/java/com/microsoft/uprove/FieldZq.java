@@ -28,6 +28,10 @@ import java.math.BigInteger;
 final class FieldZq {
 
     private final BigInteger q;
+    // big-endian magnitude of q, without a sign byte
+    private final byte[] qMagnitude;
+    // Montgomery arithmetic modulo q, created on first use
+    private MontgomeryDomain montgomery;
 
     /**
      * Constructs the field of integers modulo <code>q</code>, which should
@@ -48,16 +52,22 @@ final class FieldZq {
                     "Invalid value for q (negative or zero)");
         }
         this.q = q;
+        final byte[] encoded = q.toByteArray();
+        final int size = (q.bitLength() + 7) / 8;
+        this.qMagnitude = new byte[size];
+        System.arraycopy(encoded, encoded.length - size, qMagnitude, 0, size);
     }
 
     /**
-     * Generates an instance of the field Zq.
+     * Returns an instance of the field Zq. Equal values of <code>q</code>
+     * give the same instance, as long as it is in use.
      * @param q number specifying the size of the field.
-     * @return a new field instance.
+     * @return a field instance.
      * @throws NullPointerException if <code>q</code> is <code>null</code>.
      */
     static FieldZq getInstance(final BigInteger q) {
-        return new FieldZq(q);
+        final FieldZq Zq = GroupRegistry.getField(q);
+        return Zq != null ? Zq : GroupRegistry.intern(new FieldZq(q));
     }
 
     /**
@@ -69,6 +79,19 @@ final class FieldZq {
         return q;
     }
 
+    /**
+     * Returns the Montgomery arithmetic modulo <code>q</code>, used by
+     * {@link ZqAccumulator}.
+     * @return the Montgomery domain of <code>q</code>.
+     * @throws IllegalArgumentException if <code>q</code> is even.
+     */
+    synchronized MontgomeryDomain getMontgomeryDomain() {
+        if (montgomery == null) {
+            montgomery = new MontgomeryDomain(q);
+        }
+        return montgomery;
+    }
+
     /**
      * Returns an element of the field of value <code>0</code>.
      * @return an element of the field of value <code>0</code>. Ownership of
@@ -275,6 +298,12 @@ final class FieldZq {
     /**
      * Returns an array of random element in the field, with uniform
      * distribution.
+     * <p>
+     * The candidate values are drawn from the random source in one buffer,
+     * and are rejected as in {@link #getRandomElement(boolean)} before any
+     * <code>BigInteger</code> is created for them; more buffers are drawn
+     * for the rejected values.
+     * </p>
      * @param n number of elements to return, must be greater than zero.
      * @param nonZero <code>true</code> to indicate that the elements must
      * not be equal to zero.
@@ -286,13 +315,75 @@ final class FieldZq {
             throw new IllegalArgumentException(
                     "n must be positive and greater than zero");
         }
+        final int size = qMagnitude.length;
+        // clears the bits above q.bitLength(), like
+        // BigInteger(numBits, Random) does
+        final int topMask = 0xff >>> (size * 8 - q.bitLength());
+        final byte[] candidate = new byte[size];
         ZqElement[] values = new ZqElement[n];
-        for (int i = 0; i < n; i++) {
-            values[i] = getRandomElement(nonZero);
+        int count = 0;
+        while (count < n) {
+            final byte[] buffer =
+                RandomSourceImpl.getRandomBytes((n - count) * size);
+            for (int offset = 0; offset < buffer.length; offset += size) {
+                buffer[offset] &= topMask;
+                if (isInField(buffer, offset, nonZero)) {
+                    System.arraycopy(buffer, offset, candidate, 0, size);
+                    values[count++] =
+                        new ZqElement(new BigInteger(1, candidate));
+                }
+            }
+            // clear the buffers in case this is sensitive data
+            ByteArrays.erase(buffer);
         }
+        ByteArrays.erase(candidate);
         return values;
     }
 
+    /**
+     * Tests whether a candidate value lies in the field.
+     * @param buffer the buffer holding the candidate.
+     * @param offset the offset of the candidate's big-endian magnitude, of
+     * the same length as <code>q</code>'s.
+     * @param nonZero <code>true</code> to reject zero.
+     * @return <code>true</code> if the candidate is smaller than
+     * <code>q</code> and, if <code>nonZero</code> is <code>true</code>, not
+     * zero.
+     */
+    private boolean isInField(final byte[] buffer, final int offset,
+            final boolean nonZero) {
+        if (nonZero && isZero(buffer, offset, qMagnitude.length)) {
+            return false;
+        }
+        // compare the magnitudes from the most significant byte
+        for (int i = 0; i < qMagnitude.length; i++) {
+            final int b = buffer[offset + i] & 0xff;
+            final int qb = qMagnitude[i] & 0xff;
+            if (b != qb) {
+                return b < qb;
+            }
+        }
+        // equal to q
+        return false;
+    }
+
+    /**
+     * Tests whether a range of a buffer only holds zeros.
+     * @param buffer the buffer.
+     * @param offset the start of the range.
+     * @param length the length of the range.
+     * @return <code>true</code> if all bytes of the range are zero.
+     */
+    private static boolean isZero(final byte[] buffer, final int offset,
+            final int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (buffer[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Indicates whether some other object is "equal to" this one.
      * @param obj the reference object with which to compare.
@@ -0,0 +1,193 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * Precomputed powers of a fixed base, used to exponentiate the base without
+ * any squaring.
+ * <p>
+ * The exponent is split into <code>w</code>-bit digits
+ * <code>d_0, ..., d_(k-1)</code>, and the table holds
+ * <code>base^(d * 2^(w*j))</code> for every digit value <code>d</code> and
+ * position <code>j</code> (the fixed-window method of Brickell, Gordon,
+ * McCurley and Wilson). An exponentiation then costs <code>k</code>
+ * multiplications, at the price of <code>k * (2^w - 1) + 1</code> stored
+ * elements.
+ * </p>
+ * <p>
+ * The exponents are often secret, so the work done does not depend on
+ * them: every position is multiplied in, including those whose digit is
+ * zero (whose entry is the identity), and every entry of a position is
+ * read to select the one for its digit (see
+ * {@link PrimeOrderGroup#select(GroupElement[], int)}). Tables can
+ * therefore only be built for groups that support such a selection.
+ * </p>
+ * <p>
+ * Instances are immutable once constructed and may be shared between
+ * threads.
+ * </p>
+ */
+final class FixedBaseTable {
+
+    /**
+     * The largest window size that will be used. Every lookup reads all
+     * <code>2^w</code> entries of a position, so beyond this size the
+     * lookups cost more than the multiplications they save.
+     */
+    static final int MAX_WINDOW = 8;
+
+    private final PrimeOrderGroup group;
+    private final int window;
+
+    // table[j][d] = base^(d * 2^(window * j))
+    private final GroupElement[][] table;
+
+    /**
+     * Constructs a table for a base.
+     * @param base the fixed base. The caller's ownership of the referent is
+     * preserved.
+     * @param window the number of exponent bits handled by each
+     * multiplication, between <code>1</code> and {@link #MAX_WINDOW}.
+     * @throws IllegalArgumentException if the window is out of range, or
+     * if the group of the base cannot select table entries in constant
+     * time.
+     */
+    FixedBaseTable(final GroupElement base, final int window) {
+        if (window < 1 || window > MAX_WINDOW) {
+            throw new IllegalArgumentException("invalid window: " + window);
+        }
+        this.group = base.getGroup();
+        if (!group.canSelect()) {
+            throw new IllegalArgumentException(
+                "group does not support constant-time table lookups");
+        }
+        this.window = window;
+        final int positions = getPositions(group, window);
+        final int digits = 1 << window;
+        table = new GroupElement[positions][digits];
+        // the entries are only read, so the positions can share the identity
+        final GroupElement identity = group.getIdentity();
+        GroupElement power = identity.multiply(base);
+        for (int j = 0; j < positions; ++j) {
+            table[j][0] = identity;
+            table[j][1] = power;
+            for (int d = 2; d < digits; ++d) {
+                table[j][d] = table[j][d - 1].multiply(power);
+            }
+            // base^(2^(window * (j + 1)))
+            power = table[j][digits - 1].multiply(power);
+        }
+    }
+
+    /**
+     * Returns the number of digit positions needed to cover exponents of a
+     * group.
+     * @param group a group.
+     * @param window the window size.
+     * @return the number of digit positions.
+     */
+    private static int getPositions(final PrimeOrderGroup group,
+            final int window) {
+        return (group.getOrder().bitLength() + window - 1) / window;
+    }
+
+    /**
+     * Returns the number of elements stored by a table.
+     * @param group the group of the base.
+     * @param window the window size.
+     * @return the number of elements stored by the table.
+     */
+    static long getSize(final PrimeOrderGroup group, final int window) {
+        return (long) getPositions(group, window) * ((1 << window) - 1) + 1;
+    }
+
+    /**
+     * Returns the largest window size whose table fits in a given number of
+     * bytes.
+     * @param group the group of the base.
+     * @param budget the number of bytes available.
+     * @return a window size, or <code>0</code> if no table fits or the group
+     * does not support tables.
+     */
+    static int getWindow(final PrimeOrderGroup group, final long budget) {
+        if (!group.canSelect()) {
+            return 0;
+        }
+        final long elementSize = group.getElementMemorySize();
+        int retVal = 0;
+        for (int w = 1; w <= MAX_WINDOW; ++w) {
+            if (getSize(group, w) * elementSize <= budget) {
+                retVal = w;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the table.
+     * @return the approximate size of the table, in bytes.
+     */
+    long getMemorySize() {
+        return getSize(group, window) * group.getElementMemorySize();
+    }
+
+    /**
+     * Returns the group to which the base belongs.
+     * @return the base's group.
+     */
+    PrimeOrderGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * Returns <code>base^e</code>.
+     * @param e the exponent.
+     * @return <code>base^e</code>. Ownership of the referent is given to the
+     * caller.
+     */
+    GroupElement exponentiate(final ZqElement e) {
+        return multiplyPower(null, e);
+    }
+
+    /**
+     * Multiplies <code>base^e</code> into an accumulator. The sequence of
+     * operations and the table entries read do not depend on
+     * <code>e</code>.
+     * @param acc an accumulator owned by the caller, updated in place, or
+     * <code>null</code> to represent the identity.
+     * @param e the exponent.
+     * @return <code>acc * base^e</code>; <code>acc</code> itself unless it
+     * is <code>null</code>, in which case ownership of the referent is given
+     * to the caller.
+     */
+    GroupElement multiplyPower(final GroupElement acc, final ZqElement e) {
+        final BigInteger exp = e.toBigInteger();
+        final GroupElement retVal = acc != null ? acc : group.getIdentity();
+        for (int j = 0, offset = 0; j < table.length; ++j, offset += window) {
+            int digit = 0;
+            for (int i = window - 1; i >= 0; --i) {
+                digit = (digit << 1) | (exp.testBit(offset + i) ? 1 : 0);
+            }
+            retVal.multiplyAssign(group.select(table[j], digit));
+        }
+        return retVal;
+    }
+
+}
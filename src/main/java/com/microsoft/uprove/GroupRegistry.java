@@ -0,0 +1,104 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.lang.ref.WeakReference;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * Registry of canonical {@link Subgroup} and {@link FieldZq} instances.
+ * <p>
+ * Group and field compatibility checks, done on every multiplication,
+ * compare the instances first and only fall back to comparing their
+ * parameters, which for a subgroup means several large integers, when the
+ * instances differ. Interning equal groups and fields to a single instance
+ * keeps these checks to a reference comparison even when the same
+ * parameters are decoded several times. Instances that are no longer used
+ * elsewhere are dropped from the registry.
+ * </p>
+ */
+final class GroupRegistry {
+
+    // canonical groups, keyed by themselves; guarded by the class lock
+    private static final Map<Object, WeakReference<Object>> instances =
+        new WeakHashMap<Object, WeakReference<Object>>();
+
+    // canonical fields, keyed by their order, so that they can be found
+    // before one is constructed; guarded by the class lock
+    private static final Map<BigInteger, WeakReference<FieldZq>> fields =
+        new WeakHashMap<BigInteger, WeakReference<FieldZq>>();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private GroupRegistry() {
+        super();
+    }
+
+    /**
+     * Returns the canonical field of a given order, if there is one.
+     * @param q the order of the field.
+     * @return the registered field of order <code>q</code>, or
+     * <code>null</code> if there is none.
+     */
+    static synchronized FieldZq getField(final BigInteger q) {
+        final WeakReference<FieldZq> ref = fields.get(q);
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Returns the canonical instance of a field.
+     * @param Zq a field.
+     * @return the registered field equal to <code>Zq</code>, which becomes
+     * the canonical instance if there is none.
+     */
+    static synchronized FieldZq intern(final FieldZq Zq) {
+        final FieldZq canonical = getField(Zq.getQ());
+        if (canonical != null) {
+            return canonical;
+        }
+        fields.put(Zq.getQ(), new WeakReference<FieldZq>(Zq));
+        return Zq;
+    }
+
+    /**
+     * Returns the canonical instance of a group. Only {@link Subgroup}
+     * instances are interned, since other groups may not compare their
+     * full description in {@link PrimeOrderGroup#equals(Object)}.
+     * @param group a group.
+     * @return the registered group equal to <code>group</code>, which
+     * becomes the canonical instance if there is none, or
+     * <code>group</code> if it is not a <code>Subgroup</code>.
+     */
+    static PrimeOrderGroup intern(final PrimeOrderGroup group) {
+        if (!(group instanceof Subgroup)) {
+            return group;
+        }
+        return (PrimeOrderGroup) internObject(group);
+    }
+
+    private static synchronized Object internObject(final Object o) {
+        final WeakReference<Object> ref = instances.get(o);
+        final Object canonical = ref == null ? null : ref.get();
+        if (canonical != null) {
+            return canonical;
+        }
+        instances.put(o, new WeakReference<Object>(o));
+        return o;
+    }
+}
@@ -11,6 +11,8 @@
 
 package com.microsoft.uprove;
 
+import java.nio.ByteBuffer;
+
 import com.microsoft.uprove.HashUpdater;
 import com.microsoft.uprove.FieldZq.ZqElement;
 
@@ -58,6 +60,25 @@ interface HashFunction extends HashUpdater {
      */
     FieldZq getFieldZq();
 
+    /**
+     * Adds bytes to the hash function state as they are, without the length
+     * prefix added by {@link #update(byte[], int, int)}. This is used to
+     * stream a byte array whose length has been added with
+     * {@link #update(int)}.
+     * @param data the bytes.
+     * @param offset the offset of the first byte.
+     * @param len the number of bytes.
+     */
+    void updateRaw(byte[] data, int offset, int len);
+
+    /**
+     * Adds the remaining bytes of a buffer to the hash function state as
+     * they are, without a length prefix.
+     * @param data the buffer, whose position is advanced to its limit.
+     * @see #updateRaw(byte[], int, int)
+     */
+    void updateRaw(ByteBuffer data);
+
     /**
      * Returns a clone if the implementation is cloneable.
      * @return a clone if the implementation is cloneable.
@@ -11,8 +11,8 @@
 
 package com.microsoft.uprove;
 
-import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -32,8 +32,8 @@ final class HashFunctionImpl implements HashFunction {
 	
     private final MessageDigest md;
     private final FieldZq Zq;
-    private final MDOutputStream mdSink;
-    private final HashFormatter formatter;
+    // reused for the big-endian encoding of integers
+    private final byte[] intBuffer = new byte[4];
 
     /**
      * Constructs a new instance of this implementation.
@@ -47,12 +47,6 @@ final class HashFunctionImpl implements HashFunction {
     	this.md = md;
         this.Zq = Zq;
         md.reset();
-        this.mdSink = new MDOutputStream(md);
-        try {
-            this.formatter = new HashFormatter(mdSink);
-        } catch (IOException e) {
-            throw wrapIOException(e);    // impossible
-        }
     }
 
     /**
@@ -64,27 +58,6 @@ final class HashFunctionImpl implements HashFunction {
             throws CloneNotSupportedException {
         this.md = (MessageDigest) hfi.md.clone();
         this.Zq = hfi.Zq;
-        this.mdSink = new MDOutputStream(this.md);
-        this.formatter = new HashFormatter(hfi.formatter, mdSink);
-    }
-
-    /**
-     * Wraps an IOException in an AssertionError.
-     * @param e an IOException.
-     * @return an AssertionError holding <code>e</code>.
-     */
-    private static AssertionError wrapIOException(final IOException e) {
-        AssertionError ae = new AssertionError("Impossible exception");
-        ae.initCause(e);
-        return ae;
-    }
-
-    private void doReset() {
-        try {
-            formatter.reset(mdSink);
-        } catch (IOException e) {
-            throw wrapIOException(e);    // impossible
-        }
     }
 
     /* (non-Javadoc)
@@ -92,16 +65,13 @@ final class HashFunctionImpl implements HashFunction {
      */
     public void reset() {
         md.reset();
-        doReset();
     }
 
     /* (non-Javadoc)
      * @see com.microsoft.uprove.crypto.HashFunction#getByteDigest()
      */
     public byte[] getByteDigest() {
-        byte[] retVal = md.digest();
-        doReset();
-        return retVal;
+        return md.digest();
     }
 
     /* (non-Javadoc)
@@ -116,9 +86,7 @@ final class HashFunctionImpl implements HashFunction {
      */
     public ZqElement getZqDigest() {
         // Zq constructor will do the mod q
-        ZqElement retVal = Zq.determineElement(new BigInteger(1, md.digest()));
-        doReset();
-        return retVal;
+        return Zq.determineElement(new BigInteger(1, md.digest()));
     }
 
     /* (non-Javadoc)
@@ -132,46 +100,57 @@ final class HashFunctionImpl implements HashFunction {
      * @see com.microsoft.uprove.crypto.HashUpdater#update(byte)
      */
     public void update(final byte b) {
-        try {
-            formatter.encode(b);
-        } catch (IOException e) {
-            throw wrapIOException(e);    // impossible
-        }
+        md.update(b);
     }
 
     /* (non-Javadoc)
      * @see com.microsoft.uprove.crypto.HashUpdater#update(int)
      */
     public void update(final int i) {
-        try {
-            formatter.encode(i);
-        } catch (IOException e) {
-            throw wrapIOException(e);    // impossible
-        }
+        intBuffer[0] = (byte) (i >> 24);
+        intBuffer[1] = (byte) (i >> 16);
+        intBuffer[2] = (byte) (i >>  8);
+        intBuffer[3] = (byte)  i;
+        md.update(intBuffer, 0, 4);
     }
 
     /* (non-Javadoc)
      * @see com.microsoft.uprove.crypto.HashUpdater#update(byte[])
      */
     public void update(final byte[] opaque) {
-        try {
-            formatter.encode(opaque);
-        } catch (IOException e) {
-            throw wrapIOException(e);    // impossible
-        }
+        update(opaque, 0, opaque != null ? opaque.length : 0);
     }
 
     /* (non-Javadoc)
      * @see com.microsoft.uprove.crypto.HashUpdater#update(byte[], int, int)
      */
     public void update(final byte[] opaque, final int offset, final int len) {
-        try {
-            formatter.encode(opaque, offset, len);
-        } catch (IOException e) {
-            throw wrapIOException(e);    // impossible
+        /*
+         * Sequences are encoded as an unsigned long value, followed by the
+         * elements of the sequence. The initial unsigned long contains the
+         * number of elements in the sequence. The elements of the sequence
+         * are encoded as specified for their type.
+         */
+        update(len);
+        if (len != 0) {
+            md.update(opaque, offset, len);
         }
     }
 
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.HashFunction#updateRaw(byte[], int, int)
+     */
+    public void updateRaw(final byte[] data, final int offset, final int len) {
+        md.update(data, offset, len);
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.HashFunction#updateRaw(java.nio.ByteBuffer)
+     */
+    public void updateRaw(final ByteBuffer data) {
+        md.update(data);
+    }
+
     /* (non-Javadoc)
      * @see com.microsoft.uprove.crypto.HashUpdater#update(BigInteger)
      */
@@ -179,10 +158,10 @@ final class HashFunctionImpl implements HashFunction {
     	if (i.signum() < 0) {
     		throw new IllegalArgumentException("i must be positive or zero");
     	}
-    	byte[] bytes = i.toByteArray();
-    	int index = (bytes[0] == (byte)0) ? 1 : 0;
-    	
-    	update(bytes, index, bytes.length - index); // todo: optimize length computation!!!
+    	// hash the magnitude, skipping the sign byte if there is one
+    	final byte[] bytes = i.toByteArray();
+    	final int len = (i.bitLength() + 7) / 8;
+    	update(bytes, bytes.length - len, len);
     }
     
     /* (non-Javadoc)
@@ -0,0 +1,142 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * A pool of {@link HashFunction} instances for one hash algorithm and
+ * field Zq.
+ * <p>
+ * A presentation or issuance computes several hashes, each of which used to
+ * require a fresh <code>HashFunction</code> and its
+ * <code>MessageDigest</code>. Instances taken from the pool with
+ * {@link #take()} and handed back with {@link #release(HashFunction)} once
+ * their digest has been obtained are reused by later computations, possibly
+ * on other threads. Instances that are not handed back, for instance because
+ * the computation failed, are simply not reused. New instances are cloned
+ * from a prototype when the underlying <code>MessageDigest</code> supports
+ * it. All methods are thread-safe.
+ * </p>
+ */
+final class HashFunctionPool {
+
+    /**
+     * Maximum number of idle instances kept by a pool.
+     */
+    static final int MAX_IDLE = 16;
+
+    private final String algorithm;
+    private final FieldZq Zq;
+    // null if instances can't be cloned
+    private final HashFunction prototype;
+
+    // idle instances, used as a stack; guarded by this
+    private final HashFunction[] idle = new HashFunction[MAX_IDLE];
+    private int size;
+
+    /**
+     * Constructs an empty pool.
+     * @param algorithm the hash algorithm name.
+     * @param Zq the field in which <code>Zq</code> digests are to be made.
+     */
+    HashFunctionPool(final String algorithm, final FieldZq Zq) {
+        this.algorithm = algorithm;
+        this.Zq = Zq;
+
+        // see if we can use the chosen algorithm and if we can clone a
+        // prototype rather than creating a new instance each time around
+        HashFunction hf = null;
+        try {
+            hf = HashFunctionImpl.getInstance(algorithm, Zq);
+            hf.clone();
+        } catch (CloneNotSupportedException cnse) {
+            // oh well, can't use a prototype
+            hf = null;
+        } catch (NoSuchAlgorithmException e) {
+            // defer notifying the user until they try to get an instance
+        } catch (NoSuchProviderException e) {
+            // defer notifying the user until they try to get an instance
+        }
+        this.prototype = hf;
+    }
+
+    /**
+     * Returns a hash function in its initial state. The caller should hand
+     * it back with {@link #release(HashFunction)} once done with it.
+     * @return a hash function.
+     * @throws IllegalStateException if the hash function can't be
+     * initialized.
+     */
+    HashFunction take() {
+        synchronized (this) {
+            if (size > 0) {
+                final HashFunction H = idle[--size];
+                idle[size] = null;
+                return H;
+            }
+        }
+
+        // clone the prototype if possible
+        if (prototype != null) {
+            try {
+                return (HashFunction) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                AssertionError ae = new AssertionError("Impossible exception");
+                ae.initCause(e);
+                throw ae;
+            }
+        }
+
+        // return a new instance
+        IllegalStateException ise = null;
+        try {
+            return HashFunctionImpl.getInstance(algorithm, Zq);
+        } catch (NoSuchAlgorithmException e) {
+            ise = new IllegalStateException(
+                    "Unable to initialize hash function");
+            ise.initCause(e);
+        } catch (NoSuchProviderException e) {
+            ise = new IllegalStateException(
+                    "Unable to initialize hash function");
+            ise.initCause(e);
+        }
+        throw ise;
+    }
+
+    /**
+     * Hands back a hash function obtained from {@link #take()}. The caller
+     * must not use it afterwards.
+     * @param H the hash function.
+     */
+    void release(final HashFunction H) {
+        H.reset();
+        synchronized (this) {
+            if (size < MAX_IDLE) {
+                idle[size++] = H;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of idle instances held by the pool.
+     * @return the number of idle instances.
+     */
+    synchronized int getIdleCount() {
+        return size;
+    }
+}
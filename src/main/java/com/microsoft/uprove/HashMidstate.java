@@ -0,0 +1,72 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * The state of a {@link HashFunction} after absorbing a fixed prefix.
+ * <p>
+ * Some protocol hashes start with the same values every time they are
+ * computed, e.g. <code>0x01 || P</code> for <code>x_t</code>, or the token
+ * identifier for the challenge of a prepared token. Capturing the hash
+ * state after the prefix lets later computations resume from it and only
+ * hash their variable suffix. Resuming does not modify the captured state,
+ * so a midstate can be used by several threads at once.
+ * </p>
+ */
+final class HashMidstate {
+
+    private final HashFunction prefix;
+
+    /**
+     * Private constructor; use {@link #capture(HashFunction)}.
+     * @param prefix a cloneable hash function.
+     */
+    private HashMidstate(final HashFunction prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * Captures the state of a hash function. On success, the hash function
+     * is owned by the midstate and must no longer be used by the caller.
+     * @param H a hash function that has absorbed the prefix.
+     * @return the midstate, or <code>null</code> if the hash function can't
+     * be cloned, in which case the caller keeps it.
+     */
+    static HashMidstate capture(final HashFunction H) {
+        try {
+            H.clone();
+        } catch (CloneNotSupportedException cnse) {
+            return null;
+        }
+        return new HashMidstate(H);
+    }
+
+    /**
+     * Returns a new hash function in the captured state. It can be handed
+     * to {@link IssuerParametersInternal#releaseHashFunction(HashFunction)}
+     * once its digest has been obtained.
+     * @return a hash function that has absorbed the prefix.
+     */
+    HashFunction resume() {
+        try {
+            return (HashFunction) prefix.clone();
+        } catch (CloneNotSupportedException e) {
+            AssertionError ae = new AssertionError("Impossible exception");
+            ae.initCause(e);
+            throw ae;
+        }
+    }
+}
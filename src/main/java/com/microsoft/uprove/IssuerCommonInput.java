@@ -17,12 +17,21 @@ import com.microsoft.uprove.FieldZq.ZqElement;
  * Common Issuer input for the issuance protocol.
  */
 class IssuerCommonInput {
+	private IssuerParametersInternal issuerParameters;
 	private GroupElement gamma;
 	private ZqElement y0;
 
 	public IssuerCommonInput() {
 	}
 
+	public IssuerParametersInternal getIssuerParameters() {
+		return issuerParameters;
+	}
+
+	public void setIssuerParameters(IssuerParametersInternal issuerParameters) {
+		this.issuerParameters = issuerParameters;
+	}
+
 	public GroupElement getGamma() {
 		return gamma;
 	}
@@ -12,6 +12,7 @@
 package com.microsoft.uprove;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import com.microsoft.uprove.FieldZq.ZqElement;
 
@@ -31,20 +32,28 @@ class IssuerFactory {
      * Generates a new {@link Issuer} instance.
      * @param numberOfTokens the number of tokens to issue.
      * @param input the 
+     * @param executor the executor running the per-token computations, or
+     * <code>null</code> to run them on the calling thread.
+     * @param pool the pool of precomputed values, or <code>null</code>.
      * @return
      */
     static Issuer generate(
             final int numberOfTokens,
-            final IssuerCommonInput input) {
+            final IssuerCommonInput input,
+            final Executor executor,
+            final IssuerPrecomputationPool pool) {
         if (numberOfTokens <= 0) {
             throw new IllegalArgumentException("numberOfTokens must be > 0");
         }
         if (input == null) {
             throw new NullPointerException("input must not be null");
         }
+        if (pool != null && !pool.getGroup().equals(input.getIssuerParameters().getGroup())) {
+            throw new IllegalArgumentException("precomputation pool belongs to another group");
+        }
 
         return new IssuerImpl(numberOfTokens,
-        		(IssuerCommonInput) input);
+        		(IssuerCommonInput) input, executor, pool);
     }
 
     static IssuerCommonInput computeInput(
@@ -58,8 +67,8 @@ class IssuerFactory {
 
         
         // compute gamma
-    	ZqElement[] x = ProtocolHelper.computeXArray(ip, parameters.getTokenAttributes(), parameters.getTokenInformation());
-    	GroupElement gamma = ProtocolHelper.computeProduct(ip.getPublicKey(), x); 
+    	ZqElement[] x = ProtocolHelper.computeXArray(ip, parameters.getTokenAttributes(), parameters.getTokenAttributeSources(), parameters.getTokenInformation());
+    	GroupElement gamma = ProtocolHelper.computeProduct(ip, ip.getPublicKey(), x); 
     	if (parameters.getDevicePublicKey() != null) {
     		if (!ip.supportsDevice()) {
     			throw new IllegalArgumentException("Issuer parameters do not support Device-protection");
@@ -69,6 +78,7 @@ class IssuerFactory {
     	input.setGamma(gamma);
         
         // y0
+    	input.setIssuerParameters(ip);
     	input.setY0(ip.getGroup().getZq().getPositiveElement(parameters.getIssuerKeyAndParameters().getPrivateKey()));
         
         return input;
@@ -12,6 +12,8 @@
 package com.microsoft.uprove;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+
 import com.microsoft.uprove.FieldZq.ZqElement;
 
 class IssuerImpl implements Issuer {
@@ -34,14 +36,18 @@ class IssuerImpl implements Issuer {
 	private GroupElement[] sigmaA;
 	private GroupElement[] sigmaB;
 	private PrimeOrderGroup Gq;
+	private Executor executor;
+	private IssuerPrecomputationPool pool;
 	private State state;
 	
-	public IssuerImpl(int numberOfTokens, IssuerCommonInput input) {
+	public IssuerImpl(int numberOfTokens, IssuerCommonInput input, Executor executor, IssuerPrecomputationPool pool) {
         if (numberOfTokens <= 0) {
             throw new IllegalArgumentException("numberOfTokens must be > 0");
         }
         this.numberOfTokens = numberOfTokens;
         this.input = input;
+        this.executor = executor;
+        this.pool = pool;
         Gq = input.getGamma().getGroup();
         
         // set the state
@@ -70,17 +76,29 @@ class IssuerImpl implements Issuer {
         checkState(State.INIT);
 
 		FieldZq Zq = Gq.getZq();
+		sigmaA = new GroupElement[numberOfTokens];
+		sigmaB = new GroupElement[numberOfTokens];
+		// pairs taken from the pool come with their sigmaA value
+		final int pooled;
 		if (preGenW == null) {
-			w = Zq.getRandomElements(numberOfTokens, false);
+			w = new ZqElement[numberOfTokens];
+			pooled = pool == null ? 0 : pool.take(w, sigmaA, numberOfTokens);
+			for (int i=pooled; i<numberOfTokens; i++) {
+				w[i] = Zq.getRandomElement(false);
+			}
 		} else {
 			w = ProtocolHelper.getZqElementArray(Zq, preGenW);
+			pooled = 0;
 		}
-		sigmaA = new GroupElement[numberOfTokens];
-		sigmaB = new GroupElement[numberOfTokens];
-		for (int i=0; i<numberOfTokens; i++) {
-			sigmaA[i] = Gq.getGenerator().exponentiate(w[i]); 
-			sigmaB[i] = input.getGamma().exponentiate(w[i]);
-		}
+		final IssuerParametersInternal ip = input.getIssuerParameters();
+		ParallelLoop.run(executor, numberOfTokens, new ParallelLoop.Body() {
+			public void run(int i) {
+				if (i >= pooled) {
+					sigmaA[i] = ProtocolHelper.exponentiate(ip, ip.getGenerator(), w[i]); 
+				}
+				sigmaB[i] = input.getGamma().exponentiate(w[i]);
+			}
+		});
 
 		// advance the state
         state = State.COMPUTED;
@@ -117,9 +135,14 @@ class IssuerImpl implements Issuer {
         
 		ZqElement[] sigmaC = ProtocolHelper.getZqElementArray(Gq.getZq(), message2);
         byte[][] sigmaR = new byte[numberOfTokens][];
+		// sigmaR = sigmaC * y0 + w
+		ZqAccumulator acc = new ZqAccumulator(Gq.getZq());
+		ZqAccumulator y0 = new ZqAccumulator(Gq.getZq()).set(input.getY0());
 		for (int i=0; i<numberOfTokens; i++) {
-			sigmaR[i] = sigmaC[i].multiply(input.getY0()).add(w[i]).toByteArray();
+			sigmaR[i] = acc.set(sigmaC[i]).multiply(y0).add(w[i]).toByteArray();
 		}
+		acc.clear();
+		y0.clear();
 		return sigmaR;
 	}
 
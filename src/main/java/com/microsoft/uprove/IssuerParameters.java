@@ -13,6 +13,7 @@ package com.microsoft.uprove;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 /**
  * Specifies a issuer parameters.
@@ -233,4 +234,22 @@ public final class IssuerParameters {
 	public void validate() throws IllegalStateException, IOException {
 		IssuerParametersInternal.generate(this).validate();
 	}
+
+	/**
+	 * Validates the consistency of the Issuer parameters's elements, as
+	 * {@link #validate()} does, spreading the work over the threads of an
+	 * <code>Executor</code>. The primality tests of the group parameters and
+	 * the membership test of each public key element are independent steps,
+	 * which lets parameters with many attributes validate faster on a
+	 * multi-core machine.
+	 * @param executor the executor on which to run the checks, or
+	 * <code>null</code> to run them all on the calling thread. The calling
+	 * thread takes part in the work in any case.
+	 * @param listener notified as each step completes, or <code>null</code>.
+	 * @throws IllegalStateException if the Issuer parameters are mathematically invalid.
+	 * @throws IOException if the Issuer parameters are malformed.
+	 */
+	public void validate(Executor executor, ProgressListener listener) throws IllegalStateException, IOException {
+		IssuerParametersInternal.generate(this).validate(executor, listener);
+	}
 }
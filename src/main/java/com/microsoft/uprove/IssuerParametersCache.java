@@ -0,0 +1,321 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * Least-recently-used cache of decoded Issuer parameters.
+ * <p>
+ * Decoding Issuer parameters turns every public key and issuance value into
+ * a group element, and the decoded object accumulates the Issuer parameters
+ * digest, the hash function prototype and any fixed-base tables. Keeping it
+ * around lets every protocol run after the first skip that work.
+ * </p>
+ * <p>
+ * Entries are keyed by the parameters UID and the complete contents of the
+ * Issuer parameters, so two parameter sets with the same UID but different
+ * contents never share an entry. The cache holds at most
+ * {@link ConfigImpl#getIssuerParametersCacheSize()} entries, each of which
+ * expires {@link ConfigImpl#getIssuerParametersCacheTTL()} milliseconds
+ * after it was created. Its statistics are published through
+ * {@link Config}. All methods are thread-safe.
+ * </p>
+ */
+final class IssuerParametersCache {
+
+    // cached entries, in access order
+    private static final LinkedHashMap<Key, Entry> entries =
+        new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    // metrics; updated without the class lock so that the disabled cache
+    // never takes it
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private IssuerParametersCache() {
+        super();
+    }
+
+    /**
+     * Returns the decoded form of a set of Issuer parameters, decoding and
+     * caching it if necessary.
+     * @param ip the Issuer parameters.
+     * @return the decoded Issuer parameters. The returned object may be
+     * shared with other callers and must not be modified.
+     * @throws IOException if the Issuer parameters are malformed.
+     */
+    static IssuerParametersInternal get(final IssuerParameters ip)
+            throws IOException {
+        final int size = ConfigImpl.issuerParametersCacheSize();
+        if (size == 0) {
+            // entries were dropped when the cache was disabled
+            misses.incrementAndGet();
+            return IssuerParametersInternal.decode(ip);
+        }
+
+        final long ttl = ConfigImpl.issuerParametersCacheTTL();
+        final Key key = new Key(ip);
+        synchronized (IssuerParametersCache.class) {
+            trim(size, ttl);
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.ipi;
+            }
+            misses.incrementAndGet();
+        }
+
+        // decode outside of the lock, so that a slow decoding does not hold
+        // up callers using other parameters
+        final IssuerParametersInternal ipi =
+            IssuerParametersInternal.decode(ip);
+        synchronized (IssuerParametersCache.class) {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                // another thread got there first; use its entry so that the
+                // precomputation is shared
+                return entry.ipi;
+            }
+            entries.put(key.copy(), new Entry(ipi));
+            trim(size, ttl);
+        }
+        return ipi;
+    }
+
+    /**
+     * Removes least recently used entries until the cache holds at most the
+     * configured number of entries. Called when the cache size changes.
+     */
+    static void resize() {
+        final int size = ConfigImpl.issuerParametersCacheSize();
+        synchronized (IssuerParametersCache.class) {
+            trim(size, 0);
+        }
+    }
+
+    /**
+     * Removes expired entries, then least recently used entries until the
+     * cache holds at most <code>size</code> entries. Must be called while
+     * holding the class lock.
+     * @param size the maximum number of entries.
+     * @param ttl the entry time-to-live in milliseconds, or <code>0</code>
+     * if entries never expire.
+     */
+    private static void trim(final int size, final long ttl) {
+        if (ttl > 0) {
+            final long now = System.currentTimeMillis();
+            for (Iterator<Entry> i = entries.values().iterator();
+                    i.hasNext();) {
+                if (now - i.next().created >= ttl) {
+                    i.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+        for (Iterator<Entry> i = entries.values().iterator();
+                entries.size() > size;) {
+            i.next();
+            i.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found their Issuer parameters in
+     * the cache.
+     * @return the number of cache hits.
+     */
+    static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to decode their Issuer
+     * parameters.
+     * @return the number of cache misses.
+     */
+    static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of entries removed because they expired or
+     * because the cache was full.
+     * @return the number of cache evictions.
+     */
+    static long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     * @return the number of cached Issuer parameters.
+     */
+    static synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries from the cache and resets the metrics.
+     */
+    static synchronized void clear() {
+        entries.clear();
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * A cached value and its creation time.
+     */
+    private static final class Entry {
+        final IssuerParametersInternal ipi;
+        final long created;
+
+        Entry(final IssuerParametersInternal ipi) {
+            this.ipi = ipi;
+            this.created = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The contents of a set of Issuer parameters. Lookup keys refer to the
+     * caller's arrays; keys stored in the cache hold private copies.
+     */
+    private static final class Key {
+        private final byte[] parametersUID;
+        private final PrimeOrderGroup group;
+        private final String hashAlgorithmUID;
+        private final byte[][] publicKey;
+        private final byte[] encodingBytes;
+        private final byte[][] proverIssuanceValues;
+        private final byte[] specification;
+        private final int hashCode;
+
+        Key(final IssuerParameters ip) {
+            this(ip.getParametersUID(), ip.getGroup(),
+                ip.getHashAlgorithmUID(), ip.getPublicKey(),
+                ip.getEncodingBytes(), ip.getProverIssuanceValues(),
+                ip.getSpecification());
+        }
+
+        private Key(final byte[] parametersUID, final PrimeOrderGroup group,
+                final String hashAlgorithmUID, final byte[][] publicKey,
+                final byte[] encodingBytes,
+                final byte[][] proverIssuanceValues,
+                final byte[] specification) {
+            this.parametersUID = parametersUID;
+            this.group = group;
+            this.hashAlgorithmUID = hashAlgorithmUID;
+            this.publicKey = publicKey;
+            this.encodingBytes = encodingBytes;
+            this.proverIssuanceValues = proverIssuanceValues;
+            this.specification = specification;
+
+            int result = 233;
+            result = 229 * result + Arrays.hashCode(parametersUID);
+            result = 229 * result + (group == null ? 0
+                : isKnownGroup(group) ? group.hashCode()
+                : System.identityHashCode(group));
+            result = 229 * result + (hashAlgorithmUID == null
+                ? 0 : hashAlgorithmUID.hashCode());
+            result = 229 * result + Arrays.deepHashCode(publicKey);
+            result = 229 * result + Arrays.hashCode(encodingBytes);
+            result = 229 * result + Arrays.deepHashCode(proverIssuanceValues);
+            result = 229 * result + Arrays.hashCode(specification);
+            this.hashCode = result;
+        }
+
+        /**
+         * Returns a key holding private copies of this key's arrays.
+         * @return a copy of this key.
+         */
+        Key copy() {
+            return new Key(clone(parametersUID), group, hashAlgorithmUID,
+                clone(publicKey), clone(encodingBytes),
+                clone(proverIssuanceValues), clone(specification));
+        }
+
+        private static byte[] clone(final byte[] a) {
+            return a == null ? null : (byte[]) a.clone();
+        }
+
+        private static byte[][] clone(final byte[][] a) {
+            if (a == null) {
+                return null;
+            }
+            final byte[][] retVal = new byte[a.length][];
+            for (int i = 0; i < a.length; i++) {
+                retVal[i] = clone(a[i]);
+            }
+            return retVal;
+        }
+
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key k = (Key) o;
+            return hashCode == k.hashCode
+                && Arrays.equals(parametersUID, k.parametersUID)
+                && isSameGroup(group, k.group)
+                && (hashAlgorithmUID == null ? k.hashAlgorithmUID == null
+                    : hashAlgorithmUID.equals(k.hashAlgorithmUID))
+                && Arrays.equals(encodingBytes, k.encodingBytes)
+                && Arrays.equals(specification, k.specification)
+                && ByteArrays.equals(publicKey, k.publicKey)
+                && ByteArrays.equals(proverIssuanceValues,
+                    k.proverIssuanceValues);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        /**
+         * Indicates whether two groups are interchangeable. The SDK's own
+         * groups compare their full description, but
+         * {@link PrimeOrderGroup#equals(Object)} only compares the group
+         * order, so other groups must be the same instance.
+         * @param one a group, or <code>null</code>.
+         * @param two a group, or <code>null</code>.
+         * @return <code>true</code> if the groups are interchangeable.
+         */
+        private static boolean isSameGroup(final PrimeOrderGroup one,
+                final PrimeOrderGroup two) {
+            if (one == two) {
+                return true;
+            }
+            return one != null && isKnownGroup(one) && one.equals(two);
+        }
+
+        private static boolean isKnownGroup(final PrimeOrderGroup group) {
+            return group instanceof Subgroup || group instanceof ECGroup;
+        }
+    }
+}
@@ -12,9 +12,12 @@
 package com.microsoft.uprove;
 
 import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Internal representation of issuer parameters.
@@ -43,9 +46,18 @@ class IssuerParametersInternal {
     private byte[] specification;
     
     // private protocol data
-    private byte[] issuerParametersDigest;
-    private HashFunction hashPrototype;
-    private boolean triedCloningPrototype = false;
+    private volatile byte[] issuerParametersDigest;
+    private volatile HashFunctionPool hashFunctionPool;
+    // hash state after 0x01 || P, or null if not captured yet
+    private volatile HashMidstate xtMidstate;
+    private boolean xtMidstateUnavailable;
+    
+    // fixed-base precomputation, set up on first use
+    private volatile GroupElement generator;
+    private volatile FixedBases fixedBases;
+    
+    // cached x values
+    private final AttributeHashCache attributeHashCache = new AttributeHashCache();
     
     public IssuerParametersInternal() {
 		super();
@@ -143,8 +155,10 @@ class IssuerParametersInternal {
 	/**
 	 * @param group the group to set
 	 */
-	public void setGroup(PrimeOrderGroup group) {
+	public synchronized void setGroup(PrimeOrderGroup group) {
 		this.group = group;
+		this.hashFunctionPool = null;
+		this.xtMidstate = null;
 	}
 
 	/**
@@ -157,8 +171,10 @@ class IssuerParametersInternal {
 	/**
 	 * @param hashAlgorithmUID the hashAlgorithmUID to set
 	 */
-	public void setHashAlgorithmUID(String hashAlgorithmUID) {
+	public synchronized void setHashAlgorithmUID(String hashAlgorithmUID) {
 		this.hashAlgorithmUID = hashAlgorithmUID;
+		this.hashFunctionPool = null;
+		this.xtMidstate = null;
 	}
 
 	/**
@@ -173,6 +189,132 @@ class IssuerParametersInternal {
 	 */
 	public void setPublicKey(GroupElement[] publicKey) {
 		this.publicKey = publicKey;
+		this.fixedBases = null;
+	}
+
+	/**
+	 * Returns the generator of the group. The same instance is returned on
+	 * every call, so that it can be matched with its fixed-base table; the
+	 * caller must not modify it.
+	 * @return the group generator.
+	 */
+	GroupElement getGenerator() {
+		GroupElement g = generator;
+		if (g == null) {
+			synchronized (this) {
+				g = generator;
+				if (g == null) {
+					g = group.getGenerator();
+					generator = g;
+				}
+			}
+		}
+		return g;
+	}
+
+	/**
+	 * Returns the fixed-base precomputation table of a base, building it
+	 * if necessary. Tables are only kept for the group generator (as
+	 * returned by {@link #getGenerator()}) and the public key elements (as
+	 * returned by {@link #getPublicKey()}), and only if a fixed-base memory
+	 * budget has been configured (see
+	 * {@link ConfigImpl#getFixedBaseMemoryBudget()}). The budget is split
+	 * evenly between these bases.
+	 * <p>
+	 * The budget is read once, the first time this method is called, and
+	 * applies for the lifetime of this object. Changing the budget clears
+	 * the {@link IssuerParametersCache}, so that parameters decoded
+	 * afterwards use the new value, but objects that hold on to parameters
+	 * decoded earlier (precomputation pools, prepared tokens) keep their
+	 * tables.
+	 * <p>
+	 * Lookups do not lock; a table is built outside of this object's
+	 * monitor, and only threads that need the same base wait for it.
+	 * @param base a group element.
+	 * @return the table of <code>base</code>, or <code>null</code> if there
+	 * is none.
+	 */
+	FixedBaseTable getFixedBaseTable(final GroupElement base) {
+		FixedBases fb = fixedBases;
+		if (fb == null) {
+			fb = initFixedBases();
+		}
+		if (fb.window == 0) {
+			return null;
+		}
+		final Integer index = fb.indices.get(base);
+		if (index == null) {
+			return null;
+		}
+
+		final int i = index.intValue();
+		FixedBaseTable table = fb.tables.get(i);
+		if (table == null) {
+			synchronized (fb.locks[i]) {
+				table = fb.tables.get(i);
+				if (table == null) {
+					table = new FixedBaseTable(base, fb.window);
+					fb.tables.set(i, table);
+				}
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the cache of attribute and token information hashes computed
+	 * with these parameters.
+	 * @return the attribute hash cache.
+	 */
+	AttributeHashCache getAttributeHashCache() {
+		return attributeHashCache;
+	}
+
+	/**
+	 * Reads the fixed-base memory budget and indexes the fixed bases. No
+	 * table is built here.
+	 * @return the fixed bases of these parameters.
+	 */
+	private synchronized FixedBases initFixedBases() {
+		FixedBases fb = fixedBases;
+		if (fb == null) {
+			final long budget = ConfigImpl.fixedBaseMemoryBudget();
+			final int window = budget <= 0 ? 0 : FixedBaseTable.getWindow(
+				group, budget / (publicKey.length + 1));
+			fb = new FixedBases(window, getGenerator(), publicKey);
+			fixedBases = fb;
+		}
+		return fb;
+	}
+
+	/**
+	 * The fixed bases of a set of Issuer parameters and their
+	 * precomputation tables. The index is never modified once constructed,
+	 * so it can be read without locking.
+	 */
+	private static final class FixedBases {
+		// table window size, or 0 if fixed-base precomputation is disabled
+		final int window;
+		// slot of each base, matched by identity
+		final Map<GroupElement, Integer> indices;
+		final AtomicReferenceArray<FixedBaseTable> tables;
+		final Object[] locks;
+
+		FixedBases(final int window, final GroupElement generator,
+				final GroupElement[] publicKey) {
+			this.window = window;
+			this.indices = new IdentityHashMap<GroupElement, Integer>();
+			this.tables =
+				new AtomicReferenceArray<FixedBaseTable>(publicKey.length + 1);
+			this.locks = new Object[publicKey.length + 1];
+			indices.put(generator, Integer.valueOf(0));
+			for (int i = 0; i < publicKey.length; i++) {
+				indices.put(publicKey[i], Integer.valueOf(i + 1));
+			}
+			for (int i = 0; i < locks.length; i++) {
+				locks[i] = new Object();
+			}
+		}
 	}
 
 	public GroupElement getDeviceGenerator() {
@@ -232,88 +374,156 @@ class IssuerParametersInternal {
      * the group.
      */	
 	void validate() throws IllegalStateException {
-        // validate the group
-        group.validate();
-
-        // make sure that all Issuer public key elements are member of Gq
-        int numElements = publicKey.length;
-        for (int i = 0; i < numElements; i++) {
-        	// check 1 < g_i < p
-        	if (group.getIdentity().equals(publicKey[i])) {
-        		throw new IllegalStateException("Public key element equals 1");
-        	}
-        	
-        	// it is guaranteed that all pubKey elements will belong
-            // to the Gq instance, otherwise they won't be usable
-            if (!publicKey[i].isValid()) {
-                throw new IllegalStateException("Public key element " + i + " is not in group");
-            }
-        }
+		validate(null, null);
+	}
+
+	/**
+	 * Validates the consistency of the Issuer Parameters's elements, spreading
+	 * the checks over the threads of an <code>Executor</code>. The primality
+	 * tests of the group and the membership test of each public key element
+	 * are run as independent steps.
+	 * @param executor the executor on which to run the checks, or
+	 * <code>null</code> to run them on the calling thread.
+	 * @param listener notified as each step completes, or <code>null</code>.
+	 * @throws IllegalStateException if the Issuer Parameters's mathematical
+	 * group is malformed or if the Issuer public key elements are not part of
+	 * the group.
+	 */
+	void validate(Executor executor, final ProgressListener listener) throws IllegalStateException {
+		// steps: the field Zq (q is prime), the group-specific checks, and
+		// one step per public key element
+		final int total = 2 + publicKey.length;
+		final AtomicInteger completed = new AtomicInteger();
+		try {
+			ParallelLoop.run(executor, total, new ParallelLoop.Body() {
+				public void run(int i) {
+					if (i == 0) {
+						group.getZq().validate();
+					} else if (i == 1) {
+						group.doGroupSpecificValidate();
+					} else {
+						validatePublicKeyElement(i - 2);
+					}
+					if (listener != null) {
+						listener.progress(completed.incrementAndGet(), total);
+					}
+				}
+			});
+		} catch (IOException ioe) {
+			AssertionError ae = new AssertionError("Impossible exception");
+			ae.initCause(ioe);
+			throw ae;
+		}
+	}
+
+	/**
+	 * Makes sure that an Issuer public key element is a member of Gq.
+	 * @param i the index of the element.
+	 * @throws IllegalStateException if the element is not in the group.
+	 */
+	private void validatePublicKeyElement(int i) throws IllegalStateException {
+		// check 1 < g_i < p
+		if (group.getIdentity().equals(publicKey[i])) {
+			throw new IllegalStateException("Public key element equals 1");
+		}
+
+		// it is guaranteed that all pubKey elements will belong
+		// to the Gq instance, otherwise they won't be usable
+		if (!publicKey[i].isValid()) {
+			throw new IllegalStateException("Public key element " + i + " is not in group");
+		}
 	}
 	
-	   /**
-     * Instantiate a new <code>HashFunction</code> object using the
-     * hash algorithm specified in the parameters (obtainable by
-     * calling {@link #getHashAlgorithmUID()}.
+    /**
+     * Returns a <code>HashFunction</code> object in its initial state, using
+     * the hash algorithm specified in the parameters (obtainable by
+     * calling {@link #getHashAlgorithmUID()}. The instance comes from a pool
+     * shared by all users of these parameters, and should be handed back
+     * with {@link #releaseHashFunction(HashFunction)} once its digest has
+     * been obtained.
      * @return a <code>HashFunction</code> object.
      * @throws IllegalStateException if hash function can't be initialized
      */
     HashFunction getHashFunction() {
+        HashFunctionPool pool = hashFunctionPool;
+        if (pool == null) {
+            pool = initHashFunctionPool();
+        }
+        return pool.take();
+    }
 
-    	if (!triedCloningPrototype) {
-    		// this is the first time this method is called, let's try to create a prototype
-
-         	// see if we can use the chosen hashAlgorithm and if we can clone
-             // a prototype rather than creating a new one each time around.
-             HashFunction hf = null;
-             HashFunction clone = null;
-             try {
-                 hf = HashFunctionImpl.getInstance(hashAlgorithmUID, group.getZq());
-                 clone = (HashFunction) hf.clone();
-             } catch (CloneNotSupportedException cnse) {
-                 // oh well, can't use a prototype
-             } catch (NoSuchAlgorithmException e) {
-                 // defer notifying the user until they try to get an instance
-             } catch (NoSuchProviderException e) {
-                 // defer notifying the user until they try to get an instance
-             }
-             // if we were able to clone a prototype, keep it around for later
-             hashPrototype = (clone == null ? null : hf);
-             triedCloningPrototype = true;
-         }
-    	
-    	// clone the prototype if possible
-        if (hashPrototype != null) {
-            try {
-                return (HashFunction) hashPrototype.clone();
-            } catch (CloneNotSupportedException e) {
-                AssertionError ae = new AssertionError("Impossible exception");
-                ae.initCause(e);
-                throw ae;
+    /**
+     * Hands back a <code>HashFunction</code> object obtained from
+     * {@link #getHashFunction()}, to be reused by later computations. The
+     * caller must not use it afterwards.
+     * @param H the hash function.
+     */
+    void releaseHashFunction(HashFunction H) {
+        HashFunctionPool pool = hashFunctionPool;
+        if (pool != null) {
+            pool.release(H);
+        }
+    }
+
+    /**
+     * Returns a <code>HashFunction</code> object that has absorbed the
+     * prefix <code>0x01 || P</code> of the <code>x_t</code> computation. It
+     * should be handed back with {@link #releaseHashFunction(HashFunction)}
+     * once its digest has been obtained.
+     * @return a <code>HashFunction</code> object.
+     * @throws IllegalStateException if hash function can't be initialized
+     */
+    HashFunction getXtHashFunction() {
+        HashMidstate midstate = xtMidstate;
+        if (midstate == null) {
+            midstate = initXtMidstate();
+        }
+        if (midstate != null) {
+            return midstate.resume();
+        }
+        // the hash function can't be cloned; hash the prefix every time
+        HashFunction H = getHashFunction();
+        H.update((byte) 1);
+        H.update(getIssuerParametersDigest());
+        return H;
+    }
+
+    private synchronized HashMidstate initXtMidstate() {
+        if (xtMidstate == null && !xtMidstateUnavailable) {
+            HashFunction H = getHashFunction();
+            H.update((byte) 1);
+            H.update(getIssuerParametersDigest());
+            xtMidstate = HashMidstate.capture(H);
+            if (xtMidstate == null) {
+                xtMidstateUnavailable = true;
+                releaseHashFunction(H);
             }
         }
-    	
-        // return a new instance
-        IllegalStateException ise = null;
-        try {
-            return HashFunctionImpl.getInstance(this.hashAlgorithmUID, group.getZq());
-        } catch (NoSuchAlgorithmException e) {
-            ise = new IllegalStateException(
-                    "Unable to initialize hash function");
-            ise.initCause(e);
-        } catch (NoSuchProviderException e) {
-            ise = new IllegalStateException(
-                    "Unable to initialize hash function");
-            ise.initCause(e);
+        return xtMidstate;
+    }
+
+    private synchronized HashFunctionPool initHashFunctionPool() {
+        if (hashFunctionPool == null) {
+            hashFunctionPool = new HashFunctionPool(hashAlgorithmUID, group.getZq());
         }
-        throw ise;
+        return hashFunctionPool;
     }
 
     byte[] getIssuerParametersDigest() {
-    	if (this.issuerParametersDigest != null) {
-    		return this.issuerParametersDigest;
+    	byte[] digest = this.issuerParametersDigest;
+    	if (digest == null) {
+    		synchronized (this) {
+    			digest = this.issuerParametersDigest;
+    			if (digest == null) {
+    				digest = computeIssuerParametersDigest();
+    				this.issuerParametersDigest = digest;
+    			}
+    		}
     	}
-    	
+    	return digest;
+    }
+
+    private byte[] computeIssuerParametersDigest() {
     	// compute the issuer parameters digest
     	HashFunction H = getHashFunction();
 
@@ -339,29 +549,50 @@ class IssuerParametersInternal {
     	// S
     	H.update(this.specification);
     	
-    	this.issuerParametersDigest = H.getByteDigest();
+    	byte[] digest = H.getByteDigest();
+    	releaseHashFunction(H);
 
-    	return this.issuerParametersDigest;
+    	return digest;
     }
 
     /**
-     * Generates an internal representation of an issuer parameters.
+     * Generates an internal representation of an issuer parameters. The
+     * representation is taken from the {@link IssuerParametersCache} if
+     * possible, and may therefore be shared with other callers.
      * @param ip the issuer parameters.
      * @return an internal representation of the issuer parameters.
      * @throws IOException if the issuer parameters are malformed.
      */
     static IssuerParametersInternal generate(IssuerParameters ip) throws IOException {
+    	return IssuerParametersCache.get(ip);
+    }
+
+    /**
+     * Decodes an issuer parameters, bypassing the cache.
+     * @param ip the issuer parameters.
+     * @return a new internal representation of the issuer parameters.
+     * @throws IOException if the issuer parameters are malformed.
+     */
+    static IssuerParametersInternal decode(IssuerParameters ip) throws IOException {
+    	// the result may be cached and shared, so it must not refer to the
+    	// caller's arrays
     	IssuerParametersInternal ipi = new IssuerParametersInternal();
-    	ipi.setParametersUID(ip.getParametersUID());
-    	ipi.setEncodingBytes(ip.getEncodingBytes());
+    	ipi.setParametersUID(copy(ip.getParametersUID()));
+    	ipi.setEncodingBytes(copy(ip.getEncodingBytes()));
     	ipi.setHashAlgorithmUID(ip.getHashAlgorithmUID());
-    	ipi.setSpecification(ip.getSpecification());
+    	ipi.setSpecification(copy(ip.getSpecification()));
     	
-    	PrimeOrderGroup Gq = ip.getGroup();
+    	// use the canonical group, so that elements decoded from equal
+    	// parameters elsewhere can be combined with these cheaply
+    	PrimeOrderGroup Gq = GroupRegistry.intern(ip.getGroup());
     	ipi.setGroup(Gq);
     	ipi.setProverIssuanceValues(Gq.getElementArray(ip.getProverIssuanceValues()));
     	ipi.setPublicKey(Gq.getElementArray(ip.getPublicKey()));
 
     	return ipi;
     }
+
+    private static byte[] copy(byte[] a) {
+    	return a == null ? null : (byte[]) a.clone();
+    }
 }
@@ -0,0 +1,175 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+/**
+ * A pool of precomputed Issuer values for the issuance protocol.
+ * <p>
+ * For every token, the Issuer's first message contains
+ * <code>sigmaA = g^w</code> and <code>sigmaB = gamma^w</code> for a random
+ * <code>w</code>. The first half does not depend on the token attributes,
+ * so <code>(w, g^w)</code> pairs can be computed ahead of time, for
+ * instance while the Issuer is idle. {@link Issuer} instances generated from
+ * {@link IssuerProtocolParameters} to which a pool has been given (see
+ * {@link IssuerProtocolParameters#setPrecomputationPool(IssuerPrecomputationPool)})
+ * take their pairs from the pool, which leaves one exponentiation per token
+ * to compute when the first message is generated. When the pool runs dry,
+ * the missing pairs are computed on the spot.
+ * </p>
+ * <p>
+ * The pool holds secret values: each pair is handed out to exactly one
+ * token, and is removed from the pool when it is. The pool is filled by
+ * calling {@link #fill()}, and, if an {@link Executor} is given, in the
+ * background whenever it is down to half of its capacity. All methods are
+ * thread-safe.
+ * </p>
+ */
+public final class IssuerPrecomputationPool {
+
+    private final IssuerParametersInternal ip;
+    private final int capacity;
+    private final Executor executor;
+
+    // the pairs, used as a stack; guarded by this
+    private final ZqElement[] w;
+    private final GroupElement[] gw;
+    private int size;
+    private boolean refilling;
+
+    private final Runnable refill = new Runnable() {
+        public void run() {
+            try {
+                fill();
+            } finally {
+                synchronized (IssuerPrecomputationPool.this) {
+                    refilling = false;
+                }
+            }
+        }
+    };
+
+    /**
+     * Constructs an empty pool.
+     * @param ip the Issuer parameters of the tokens to be issued.
+     * @param capacity the maximum number of pairs held by the pool.
+     * @param executor the executor on which to refill the pool in the
+     * background, or <code>null</code> if the pool is only filled by calls
+     * to {@link #fill()}. An executor running low-priority threads keeps
+     * the precomputation out of the way of the protocol computations.
+     * @throws IOException if the Issuer parameters are malformed.
+     * @throws IllegalArgumentException if <code>capacity</code> is less than
+     * 1.
+     */
+    public IssuerPrecomputationPool(final IssuerParameters ip,
+            final int capacity, final Executor executor) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.ip = IssuerParametersInternal.generate(ip);
+        this.capacity = capacity;
+        this.executor = executor;
+        this.w = new ZqElement[capacity];
+        this.gw = new GroupElement[capacity];
+    }
+
+    /**
+     * Returns the maximum number of pairs held by the pool.
+     * @return the capacity of the pool.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of pairs currently held by the pool.
+     * @return the size of the pool.
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Computes pairs until the pool is full. The pairs are computed one at a
+     * time without holding the pool's lock, so that sessions can take pairs
+     * while the pool is being filled.
+     */
+    public void fill() {
+        final FieldZq Zq = ip.getGroup().getZq();
+        while (getSize() < capacity) {
+            final ZqElement wi = Zq.getRandomElement(false);
+            final GroupElement gwi =
+                ProtocolHelper.exponentiate(ip, ip.getGenerator(), wi);
+            synchronized (this) {
+                if (size == capacity) {
+                    return;
+                }
+                w[size] = wi;
+                gw[size] = gwi;
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Returns the group to which the pool's values belong.
+     * @return the pool's group.
+     */
+    PrimeOrderGroup getGroup() {
+        return ip.getGroup();
+    }
+
+    /**
+     * Removes pairs from the pool. If the pool holds fewer than
+     * <code>n</code> pairs, all of them are taken.
+     * @param wOut the array receiving the <code>w</code> values.
+     * @param gwOut the array receiving the <code>g^w</code> values.
+     * @param n the number of pairs wanted.
+     * @return the number of pairs taken, written to the first entries of
+     * the output arrays.
+     */
+    int take(final ZqElement[] wOut, final GroupElement[] gwOut,
+            final int n) {
+        int taken = 0;
+        boolean startRefill = false;
+        synchronized (this) {
+            while (taken < n && size > 0) {
+                size--;
+                wOut[taken] = w[size];
+                gwOut[taken] = gw[size];
+                // don't keep references to values that have been handed out
+                w[size] = null;
+                gw[size] = null;
+                taken++;
+            }
+            if (executor != null && !refilling && size < capacity / 2 + 1) {
+                refilling = true;
+                startRefill = true;
+            }
+        }
+        if (startRefill) {
+            try {
+                executor.execute(refill);
+            } catch (RuntimeException re) {
+                // the executor won't take it; try again on the next take
+                synchronized (this) {
+                    refilling = false;
+                }
+            }
+        }
+        return taken;
+    }
+}
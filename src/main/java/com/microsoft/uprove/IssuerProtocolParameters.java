@@ -12,6 +12,7 @@
 package com.microsoft.uprove;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /**
  * Specifies the Issuer protocol parameters for the issuance protocol. 
@@ -21,9 +22,12 @@ public final class IssuerProtocolParameters {
 	private int numberOfTokens = 1;
 	private IssuerKeyAndParameters issuerKeyAndParameters = null;
     private byte[][] tokenAttributes; // = null;
+    private AttributeSource[] tokenAttributeSources; // = null;
     private byte[] tokenInformation;
 	private byte[] devicePublicKey;
     private IssuerCommonInput input;
+	private Executor executor;
+	private IssuerPrecomputationPool pool;
 
 
     /**
@@ -85,6 +89,29 @@ public final class IssuerProtocolParameters {
 		this.tokenAttributes = tokenAttributes;
 	}
 
+	/**
+	 * Gets the sources of the streamed token attributes.
+	 * @return the attribute sources, or <code>null</code> if no attribute
+	 * is streamed.
+	 */
+	public AttributeSource[] getTokenAttributeSources() {
+		return tokenAttributeSources;
+	}
+
+	/**
+	 * Sets the sources of the token attributes that are streamed rather
+	 * than given as byte arrays. Only attributes whose encoding byte is
+	 * <code>1</code> can be streamed.
+	 * @param tokenAttributeSources an array of the same length as the token
+	 * attributes, whose non-null entries replace the corresponding token
+	 * attributes (which may be <code>null</code>); or <code>null</code>
+	 * (the default) if no attribute is streamed.
+	 * @see AttributeSource
+	 */
+	public void setTokenAttributeSources(AttributeSource[] tokenAttributeSources) {
+		this.tokenAttributeSources = tokenAttributeSources;
+	}
+
 	/**
 	 * Gets the token information value.
 	 * @return the token information value.
@@ -142,6 +169,49 @@ public final class IssuerProtocolParameters {
 		this.devicePublicKey = devicePublicKey;
 	}
     
+    /**
+     * Gets the executor running the per-token computations.
+     * @return the executor, or <code>null</code> if the computations run on
+     * the calling thread.
+     */
+    public Executor getExecutor() {
+    	return executor;
+    }
+
+    /**
+     * Sets the executor running the per-token computations of the generated
+     * <code>Issuer</code>. When issuing many tokens at once, an executor backed by
+     * several threads lets the computations scale with the number of
+     * processors; the calling thread takes part in the work. The protocol
+     * messages do not depend on the executor: given the same pre-generated
+     * values, the same messages are produced.
+     * @param executor the executor, or <code>null</code> (the default) to run
+     * the computations on the calling thread.
+     */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+    /**
+     * Gets the pool of precomputed Issuer values.
+     * @return the pool, or <code>null</code> if none is used.
+     */
+    public IssuerPrecomputationPool getPrecomputationPool() {
+    	return pool;
+    }
+
+    /**
+     * Sets the pool from which the generated <code>Issuer</code> takes its
+     * precomputed values. The pool is not used when the Issuer's
+     * precomputation is given pre-generated values.
+     * @param pool the pool, or <code>null</code> (the default) to compute
+     * all values when the first message is generated. The pool must have
+     * been created for Issuer parameters using the same group.
+     */
+	public void setPrecomputationPool(IssuerPrecomputationPool pool) {
+		this.pool = pool;
+	}
+
     /**
      * Tests the contents of <code>this</code> for validity. 
      * @throws IllegalStateException if the parameters are invalid.
@@ -168,7 +238,7 @@ public final class IssuerProtocolParameters {
         validate();
         // then generate the Issuer instance
         return IssuerFactory.generate(numberOfTokens,
-                                           input);
+                                           input, executor, pool);
     }
 
 }
\ No newline at end of file
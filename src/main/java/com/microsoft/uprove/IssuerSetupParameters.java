@@ -49,7 +49,8 @@ import com.microsoft.uprove.FieldZq.ZqElement;
  * default group generated by
  * {@link
  * com.microsoft.uprove.DefaultSubgroupFactory}
- * will be used.</td>
+ * will be used. Elliptic curve groups, with much smaller elements, are
+ * available from {@link com.microsoft.uprove.DefaultECGroupFactory}.</td>
  * </tr>
  * 
  * <tr>
@@ -0,0 +1,369 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * Montgomery arithmetic modulo an odd modulus <code>p</code>.
+ * <p>
+ * A value <code>x</code> is represented by <code>x * R mod p</code>, where
+ * <code>R = 2^(32 * n)</code> and <code>n</code> is the number of 32-bit
+ * limbs of <code>p</code>. Values are stored in <code>long</code> arrays of
+ * length <code>n</code>, least significant limb first, each limb holding 32
+ * bits; this leaves room in every <code>long</code> for the carries of the
+ * multiply-accumulate steps. Representations are always fully reduced, so
+ * two values are equal if and only if their arrays are equal.
+ * </p>
+ * <p>
+ * All arithmetic works in place, does not allocate, and runs in time
+ * independent of the operand values. Instances are immutable and may be
+ * shared between threads.
+ * </p>
+ */
+final class MontgomeryDomain {
+
+    private static final long MASK = 0xFFFFFFFFL;
+
+    // the modulus limbs
+    private final long[] p;
+
+    // -p^-1 mod 2^32
+    private final long pInv;
+
+    // R mod p and R^2 mod p, in limbs
+    private final long[] one;
+    private final long[] rSquared;
+
+    // 1, in limbs; the Montgomery product by it converts out of the domain
+    private final long[] unit;
+
+    // per-thread scratch space for multiply
+    private final ThreadLocal<long[]> scratch = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[p.length + 1];
+        }
+    };
+
+    /**
+     * Constructs a Montgomery domain.
+     * @param modulus an odd modulus, greater than 1.
+     * @throws IllegalArgumentException if <code>modulus</code> is even or
+     * not greater than 1.
+     */
+    MontgomeryDomain(final BigInteger modulus) {
+        if (modulus.compareTo(BigInteger.ONE) <= 0 || !modulus.testBit(0)) {
+            throw new IllegalArgumentException("modulus must be odd and > 1");
+        }
+        final int n = (modulus.bitLength() + 31) / 32;
+        p = toLimbs(modulus, n);
+
+        // Newton iteration for p[0]^-1 mod 2^32; each step doubles the
+        // number of correct bits, starting from 3 (p * p = 1 mod 8)
+        long inv = p[0];
+        for (int i = 0; i < 4; ++i) {
+            inv = (inv * (2 - p[0] * inv)) & MASK;
+        }
+        pInv = (-inv) & MASK;
+
+        final BigInteger r = BigInteger.ONE.shiftLeft(32 * n);
+        one = toLimbs(r.mod(modulus), n);
+        rSquared = toLimbs(r.multiply(r).mod(modulus), n);
+        unit = new long[n];
+        unit[0] = 1;
+    }
+
+    /**
+     * Returns the number of limbs of a value.
+     * @return the number of limbs.
+     */
+    int getLength() {
+        return p.length;
+    }
+
+    /**
+     * Returns the representation of <code>1</code>.
+     * @return a new array holding <code>R mod p</code>.
+     */
+    long[] getOne() {
+        return (long[]) one.clone();
+    }
+
+    /**
+     * Converts an integer to its Montgomery representation.
+     * @param x an integer between <code>0</code> and <code>p</code>,
+     * exclusive of <code>p</code>.
+     * @return a new array holding <code>x * R mod p</code>.
+     */
+    long[] toMontgomery(final BigInteger x) {
+        final long[] retVal = toLimbs(x, p.length);
+        multiply(retVal, rSquared, retVal);
+        return retVal;
+    }
+
+    /**
+     * Converts the limbs of an integer to its Montgomery representation.
+     * The result may share storage with the operand.
+     * @param x the limbs of an integer between <code>0</code> and
+     * <code>p</code>, exclusive of <code>p</code>.
+     * @param r the array receiving <code>x * R mod p</code>.
+     */
+    void toMontgomery(final long[] x, final long[] r) {
+        multiply(x, rSquared, r);
+    }
+
+    /**
+     * Converts a Montgomery representation back to the limbs of an integer.
+     * The result may share storage with the operand.
+     * @param a a value in Montgomery representation.
+     * @param r the array receiving the limbs of the integer represented by
+     * <code>a</code>.
+     */
+    void fromMontgomery(final long[] a, final long[] r) {
+        multiply(a, unit, r);
+    }
+
+    /**
+     * Converts a Montgomery representation back to an integer.
+     * @param a a value in Montgomery representation; not modified.
+     * @return the integer represented by <code>a</code>.
+     */
+    BigInteger fromMontgomery(final long[] a) {
+        return fromLimbs(fromMontgomeryLimbs(a));
+    }
+
+    /**
+     * Converts a Montgomery representation back to an integer, written as
+     * an unsigned big-endian byte array.
+     * @param a a value in Montgomery representation; not modified.
+     * @param out the array receiving the integer.
+     * @param offset the offset at which to write the integer.
+     * @param length the number of bytes to write; the integer is padded
+     * with leading zeros, or truncated to its <code>length</code> least
+     * significant bytes.
+     */
+    void fromMontgomery(final long[] a, final byte[] out, final int offset,
+            final int length) {
+        final long[] x = fromMontgomeryLimbs(a);
+        for (int i = 0; i < length; ++i) {
+            // the i-th least significant byte
+            final int limb = i / 4;
+            out[offset + length - 1 - i] = limb < x.length
+                ? (byte) (x[limb] >>> (8 * (i % 4)))
+                : 0;
+        }
+    }
+
+    /**
+     * Converts a Montgomery representation back to the limbs of an integer.
+     * @param a a value in Montgomery representation; not modified.
+     * @return a new array holding the limbs of the integer represented by
+     * <code>a</code>.
+     */
+    private long[] fromMontgomeryLimbs(final long[] a) {
+        final long[] x = new long[p.length];
+        fromMontgomery(a, x);
+        return x;
+    }
+
+    /**
+     * Converts an array of limbs to an integer.
+     * @param x the limbs, least significant first.
+     * @return the integer.
+     */
+    private static BigInteger fromLimbs(final long[] x) {
+        final int n = x.length;
+        final byte[] bytes = new byte[4 * n];
+        for (int i = 0; i < n; ++i) {
+            final long limb = x[n - 1 - i];
+            bytes[4 * i] = (byte) (limb >>> 24);
+            bytes[4 * i + 1] = (byte) (limb >>> 16);
+            bytes[4 * i + 2] = (byte) (limb >>> 8);
+            bytes[4 * i + 3] = (byte) limb;
+        }
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     * Computes the Montgomery product <code>a * b / R mod p</code>. The
+     * result may share storage with either operand.
+     * @param a the first operand.
+     * @param b the second operand.
+     * @param r the array receiving the result.
+     */
+    void multiply(final long[] a, final long[] b, final long[] r) {
+        multiply(a, b, r, scratch.get());
+    }
+
+    /**
+     * Computes the Montgomery product <code>a * b / R mod p</code> using
+     * caller-provided scratch space. The result may share storage with
+     * either operand.
+     * @param a the first operand.
+     * @param b the second operand.
+     * @param r the array receiving the result.
+     * @param t scratch space of at least <code>getLength() + 1</code> limbs.
+     */
+    void multiply(final long[] a, final long[] b, final long[] r,
+            final long[] t) {
+        final int n = p.length;
+        for (int j = 0; j <= n; ++j) {
+            t[j] = 0;
+        }
+
+        // finely integrated operand scanning (FIOS): each pass adds
+        // a * b[i] and m * p, and shifts right by one limb. No intermediate
+        // sum exceeds 2^64 - 1, so unsigned shifts recover the carries
+        final long a0 = a[0];
+        final long p0 = p[0];
+        for (int i = 0; i < n; ++i) {
+            final long bi = b[i];
+            long s = t[0] + a0 * bi;
+            long carry = s >>> 32;
+            final long low = s & MASK;
+            // m is chosen so that the low limb of low + m * p[0] is zero
+            final long m = (low * pInv) & MASK;
+            long s2 = low + m * p0;
+            long carry2 = s2 >>> 32;
+            for (int j = 1; j < n; ++j) {
+                s = t[j] + a[j] * bi + carry;
+                carry = s >>> 32;
+                s2 = (s & MASK) + m * p[j] + carry2;
+                carry2 = s2 >>> 32;
+                t[j - 1] = s2 & MASK;
+            }
+            s = t[n] + carry + carry2;
+            t[n - 1] = s & MASK;
+            t[n] = s >>> 32;
+        }
+
+        // t < 2p, subtract p unless that underflows
+        long borrow = 0;
+        for (int j = 0; j < n; ++j) {
+            final long d = t[j] - p[j] - borrow;
+            r[j] = d & MASK;
+            borrow = d >>> 63;
+        }
+        select(t, r, (t[n] - borrow) >>> 63, n);
+    }
+
+    /**
+     * Computes <code>a + b mod p</code>. The result may share storage with
+     * either operand.
+     * @param a the first operand.
+     * @param b the second operand.
+     * @param r the array receiving the result.
+     */
+    void add(final long[] a, final long[] b, final long[] r) {
+        final int n = p.length;
+        long carry = 0;
+        for (int j = 0; j < n; ++j) {
+            final long s = a[j] + b[j] + carry;
+            r[j] = s & MASK;
+            carry = s >>> 32;
+        }
+        // subtract p, and add it back if that underflows
+        long borrow = 0;
+        for (int j = 0; j < n; ++j) {
+            final long d = r[j] - p[j] - borrow;
+            r[j] = d & MASK;
+            borrow = d >>> 63;
+        }
+        addBack(r, (carry - borrow) >>> 63, n);
+    }
+
+    /**
+     * Computes <code>a - b mod p</code>. The result may share storage with
+     * either operand.
+     * @param a the first operand.
+     * @param b the second operand.
+     * @param r the array receiving the result.
+     */
+    void subtract(final long[] a, final long[] b, final long[] r) {
+        final int n = p.length;
+        long borrow = 0;
+        for (int j = 0; j < n; ++j) {
+            final long d = a[j] - b[j] - borrow;
+            r[j] = d & MASK;
+            borrow = d >>> 63;
+        }
+        addBack(r, borrow, n);
+    }
+
+    /**
+     * Adds <code>p</code> to a value if a flag is set.
+     * @param r the value, updated in place.
+     * @param flag <code>1</code> to add <code>p</code>, <code>0</code> to
+     * leave <code>r</code> unchanged.
+     * @param n the number of limbs.
+     */
+    private void addBack(final long[] r, final long flag, final int n) {
+        final long mask = -flag & MASK;
+        long carry = 0;
+        for (int j = 0; j < n; ++j) {
+            final long s = r[j] + (p[j] & mask) + carry;
+            r[j] = s & MASK;
+            carry = s >>> 32;
+        }
+    }
+
+    /**
+     * Copies a value into another if a flag is set, without branching on
+     * the flag.
+     * @param a the source value.
+     * @param r the destination value.
+     * @param flag <code>1</code> to copy, <code>0</code> to leave
+     * <code>r</code> unchanged.
+     * @param n the number of limbs.
+     */
+    static void select(final long[] a, final long[] r, final long flag,
+            final int n) {
+        final long mask = -flag;
+        for (int j = 0; j < n; ++j) {
+            r[j] ^= (r[j] ^ a[j]) & mask;
+        }
+    }
+
+    /**
+     * Splits a non-negative integer into 32-bit limbs.
+     * @param x a non-negative integer smaller than <code>2^(32 * n)</code>.
+     * @param n the number of limbs.
+     * @return the limbs of <code>x</code>, least significant first.
+     */
+    private static long[] toLimbs(final BigInteger x, final int n) {
+        final long[] retVal = new long[n];
+        toLimbs(x.toByteArray(), retVal);
+        return retVal;
+    }
+
+    /**
+     * Splits a big-endian byte array into 32-bit limbs. Bytes beyond the
+     * capacity of the limbs are ignored, as is a leading sign byte.
+     * @param bytes the big-endian bytes of a non-negative integer.
+     * @param r the array receiving the limbs, least significant first.
+     */
+    static void toLimbs(final byte[] bytes, final long[] r) {
+        final int n = r.length;
+        for (int j = 0; j < n; ++j) {
+            r[j] = 0;
+        }
+        for (int i = 0; i < bytes.length && i < 4 * n; ++i) {
+            final long b = bytes[bytes.length - 1 - i] & 0xFFL;
+            r[i / 4] |= b << (8 * (i % 4));
+        }
+    }
+
+}
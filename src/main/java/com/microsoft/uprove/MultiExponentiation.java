@@ -0,0 +1,348 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * Computes products of exponentiations <code>b_1^e_1 * ... * b_n^e_n</code>
+ * in any {@link PrimeOrderGroup}, using only the group operation exposed by
+ * {@link GroupElement}.
+ * <p>
+ * Two algorithms are implemented, and the cheaper one (according to a
+ * simple operation count) is selected for each call:
+ * </p>
+ * <ul>
+ * <li>interleaved sliding-window exponentiation (Straus/M&ouml;ller), which
+ * shares the squarings between all bases and is best for a small number of
+ * bases;</li>
+ * <li>the bucket method (Pippenger), which amortizes the cost of each
+ * window over all bases and is best for a large number of bases.</li>
+ * </ul>
+ * <p>
+ * In both cases, the identity element is represented by <code>null</code>
+ * so that multiplications by the identity are skipped rather than
+ * performed. The caller's bases are never modified.
+ * </p>
+ */
+final class MultiExponentiation {
+
+    /**
+     * The largest window size considered by the interleaved method.
+     */
+    private static final int MAX_STRAUS_WINDOW = 6;
+
+    /**
+     * The largest window size considered by the bucket method.
+     */
+    private static final int MAX_BUCKET_WINDOW = 16;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private MultiExponentiation() {
+        super();
+    }
+
+    /**
+     * Computes the product of a series of exponentiations.
+     * @param bases an array of base elements, all belonging to the same
+     * group. The caller's ownership of the referent and its contents is
+     * preserved.
+     * @param exponents an array of exponents, each of which may be
+     * <code>null</code> (treated as if it were <code>1</code>). Only the
+     * first <code>exponents.length</code> bases are used.
+     * @return <code>bases[0]^exponents[0] * ... * bases[n-1]^exponents[n-1]
+     * </code>. Ownership of the referent is given to the caller.
+     */
+    static GroupElement compute(final GroupElement[] bases,
+            final ZqElement[] exponents) {
+        final PrimeOrderGroup group = bases[0].getGroup();
+        final int n = exponents.length;
+
+        // bases with a null exponent are simply multiplied in, the others
+        // are collected for the multi-exponentiation
+        GroupElement retVal = null;
+        final GroupElement[] b = new GroupElement[n];
+        final BigInteger[] e = new BigInteger[n];
+        final ZqElement[] z = new ZqElement[n];
+        int count = 0;
+        int maxBits = 0;
+        for (int i = 0; i < n; ++i) {
+            if (exponents[i] == null) {
+                retVal = multiply(retVal, bases[i]);
+                continue;
+            }
+            final BigInteger exp = exponents[i].toBigInteger();
+            if (exp.signum() == 0) {
+                continue;
+            }
+            b[count] = bases[i];
+            e[count] = exp;
+            z[count] = exponents[i];
+            maxBits = Math.max(maxBits, exp.bitLength());
+            ++count;
+        }
+
+        if (count == 1) {
+            // nothing to share, let the element use its own exponentiation
+            retVal = multiply(retVal, b[0].exponentiate(z[0]));
+        } else if (count > 1) {
+            final int strausWindow = getStrausWindow(maxBits);
+            final int bucketWindow = getBucketWindow(count, maxBits);
+            final GroupElement product =
+                getStrausCost(count, maxBits, strausWindow)
+                    <= getBucketCost(count, maxBits, bucketWindow)
+                ? straus(b, e, count, maxBits, strausWindow)
+                : buckets(b, e, count, maxBits, bucketWindow);
+            retVal = multiply(retVal, product);
+        }
+
+        return retVal != null ? retVal : group.getIdentity();
+    }
+
+    /**
+     * Computes the product using interleaved sliding-window exponentiation.
+     * @param bases the bases.
+     * @param exponents the (positive) exponents.
+     * @param count the number of bases and exponents to use.
+     * @param maxBits the bit length of the largest exponent.
+     * @param w the window size.
+     * @return the product, or <code>null</code> for the identity.
+     */
+    private static GroupElement straus(final GroupElement[] bases,
+            final BigInteger[] exponents, final int count, final int maxBits,
+            final int w) {
+        // table[i][j] = bases[i]^(2j + 1), up to the largest digit used
+        final GroupElement[][] table = new GroupElement[count][];
+        final int[][] digits = new int[count][];
+        for (int i = 0; i < count; ++i) {
+            digits[i] = recodeSlidingWindow(exponents[i], maxBits, w);
+            int largest = 0;
+            for (int j = 0; j < maxBits; ++j) {
+                largest = Math.max(largest, digits[i][j]);
+            }
+            final int size = (largest + 1) / 2;
+            table[i] = new GroupElement[size];
+            table[i][0] = bases[i];
+            if (size > 1) {
+                final GroupElement square = bases[i].multiply(bases[i]);
+                for (int j = 1; j < size; ++j) {
+                    table[i][j] = table[i][j - 1].multiply(square);
+                }
+            }
+        }
+
+        GroupElement acc = null;
+        for (int bit = maxBits - 1; bit >= 0; --bit) {
+            if (acc != null) {
+                acc.multiplyAssign(acc);
+            }
+            for (int i = 0; i < count; ++i) {
+                final int digit = digits[i][bit];
+                if (digit != 0) {
+                    acc = multiply(acc, table[i][digit >> 1]);
+                }
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * Computes the product using the bucket method.
+     * @param bases the bases.
+     * @param exponents the (positive) exponents.
+     * @param count the number of bases and exponents to use.
+     * @param maxBits the bit length of the largest exponent.
+     * @param c the window size.
+     * @return the product, or <code>null</code> for the identity.
+     */
+    private static GroupElement buckets(final GroupElement[] bases,
+            final BigInteger[] exponents, final int count, final int maxBits,
+            final int c) {
+        final int windows = (maxBits + c - 1) / c;
+        final GroupElement[] bucket = new GroupElement[1 << c];
+
+        GroupElement acc = null;
+        for (int window = windows - 1; window >= 0; --window) {
+            if (acc != null) {
+                for (int j = 0; j < c; ++j) {
+                    acc.multiplyAssign(acc);
+                }
+            }
+
+            // sort the bases into buckets according to their digit
+            final int shift = window * c;
+            int top = 0;
+            for (int i = 0; i < count; ++i) {
+                final int digit = getBits(exponents[i], shift, c);
+                if (digit != 0) {
+                    bucket[digit] = multiply(bucket[digit], bases[i]);
+                    top = Math.max(top, digit);
+                }
+            }
+
+            // sum_d bucket[d]^d, computed with running products
+            GroupElement running = null;
+            GroupElement sum = null;
+            for (int d = top; d > 0; --d) {
+                if (bucket[d] != null) {
+                    running = multiply(running, bucket[d]);
+                    bucket[d] = null;
+                }
+                if (running != null) {
+                    sum = multiply(sum, running);
+                }
+            }
+            if (sum != null) {
+                acc = multiply(acc, sum);
+            }
+        }
+        return acc;
+    }
+
+    /**
+     * Multiplies two elements, either of which may be <code>null</code> to
+     * represent the identity. If <code>acc</code> is not <code>null</code>,
+     * it is updated in place; <code>val</code> is never modified.
+     * @param acc an accumulator owned by the caller, or <code>null</code>.
+     * @param val a value, or <code>null</code>.
+     * @return <code>acc * val</code>, or <code>null</code> for the identity.
+     */
+    private static GroupElement multiply(final GroupElement acc,
+            final GroupElement val) {
+        if (val == null) {
+            return acc;
+        }
+        if (acc == null) {
+            // make a copy, since val may be owned by someone else
+            return val.getGroup().getIdentity().multiplyAssign(val);
+        }
+        return acc.multiplyAssign(val);
+    }
+
+    /**
+     * Recodes a positive exponent into sliding-window digits. The returned
+     * array holds, at each bit position, either <code>0</code> or an odd
+     * digit smaller than <code>2^w</code> such that
+     * <code>e = sum(digits[j] * 2^j)</code>.
+     * @param e the exponent.
+     * @param length the length of the returned array; must be at least the
+     * bit length of <code>e</code>.
+     * @param w the window size.
+     * @return the recoded exponent.
+     */
+    static int[] recodeSlidingWindow(final BigInteger e, final int length,
+            final int w) {
+        final int[] digits = new int[length];
+        final int bitLength = e.bitLength();
+        int j = 0;
+        while (j < bitLength) {
+            if (!e.testBit(j)) {
+                ++j;
+                continue;
+            }
+            final int value = getBits(e, j, Math.min(w, bitLength - j));
+            digits[j] = value;
+            j += w;
+        }
+        return digits;
+    }
+
+    /**
+     * Returns <code>len</code> bits of <code>e</code>, starting at bit
+     * <code>offset</code>.
+     * @param e a positive integer.
+     * @param offset the index of the least significant bit to return.
+     * @param len the number of bits to return (at most 31).
+     * @return the requested bits.
+     */
+    private static int getBits(final BigInteger e, final int offset,
+            final int len) {
+        int retVal = 0;
+        for (int i = len - 1; i >= 0; --i) {
+            retVal <<= 1;
+            if (e.testBit(offset + i)) {
+                retVal |= 1;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Selects the window size minimizing the cost of the interleaved method
+     * for exponents of a given size.
+     * @param bits the exponent bit length.
+     * @return the window size.
+     */
+    private static int getStrausWindow(final int bits) {
+        int best = 1;
+        for (int w = 2; w <= MAX_STRAUS_WINDOW; ++w) {
+            if (getStrausCost(1, bits, w) < getStrausCost(1, bits, best)) {
+                best = w;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Selects the window size minimizing the cost of the bucket method.
+     * @param n the number of bases.
+     * @param bits the exponent bit length.
+     * @return the window size.
+     */
+    private static int getBucketWindow(final int n, final int bits) {
+        int best = 1;
+        for (int c = 2; c <= MAX_BUCKET_WINDOW; ++c) {
+            if (getBucketCost(n, bits, c) < getBucketCost(n, bits, best)) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Estimates the number of group operations of the interleaved method.
+     * @param n the number of bases.
+     * @param bits the exponent bit length.
+     * @param w the window size.
+     * @return the estimated number of group operations.
+     */
+    private static long getStrausCost(final int n, final int bits,
+            final int w) {
+        // shared squarings, plus per base: table and one multiplication
+        // per window
+        return bits + (long) n * ((1 << (w - 1)) + bits / (w + 1));
+    }
+
+    /**
+     * Estimates the number of group operations of the bucket method.
+     * @param n the number of bases.
+     * @param bits the exponent bit length.
+     * @param c the window size.
+     * @return the estimated number of group operations.
+     */
+    private static long getBucketCost(final int n, final int bits,
+            final int c) {
+        // shared squarings, plus per window: one multiplication per base
+        // and two per bucket
+        final int windows = (bits + c - 1) / c;
+        return bits + (long) windows * (n + (2L << c));
+    }
+
+}
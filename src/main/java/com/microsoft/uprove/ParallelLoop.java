@@ -0,0 +1,169 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * Runs the iterations of a loop over the tokens of a protocol instance,
+ * optionally spreading them over the threads of an {@link Executor}.
+ * <p>
+ * The calling thread takes part in the work: iterations are claimed one at a
+ * time by whichever thread is free, so the loop completes even if the
+ * executor never runs the submitted tasks (for instance, when it is
+ * saturated by the caller's own tasks). Iterations must be independent of
+ * each other; all randomness must have been drawn before the loop is run,
+ * so that the results do not depend on the scheduling.
+ * </p>
+ */
+final class ParallelLoop {
+
+    /**
+     * The body of a loop.
+     */
+    interface Body {
+        /**
+         * Runs one iteration of the loop.
+         * @param i the iteration index.
+         * @throws IOException if an input of the iteration is malformed.
+         */
+        void run(int i) throws IOException;
+    }
+
+    private final int count;
+    private final Body body;
+    private final AtomicInteger next = new AtomicInteger();
+
+    // guarded by this
+    private int pending;
+    private Throwable failure;
+
+    /**
+     * Private constructor; use {@link #run(Executor, int, Body)}.
+     */
+    private ParallelLoop(final int count, final Body body) {
+        this.count = count;
+        this.body = body;
+        this.pending = count;
+    }
+
+    /**
+     * Runs <code>body</code> for every index from <code>0</code> to
+     * <code>count - 1</code>, and waits for all iterations to complete.
+     * @param executor the executor on which to run the iterations, or
+     * <code>null</code> to run them all on the calling thread.
+     * @param count the number of iterations.
+     * @param body the loop body.
+     * @throws IOException if an iteration throws one. If several iterations
+     * fail, the first failure observed is thrown; iterations that have not
+     * started by then are skipped.
+     */
+    static void run(final Executor executor, final int count,
+            final Body body) throws IOException {
+        if (executor == null || count <= 1) {
+            for (int i = 0; i < count; i++) {
+                body.run(i);
+            }
+            return;
+        }
+
+        final ParallelLoop loop = new ParallelLoop(count, body);
+        final Runnable worker = new Runnable() {
+            public void run() {
+                loop.work();
+            }
+        };
+        try {
+            for (int i = 1; i < count; i++) {
+                executor.execute(worker);
+            }
+        } catch (RejectedExecutionException ree) {
+            // the calling thread will pick up the remaining iterations
+        }
+        loop.work();
+        loop.await();
+    }
+
+    /**
+     * Claims and runs iterations until none are left.
+     */
+    private void work() {
+        int i;
+        while ((i = next.getAndIncrement()) < count) {
+            try {
+                if (!hasFailed()) {
+                    body.run(i);
+                }
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                done();
+            }
+        }
+    }
+
+    private synchronized boolean hasFailed() {
+        return failure != null;
+    }
+
+    private synchronized void fail(final Throwable t) {
+        if (failure == null) {
+            failure = t;
+        }
+    }
+
+    private synchronized void done() {
+        if (--pending == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits for the iterations claimed by other threads, then rethrows the
+     * first failure, if any.
+     * @throws IOException if an iteration threw one.
+     */
+    private synchronized void await() throws IOException {
+        boolean interrupted = false;
+        while (pending > 0) {
+            try {
+                wait();
+            } catch (InterruptedException ie) {
+                // the other threads are still writing our results; keep
+                // waiting, and restore the interrupt status afterwards
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            AssertionError ae = new AssertionError("Impossible exception");
+            ae.initCause(failure);
+            throw ae;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.IOException;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+/**
+ * A U-Prove key and token prepared for presentation.
+ * <p>
+ * Every presentation proof needs the token decoded and validated, the
+ * <code>x</code> values of its attributes and token information, the token
+ * identifier, the hash state after the identifier with which the challenge
+ * starts, and the decoded private key. None of these depend on the proof,
+ * so a Prover presenting the same token many times can prepare it once and
+ * pass the prepared token to
+ * {@link PresentationProtocol#generatePresentationProof(PreparedToken, int[], byte[], byte[])}.
+ * Streamed attributes (see {@link AttributeSource}) are read once, when the
+ * token is prepared.
+ * </p>
+ * <p>
+ * A prepared token holds the token private key and the attribute values.
+ * It is immutable and can be used by several threads at once.
+ * </p>
+ */
+public final class PreparedToken {
+
+    private final IssuerParametersInternal ip;
+    private final UProveTokenInternal upt;
+    private final UProveKeyAndToken upkt;
+    private final byte[][] attributes;
+    private final boolean[] streamed;
+    private final ZqElement[] x;
+    private final byte[] tokenID;
+    private final ZqElement privateKey;
+    // hash state after UIDt, or null
+    private final HashMidstate challengeMidstate;
+
+    /**
+     * Prepares a U-Prove key and token.
+     * @param ip the issuer parameters under which the U-Prove token was
+     * issued.
+     * @param upkt the U-Prove key and token.
+     * @param attributes the list of all token attributes.
+     * @throws IOException if an argument is malformed.
+     */
+    public PreparedToken(final IssuerParameters ip,
+            final UProveKeyAndToken upkt, final byte[][] attributes)
+            throws IOException {
+        this(IssuerParametersInternal.generate(ip), upkt, attributes, null);
+    }
+
+    /**
+     * Prepares a U-Prove key and token some of whose attributes are
+     * streamed. Streamed attributes can't be disclosed.
+     * @param ip the issuer parameters under which the U-Prove token was
+     * issued.
+     * @param upkt the U-Prove key and token.
+     * @param attributes the list of all token attributes.
+     * @param attributeSources an array of the same length as
+     * <code>attributes</code>, whose non-null entries replace the
+     * corresponding attributes (which may be <code>null</code>).
+     * @throws IOException if an argument is malformed, or an attribute
+     * source cannot be read.
+     */
+    public PreparedToken(final IssuerParameters ip,
+            final UProveKeyAndToken upkt, final byte[][] attributes,
+            final AttributeSource[] attributeSources) throws IOException {
+        this(IssuerParametersInternal.generate(ip), upkt, attributes,
+            attributeSources);
+    }
+
+    /**
+     * Prepares a U-Prove key and token.
+     * @param ipi the decoded issuer parameters.
+     * @param upkt the U-Prove key and token.
+     * @param attributes the list of all token attributes.
+     * @param attributeSources the sources of the streamed attributes, or
+     * <code>null</code>.
+     * @throws IOException if an argument is malformed, or an attribute
+     * source cannot be read.
+     */
+    PreparedToken(final IssuerParametersInternal ipi,
+            final UProveKeyAndToken upkt, final byte[][] attributes,
+            final AttributeSource[] attributeSources) throws IOException {
+        this.ip = ipi;
+        this.upt = UProveTokenInternal.generate(ipi, upkt.getToken());
+        this.upkt = upkt;
+        this.attributes = (byte[][]) attributes.clone();
+        this.streamed = new boolean[attributes.length];
+        if (attributeSources != null) {
+            if (attributeSources.length != attributes.length) {
+                throw new IllegalArgumentException("attributes and attributeSources array must have the same length");
+            }
+            for (int i = 0; i < attributeSources.length; i++) {
+                streamed[i] = attributeSources[i] != null;
+            }
+        }
+        this.x = ProtocolHelper.computeXArray(ipi, attributes,
+            attributeSources, upt.getTokenInformation());
+        this.tokenID = ProtocolHelper.computeTokenID(ipi, upt);
+        final HashFunction H = ipi.getHashFunction();
+        H.update(tokenID);
+        this.challengeMidstate = HashMidstate.capture(H);
+        if (challengeMidstate == null) {
+            ipi.releaseHashFunction(H);
+        }
+        this.privateKey = ipi.getGroup().getZq().getPositiveElement(
+            upkt.getTokenPrivateKey());
+    }
+
+    /**
+     * Returns the prepared U-Prove key and token.
+     * @return the U-Prove key and token.
+     */
+    public UProveKeyAndToken getKeyAndToken() {
+        return upkt;
+    }
+
+    /**
+     * Returns the token identifier <code>UIDt</code>.
+     * @return the token identifier.
+     */
+    public byte[] getTokenID() {
+        return (byte[]) tokenID.clone();
+    }
+
+    /**
+     * Returns the decoded issuer parameters.
+     * @return the issuer parameters.
+     */
+    IssuerParametersInternal getIssuerParameters() {
+        return ip;
+    }
+
+    /**
+     * Returns the decoded token.
+     * @return the token.
+     */
+    UProveTokenInternal getToken() {
+        return upt;
+    }
+
+    /**
+     * Returns the value of an attribute.
+     * @param index the attribute index, one-based.
+     * @return the attribute value.
+     * @throws IllegalArgumentException if the attribute is streamed.
+     */
+    byte[] getAttribute(final int index) {
+        if (streamed[index - 1]) {
+            throw new IllegalArgumentException("streamed attribute " + index + " can't be disclosed");
+        }
+        return attributes[index - 1];
+    }
+
+    /**
+     * Returns the <code>x</code> values: <code>1</code>, the attribute
+     * values <code>x_1, ..., x_n</code> and <code>x_t</code>. The caller
+     * must not modify the array nor its elements.
+     * @return the <code>x</code> values.
+     */
+    ZqElement[] getX() {
+        return x;
+    }
+
+    /**
+     * Returns the token identifier without copying it. The caller must not
+     * modify it.
+     * @return the token identifier.
+     */
+    byte[] getTokenIDInternal() {
+        return tokenID;
+    }
+
+    /**
+     * Returns the hash state after the token identifier, with which the
+     * challenge of a presentation proof starts.
+     * @return the hash state, or <code>null</code> if it isn't available.
+     */
+    HashMidstate getChallengeMidstate() {
+        return challengeMidstate;
+    }
+
+    /**
+     * Returns the decoded token private key. The caller must not modify it.
+     * @return the private key.
+     */
+    ZqElement getPrivateKey() {
+        return privateKey;
+    }
+}
@@ -0,0 +1,212 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+/**
+ * A pool of precomputed Prover values for presenting a U-Prove token.
+ * <p>
+ * The first step of a presentation proof raises the token public key and
+ * the generators of the undisclosed attributes to random exponents
+ * <code>w</code>. These values only depend on the token and on which
+ * attributes are disclosed, so they can be computed ahead of time, for
+ * instance while waiting for the Verifier's message. A presentation proof
+ * generated with
+ * {@link PresentationProtocol#generatePresentationProof(IssuerParameters, int[], byte[], byte[], UProveKeyAndToken, byte[][], PresentationPrecomputationPool)}
+ * takes its values from the pool, which leaves the hashing and a few
+ * operations in <code>Z_q</code> to compute when the message arrives. For
+ * Device-protected tokens, the Device's contribution is still obtained when
+ * the proof is generated. When the pool is empty, the values are computed on
+ * the spot.
+ * </p>
+ * <p>
+ * The pool holds secret values: each set of values is handed out to exactly
+ * one proof, and is removed from the pool when it is. The pool is filled by
+ * calling {@link #fill()}, and, if an {@link Executor} is given, in the
+ * background whenever it is down to half of its capacity. All methods are
+ * thread-safe.
+ * </p>
+ */
+public final class PresentationPrecomputationPool {
+
+    /**
+     * The precomputed values of one presentation proof.
+     */
+    static final class Randomizers {
+        private final ZqElement[] w;
+        private final GroupElement product;
+
+        Randomizers(final ZqElement[] w, final GroupElement product) {
+            this.w = w;
+            this.product = product;
+        }
+
+        /**
+         * Returns the randomizers.
+         * @return the <code>w</code> values.
+         */
+        ZqElement[] getW() {
+            return w;
+        }
+
+        /**
+         * Returns the randomizer bases raised to the randomizers.
+         * @return the product.
+         */
+        GroupElement getProduct() {
+            return product;
+        }
+    }
+
+    private final IssuerParametersInternal ip;
+    private final UProveTokenInternal upt;
+    private final int[] undisclosed;
+    private final GroupElement[] bases;
+    private final int capacity;
+    private final Executor executor;
+
+    // used as a stack; guarded by this
+    private final Randomizers[] pool;
+    private int size;
+    private boolean refilling;
+
+    private final Runnable refill = new Runnable() {
+        public void run() {
+            try {
+                fill();
+            } finally {
+                synchronized (PresentationPrecomputationPool.this) {
+                    refilling = false;
+                }
+            }
+        }
+    };
+
+    /**
+     * Constructs an empty pool.
+     * @param ip the issuer parameters under which the U-Prove token was
+     * issued.
+     * @param upt the U-Prove token to be presented.
+     * @param disclosed the ordered list of disclosed token attribute indices.
+     * @param capacity the maximum number of proofs for which the pool holds
+     * values.
+     * @param executor the executor on which to refill the pool in the
+     * background, or <code>null</code> if the pool is only filled by calls
+     * to {@link #fill()}.
+     * @throws IOException if an argument is malformed.
+     * @throws IllegalArgumentException if <code>capacity</code> is less than
+     * 1.
+     */
+    public PresentationPrecomputationPool(final IssuerParameters ip,
+            final UProveToken upt, final int[] disclosed, final int capacity,
+            final Executor executor) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.ip = IssuerParametersInternal.generate(ip);
+        this.upt = UProveTokenInternal.generate(this.ip, upt);
+        this.undisclosed = ProtocolHelper.getUndisclosedIndices(
+                this.ip.getEncodingBytes().length, disclosed);
+        this.bases = PresentationProtocol.getRandomizerBases(this.ip,
+                this.upt, undisclosed);
+        this.capacity = capacity;
+        this.executor = executor;
+        this.pool = new Randomizers[capacity];
+    }
+
+    /**
+     * Returns the maximum number of proofs for which the pool holds values.
+     * @return the capacity of the pool.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of proofs for which the pool currently holds values.
+     * @return the size of the pool.
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Computes values until the pool is full. The values are computed one
+     * proof at a time without holding the pool's lock, so that proofs can be
+     * generated while the pool is being filled.
+     */
+    public void fill() {
+        final FieldZq Zq = ip.getGroup().getZq();
+        while (getSize() < capacity) {
+            final ZqElement[] w = Zq.getRandomElements(bases.length, false);
+            final Randomizers randomizers = new Randomizers(w,
+                    ProtocolHelper.computeProduct(ip, bases, w));
+            synchronized (this) {
+                if (size == capacity) {
+                    return;
+                }
+                pool[size++] = randomizers;
+            }
+        }
+    }
+
+    /**
+     * Removes the values of one proof from the pool.
+     * @param ipi the issuer parameters of the proof.
+     * @param upti the U-Prove token of the proof.
+     * @param undisclosed the undisclosed token attribute indices of the proof.
+     * @return the values, or <code>null</code> if the pool is empty.
+     * @throws IllegalArgumentException if the pool was created for another
+     * token or another set of disclosed attributes.
+     */
+    Randomizers take(final IssuerParametersInternal ipi,
+            final UProveTokenInternal upti, final int[] undisclosed) {
+        if (!Arrays.equals(ipi.getParametersUID(), ip.getParametersUID())
+                || !ipi.getGroup().equals(ip.getGroup())
+                || !upti.getPublicKey().equals(upt.getPublicKey())
+                || upti.isDeviceProtected() != upt.isDeviceProtected()
+                || !Arrays.equals(undisclosed, this.undisclosed)) {
+            throw new IllegalArgumentException(
+                "precomputation pool belongs to another token or disclosure");
+        }
+
+        Randomizers randomizers = null;
+        boolean startRefill = false;
+        synchronized (this) {
+            if (size > 0) {
+                randomizers = pool[--size];
+                // don't keep references to values that have been handed out
+                pool[size] = null;
+            }
+            if (executor != null && !refilling && size < capacity / 2 + 1) {
+                refilling = true;
+                startRefill = true;
+            }
+        }
+        if (startRefill) {
+            try {
+                executor.execute(refill);
+            } catch (RuntimeException re) {
+                // the executor won't take it; try again on the next take
+                synchronized (this) {
+                    refilling = false;
+                }
+            }
+        }
+        return randomizers;
+    }
+}
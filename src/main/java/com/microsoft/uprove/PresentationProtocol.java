@@ -12,7 +12,13 @@
 package com.microsoft.uprove;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 import com.microsoft.uprove.FieldZq.ZqElement;
 import com.microsoft.uprove.ProtocolHelper.GenerateChallengeOutput;
 
@@ -40,7 +46,7 @@ public class PresentationProtocol {
      * @throws IOException if an argument is malformed.
      */
 	public static PresentationProof generatePresentationProof(IssuerParameters ip, int[] disclosed, byte[] m, byte[] md, UProveKeyAndToken upkt, byte[][] attributes) throws IOException {
-		return generatePresentationProof(ip, disclosed, m, md, upkt, attributes, null);
+		return generatePresentationProof(ip, disclosed, m, md, upkt, attributes, null, null);
 	}
 
     /**
@@ -56,39 +62,161 @@ public class PresentationProtocol {
      * @throws IOException if an argument is malformed.
      */
 	public static PresentationProof generatePresentationProof(IssuerParameters ip, int[] disclosed, byte[] m, byte[] md, UProveKeyAndToken upkt, byte[][] attributes, byte[][] preGenW) throws IOException {
-		
-			IssuerParametersInternal ipi = IssuerParametersInternal.generate(ip);  
-			UProveTokenInternal upti = UProveTokenInternal.generate(ipi, upkt.getToken());
-			
-			PrimeOrderGroup Gq = ipi.getGroup();
-			FieldZq Zq = Gq.getZq();
-			ZqElement[] x = ProtocolHelper.computeXArray(ipi, attributes, upti.getTokenInformation());
-			int n = ipi.getEncodingBytes().length;
-			int nUndisclosed = n - disclosed.length;
-			int numRandomizer = nUndisclosed + 1 + (upti.isDeviceProtected() ? 1 : 0);
-			int[] undisclosed = ProtocolHelper.getUndisclosedIndices(n, disclosed);
-			
-			ZqElement[] w;
-			if (preGenW == null) {
-				w = Zq.getRandomElements(numRandomizer, false);
-			} else {
-				if (preGenW.length != numRandomizer) {
-					throw new IllegalArgumentException("Expected size for preGenW is " + nUndisclosed + ", actual size is " + preGenW.length);
+		return generatePresentationProof(ip, disclosed, m, md, upkt, attributes, null, preGenW);
+	}
+
+    /**
+     * Generates a presentation proof for a token some of whose attributes
+     * are streamed. Streamed attributes must be undisclosed, since the
+     * disclosed attribute values are part of the proof.
+     * @param ip the issuer parameters under which the U-Prove token was issued.
+     * @param disclosed the ordered list of disclosed token attribute indices.
+     * @param m the protocol message.
+     * @param md the protocol message for Device.
+     * @param upkt the U-Prove key and token to use.
+     * @param attributes the list of all token attributes.
+	 * @param attributeSources an array of the same length as
+	 * <code>attributes</code>, whose non-null entries replace the
+	 * corresponding attributes (which may be <code>null</code>).
+     * @return a presentation proof.
+     * @throws IOException if an argument is malformed, or an attribute
+     * source cannot be read.
+     * @throws IllegalArgumentException if a streamed attribute is disclosed.
+     * @see AttributeSource
+     */
+	public static PresentationProof generatePresentationProof(IssuerParameters ip, int[] disclosed, byte[] m, byte[] md, UProveKeyAndToken upkt, byte[][] attributes, AttributeSource[] attributeSources) throws IOException {
+		return generatePresentationProof(ip, disclosed, m, md, upkt, attributes, attributeSources, null);
+	}
+
+	/**
+	 * Generates a presentation proof.
+	 * @param attributeSources the sources of the streamed attributes, or
+	 * <code>null</code>.
+	 * @param preGenW a list of pre-generated <code>w</code> values, or
+	 * <code>null</code>.
+	 */
+	private static PresentationProof generatePresentationProof(IssuerParameters ip, int[] disclosed, byte[] m, byte[] md, UProveKeyAndToken upkt, byte[][] attributes, AttributeSource[] attributeSources, byte[][] preGenW) throws IOException {
+		if (attributeSources != null) {
+			// check before the sources are read
+			for (int i=0; i<disclosed.length; i++) {
+				if (attributeSources[disclosed[i]-1] != null) {
+					throw new IllegalArgumentException("streamed attribute " + disclosed[i] + " can't be disclosed");
 				}
-				w = ProtocolHelper.getZqElementArray(Zq, preGenW);
 			}
+		}
+		PreparedToken token = new PreparedToken(IssuerParametersInternal.generate(ip), upkt, attributes, attributeSources);
+		return generatePresentationProof(token, disclosed, m, md, preGenW);
+	}
 
-			GroupElement[] bases = new GroupElement[numRandomizer];
-			bases[0] = upti.getPublicKey();
-			int bIndex = 1;
-			GroupElement[] g = ipi.getPublicKey();
-			for (int i=0; i<nUndisclosed; i++) {
-				bases[bIndex++] = g[undisclosed[i]];
+    /**
+     * Generates a presentation proof for a prepared token.
+     * @param token the prepared U-Prove key and token.
+     * @param disclosed the ordered list of disclosed token attribute indices.
+     * @param m the protocol message.
+     * @param md the protocol message for Device.
+     * @return a presentation proof.
+     * @throws IOException if an argument is malformed.
+     * @throws IllegalArgumentException if a streamed attribute is disclosed.
+     */
+	public static PresentationProof generatePresentationProof(PreparedToken token, int[] disclosed, byte[] m, byte[] md) throws IOException {
+		return generatePresentationProof(token, disclosed, m, md, (byte[][]) null);
+	}
+
+	/**
+	 * Generates a presentation proof for a prepared token.
+	 * @param preGenW a list of pre-generated <code>w</code> values, or
+	 * <code>null</code>.
+	 */
+	private static PresentationProof generatePresentationProof(PreparedToken token, int[] disclosed, byte[] m, byte[] md, byte[][] preGenW) throws IOException {
+		IssuerParametersInternal ipi = token.getIssuerParameters();
+		UProveTokenInternal upti = token.getToken();
+		FieldZq Zq = ipi.getGroup().getZq();
+		int[] undisclosed = ProtocolHelper.getUndisclosedIndices(ipi.getEncodingBytes().length, disclosed);
+		int numRandomizer = getNumberOfRandomizers(upti, undisclosed);
+
+		ZqElement[] w;
+		if (preGenW == null) {
+			w = Zq.getRandomElements(numRandomizer, false);
+		} else {
+			if (preGenW.length != numRandomizer) {
+				throw new IllegalArgumentException("Expected size for preGenW is " + numRandomizer + ", actual size is " + preGenW.length);
 			}
-			if (upti.isDeviceProtected()) {
-				bases[bIndex++] = ipi.getDeviceGenerator();
+			w = ProtocolHelper.getZqElementArray(Zq, preGenW);
+		}
+		GroupElement temp = ProtocolHelper.computeProduct(ipi, getRandomizerBases(ipi, upti, undisclosed), w);
+
+		return generatePresentationProof(token, disclosed, undisclosed, m, md, w, temp);
+	}
+
+    /**
+     * Generates a presentation proof using precomputed values. If the pool
+     * is empty, the values are computed on the spot.
+     * @param ip the issuer parameters under which the U-Prove token was issued.
+     * @param disclosed the ordered list of disclosed token attribute indices.
+     * @param m the protocol message.
+     * @param md the protocol message for Device.
+     * @param upkt the U-Prove key and token to use.
+     * @param attributes the list of all token attributes.
+	 * @param pool the pool of precomputed values for the token and the
+	 * disclosed attributes.
+     * @return a presentation proof.
+     * @throws IOException if an argument is malformed.
+     * @throws IllegalArgumentException if the pool was created for another
+     * token or another set of disclosed attributes.
+     */
+	public static PresentationProof generatePresentationProof(IssuerParameters ip, int[] disclosed, byte[] m, byte[] md, UProveKeyAndToken upkt, byte[][] attributes, PresentationPrecomputationPool pool) throws IOException {
+		return generatePresentationProof(new PreparedToken(ip, upkt, attributes), disclosed, m, md, pool);
+	}
+
+    /**
+     * Generates a presentation proof for a prepared token using precomputed
+     * values. If the pool is empty, the values are computed on the spot.
+     * @param token the prepared U-Prove key and token.
+     * @param disclosed the ordered list of disclosed token attribute indices.
+     * @param m the protocol message.
+     * @param md the protocol message for Device.
+	 * @param pool the pool of precomputed values for the token and the
+	 * disclosed attributes.
+     * @return a presentation proof.
+     * @throws IOException if an argument is malformed.
+     * @throws IllegalArgumentException if the pool was created for another
+     * token or another set of disclosed attributes, or if a streamed
+     * attribute is disclosed.
+     */
+	public static PresentationProof generatePresentationProof(PreparedToken token, int[] disclosed, byte[] m, byte[] md, PresentationPrecomputationPool pool) throws IOException {
+		IssuerParametersInternal ipi = token.getIssuerParameters();
+		int[] undisclosed = ProtocolHelper.getUndisclosedIndices(ipi.getEncodingBytes().length, disclosed);
+
+		PresentationPrecomputationPool.Randomizers randomizers = pool.take(ipi, token.getToken(), undisclosed);
+		if (randomizers == null) {
+			return generatePresentationProof(token, disclosed, m, md, (byte[][]) null);
+		}
+		return generatePresentationProof(token, disclosed, undisclosed, m, md, randomizers.getW(), randomizers.getProduct());
+	}
+
+	/**
+	 * Completes a presentation proof.
+	 * @param w the randomizers.
+	 * @param temp the product of the randomizer bases raised to
+	 * <code>w</code>, without the Device's contribution. It is modified by
+	 * this method.
+	 */
+	private static PresentationProof generatePresentationProof(PreparedToken token, int[] disclosed, int[] undisclosed, byte[] m, byte[] md, ZqElement[] w, GroupElement temp) throws IOException {
+			IssuerParametersInternal ipi = token.getIssuerParameters();
+			UProveTokenInternal upti = token.getToken();
+			PrimeOrderGroup Gq = ipi.getGroup();
+			FieldZq Zq = Gq.getZq();
+			ZqElement[] x = token.getX();
+			int nUndisclosed = undisclosed.length;
+			int numRandomizer = w.length;
+
+			byte[][] disclosedAttributes = new byte[disclosed.length][];
+			ZqElement[] disclosedX = new ZqElement[disclosed.length];
+			for (int i=0; i<disclosed.length; i++) {
+				disclosedAttributes[i] = token.getAttribute(disclosed[i]);
+				disclosedX[i] = x[disclosed[i]];
 			}
-			GroupElement temp = ProtocolHelper.computeProduct(bases, w);
+
 			if (upti.isDeviceProtected()) {
 				temp.multiplyAssign(Gq.getElement(DeviceManager.GetInitialWitness()));
 			}
@@ -96,28 +224,59 @@ public class PresentationProtocol {
 			HashFunction H = ipi.getHashFunction();
 			H.update(temp);
 			byte[] a = H.getByteDigest();
+			ipi.releaseHashFunction(H);
 			
-			byte[][] disclosedAttributes = new byte[disclosed.length][];
-			ZqElement[] disclosedX = new ZqElement[disclosed.length];
-			for (int i=0; i<disclosed.length; i++) {
-				disclosedAttributes[i] = attributes[disclosed[i]-1]; // attributes array is zero-based
-				disclosedX[i] = x[disclosed[i]];
-			}
-			
-			GenerateChallengeOutput gco = ProtocolHelper.genChallenge(ipi, upti, a, m, md, disclosed, disclosedX);
+			GenerateChallengeOutput gco = ProtocolHelper.genChallenge(ipi, upti, token.getTokenIDInternal(), token.getChallengeMidstate(), a, m, md, disclosed, disclosedX);
 			ZqElement c = gco.getC();
-			ZqElement r0 = c.multiply(Zq.getPositiveElement(upkt.getTokenPrivateKey())).add(w[0]);
-			ZqElement[] r = new ZqElement[nUndisclosed];
+			// r0 = c * alpha^-1 + w0, r_i = -c * x_i + w_i
+			ZqAccumulator acc = new ZqAccumulator(Zq);
+			ZqAccumulator negC = new ZqAccumulator(Zq).set(c).negate();
+			byte[] r0 = acc.set(c).multiply(token.getPrivateKey()).add(w[0]).toByteArray();
+			byte[][] r = new byte[nUndisclosed][];
 			for (int i=0; i<nUndisclosed; i++) {
-				r[i] = c.negate().multiply(x[undisclosed[i]]).add(w[i+1]);
+				r[i] = acc.set(negC).multiply(x[undisclosed[i]]).add(w[i+1]).toByteArray();
 			}
-			ZqElement rd = null;
+			byte[] rd = null;
 			if (upti.isDeviceProtected()) {
-				rd = Zq.getPositiveElement(DeviceManager.GetDeviceResponse(md, gco.getMdPrime())).add(w[numRandomizer-1]);
+				rd = acc.set(Zq.getPositiveElement(DeviceManager.GetDeviceResponse(md, gco.getMdPrime()))).add(w[numRandomizer-1]).toByteArray();
 			}
+			acc.clear();
 			
-			return new PresentationProof(disclosedAttributes, a, r0.toByteArray(), ProtocolHelper.getEncodedArray(r), upti.isDeviceProtected() ? rd.toByteArray() : null);
+			return new PresentationProof(disclosedAttributes, a, r0, r, rd);
+		}
+
+	/**
+	 * Returns the number of randomizers of a presentation proof.
+	 * @param upti the U-Prove token.
+	 * @param undisclosed the undisclosed token attribute indices.
+	 * @return the number of randomizers.
+	 */
+	static int getNumberOfRandomizers(UProveTokenInternal upti, int[] undisclosed) {
+		return undisclosed.length + 1 + (upti.isDeviceProtected() ? 1 : 0);
+	}
+
+	/**
+	 * Returns the bases raised to the randomizers of a presentation proof:
+	 * the token public key, the generators of the undisclosed attributes,
+	 * and the Device generator if the token is Device-protected.
+	 * @param ipi the issuer parameters under which the U-Prove token was issued.
+	 * @param upti the U-Prove token.
+	 * @param undisclosed the undisclosed token attribute indices.
+	 * @return the randomizer bases.
+	 */
+	static GroupElement[] getRandomizerBases(IssuerParametersInternal ipi, UProveTokenInternal upti, int[] undisclosed) {
+		GroupElement[] bases = new GroupElement[getNumberOfRandomizers(upti, undisclosed)];
+		bases[0] = upti.getPublicKey();
+		int bIndex = 1;
+		GroupElement[] g = ipi.getPublicKey();
+		for (int i=0; i<undisclosed.length; i++) {
+			bases[bIndex++] = g[undisclosed[i]];
+		}
+		if (upti.isDeviceProtected()) {
+			bases[bIndex++] = ipi.getDeviceGenerator();
 		}
+		return bases;
+	}
 
 	/**
 	 * Verifies a presentation proof.
@@ -130,66 +289,269 @@ public class PresentationProtocol {
 	 * @throws IOException if an argument is malformed.
 	 */
 	public static void verifyPresentationProof(IssuerParameters ip, int[] disclosed, byte[] m, byte[] md, UProveToken upt, PresentationProof pp) throws InvalidProofException, IOException {
-		
 		IssuerParametersInternal ipi = IssuerParametersInternal.generate(ip);
-		UProveTokenInternal upti = UProveTokenInternal.generate(ipi, upt);
-		
-		// arg validation
-		if (disclosed.length != pp.getDisclosedAttributes().length) {
-			throw new InvalidProofException("Mismatch in number of disclosed attributes");
+		checkDisclosed(ipi, disclosed);
+		if (!isDeviceProtectionValid(ipi, upt)) {
+			throw new InvalidProofException("token claims Device protection not supported by the Issuer parameters.");
 		}
+		VerifiedTokenCache.Entry token = VerifiedTokenCache.get(ipi, upt);
+		if (token == null) {
+			UProveTokenInternal upti = UProveTokenInternal.generate(ipi, upt);
+			checkToken(ipi, upti);
+			if (ConfigImpl.validateTokenElements()
+					&& !ipi.getGroup().getInvalidElements(new GroupElement[] {upti.getPublicKey(), upti.getSigmaZ()}, null).isEmpty()) {
+				throw new InvalidProofException("token is not in the group.");
+			}
+			if (!ProtocolHelper.isTokenSignatureValid(ipi, upti)) {
+				throw new InvalidProofException("token signature is invalid.");
+			}
+			token = VerifiedTokenCache.put(ipi, upt, upti);
+		}
+		verifyPresentationProof(ipi, token.getToken(), token.getTokenID(), disclosed, m, md, pp);
+	}
+
+	/**
+	 * Checks that a token refers to the Issuer parameters it is verified
+	 * with.
+	 * @param ipi the issuer parameters.
+	 * @param upti the U-Prove token.
+	 * @throws IllegalArgumentException if the token was issued under other
+	 * Issuer parameters.
+	 */
+	private static void checkToken(IssuerParametersInternal ipi, UProveTokenInternal upti) {
 		if (!Arrays.equals(upti.getIssuerParametersUID(), ipi.getParametersUID())) {
 			throw new IllegalArgumentException("Issuer parameters UID does not match the one referenced in the token.");
 		}
-		if (!ProtocolHelper.isTokenSignatureValid(ipi, upti)) {
-			throw new InvalidProofException("token signature is invalid.");
+	}
+
+	/**
+	 * Checks that a token only claims Device protection if the Issuer
+	 * parameters support it.
+	 * @param ipi the issuer parameters.
+	 * @param upt the U-Prove token.
+	 * @return <code>false</code> if the token claims Device protection but
+	 * the Issuer parameters do not support a Device.
+	 */
+	private static boolean isDeviceProtectionValid(IssuerParametersInternal ipi, UProveToken upt) {
+		return !upt.isDeviceProtected() || ipi.supportsDevice();
+	}
+
+	/**
+	 * Checks that disclosed attribute indices refer to attributes of the
+	 * Issuer parameters.
+	 * @param ipi the issuer parameters.
+	 * @param disclosed the disclosed attribute indices.
+	 * @throws IllegalArgumentException if an index is out of range.
+	 */
+	private static void checkDisclosed(IssuerParametersInternal ipi, int[] disclosed) {
+		int n = ipi.getEncodingBytes().length;
+		if (disclosed.length > n) {
+			throw new IllegalArgumentException("more disclosed attributes than the Issuer parameters support.");
+		}
+		for (int i=0; i<disclosed.length; i++) {
+			if (disclosed[i] < 1 || disclosed[i] > n) {
+				throw new IllegalArgumentException("invalid disclosed attribute index: " + disclosed[i]);
+			}
+		}
+	}
+
+	/**
+	 * Verifies a batch of presentation proofs. The <code>i</code>-th proof
+	 * is verified as if by calling
+	 * {@link #verifyPresentationProof(IssuerParameters, int[], byte[], byte[], UProveToken, PresentationProof)
+	 * verifyPresentationProof(ip[i], disclosed[i], m[i], md[i], upt[i], pp[i])}.
+	 * Proofs sharing the same <code>IssuerParameters</code> instance share
+	 * the work of preparing the Issuer parameters, and, if token element
+	 * validation is enabled, the group elements of their tokens are
+	 * validated together. Tokens found in the verified token cache skip the
+	 * signature check, and tokens whose signature is checked are added to it.
+	 * @param ip the issuer parameters under which each U-Prove token was issued.
+	 * @param disclosed the ordered list of disclosed token attribute indices of each proof.
+	 * @param m the protocol message of each proof.
+	 * @param md the protocol message for Device of each proof, or <code>null</code>
+	 * if none of the tokens are Device-protected.
+	 * @param upt the U-Prove tokens.
+	 * @param pp the presentation proofs.
+	 * @return an array indicating, for each proof, whether it is valid. A proof
+	 * for which {@link #verifyPresentationProof(IssuerParameters, int[], byte[], byte[], UProveToken, PresentationProof)
+	 * verifyPresentationProof} would throw an exception is reported as invalid.
+	 * @throws IllegalArgumentException if the arrays are not all of the same length.
+	 */
+	public static boolean[] verifyPresentationProofs(IssuerParameters[] ip, int[][] disclosed, byte[][] m, byte[][] md, UProveToken[] upt, PresentationProof[] pp) {
+		int n = pp.length;
+		if (ip.length != n || disclosed.length != n || m.length != n || (md != null && md.length != n) || upt.length != n) {
+			throw new IllegalArgumentException("all arrays must have the same length");
+		}
+
+		// prepare each distinct set of Issuer parameters once, and group the
+		// tokens by Issuer parameters so that their signatures can be
+		// validated together
+		Map<IssuerParameters, IssuerParametersInternal> ipis = new IdentityHashMap<IssuerParameters, IssuerParametersInternal>();
+		Map<IssuerParametersInternal, List<Integer>> batches = new IdentityHashMap<IssuerParametersInternal, List<Integer>>();
+		IssuerParametersInternal[] ipi = new IssuerParametersInternal[n];
+		UProveTokenInternal[] upti = new UProveTokenInternal[n];
+		byte[][] tokenID = new byte[n][];
+		boolean[] signatureValid = new boolean[n];
+		for (int i=0; i<n; i++) {
+			try {
+				ipi[i] = ipis.get(ip[i]);
+				if (ipi[i] == null) {
+					ipi[i] = IssuerParametersInternal.generate(ip[i]);
+					ipis.put(ip[i], ipi[i]);
+					// equal Issuer parameters share their internal form
+					if (!batches.containsKey(ipi[i])) {
+						batches.put(ipi[i], new ArrayList<Integer>());
+					}
+				}
+				checkDisclosed(ipi[i], disclosed[i]);
+				if (disclosed[i].length != pp[i].getDisclosedAttributes().length) {
+					throw new IllegalArgumentException("Mismatch in number of disclosed attributes");
+				}
+				if (!isDeviceProtectionValid(ipi[i], upt[i])) {
+					continue;
+				}
+				VerifiedTokenCache.Entry token = VerifiedTokenCache.get(ipi[i], upt[i]);
+				if (token != null) {
+					upti[i] = token.getToken();
+					tokenID[i] = token.getTokenID();
+					signatureValid[i] = true;
+					continue;
+				}
+				upti[i] = UProveTokenInternal.generate(ipi[i], upt[i]);
+				checkToken(ipi[i], upti[i]);
+				batches.get(ipi[i]).add(Integer.valueOf(i));
+			} catch (IOException e) {
+				// malformed token
+			} catch (RuntimeException e) {
+				// malformed token or disclosed indices
+			}
+		}
+
+		boolean validateElements = ConfigImpl.validateTokenElements();
+		for (Map.Entry<IssuerParametersInternal, List<Integer>> batch : batches.entrySet()) {
+			List<Integer> indices = batch.getValue();
+			if (validateElements) {
+				// drop the tokens whose elements are not in the group
+				GroupElement[] elements = new GroupElement[2 * indices.size()];
+				for (int j=0; j<indices.size(); j++) {
+					UProveTokenInternal token = upti[indices.get(j).intValue()];
+					elements[2*j] = token.getPublicKey();
+					elements[2*j+1] = token.getSigmaZ();
+				}
+				BitSet invalid = batch.getKey().getGroup().getInvalidElements(elements, null);
+				List<Integer> valid = new ArrayList<Integer>(indices.size());
+				for (int j=0; j<indices.size(); j++) {
+					if (!invalid.get(2*j) && !invalid.get(2*j+1)) {
+						valid.add(indices.get(j));
+					}
+				}
+				indices = valid;
+			}
+			UProveTokenInternal[] tokens = new UProveTokenInternal[indices.size()];
+			for (int j=0; j<tokens.length; j++) {
+				tokens[j] = upti[indices.get(j).intValue()];
+			}
+			try {
+				BitSet invalid = ProtocolHelper.getInvalidTokenSignatures(batch.getKey(), tokens);
+				for (int j=0; j<tokens.length; j++) {
+					if (!invalid.get(j)) {
+						int i = indices.get(j).intValue();
+						VerifiedTokenCache.Entry token = VerifiedTokenCache.put(ipi[i], upt[i], upti[i]);
+						upti[i] = token.getToken();
+						tokenID[i] = token.getTokenID();
+						signatureValid[i] = true;
+					}
+				}
+			} catch (IOException e) {
+				// leave the whole batch invalid
+			}
+		}
+
+		boolean[] valid = new boolean[n];
+		for (int i=0; i<n; i++) {
+			if (!signatureValid[i]) {
+				continue;
+			}
+			try {
+				verifyPresentationProof(ipi[i], upti[i], tokenID[i], disclosed[i], m[i], md == null ? null : md[i], pp[i]);
+				valid[i] = true;
+			} catch (InvalidProofException e) {
+				// invalid proof
+			} catch (IOException e) {
+				// malformed proof
+			} catch (RuntimeException e) {
+				// mismatched proof
+			}
+		}
+		return valid;
+	}
+
+	/**
+	 * Verifies a presentation proof for a token whose signature has been
+	 * validated.
+	 * @param ipi the issuer parameters under which the U-Prove token was issued.
+	 * @param upti the U-Prove token.
+	 * @param UIDt the token identifier.
+     * @param disclosed the ordered list of disclosed token attribute indices.
+     * @param m the protocol message.
+	 * @param pp the presentation proof.
+	 * @throws InvalidProofException if the proof is invalid.
+	 * @throws IOException if an argument is malformed.
+	 */
+	private static void verifyPresentationProof(IssuerParametersInternal ipi, UProveTokenInternal upti, byte[] UIDt, int[] disclosed, byte[] m, byte[] md, PresentationProof pp) throws InvalidProofException, IOException {
+		
+		// arg validation
+		if (disclosed.length != pp.getDisclosedAttributes().length) {
+			throw new InvalidProofException("Mismatch in number of disclosed attributes");
 		}
 	
 		// [1, x_d_1, ..., x_d_k, x_t]
 		ZqElement[] disclosedX = ProtocolHelper.computeXArray(ipi, disclosed, pp.getDisclosedAttributes(), upti.getTokenInformation());
-		ZqElement c = ProtocolHelper.genChallenge(ipi, upti, pp.getA(), m, md, disclosed, (ZqElement[]) Arrays.copyOfRange(disclosedX, 1, disclosedX.length-1)).getC();
+		ZqElement c = ProtocolHelper.genChallenge(ipi, upti, UIDt, pp.getA(), m, md, disclosed, (ZqElement[]) Arrays.copyOfRange(disclosedX, 1, disclosedX.length-1)).getC();
 		
+		PrimeOrderGroup Gq = ipi.getGroup();
+		FieldZq Zq = Gq.getZq();
 		GroupElement[] g = ipi.getPublicKey();
 		int tIndex = g.length - (upti.isDeviceProtected() ? 2 : 1);
-		GroupElement[] disclosedG = new GroupElement[disclosed.length + 2];
+		int[] undisclosed = ProtocolHelper.getUndisclosedIndices(ipi.getEncodingBytes().length, disclosed);
+		ZqElement r[] = ProtocolHelper.getZqElementArray(Zq, pp.getR());
+		if (r.length != undisclosed.length) {
+			throw new InvalidProofException("Mismatch in number of undisclosed attributes");
+		}
+
+		// a single product covers both halves of the verification equation:
+		// (g0 * g_d_1^x_d_1 * ... * gt^xt)^(-c) * h^r0 * g_u_1^r_u_1 * ... [* gd^rd]
+		int basesLength = disclosedX.length + undisclosed.length + (upti.isDeviceProtected() ? 2 : 1);
+		GroupElement[] bases = new GroupElement[basesLength];
+		ZqElement[] exponents = new ZqElement[basesLength];
+		int index = 0;
+		ZqElement negC = c.negate();
 		// g_0
-		disclosedG[0] = g[0];
-		// g_t
-		disclosedG[disclosedG.length-1] = g[tIndex];
+		bases[index] = g[0];
+		exponents[index++] = negC;
 		for (int i=0; i<disclosed.length; i++) {
-			disclosedG[i+1] = g[disclosed[i]];
+			bases[index] = g[disclosed[i]];
+			exponents[index++] = disclosedX[i+1].multiply(negC);
 		}
-		GroupElement temp1 = ProtocolHelper.computeProduct(disclosedG, disclosedX).exponentiate(c.negate());
-		
-		PrimeOrderGroup Gq = ipi.getGroup();
-		FieldZq Zq = Gq.getZq();
-		int[] undisclosed = ProtocolHelper.getUndisclosedIndices(ipi.getEncodingBytes().length, disclosed);
-		int basesLength = undisclosed.length + (upti.isDeviceProtected() ? 2 : 1);
-		GroupElement[] bases = new GroupElement[basesLength];
-		bases[0] = upti.getPublicKey();
+		// g_t
+		bases[index] = g[tIndex];
+		exponents[index++] = disclosedX[disclosedX.length-1].multiply(negC);
+		bases[index] = upti.getPublicKey();
+		exponents[index++] = Zq.getPositiveElement(pp.getR0());
 		for (int i=0; i<undisclosed.length; i++) {
-			bases[i+1] = g[undisclosed[i]];
-		}
-		ZqElement[] combinedR = new ZqElement[basesLength];
-		int index = 0;
-		combinedR[index++] = Zq.getPositiveElement(pp.getR0());
-		ZqElement r[] = ProtocolHelper.getZqElementArray(Zq, pp.getR());
-		for (int i=0; i<r.length; i++) {
-			combinedR[index++] = r[i];
+			bases[index] = g[undisclosed[i]];
+			exponents[index++] = r[i];
 		}
 		if (upti.isDeviceProtected()) {
-			bases[basesLength-1] = ipi.getDeviceGenerator();
-			combinedR[index++] = Zq.getPositiveElement(pp.getRd());		
+			bases[index] = ipi.getDeviceGenerator();
+			exponents[index++] = Zq.getPositiveElement(pp.getRd());
 		}
-		GroupElement temp2 = ProtocolHelper.computeProduct(bases, combinedR);
+		GroupElement hashInput = ProtocolHelper.computeProduct(ipi, bases, exponents);
 		
 		HashFunction H = ipi.getHashFunction();
-		GroupElement hashInput = temp1.multiply(temp2); 
-		if (upti.isDeviceProtected()) {
-			hashInput.multiply(ipi.getDeviceGenerator().exponentiate(Zq.getPositiveElement(pp.getRd())));
-		}
 		H.update(hashInput);
 		byte[] a = H.getByteDigest();
+		ipi.releaseHashFunction(H);
 		if (!Arrays.equals(pp.getA(), a)) {
 			throw new InvalidProofException("proof is invalid.");
 		}
@@ -13,6 +13,10 @@ package com.microsoft.uprove;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.concurrent.Executor;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
 
 
 
@@ -144,6 +148,51 @@ public abstract class PrimeOrderGroup implements Hashable {
         return retVal;
     }
 
+    /**
+     * Checks that a batch of elements belong to <code>this</code> group, as
+     * if by calling {@link GroupElement#isValid()} on each of them.
+     * <p>
+     * Each element is checked on its own: combining the elements into a
+     * single random-exponent product would let elements with components of
+     * small order through, since the subgroups of <code>Z<sub>p</sub>*</code>
+     * used by the SDK always have an even cofactor <code>(p-1)/q</code>.
+     * The checks can instead be spread over the threads of an
+     * <code>Executor</code>.
+     * </p>
+     * @param elements the elements to check. The caller's ownership of the
+     * referent is preserved.
+     * @param executor the executor on which to run the checks, or
+     * <code>null</code> to run them on the calling thread.
+     * @return the indices of the elements that are not valid elements of
+     * <code>this</code> group, including those belonging to another group;
+     * empty if all elements are valid.
+     */
+    public final BitSet getInvalidElements(final GroupElement[] elements,
+            final Executor executor) {
+        final boolean[] invalid = new boolean[elements.length];
+        try {
+            ParallelLoop.run(executor, elements.length,
+                new ParallelLoop.Body() {
+                    public void run(final int i) {
+                        final GroupElement elem = elements[i];
+                        invalid[i] = !elem.getGroup().equals(
+                            PrimeOrderGroup.this) || !elem.isValid();
+                    }
+                });
+        } catch (IOException ioe) {
+            AssertionError ae = new AssertionError("Impossible exception");
+            ae.initCause(ioe);
+            throw ae;
+        }
+        final BitSet retVal = new BitSet(elements.length);
+        for (int i = 0; i < invalid.length; i++) {
+            if (invalid[i]) {
+                retVal.set(i);
+            }
+        }
+        return retVal;
+    }
+
     /**
      * Returns an array of encoded group elements corresponding to the
      * elements in the provided array.
@@ -175,6 +224,78 @@ public abstract class PrimeOrderGroup implements Hashable {
      */
     public abstract int getMaxEncodedElementSize();
 
+    /**
+     * Returns the approximate number of bytes an element of this group
+     * occupies in memory, including its object headers and any alternate
+     * representation it caches. Used to size precomputation tables.
+     * <p>
+     * The default implementation returns the encoded element size.
+     * @return the approximate in-memory size of an element, in bytes.
+     */
+    long getElementMemorySize() {
+        return getMaxEncodedElementSize();
+    }
+
+    /**
+     * Indicates whether the group implements
+     * {@link #select(GroupElement[], int)}, and multiplies its elements in
+     * time independent of their values. Fixed-base tables are only built
+     * for the elements of such groups, since they are used with secret
+     * exponents.
+     * <p>
+     * The default implementation returns <code>false</code>.
+     * @return <code>true</code> if table entries can be selected in
+     * constant time.
+     */
+    boolean canSelect() {
+        return false;
+    }
+
+    /**
+     * Returns a copy of an entry of a table, reading every entry so that
+     * neither the memory access pattern nor the running time depend on the
+     * index.
+     * <p>
+     * The default implementation throws
+     * <code>UnsupportedOperationException</code>.
+     * @param table elements of <code>this</code> group, as created by the
+     * group's own operations. The caller's ownership of the referent and its
+     * contents is preserved.
+     * @param index the index of the entry to copy.
+     * @return a copy of <code>table[index]</code>. Ownership of the referent
+     * is given to the caller.
+     * @see #canSelect()
+     */
+    GroupElement select(final GroupElement[] table, final int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Computes the product of a series of exponentiations
+     * <code>bases[0]^exponents[0] * ... * bases[n-1]^exponents[n-1]</code>.
+     * <p>
+     * The default implementation shares the work between all the bases,
+     * using interleaved sliding windows for a few bases and the bucket
+     * method for many, and relies only on the elements'
+     * {@link GroupElement#multiply(GroupElement) multiply} operation.
+     * Implementations whose elements provide an
+     * {@link GroupElement#exponentiate(FieldZq.ZqElement) exponentiate}
+     * operation that is cheaper than the equivalent sequence of
+     * multiplications may override this method.
+     * </p>
+     * @param bases an array of elements of <code>this</code> group. The
+     * caller's ownership of the referent and its contents is preserved.
+     * @param exponents an array of exponents, each of which may be
+     * <code>null</code> (treated as if it were <code>1</code>). Only the
+     * first <code>exponents.length</code> bases are used.
+     * @return the desired product. Ownership of the referent is given to the
+     * caller.
+     */
+    protected GroupElement multiExponentiate(final GroupElement[] bases,
+            final ZqElement[] exponents) {
+        return MultiExponentiation.compute(bases, exponents);
+    }
+
     /**
      * Indicates whether some other object is "equal to" this group.
      * <p>
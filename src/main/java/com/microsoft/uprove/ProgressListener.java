@@ -0,0 +1,32 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+/**
+ * Receives progress notifications from long-running operations, such as the
+ * validation of Issuer parameters (see
+ * {@link IssuerParameters#validate(java.util.concurrent.Executor, ProgressListener)}).
+ * <p>
+ * When an operation is spread over several threads, notifications may come
+ * from any of them, and may be delivered concurrently: implementations must
+ * be thread-safe, and should return quickly.
+ * </p>
+ */
+public interface ProgressListener {
+
+    /**
+     * Reports that a step of the operation is complete.
+     * @param completed the number of steps completed so far.
+     * @param total the total number of steps.
+     */
+    void progress(int completed, int total);
+}
@@ -13,6 +13,8 @@ package com.microsoft.uprove;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.BitSet;
+
 import com.microsoft.uprove.FieldZq.ZqElement;
 
 /**
@@ -36,17 +38,64 @@ final class ProtocolHelper {
      */
     static GroupElement computeProduct(final GroupElement[] bases,
             final ZqElement[] exponents) {
-
-        final GroupElement retVal = bases[0].getGroup().getIdentity();
-
-        for (int i = 0; i < exponents.length; ++i) {
-            retVal.multiplyAssign(
-                exponents[i] != null
-                    ? bases[i].exponentiate(exponents[i])
-                    : bases[i]);
-        }
-
-        return retVal;
+        return bases[0].getGroup().multiExponentiate(bases, exponents);
+    }
+    
+    /**
+     * Computes the product of a series of exponentiations, using the
+     * fixed-base precomputation tables of the Issuer parameters for the bases
+     * that have one.
+     * @param ip the issuer parameters.
+     * @param bases an array of base elements.
+     * @param exponents an array of exponents, each of which may be
+     * <code>null</code> (treated as if it were <code>1</code>).
+     * @return the desired product.
+     */
+    static GroupElement computeProduct(IssuerParametersInternal ip,
+            final GroupElement[] bases, final ZqElement[] exponents) {
+    	final int n = exponents.length;
+    	GroupElement[] otherBases = new GroupElement[n];
+    	ZqElement[] otherExponents = new ZqElement[n];
+    	int count = 0;
+    	GroupElement retVal = null;
+    	for (int i = 0; i < n; i++) {
+    		FixedBaseTable table = exponents[i] == null ? null : ip.getFixedBaseTable(bases[i]);
+    		if (table != null) {
+    			retVal = table.multiplyPower(retVal, exponents[i]);
+    		} else {
+    			otherBases[count] = bases[i];
+    			otherExponents[count] = exponents[i];
+    			count++;
+    		}
+    	}
+    	if (count == n) {
+    		// no precomputation available
+    		return computeProduct(bases, exponents);
+    	}
+    	if (count > 0) {
+    		ZqElement[] e = new ZqElement[count];
+    		System.arraycopy(otherExponents, 0, e, 0, count);
+    		GroupElement product = computeProduct(otherBases, e);
+    		retVal = retVal == null ? product : retVal.multiplyAssign(product);
+    	}
+    	return retVal != null ? retVal : ip.getGroup().getIdentity();
+    }
+    
+    /**
+     * Computes <code>base^exponent</code>, using the fixed-base
+     * precomputation table of the Issuer parameters if there is one.
+     * @param ip the issuer parameters.
+     * @param base the base element.
+     * @param exponent the exponent.
+     * @return the desired power.
+     */
+    static GroupElement exponentiate(IssuerParametersInternal ip,
+            final GroupElement base, final ZqElement exponent) {
+    	FixedBaseTable table = ip.getFixedBaseTable(base);
+    	if (table != null) {
+    		return table.exponentiate(exponent);
+    	}
+    	return base.exponentiate(exponent);
     }
     
     /**
@@ -56,18 +105,37 @@ final class ProtocolHelper {
      * @return the xt element.
      */
     static ZqElement computeXt(IssuerParametersInternal ip, byte[] tokenInformation) {
-    	HashFunction H = ip.getHashFunction();
-    	
-    	// 0x01
-    	H.update((byte) 1);
+    	return computeXt(ip, tokenInformation, ConfigImpl.attributeHashCacheSize());
+    }
+    
+    /**
+     * Computes the protocol value xt.
+     * @param ip the issuer parameters.
+     * @param tokenInformation the token information field value.
+     * @param cacheSize the attribute hash cache size; <code>0</code> if the
+     * cache is disabled.
+     * @return the xt element.
+     */
+    private static ZqElement computeXt(IssuerParametersInternal ip, byte[] tokenInformation, int cacheSize) {
+    	if (cacheSize > 0) {
+    		ZqElement xt = ip.getAttributeHashCache().get(AttributeHashCache.TOKEN_INFORMATION, tokenInformation, cacheSize);
+    		if (xt != null) {
+    			return xt;
+    		}
+    	}
     	
-    	// P
-    	H.update(ip.getIssuerParametersDigest());
+    	// 0x01 || P
+    	HashFunction H = ip.getXtHashFunction();
     	
     	// TI
     	H.update(tokenInformation);
     	
-    	return H.getZqDigest(); 
+    	ZqElement xt = H.getZqDigest();
+    	ip.releaseHashFunction(H);
+    	if (cacheSize > 0) {
+    		ip.getAttributeHashCache().put(AttributeHashCache.TOKEN_INFORMATION, tokenInformation, xt, cacheSize);
+    	}
+    	return xt;
     }
     
     /**
@@ -79,14 +147,39 @@ final class ProtocolHelper {
      * @throws IOException
      */
     static ZqElement computeXi(IssuerParametersInternal ip, int index, byte[] A) throws IOException {
+    	return computeXi(ip, index, A, ConfigImpl.attributeHashCacheSize());
+    }
+    
+    /**
+     * Computes the protocol value xi.
+     * @param ip the issuer parameters.
+     * @param index the attribute index, one-based.
+     * @param A the attribute value A_index.
+     * @param cacheSize the attribute hash cache size; <code>0</code> if the
+     * cache is disabled.
+     * @return the x_index element.
+     * @throws IOException
+     */
+    private static ZqElement computeXi(IssuerParametersInternal ip, int index, byte[] A, int cacheSize) throws IOException {
     	byte ei = ip.getEncodingBytes()[index-1];
     	if (ei == (byte)1) {
     		if (A == null || A.length == 0) {
     			return ip.getGroup().getZq().getZero();
     		} else {
+    			if (cacheSize > 0) {
+    				ZqElement xi = ip.getAttributeHashCache().get(AttributeHashCache.ATTRIBUTE, A, cacheSize);
+    				if (xi != null) {
+    					return xi;
+    				}
+    			}
     			HashFunction H = ip.getHashFunction();		
-    	    	H.update(A);
-    			return H.getZqDigest();
+    			H.update(A);
+    			ZqElement xi = H.getZqDigest();
+    			ip.releaseHashFunction(H);
+    			if (cacheSize > 0) {
+    				ip.getAttributeHashCache().put(AttributeHashCache.ATTRIBUTE, A, xi, cacheSize);
+    			}
+    			return xi;
     		}
     	} else if (ei == (byte)0) {
     		if (A == null) {
@@ -99,6 +192,30 @@ final class ProtocolHelper {
     	}
     }
     
+    /**
+     * Computes the protocol value xi of a streamed attribute.
+     * @param ip the issuer parameters.
+     * @param index the attribute index, one-based.
+     * @param A the source of the attribute value A_index.
+     * @return the x_index element.
+     * @throws IOException if the attribute value cannot be read.
+     * @throws IllegalArgumentException if the attribute is not hashed.
+     */
+    static ZqElement computeXi(IssuerParametersInternal ip, int index, AttributeSource A) throws IOException {
+    	byte ei = ip.getEncodingBytes()[index-1];
+    	if (ei != (byte)1) {
+    		throw new IllegalArgumentException("attribute " + index + " must be hashed (encoding byte 1) to be streamed");
+    	}
+    	if (A.getLength() == 0) {
+    		return ip.getGroup().getZq().getZero();
+    	}
+    	HashFunction H = ip.getHashFunction();
+    	A.addToDigest(H);
+    	ZqElement xi = H.getZqDigest();
+    	ip.releaseHashFunction(H);
+    	return xi;
+    }
+    
     /**
      * Computes the token ID
      * @param ip
@@ -110,31 +227,66 @@ final class ProtocolHelper {
     	H.update(upti.getSigmaZ());
     	H.update(upti.getSigmaC());
     	H.update(upti.getSigmaR());
-    	return H.getByteDigest();
+    	byte[] tokenID = H.getByteDigest();
+    	ip.releaseHashFunction(H);
+    	return tokenID;
     }
     
     static boolean isTokenSignatureValid(IssuerParametersInternal ip, UProveTokenInternal upti) throws IOException {
-    	PrimeOrderGroup Gq = ip.getGroup();
-
+    	HashFunction H = ip.getHashFunction();
+    	boolean valid = isTokenSignatureValid(ip, ip.getGroup().getIdentity(), H, upti);
+    	ip.releaseHashFunction(H);
+    	return valid;
+    }
+    
+    /**
+     * Validates the signatures of a batch of U-Prove tokens issued under the
+     * same Issuer parameters.
+     * <p>
+     * The signature check ends with a hash comparison, so the tokens cannot be
+     * folded into a single randomized verification equation; instead, the
+     * prepared parameters, their fixed-base tables, the identity element and
+     * the hash function are shared across the batch.
+     * </p>
+     * @param ip the issuer parameters
+     * @param upti the tokens to validate
+     * @return the indices of the tokens whose signature is invalid; empty if
+     * all signatures are valid.
+     * @throws IOException
+     */
+    static BitSet getInvalidTokenSignatures(IssuerParametersInternal ip, UProveTokenInternal[] upti) throws IOException {
+    	GroupElement identity = ip.getGroup().getIdentity();
+    	HashFunction H = ip.getHashFunction();
+    	BitSet retVal = new BitSet(upti.length);
+    	for (int i = 0; i < upti.length; i++) {
+    		if (!isTokenSignatureValid(ip, identity, H, upti[i])) {
+    			retVal.set(i);
+    		}
+    	}
+    	ip.releaseHashFunction(H);
+    	return retVal;
+    }
+    
+    private static boolean isTokenSignatureValid(IssuerParametersInternal ip, GroupElement identity, HashFunction H, UProveTokenInternal upti) throws IOException {
     	// check that h != 1
-    	if (Gq.getIdentity().equals(upti.getPublicKey())) {
+    	if (identity.equals(upti.getPublicKey())) {
     		return false;
     	}
     	
     	// check sigma_c'
-    	HashFunction H = ip.getHashFunction();
     	H.update(upti.getPublicKey());
     	H.update(upti.getProverInformation());
     	H.update(upti.getSigmaZ());
     	GroupElement[] base;
     	ZqElement[] exponents;
     	
-    	base = new GroupElement[] {Gq.getGenerator(), ip.getPublicKey()[0]};
-    	exponents = new ZqElement[] {upti.getSigmaR(), upti.getSigmaC().negate()};
-    	H.update(computeProduct(base, exponents));
+    	ZqElement negSigmaC = upti.getSigmaC().negate();
+    	base = new GroupElement[] {ip.getGenerator(), ip.getPublicKey()[0]};
+    	exponents = new ZqElement[] {upti.getSigmaR(), negSigmaC};
+    	H.update(computeProduct(ip, base, exponents));
     	
     	base = new GroupElement[] {upti.getPublicKey(), upti.getSigmaZ()};
-    	exponents = new ZqElement[] {upti.getSigmaR(), upti.getSigmaC().negate()};
+    	exponents = new ZqElement[] {upti.getSigmaR(), negSigmaC};
     	H.update(computeProduct(base, exponents));
     	
     	if (!H.getZqDigest().equals(upti.getSigmaC())){
@@ -155,12 +307,32 @@ final class ProtocolHelper {
      * @throws IOException
      */
     static ZqElement[] computeXArray(IssuerParametersInternal ip, byte[][] attributes, byte[] tokenInformation) throws IOException {
+    	return computeXArray(ip, attributes, null, tokenInformation);
+    }
+
+    /**
+     * Computes the x array from an array of attributes, some of which may be
+     * streamed. The returned array contains:
+     * x[0] = 1, x[1] = a[0], ..., x[n] = a[-1n], x[n+1] = xt
+     * @param ip the issuer parameters
+     * @param attributes the attributes array
+     * @param attributeSources the sources of the streamed attributes, or
+     * <code>null</code>; a non-null entry replaces the corresponding entry of
+     * <code>attributes</code>
+     * @param tokenInformation the token information field
+     * @return the x array
+     * @throws IOException
+     */
+    static ZqElement[] computeXArray(IssuerParametersInternal ip, byte[][] attributes, AttributeSource[] attributeSources, byte[] tokenInformation) throws IOException {
+    	if (attributeSources != null && attributeSources.length != attributes.length) {
+    		throw new IllegalArgumentException("attributes and attributeSources array must have the same length");
+    	}
         // the attribute indices run from 1 to n
     	int[] attributeIndices = new int[attributes.length];
         for (int i=0; i<attributes.length; i++) {
         	attributeIndices[i] = i+1;
         }
-    	return computeXArray(ip, attributeIndices, attributes, tokenInformation);
+    	return computeXArray(ip, attributeIndices, attributes, tokenInformation, attributeSources);
     }
 
     /**
@@ -174,18 +346,34 @@ final class ProtocolHelper {
      * @throws IOException
      */
     static ZqElement[] computeXArray(IssuerParametersInternal ip, int[] attributeIndices, byte[][] attributes, byte[] tokenInformation) throws IOException {
+    	return computeXArray(ip, attributeIndices, attributes, tokenInformation, null);
+    }
+
+    /**
+     * Computes the x array from an array of attributes, some of which may be
+     * streamed.
+     * @param attributeSources the sources of the streamed attributes, or
+     * <code>null</code>
+     * @see #computeXArray(IssuerParametersInternal, int[], byte[][], byte[])
+     */
+    private static ZqElement[] computeXArray(IssuerParametersInternal ip, int[] attributeIndices, byte[][] attributes, byte[] tokenInformation, AttributeSource[] attributeSources) throws IOException {
     	if (attributeIndices.length != attributes.length) {
     		throw new IllegalArgumentException("attributeIndices and attributes array must have the same length");
     	}
     	int n = attributes.length + 2;
 
     	// compute the x_i
+    	int cacheSize = ConfigImpl.attributeHashCacheSize();
         ZqElement[] x = new ZqElement[n];
         x[0] = ip.getGroup().getZq().getOne();
         for (int index=1; index<n-1; index++) {
-        	x[index] = computeXi(ip, attributeIndices[index-1], attributes[index-1]);
+        	if (attributeSources != null && attributeSources[index-1] != null) {
+        		x[index] = computeXi(ip, attributeIndices[index-1], attributeSources[index-1]);
+        	} else {
+        		x[index] = computeXi(ip, attributeIndices[index-1], attributes[index-1], cacheSize);
+        	}
         }
-        x[n-1] = computeXt(ip, tokenInformation);
+        x[n-1] = computeXt(ip, tokenInformation, cacheSize);
         
         return x;
     }
@@ -209,7 +397,26 @@ final class ProtocolHelper {
     }
     
     static GenerateChallengeOutput genChallenge(IssuerParametersInternal ip, UProveTokenInternal upti, byte[] a, byte[] m, byte[] md, int[] disclosed, ZqElement[] disclosedX) {
-    	byte[] UIDt = computeTokenID(ip, upti);
+    	return genChallenge(ip, upti, computeTokenID(ip, upti), a, m, md, disclosed, disclosedX);
+    }
+
+    /**
+     * Generates the challenge of a presentation proof.
+     * @param UIDt the token identifier, as computed by
+     * {@link #computeTokenID(IssuerParametersInternal, UProveTokenInternal)}.
+     */
+    static GenerateChallengeOutput genChallenge(IssuerParametersInternal ip, UProveTokenInternal upti, byte[] UIDt, byte[] a, byte[] m, byte[] md, int[] disclosed, ZqElement[] disclosedX) {
+    	return genChallenge(ip, upti, UIDt, null, a, m, md, disclosed, disclosedX);
+    }
+
+    /**
+     * Generates the challenge of a presentation proof.
+     * @param UIDt the token identifier, as computed by
+     * {@link #computeTokenID(IssuerParametersInternal, UProveTokenInternal)}.
+     * @param UIDtMidstate the hash state after <code>UIDt</code>, or
+     * <code>null</code> to hash <code>UIDt</code>.
+     */
+    static GenerateChallengeOutput genChallenge(IssuerParametersInternal ip, UProveTokenInternal upti, byte[] UIDt, HashMidstate UIDtMidstate, byte[] a, byte[] m, byte[] md, int[] disclosed, ZqElement[] disclosedX) {
     	int n = ip.getEncodingBytes().length;
     	ZqElement[] f = new ZqElement[n]; // null
     	for (int i=0; i<disclosed.length ; i++) {
@@ -232,11 +439,15 @@ final class ProtocolHelper {
     	}
     	byte[] F = H.getByteDigest();
     	
-    	H.reset();
+    	if (UIDtMidstate != null) {
+    		ip.releaseHashFunction(H);
+    		H = UIDtMidstate.resume();
+    	} else {
+    		H.update(UIDt);
+    	}
     	byte[] mdPrime = null;
     	ZqElement c = null;
     	if (upti.isDeviceProtected()) {
-    		H.update(UIDt);
     		H.update(a);
     		H.update(m);
     		H.update(F);
@@ -246,12 +457,12 @@ final class ProtocolHelper {
     		H.update(mdPrime);
     		c = H.getZqDigest();
     	} else {
-    		H.update(UIDt);
     		H.update(a);
     		H.update(m);
     		H.update(F);
     		c = H.getZqDigest();
     	}
+    	ip.releaseHashFunction(H);
     	
     	return new GenerateChallengeOutput(c, mdPrime);
     }
@@ -261,7 +472,9 @@ final class ProtocolHelper {
 		HashFunction H = ipi.getHashFunction();
 		H.update(md);
 		H.update(mdPrime);
-		return H.getZqDigest();
+		ZqElement c = H.getZqDigest();
+		ipi.releaseHashFunction(H);
+		return c;
 	}
     
     /**
@@ -12,6 +12,7 @@
 package com.microsoft.uprove;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import com.microsoft.uprove.FieldZq.ZqElement;
 
@@ -29,7 +30,8 @@ class ProverFactory {
 
     static Prover generate(
             final int numberOfTokens,
-            final ProverCommonInput input) {
+            final ProverCommonInput input,
+            final Executor executor) {
         if (numberOfTokens <= 0) {
             throw new IllegalArgumentException("numberOfTokens must be > 0");
         }
@@ -38,7 +40,7 @@ class ProverFactory {
         }
 
         return new ProverImpl(numberOfTokens,
-        		(ProverCommonInput) input);
+        		(ProverCommonInput) input, executor);
     }
 
     static ProverCommonInput computeInput(
@@ -49,8 +51,8 @@ class ProverFactory {
         IssuerParametersInternal ipi = IssuerParametersInternal.generate(parameters.getIssuerParameters());
     	ProverCommonInput input = new ProverCommonInput();
     	
-    	ZqElement[] x = ProtocolHelper.computeXArray(ipi,parameters.getTokenAttributes(), parameters.getTokenInformation());
-    	GroupElement gamma = ProtocolHelper.computeProduct(ipi.getPublicKey(), x); 
+    	ZqElement[] x = ProtocolHelper.computeXArray(ipi,parameters.getTokenAttributes(), parameters.getTokenAttributeSources(), parameters.getTokenInformation());
+    	GroupElement gamma = ProtocolHelper.computeProduct(ipi, ipi.getPublicKey(), x); 
     	GroupElement sigmaZ = ProtocolHelper.computeProduct(ipi.getProverIssuanceValues(), x);
     	if (parameters.getDevicePublicKey() != null || parameters.getDeviceZetaParameter() != null) {
     		if (parameters.getDevicePublicKey() == null || parameters.getDeviceZetaParameter() == null) {
@@ -12,6 +12,8 @@
 package com.microsoft.uprove;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+
 import com.microsoft.uprove.FieldZq.ZqElement;
 
 class ProverImpl implements Prover {
@@ -32,10 +34,11 @@ class ProverImpl implements Prover {
 	private ProverCommonInput input;
 	ZqElement[] alpha, alphaInverse, beta1, beta2, sigmaCPrime;
 	GroupElement[] h, sigmaAPrime, sigmaBPrime, sigmaZPrime, ta, tb;
+	private Executor executor;
 	
 	private State state;
     
-	public ProverImpl(int numberOfTokens, ProverCommonInput input) {
+	public ProverImpl(int numberOfTokens, ProverCommonInput input, Executor executor) {
         if (numberOfTokens <= 0) {
             throw new IllegalArgumentException("numberOfTokens must be > 0");
         }
@@ -44,6 +47,7 @@ class ProverImpl implements Prover {
         }
         this.numberOfTokens = numberOfTokens;
         this.input = input;
+        this.executor = executor;
         
         // set the state
         this.state = State.INIT;
@@ -71,7 +75,7 @@ class ProverImpl implements Prover {
 		// check the state
         checkState(State.INIT);
 
-		IssuerParametersInternal ip = input.getIssuerParameters();
+		final IssuerParametersInternal ip = input.getIssuerParameters();
 		FieldZq Zq = ip.getGroup().getZq();
 		if (preGenAlpha == null) {
 			alpha = Zq.getRandomElements(numberOfTokens, true);
@@ -98,18 +102,20 @@ class ProverImpl implements Prover {
 		ta = new GroupElement[numberOfTokens];
 		tb = new GroupElement[numberOfTokens];
 
-		GroupElement g0 = ip.getPublicKey()[0];
-		GroupElement g = ip.getGroup().getGenerator();
-		for (int i=0; i<numberOfTokens; i++) {
-			h[i] = input.getGamma().exponentiate(alpha[i]);
-			sigmaZPrime[i] = input.getSigmaZ().exponentiate(alpha[i]);
-			GroupElement[] base = new GroupElement[] {g0, g};
-			ZqElement[] exponents = new ZqElement[] {beta1[i], beta2[i]};
-			ta[i] = ProtocolHelper.computeProduct(base, exponents);
-			base = new GroupElement[] {sigmaZPrime[i], h[i]};
-			tb[i] = ProtocolHelper.computeProduct(base, exponents);
-			alphaInverse[i] = alpha[i].inverse();
-		}
+		final GroupElement g0 = ip.getPublicKey()[0];
+		final GroupElement g = ip.getGenerator();
+		ParallelLoop.run(executor, numberOfTokens, new ParallelLoop.Body() {
+			public void run(int i) {
+				h[i] = input.getGamma().exponentiate(alpha[i]);
+				sigmaZPrime[i] = input.getSigmaZ().exponentiate(alpha[i]);
+				GroupElement[] base = new GroupElement[] {g0, g};
+				ZqElement[] exponents = new ZqElement[] {beta1[i], beta2[i]};
+				ta[i] = ProtocolHelper.computeProduct(ip, base, exponents);
+				base = new GroupElement[] {sigmaZPrime[i], h[i]};
+				tb[i] = ProtocolHelper.computeProduct(base, exponents);
+				alphaInverse[i] = alpha[i].inverse();
+			}
+		});
 
 		// advance the state
         state = State.COMPUTED;
@@ -127,21 +133,24 @@ class ProverImpl implements Prover {
     		throw new IllegalArgumentException("wrong number elements in message1");
     	}
 
-    	IssuerParametersInternal ip = input.getIssuerParameters(); 
-    	GroupElement[] sigmaPair = ProtocolHelper.getGroupElementArray(ip.getGroup(), message1);
-    	ZqElement[] sigmaC = new ZqElement[numberOfTokens];
-    	HashFunction H = ip.getHashFunction();    	
-    	for (int i=0; i<numberOfTokens; i++) {
-    		sigmaAPrime[i] = ta[i].multiply(sigmaPair[2*i]);
-    		sigmaBPrime[i] = tb[i].multiply(sigmaPair[2*i+1].exponentiate(alpha[i]));
-    		H.update(h[i]);
-    		H.update(input.getProverParams().getProverInformation());
-    		H.update(sigmaZPrime[i]);
-    		H.update(sigmaAPrime[i]);
-    		H.update(sigmaBPrime[i]);
-        	sigmaCPrime[i] = H.getZqDigest();
-        	sigmaC[i] = sigmaCPrime[i].add(beta1[i]);
-    	}
+    	final IssuerParametersInternal ip = input.getIssuerParameters(); 
+    	final GroupElement[] sigmaPair = ProtocolHelper.getGroupElementArray(ip.getGroup(), message1);
+    	final ZqElement[] sigmaC = new ZqElement[numberOfTokens];
+    	ParallelLoop.run(executor, numberOfTokens, new ParallelLoop.Body() {
+    		public void run(int i) {
+    			sigmaAPrime[i] = ta[i].multiply(sigmaPair[2*i]);
+    			sigmaBPrime[i] = tb[i].multiply(sigmaPair[2*i+1].exponentiate(alpha[i]));
+    			HashFunction H = ip.getHashFunction();
+    			H.update(h[i]);
+    			H.update(input.getProverParams().getProverInformation());
+    			H.update(sigmaZPrime[i]);
+    			H.update(sigmaAPrime[i]);
+    			H.update(sigmaBPrime[i]);
+    			sigmaCPrime[i] = H.getZqDigest();
+    			ip.releaseHashFunction(H);
+    			sigmaC[i] = sigmaCPrime[i].add(beta1[i]);
+    		}
+    	});
 
         // advance the state
         state = State.SECOND;
@@ -157,32 +166,34 @@ class ProverImpl implements Prover {
     		throw new IllegalArgumentException("wrong number elements in message3");
     	}
 
-    	UProveKeyAndToken[] upkt = new UProveKeyAndToken[numberOfTokens];
-		IssuerParametersInternal ip = input.getIssuerParameters();
-        ZqElement[] sigmaR = ProtocolHelper.getZqElementArray(ip.getGroup().getZq(), message3);
-		GroupElement g0 = ip.getPublicKey()[0];
-		GroupElement g = ip.getGroup().getGenerator();
-    	for (int i=0; i<numberOfTokens; i++) {
-    		ZqElement sigmaRPrime = sigmaR[i].add(beta2[i]); 
-    		
-    		// verify issuer signature
-    		GroupElement[] base = new GroupElement[] {g.multiply(h[i]), g0.multiply(sigmaZPrime[i])};
-			ZqElement[] exponents = new ZqElement[] {sigmaRPrime, sigmaCPrime[i].negate()};
-			if (!sigmaAPrime[i].multiply(sigmaBPrime[i]).equals(
-    				ProtocolHelper.computeProduct(base, exponents))) {
-    			throw new IllegalStateException("invalid response");
-    		}
-			upkt[i] = new UProveKeyAndToken(new UProveToken(
-					ip.getParametersUID(),
-					h[i].toByteArray(),
-					input.getProverParams().getTokenInformation(),
-					input.getProverParams().getProverInformation(),
-					sigmaZPrime[i].toByteArray(),
-					sigmaCPrime[i].toByteArray(),
-					sigmaRPrime.toByteArray(),
-					input.getProverParams().getDevicePublicKey() != null), 
-					alphaInverse[i].toByteArray());
-    	}
+    	final UProveKeyAndToken[] upkt = new UProveKeyAndToken[numberOfTokens];
+		final IssuerParametersInternal ip = input.getIssuerParameters();
+        final ZqElement[] sigmaR = ProtocolHelper.getZqElementArray(ip.getGroup().getZq(), message3);
+		final GroupElement g0 = ip.getPublicKey()[0];
+		final GroupElement g = ip.getGroup().getGenerator();
+		ParallelLoop.run(executor, numberOfTokens, new ParallelLoop.Body() {
+			public void run(int i) {
+	    		ZqElement sigmaRPrime = sigmaR[i].add(beta2[i]); 
+	    		
+	    		// verify issuer signature
+	    		GroupElement[] base = new GroupElement[] {g.multiply(h[i]), g0.multiply(sigmaZPrime[i])};
+				ZqElement[] exponents = new ZqElement[] {sigmaRPrime, sigmaCPrime[i].negate()};
+				if (!sigmaAPrime[i].multiply(sigmaBPrime[i]).equals(
+	    				ProtocolHelper.computeProduct(base, exponents))) {
+	    			throw new IllegalStateException("invalid response");
+	    		}
+				upkt[i] = new UProveKeyAndToken(new UProveToken(
+						ip.getParametersUID(),
+						h[i].toByteArray(),
+						input.getProverParams().getTokenInformation(),
+						input.getProverParams().getProverInformation(),
+						sigmaZPrime[i].toByteArray(),
+						sigmaCPrime[i].toByteArray(),
+						sigmaRPrime.toByteArray(),
+						input.getProverParams().getDevicePublicKey() != null), 
+						alphaInverse[i].toByteArray());
+			}
+		});
 		
     	return upkt;
 	}
@@ -12,6 +12,7 @@
 package com.microsoft.uprove;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /**
  * Specifies the Prover protocol parameters for the issuance protocol. 
@@ -21,11 +22,13 @@ public final class ProverProtocolParameters {
 	private int numberOfTokens = 1;
 	private IssuerParameters issuerParameters = null;
     private byte[][] tokenAttributes; // = null;
+    private AttributeSource[] tokenAttributeSources; // = null;
     private byte[] tokenInformation;
     private byte[] proverInformation;
     private ProverCommonInput input;
 	private byte[] deviceZetaParameter;
 	private byte[] devicePublicKey;
+	private Executor executor;
 
     /**
      * Constructs a <code>ProverProtocolParameters</code> instance. 
@@ -87,6 +90,29 @@ public final class ProverProtocolParameters {
 		this.tokenAttributes = tokenAttributes;
 	}
 
+	/**
+	 * Gets the sources of the streamed token attributes.
+	 * @return the attribute sources, or <code>null</code> if no attribute
+	 * is streamed.
+	 */
+	public AttributeSource[] getTokenAttributeSources() {
+		return tokenAttributeSources;
+	}
+
+	/**
+	 * Sets the sources of the token attributes that are streamed rather
+	 * than given as byte arrays. Only attributes whose encoding byte is
+	 * <code>1</code> can be streamed.
+	 * @param tokenAttributeSources an array of the same length as the token
+	 * attributes, whose non-null entries replace the corresponding token
+	 * attributes (which may be <code>null</code>); or <code>null</code>
+	 * (the default) if no attribute is streamed.
+	 * @see AttributeSource
+	 */
+	public void setTokenAttributeSources(AttributeSource[] tokenAttributeSources) {
+		this.tokenAttributeSources = tokenAttributeSources;
+	}
+
 	/**
 	 * Gets the token information value.
 	 * @return the token information value.
@@ -167,6 +193,29 @@ public final class ProverProtocolParameters {
 		this.deviceZetaParameter = deviceZetaParameter;
 	}
 
+    /**
+     * Gets the executor running the per-token computations.
+     * @return the executor, or <code>null</code> if the computations run on
+     * the calling thread.
+     */
+    public Executor getExecutor() {
+    	return executor;
+    }
+
+    /**
+     * Sets the executor running the per-token computations of the generated
+     * <code>Prover</code>. When issuing many tokens at once, an executor backed by
+     * several threads lets the computations scale with the number of
+     * processors; the calling thread takes part in the work. The protocol
+     * messages do not depend on the executor: given the same pre-generated
+     * values, the same messages are produced.
+     * @param executor the executor, or <code>null</code> (the default) to run
+     * the computations on the calling thread.
+     */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
     /**
      * Tests the contents of <code>this</code> for validity.
      * @throws IllegalStateException if the parameters are invalid.
@@ -191,7 +240,7 @@ public final class ProverProtocolParameters {
         // first validate the parameters
         validate();
         // then generate the Prover instance
-        return ProverFactory.generate(numberOfTokens, input);
+        return ProverFactory.generate(numberOfTokens, input, executor);
     }
 
 }
\ No newline at end of file
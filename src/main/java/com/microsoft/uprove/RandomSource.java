@@ -45,6 +45,14 @@ import com.microsoft.uprove.RandomSourceImpl;
  * description).
  * </p>
  * <p>
+ * Applications generating random data on many threads at once may enable
+ * per-thread random sources through the SDK configuration
+ * (<code>securerandom.perthread</code>). Each thread then uses its own
+ * <code>SecureRandom</code> of the configured algorithm, seeded from the
+ * shared one and periodically reseeded from it. Seed data given to the
+ * {@link #seed(byte[]) seed} method reaches all threads.
+ * </p>
+ * <p>
  * To summarize, applications should, at startup, specify the required PRNG
  * algorithm and provider by calling
  * <pre>    Config.setSecureRandomAlgorithm(algorithm);
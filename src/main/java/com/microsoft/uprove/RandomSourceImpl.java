@@ -15,17 +15,113 @@ package com.microsoft.uprove;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
  * Implementation for the SDK's source of randomness.
+ * <p>
+ * By default, all random data comes from a single shared
+ * <code>SecureRandom</code>. If per-thread random sources are enabled (see
+ * {@link ConfigImpl#setSecureRandomPerThread(Boolean)}), each thread draws
+ * from its own <code>SecureRandom</code> instead, so that threads do not
+ * contend on one generator. The per-thread generators are seeded from the
+ * shared one when created, and reseeded from it after producing the
+ * configured number of bytes (see
+ * {@link ConfigImpl#setSecureRandomReseedInterval(long)}) and after each
+ * call to {@link #seed(byte[])}, so that seed data reaches every thread.
+ * </p>
  *
  * @see com.microsoft.uprove.RandomSource
  * @see java.security.SecureRandom
  */
 final class RandomSourceImpl {
 
-    private static SecureRandom random; // = null;
+    /**
+     * Number of bytes drawn from the shared generator to (re)seed a
+     * per-thread generator.
+     */
+    private static final int STREAM_SEED_SIZE = 32;
+
+    /**
+     * The configuration in use and the shared generator.
+     */
+    private static final class State {
+        private final String algo;
+        private final String prov;
+        private final SecureRandom random;
+        private final boolean perThread;
+        private final long reseedInterval;
+        // incremented on every call to seed()
+        private final AtomicInteger generation = new AtomicInteger();
+
+        State() {
+            // get values from ConfigImpl
+            algo = ConfigImpl.secureRandomAlgorithm();
+            prov = ConfigImpl.secureRandomProvider();
+            perThread = ConfigImpl.secureRandomPerThread();
+            reseedInterval = ConfigImpl.secureRandomReseedInterval();
+            random = newSecureRandom(algo, prov);
+            // Forces the SecureRandom to use Java's seed, that hopefully
+            // the caller will supplement with a call to seed()
+            // From the SecureRandom's getInstance() javadoc:
+            //    Note that the returned instance of SecureRandom has not
+            //    been seeded.
+            //    [...] If a call is not made to setSeed, the first call to
+            //    the nextBytes method will force the SecureRandom object
+            //    to seed itself.
+            random.nextBytes(new byte[1]);
+        }
+    }
+
+    /**
+     * A per-thread generator.
+     */
+    private static final class Stream {
+        private final State owner;
+        private final SecureRandom random;
+        private int generation;
+        private long produced;
+
+        Stream(final State owner) {
+            this.owner = owner;
+            this.random = newSecureRandom(owner.algo, owner.prov);
+            reseed();
+        }
+
+        /**
+         * Seeds the generator from the shared one.
+         */
+        void reseed() {
+            // read the generation first, so that a concurrent seed() is
+            // picked up by the next call at the latest
+            generation = owner.generation.get();
+            final byte[] seed = new byte[STREAM_SEED_SIZE];
+            owner.random.nextBytes(seed);
+            random.setSeed(seed);
+            produced = 0;
+        }
+
+        /**
+         * Returns the generator to use for <code>size</code> bytes,
+         * reseeding it first if needed.
+         * @param size the number of bytes about to be drawn.
+         * @return the generator.
+         */
+        SecureRandom use(final int size) {
+            if (generation != owner.generation.get()
+                    || (owner.reseedInterval > 0
+                        && produced >= owner.reseedInterval)) {
+                reseed();
+            }
+            produced += size;
+            return random;
+        }
+    }
+
+    private static volatile State state; // = null;
+
+    private static final ThreadLocal<Stream> streams = new ThreadLocal<Stream>();
 
     /**
      * Non instantiable class.
@@ -35,52 +131,73 @@ final class RandomSourceImpl {
     }
 
     /**
-     * Initializes the SecureRandom.
+     * Creates an unseeded SecureRandom.
+     * @param algo the algorithm name.
+     * @param prov the provider name, or <code>null</code>.
+     * @return the SecureRandom.
      */
-    private static synchronized void init() {
-        if (random == null) {
-            // get values from ConfigImpl
-            final String algo = ConfigImpl.secureRandomAlgorithm();
-            final String prov = ConfigImpl.secureRandomProvider();
-
-            try {
-                if (prov != null) {
-                    // we specify a provider
-                    random = SecureRandom.getInstance(algo, prov);
-                } else {
-                    // we use the default provider
-                    random = SecureRandom.getInstance(algo);
-                }
-                // Forces the SecureRandom to use Java's seed, that hopefully
-                // the caller will supplement with a call to seed()
-                // From the SecureRandom's getInstance() javadoc:
-                //    Note that the returned instance of SecureRandom has not
-                //    been seeded.
-                //    [...] If a call is not made to setSeed, the first call to
-                //    the nextBytes method will force the SecureRandom object
-                //    to seed itself.
-                random.nextBytes(new byte[1]);
-            } catch (NoSuchAlgorithmException e) {
-                IllegalStateException ise =
-                    new IllegalStateException(
-                        "Cannot find SecureRandom algorithm named " + algo);
-                ise.initCause(e);
-                throw ise;
-            } catch (NoSuchProviderException e) {
-                IllegalStateException ise =
-                    new IllegalStateException(
-                        "Cannot find SecureRandom provider named " + prov);
-                ise.initCause(e);
-                throw ise;
+    private static SecureRandom newSecureRandom(final String algo,
+            final String prov) {
+        try {
+            if (prov != null) {
+                // we specify a provider
+                return SecureRandom.getInstance(algo, prov);
+            } else {
+                // we use the default provider
+                return SecureRandom.getInstance(algo);
             }
+        } catch (NoSuchAlgorithmException e) {
+            IllegalStateException ise =
+                new IllegalStateException(
+                    "Cannot find SecureRandom algorithm named " + algo);
+            ise.initCause(e);
+            throw ise;
+        } catch (NoSuchProviderException e) {
+            IllegalStateException ise =
+                new IllegalStateException(
+                    "Cannot find SecureRandom provider named " + prov);
+            ise.initCause(e);
+            throw ise;
+        }
+    }
+
+    /**
+     * Initializes the shared SecureRandom.
+     * @return the current state.
+     */
+    private static synchronized State init() {
+        if (state == null) {
+            state = new State();
         }
+        return state;
     }
 
     /**
      * Resets so that the source is reset from the configured algo/provider.
      */
     static synchronized void reset() {
-        random = null;
+        state = null;
+    }
+
+    /**
+     * Returns the generator to use for the calling thread.
+     * @param size the number of bytes about to be drawn.
+     * @return the generator.
+     */
+    private static SecureRandom random(final int size) {
+        State s = state;
+        if (s == null) {
+            s = init();
+        }
+        if (!s.perThread) {
+            return s.random;
+        }
+        Stream stream = streams.get();
+        if (stream == null || stream.owner != s) {
+            stream = new Stream(s);
+            streams.set(stream);
+        }
+        return stream.use(size);
     }
 
     /**
@@ -97,8 +214,7 @@ final class RandomSourceImpl {
         if (numBits < 0) {
             throw new IllegalArgumentException();
         }
-        init();
-        return new java.math.BigInteger(numBits, random);
+        return new java.math.BigInteger(numBits, random((numBits + 7) / 8));
     }
 
     /**
@@ -111,16 +227,16 @@ final class RandomSourceImpl {
         if (size < 0) {
             throw new IllegalArgumentException();
         }
-        init();
         byte[] bytes = new byte[size];
-        random.nextBytes(bytes);
+        random(size).nextBytes(bytes);
         return bytes;
     }
 
     /**
      * Seeds the random source with the provided <code>data</code>. This method
      * can be called several times; the given seed supplements, rather than
-     * replaces, the existing seed.
+     * replaces, the existing seed. Per-thread generators are reseeded from
+     * the shared one before their next use.
      * @param data random data that will be used to seed the underlying
      * <code>SecureRandom</code> object.
      */
@@ -128,8 +244,12 @@ final class RandomSourceImpl {
         if (data == null) {
             throw new NullPointerException();
         }
-        init();
-        random.setSeed(data);
+        State s = state;
+        if (s == null) {
+            s = init();
+        }
+        s.random.setSeed(data);
+        s.generation.incrementAndGet();
     }
 
 }
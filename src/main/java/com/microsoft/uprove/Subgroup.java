@@ -14,6 +14,7 @@ package com.microsoft.uprove;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Arrays;
 
 
 /**
@@ -33,6 +34,20 @@ public final class Subgroup extends PrimeOrderGroup {
      */
     private final BigInteger g;
 
+    /**
+     * The Montgomery arithmetic modulo <code>p</code>, or <code>null</code>
+     * if <code>p</code> is even (which only happens for malformed groups).
+     */
+    private final MontgomeryDomain montgomery;
+
+    /**
+     * The number of exponents from which the generic multi-exponentiation
+     * beats one <code>BigInteger.modPow</code> per base. Measured with the
+     * default 1024-, 1280- and 2048-bit moduli, where the two break even
+     * between 6 and 8 exponents.
+     */
+    private static final int MULTI_EXPONENTIATION_THRESHOLD = 8;
+
     /**
      * Constructs a new <code>Subgroup</code>.
      * @param p the encoded <code>p</code> value.
@@ -44,6 +59,7 @@ public final class Subgroup extends PrimeOrderGroup {
     	this.p = new BigInteger(1, p);
     	this.g = new BigInteger(1, g);
         validatePQG();
+        this.montgomery = getMontgomeryDomain(this.p);
     }
     
     /**
@@ -68,6 +84,50 @@ public final class Subgroup extends PrimeOrderGroup {
         this.p = p;
         this.g = g;
         validatePQG();
+        this.montgomery = getMontgomeryDomain(p);
+    }
+
+    /**
+     * Returns a <code>Subgroup</code> instance. Unlike the constructors,
+     * this method returns the same instance for equal parameters, as long as
+     * it is in use, which makes group comparisons cheaper.
+     * @param p the group's prime modulus <code>p</code>.
+     * @param q the group's prime order <code>q</code>.
+     * @param g the group's generator <code>g</code>.
+     * @return a subgroup instance.
+     * @throws IllegalArgumentException if <code>p</code>, <code>q</code>
+     * or <code>g</code> are not greater than 1 or if <code>g</code> is not
+     * less than <code>p</code>.
+     * @see #Subgroup(BigInteger, BigInteger, BigInteger)
+     */
+    public static Subgroup getInstance(final BigInteger p, final BigInteger q,
+            final BigInteger g) {
+        return (Subgroup) GroupRegistry.intern(new Subgroup(p, q, g));
+    }
+
+    /**
+     * Returns a <code>Subgroup</code> instance from encoded parameters.
+     * Unlike the constructors, this method returns the same instance for
+     * equal parameters, as long as it is in use.
+     * @param p the encoded <code>p</code> value.
+     * @param q the encoded <code>q</code> value.
+     * @param g the encoded <code>g</code> value.
+     * @return a subgroup instance.
+     * @see #Subgroup(byte[], byte[], byte[])
+     */
+    public static Subgroup getInstance(final byte[] p, final byte[] q,
+            final byte[] g) {
+        return (Subgroup) GroupRegistry.intern(new Subgroup(p, q, g));
+    }
+
+    /**
+     * Returns the Montgomery domain of a modulus.
+     * @param p the modulus.
+     * @return the Montgomery domain, or <code>null</code> if <code>p</code>
+     * is even.
+     */
+    private static MontgomeryDomain getMontgomeryDomain(final BigInteger p) {
+        return p.testBit(0) ? new MontgomeryDomain(p) : null;
     }
 
     private void validatePQG() {
@@ -106,6 +166,9 @@ public final class Subgroup extends PrimeOrderGroup {
      * @see com.microsoft.uprove.math.PrimeOrderGroup#getIdentity()
      */
     public GroupElement getIdentity() {
+        if (montgomery != null) {
+            return new ModInteger(BigInteger.ONE, montgomery.getOne());
+        }
         return new ModInteger(BigInteger.ONE);
     }
 
@@ -178,6 +241,83 @@ public final class Subgroup extends PrimeOrderGroup {
         return SubgroupUtil.getEncodedElementSize(p.bitLength());
     }
 
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#getElementMemorySize()
+     */
+    long getElementMemorySize() {
+        if (montgomery == null) {
+            // elements only hold a BigInteger, whose magnitude is an array
+            // of 32-bit words
+            return 16 + 4L * ((p.bitLength() + 31) / 32) + 64;
+        }
+        // an element may hold both its BigInteger and its Montgomery form,
+        // each with an array of montgomery.getLength() words
+        final long array = 16 + 8L * montgomery.getLength();
+        return 2 * array + 64;
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#canSelect()
+     */
+    boolean canSelect() {
+        // Montgomery multiplication runs in constant time
+        return montgomery != null;
+    }
+
+    /* (non-Javadoc)
+     * @see com.microsoft.uprove.PrimeOrderGroup#select(GroupElement[], int)
+     */
+    GroupElement select(final GroupElement[] table, final int index) {
+        if (montgomery == null) {
+            throw new UnsupportedOperationException();
+        }
+        final int n = montgomery.getLength();
+        final long[] retVal = new long[n];
+        for (int d = 0; d < table.length; ++d) {
+            // 1 if d == index, 0 otherwise
+            final long flag = ((long) (d ^ index) - 1) >>> 63;
+            MontgomeryDomain.select(((ModInteger) table[d]).toMontgomery(),
+                    retVal, flag, n);
+        }
+        return new ModInteger(null, retVal);
+    }
+
+    /**
+     * Computes the product of a series of exponentiations.
+     * <p>
+     * <code>BigInteger.modPow</code> is faster than our Montgomery
+     * multiplication, so one exponentiation per base is cheaper than the
+     * generic multi-exponentiation for a few bases. The generic method
+     * shares the squarings between all the bases, and takes over from
+     * eight exponents on.
+     * </p>
+     * @see PrimeOrderGroup#multiExponentiate(GroupElement[], FieldZq.ZqElement[])
+     */
+    protected GroupElement multiExponentiate(final GroupElement[] bases,
+            final FieldZq.ZqElement[] exponents) {
+        int count = 0;
+        for (int i = 0; i < exponents.length; ++i) {
+            if (!bases[i].getGroup().equals(this)) {
+                throw new IllegalArgumentException("base is not in same group");
+            }
+            if (exponents[i] != null) {
+                ++count;
+            }
+        }
+        if (count >= MULTI_EXPONENTIATION_THRESHOLD && montgomery != null) {
+            return super.multiExponentiate(bases, exponents);
+        }
+
+        BigInteger product = BigInteger.ONE;
+        for (int i = 0; i < exponents.length; ++i) {
+            final BigInteger base = ((ModInteger) bases[i]).toBigInteger();
+            product = product.multiply(exponents[i] != null
+                    ? base.modPow(exponents[i].toBigInteger(), p)
+                    : base).mod(p);
+        }
+        return new ModInteger(product);
+    }
+
     /**
      * Indicates whether some other object is "equal to" this one.
      * @param o the reference object with which to compare.
@@ -223,11 +363,17 @@ public final class Subgroup extends PrimeOrderGroup {
     private final class ModInteger implements GroupElement {
 
         /*
-         * Note that this class uses an immutable BigInteger, which is not
-         * ideal for fast crypto operations and to erase the content.
-         * We plan to migrate to a mutable big integer class eventually.
+         * The value is held in one or both of two forms: an immutable
+         * BigInteger, used for exponentiation (BigInteger.modPow is
+         * faster than anything we can write in Java) and at the encoding
+         * boundaries, and a mutable Montgomery representation, used for
+         * multiplications. Each form is computed from the other on demand
+         * and then kept; a null field means that form is not available.
+         * Both fields are volatile so that shared elements (such as the
+         * Issuer public key) can fill them in safely from any thread.
          */
-        private BigInteger integer;
+        private volatile BigInteger integer;
+        private volatile long[] mont;
 
         /**
          * Constructs a ModInteger. The constructor simply checks that
@@ -251,26 +397,55 @@ public final class Subgroup extends PrimeOrderGroup {
             this.integer = integer;
         }
 
+        /**
+         * Constructs a ModInteger from both of its representations.
+         * @param integer integer value of the element, or <code>null</code>.
+         * @param mont Montgomery representation of the element, owned by
+         * the new object, or <code>null</code>.
+         */
+        private ModInteger(final BigInteger integer, final long[] mont) {
+            this.integer = integer;
+            this.mont = mont;
+        }
+
         /**
          * @return a <code>BigInteger</code> representation of this
          * <code>ModInteger</code>.
          */
         public BigInteger toBigInteger() {
-            return integer;
+            BigInteger retVal = integer;
+            if (retVal == null) {
+                retVal = montgomery.fromMontgomery(mont);
+                integer = retVal;
+            }
+            return retVal;
+        }
+
+        /**
+         * @return the Montgomery representation of this
+         * <code>ModInteger</code>, which must not be modified.
+         */
+        private long[] toMontgomery() {
+            long[] retVal = mont;
+            if (retVal == null) {
+                retVal = montgomery.toMontgomery(integer);
+                mont = retVal;
+            }
+            return retVal;
         }
 
         /* (non-Javadoc)
          * @see com.microsoft.uprove.math.Element#length()
          */
         public int length() {
-            return SubgroupUtil.getEncodedElementSize(integer.bitLength());
+            return SubgroupUtil.getEncodedElementSize(toBigInteger().bitLength());
         }
 
         /* (non-Javadoc)
          * @see com.microsoft.uprove.math.GroupElement#toByteArray()
          */
         public byte[] toByteArray() {
-            return SubgroupUtil.encodeElementValue(integer);
+            return SubgroupUtil.encodeElementValue(toBigInteger());
         }
 
         /* (non-Javadoc)
@@ -287,8 +462,14 @@ public final class Subgroup extends PrimeOrderGroup {
             if (!b.getGroup().equals(Subgroup.this)) {
                 throw new IllegalArgumentException("b is not in same group");
             }
-            return new ModInteger(integer.multiply(((ModInteger) b).integer)
-                    .mod(p));
+            final ModInteger mi = (ModInteger) b;
+            if (montgomery == null) {
+                return new ModInteger(toBigInteger().multiply(mi.toBigInteger())
+                        .mod(p));
+            }
+            final long[] product = new long[montgomery.getLength()];
+            montgomery.multiply(toMontgomery(), mi.toMontgomery(), product);
+            return new ModInteger(null, product);
         }
 
         /* (non-Javadoc)
@@ -298,7 +479,16 @@ public final class Subgroup extends PrimeOrderGroup {
             if (!b.getGroup().equals(Subgroup.this)) {
                 throw new IllegalArgumentException("b is not in same group");
             }
-            integer = integer.multiply(((ModInteger) b).integer).mod(p);
+            final ModInteger mi = (ModInteger) b;
+            if (montgomery == null) {
+                integer = toBigInteger().multiply(mi.toBigInteger()).mod(p);
+                return this;
+            }
+            final long[] a = toMontgomery();
+            // this element is the only owner of its Montgomery array, but
+            // drop the integer form first so it is never stale
+            integer = null;
+            montgomery.multiply(a, mi.toMontgomery(), a);
             return this;
         }
 
@@ -306,14 +496,16 @@ public final class Subgroup extends PrimeOrderGroup {
          * @see com.microsoft.uprove.math.GroupElement#exponentiate(com.microsoft.uprove.math.FieldZq.ZqElement)
          */
         public GroupElement exponentiate(final FieldZq.ZqElement n) {
-            return new ModInteger(integer.modPow(n.toBigInteger(), p));
+            return new ModInteger(toBigInteger().modPow(n.toBigInteger(), p));
         }
 
         /* (non-Javadoc)
          * @see com.microsoft.uprove.math.GroupElement#exponentiateAssign(com.microsoft.uprove.math.FieldZq.ZqElement)
          */
         public GroupElement exponentiateAssign(final FieldZq.ZqElement n) {
-            integer = integer.modPow(n.toBigInteger(), p);
+            final BigInteger result = toBigInteger().modPow(n.toBigInteger(), p);
+            mont = null;
+            integer = result;
             return this;
         }
 
@@ -321,14 +513,16 @@ public final class Subgroup extends PrimeOrderGroup {
          * @see com.microsoft.uprove.math.GroupElement#inverse()
          */
         public GroupElement inverse() {
-            return new ModInteger(integer.modInverse(p));
+            return new ModInteger(toBigInteger().modInverse(p));
         }
 
         /* (non-Javadoc)
          * @see com.microsoft.uprove.math.GroupElement#inverseAssign()
          */
         public GroupElement inverseAssign() {
-            integer = integer.modInverse(p);
+            final BigInteger result = toBigInteger().modInverse(p);
+            mont = null;
+            integer = result;
             return this;
         }
 
@@ -337,7 +531,7 @@ public final class Subgroup extends PrimeOrderGroup {
          * @return the hexadecimal representation of this ModInteger.
          */
         public String toString() {
-            return integer.toString(16);
+            return toBigInteger().toString(16);
         }
 
         /**
@@ -354,7 +548,14 @@ public final class Subgroup extends PrimeOrderGroup {
                 return false;
             }
             ModInteger mi = (ModInteger) o;
-            return integer.equals(mi.integer);
+            // Montgomery representations are fully reduced, so they can be
+            // compared directly when both are available
+            final long[] a = mont;
+            final long[] b = mi.mont;
+            if (a != null && b != null && getGroup().equals(mi.getGroup())) {
+                return Arrays.equals(a, b);
+            }
+            return toBigInteger().equals(mi.toBigInteger());
         }
 
         /**
@@ -362,21 +563,21 @@ public final class Subgroup extends PrimeOrderGroup {
          * @return a hash code value for the object.
          */
         public int hashCode() {
-            return integer.hashCode();
+            return toBigInteger().hashCode();
         }
 
         /* (non-Javadoc)
          * @see com.microsoft.uprove.crypto.Hashable#addToDigest(com.microsoft.uprove.crypto.HashUpdater)
          */
         public void addToDigest(final HashUpdater dv) {
-            dv.update(integer);
+            dv.update(toBigInteger());
         }
 
         /* (non-Javadoc)
          * @see com.microsoft.uprove.math.GroupElement#isValid()
          */
         public boolean isValid() {
-            return Subgroup.this.isValidElementValue(integer);
+            return Subgroup.this.isValidElementValue(toBigInteger());
         }
 
     }
@@ -0,0 +1,326 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * Least-recently-used cache of U-Prove tokens whose signature has been
+ * verified.
+ * <p>
+ * Verifiers that see the same token repeatedly, such as multi-use tokens or
+ * session re-authentication, would otherwise decode the token, check its
+ * signature and compute its identifier <code>UIDt</code> on every
+ * presentation. A cached entry remembers the decoded token and its
+ * identifier, so that repeat presentations only verify the proof equation.
+ * Only tokens with a valid signature are cached.
+ * </p>
+ * <p>
+ * Entries are keyed by the Issuer parameters digest and hash algorithm,
+ * and the complete contents of the token: the token identifier does not
+ * cover the Issuer parameters UID, the token information nor the Prover
+ * information, all of which the signature does. Keying on the contents of
+ * the Issuer parameters rather than their decoded instance lets the cache
+ * hit even when the {@link IssuerParametersCache} is disabled. The cache holds at most
+ * {@link ConfigImpl#getVerifiedTokenCacheSize()} entries, each of which
+ * expires {@link ConfigImpl#getVerifiedTokenCacheTTL()} milliseconds after
+ * it was created; expired entries are removed when they are looked up, or
+ * evicted as least recently used once the cache is full. All methods are
+ * thread-safe.
+ * </p>
+ */
+final class VerifiedTokenCache {
+
+    // cached entries, in access order
+    private static final LinkedHashMap<Key, Entry> entries =
+        new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    // metrics
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private VerifiedTokenCache() {
+        super();
+    }
+
+    /**
+     * Returns the cached entry of a token.
+     * @param ipi the Issuer parameters under which the token was issued.
+     * @param upt the token.
+     * @return the entry of the token, or <code>null</code> if the token is
+     * not cached.
+     */
+    static Entry get(final IssuerParametersInternal ipi,
+            final UProveToken upt) {
+        if (ConfigImpl.verifiedTokenCacheSize() == 0) {
+            return null;
+        }
+
+        final Key key = new Key(ipi, upt);
+        final long ttl = ConfigImpl.verifiedTokenCacheTTL();
+        synchronized (VerifiedTokenCache.class) {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            if (ttl > 0 && System.currentTimeMillis() - entry.created >= ttl) {
+                entries.remove(key);
+                evictions++;
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry;
+        }
+    }
+
+    /**
+     * Caches a token whose signature has been verified.
+     * @param ipi the Issuer parameters under which the token was issued.
+     * @param upt the token.
+     * @param upti the decoded token.
+     * @return the entry of the token. It is returned even if the cache is
+     * disabled.
+     */
+    static Entry put(final IssuerParametersInternal ipi,
+            final UProveToken upt, final UProveTokenInternal upti) {
+        final int size = ConfigImpl.verifiedTokenCacheSize();
+        final byte[] tokenID = ProtocolHelper.computeTokenID(ipi, upti);
+        if (size == 0) {
+            return new Entry(upti, tokenID);
+        }
+
+        // the cached token must not refer to the caller's arrays
+        final Key key = new Key(ipi, upt).copy();
+        final Entry entry = new Entry(new UProveTokenInternal(
+            key.issuerParametersUID, upti.getPublicKey(),
+            key.tokenInformation, key.proverInformation, upti.getSigmaZ(),
+            upti.getSigmaC(), upti.getSigmaR(), upti.isDeviceProtected()),
+            tokenID);
+        synchronized (VerifiedTokenCache.class) {
+            entries.put(key, entry);
+            trim(size);
+        }
+        return entry;
+    }
+
+    /**
+     * Removes least recently used entries until the cache holds at most
+     * the configured number of entries. Called when the cache size changes.
+     */
+    static void resize() {
+        final int size = ConfigImpl.verifiedTokenCacheSize();
+        synchronized (VerifiedTokenCache.class) {
+            trim(size);
+        }
+    }
+
+    /**
+     * Removes least recently used entries until the cache holds at most
+     * <code>size</code> entries. Expired entries are removed when they are
+     * looked up. Must be called while holding the class lock.
+     * @param size the maximum number of entries.
+     */
+    private static void trim(final int size) {
+        for (Iterator<Entry> i = entries.values().iterator();
+                entries.size() > size;) {
+            i.next();
+            i.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found their token in the cache.
+     * @return the number of cache hits.
+     */
+    static synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find their token in the
+     * cache.
+     * @return the number of cache misses.
+     */
+    static synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries removed because they expired or
+     * because the cache was full.
+     * @return the number of cache evictions.
+     */
+    static synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     * @return the number of cached tokens.
+     */
+    static synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries from the cache and resets the metrics.
+     */
+    static synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    /**
+     * A verified token, its identifier and its creation time.
+     */
+    static final class Entry {
+        private final UProveTokenInternal upti;
+        private final byte[] tokenID;
+        private final long created;
+
+        Entry(final UProveTokenInternal upti, final byte[] tokenID) {
+            this.upti = upti;
+            this.tokenID = tokenID;
+            this.created = System.currentTimeMillis();
+        }
+
+        /**
+         * Returns the decoded token. The caller must not modify it.
+         * @return the token.
+         */
+        UProveTokenInternal getToken() {
+            return upti;
+        }
+
+        /**
+         * Returns the token identifier <code>UIDt</code>. The caller must
+         * not modify it.
+         * @return the token identifier.
+         */
+        byte[] getTokenID() {
+            return tokenID;
+        }
+    }
+
+    /**
+     * The Issuer parameters digest and the contents of a token. Lookup keys refer
+     * to the caller's arrays; keys stored in the cache hold private copies.
+     */
+    private static final class Key {
+        private final byte[] issuerParametersDigest;
+        private final String hashAlgorithmUID;
+        private final byte[] issuerParametersUID;
+        private final byte[] publicKey;
+        private final byte[] tokenInformation;
+        private final byte[] proverInformation;
+        private final byte[] sigmaZ;
+        private final byte[] sigmaC;
+        private final byte[] sigmaR;
+        private final boolean deviceProtected;
+        private final int hashCode;
+
+        Key(final IssuerParametersInternal ipi, final UProveToken upt) {
+            this(ipi.getIssuerParametersDigest(), ipi.getHashAlgorithmUID(),
+                upt.getIssuerParametersUID(), upt.getPublicKey(),
+                upt.getTokenInformation(), upt.getProverInformation(),
+                upt.getSigmaZ(), upt.getSigmaC(), upt.getSigmaR(),
+                upt.isDeviceProtected());
+        }
+
+        private Key(final byte[] issuerParametersDigest,
+                final String hashAlgorithmUID,
+                final byte[] issuerParametersUID, final byte[] publicKey,
+                final byte[] tokenInformation, final byte[] proverInformation,
+                final byte[] sigmaZ, final byte[] sigmaC,
+                final byte[] sigmaR, final boolean deviceProtected) {
+            this.issuerParametersDigest = issuerParametersDigest;
+            this.hashAlgorithmUID = hashAlgorithmUID;
+            this.issuerParametersUID = issuerParametersUID;
+            this.publicKey = publicKey;
+            this.tokenInformation = tokenInformation;
+            this.proverInformation = proverInformation;
+            this.sigmaZ = sigmaZ;
+            this.sigmaC = sigmaC;
+            this.sigmaR = sigmaR;
+            this.deviceProtected = deviceProtected;
+
+            int result = 233;
+            result = 229 * result + Arrays.hashCode(issuerParametersDigest);
+            result = 229 * result + hashAlgorithmUID.hashCode();
+            result = 229 * result + Arrays.hashCode(issuerParametersUID);
+            result = 229 * result + Arrays.hashCode(publicKey);
+            result = 229 * result + Arrays.hashCode(tokenInformation);
+            result = 229 * result + Arrays.hashCode(proverInformation);
+            result = 229 * result + Arrays.hashCode(sigmaZ);
+            result = 229 * result + Arrays.hashCode(sigmaC);
+            result = 229 * result + Arrays.hashCode(sigmaR);
+            result = 229 * result + (deviceProtected ? 1 : 0);
+            this.hashCode = result;
+        }
+
+        /**
+         * Returns a key holding private copies of this key's arrays.
+         * @return a copy of this key.
+         */
+        Key copy() {
+            return new Key(clone(issuerParametersDigest), hashAlgorithmUID,
+                clone(issuerParametersUID), clone(publicKey),
+                clone(tokenInformation), clone(proverInformation),
+                clone(sigmaZ), clone(sigmaC), clone(sigmaR), deviceProtected);
+        }
+
+        private static byte[] clone(final byte[] a) {
+            return a == null ? null : (byte[]) a.clone();
+        }
+
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key k = (Key) o;
+            return hashCode == k.hashCode
+                && deviceProtected == k.deviceProtected
+                && Arrays.equals(issuerParametersDigest,
+                    k.issuerParametersDigest)
+                && hashAlgorithmUID.equals(k.hashAlgorithmUID)
+                && Arrays.equals(issuerParametersUID, k.issuerParametersUID)
+                && Arrays.equals(publicKey, k.publicKey)
+                && Arrays.equals(tokenInformation, k.tokenInformation)
+                && Arrays.equals(proverInformation, k.proverInformation)
+                && Arrays.equals(sigmaZ, k.sigmaZ)
+                && Arrays.equals(sigmaC, k.sigmaC)
+                && Arrays.equals(sigmaR, k.sigmaR);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+/*
+ * LOW-LEVEL IMPLEMENTATION CLASS. NOT PART OF PUBLIC API.
+ */
+
+/**
+ * A mutable element of <code>Z_q</code>, for computing protocol responses
+ * such as <code>r_i = -c * x_i + w_i</code> without allocating.
+ * <p>
+ * <code>ZqElement</code> arithmetic goes through <code>BigInteger</code>,
+ * which allocates new objects on every operation, even in the
+ * <code>*Assign</code> variants, and whose running time depends on the
+ * operand values. An accumulator instead holds its value as 32-bit limbs
+ * in Montgomery representation (see {@link MontgomeryDomain}) and updates
+ * it in place: additions, subtractions, negations and multiplications
+ * allocate nothing and run in time independent of the values. Operands
+ * used repeatedly, such as a challenge, can be held in accumulators of
+ * their own to be converted only once.
+ * </p>
+ * <p>
+ * Converting a <code>ZqElement</code> into an accumulator, and encoding an
+ * accumulator's value, still go through a byte array, since
+ * <code>BigInteger</code> does not expose its magnitude; the length of the
+ * minimal encoding produced by {@link #toByteArray()} necessarily depends
+ * on the value. Accumulators are not thread-safe.
+ * </p>
+ */
+final class ZqAccumulator {
+
+    private final FieldZq Zq;
+    private final MontgomeryDomain domain;
+    // the value, in Montgomery representation
+    private final long[] value;
+    // scratch space for operands and for multiply
+    private final long[] operand;
+    private final long[] scratch;
+    // scratch space for the encoding of the value
+    private final byte[] encoded;
+
+    /**
+     * Constructs an accumulator of value <code>0</code>.
+     * @param Zq the field of the accumulator.
+     */
+    ZqAccumulator(final FieldZq Zq) {
+        this.Zq = Zq;
+        this.domain = Zq.getMontgomeryDomain();
+        final int n = domain.getLength();
+        this.value = new long[n];
+        this.operand = new long[n];
+        this.scratch = new long[n + 1];
+        this.encoded = new byte[(Zq.getQ().bitLength() + 7) / 8];
+    }
+
+    /**
+     * Returns the field of the accumulator.
+     * @return the field.
+     */
+    FieldZq getField() {
+        return Zq;
+    }
+
+    /**
+     * Sets the value of the accumulator.
+     * @param a an element of the accumulator's field.
+     * @return this accumulator.
+     * @throws IllegalArgumentException if <code>a</code> belongs to another
+     * field.
+     */
+    ZqAccumulator set(final ZqElement a) {
+        load(a, value);
+        return this;
+    }
+
+    /**
+     * Sets the value of the accumulator to that of another.
+     * @param a an accumulator of the same field.
+     * @return this accumulator.
+     */
+    ZqAccumulator set(final ZqAccumulator a) {
+        check(a);
+        System.arraycopy(a.value, 0, value, 0, value.length);
+        return this;
+    }
+
+    /**
+     * Adds an element to the accumulator.
+     * @param a an element of the accumulator's field.
+     * @return this accumulator, of value <code>this + a</code>.
+     * @throws IllegalArgumentException if <code>a</code> belongs to another
+     * field.
+     */
+    ZqAccumulator add(final ZqElement a) {
+        load(a, operand);
+        domain.add(value, operand, value);
+        return this;
+    }
+
+    /**
+     * Adds another accumulator to the accumulator.
+     * @param a an accumulator of the same field.
+     * @return this accumulator, of value <code>this + a</code>.
+     */
+    ZqAccumulator add(final ZqAccumulator a) {
+        check(a);
+        domain.add(value, a.value, value);
+        return this;
+    }
+
+    /**
+     * Subtracts an element from the accumulator.
+     * @param a an element of the accumulator's field.
+     * @return this accumulator, of value <code>this - a</code>.
+     * @throws IllegalArgumentException if <code>a</code> belongs to another
+     * field.
+     */
+    ZqAccumulator subtract(final ZqElement a) {
+        load(a, operand);
+        domain.subtract(value, operand, value);
+        return this;
+    }
+
+    /**
+     * Subtracts another accumulator from the accumulator.
+     * @param a an accumulator of the same field.
+     * @return this accumulator, of value <code>this - a</code>.
+     */
+    ZqAccumulator subtract(final ZqAccumulator a) {
+        check(a);
+        domain.subtract(value, a.value, value);
+        return this;
+    }
+
+    /**
+     * Multiplies the accumulator by an element.
+     * @param a an element of the accumulator's field.
+     * @return this accumulator, of value <code>this * a</code>.
+     * @throws IllegalArgumentException if <code>a</code> belongs to another
+     * field.
+     */
+    ZqAccumulator multiply(final ZqElement a) {
+        load(a, operand);
+        domain.multiply(value, operand, value, scratch);
+        return this;
+    }
+
+    /**
+     * Multiplies the accumulator by another accumulator.
+     * @param a an accumulator of the same field.
+     * @return this accumulator, of value <code>this * a</code>.
+     */
+    ZqAccumulator multiply(final ZqAccumulator a) {
+        check(a);
+        domain.multiply(value, a.value, value, scratch);
+        return this;
+    }
+
+    /**
+     * Negates the accumulator.
+     * @return this accumulator, of value <code>-this</code>.
+     */
+    ZqAccumulator negate() {
+        for (int j = 0; j < operand.length; ++j) {
+            operand[j] = 0;
+        }
+        domain.subtract(operand, value, value);
+        return this;
+    }
+
+    /**
+     * Returns the value of the accumulator as an element.
+     * @return a new element. Ownership of the referent is given to the
+     * caller.
+     */
+    ZqElement toElement() {
+        return Zq.determineElement(new BigInteger(1, toByteArray()));
+    }
+
+    /**
+     * Returns the encoding of the accumulator's value, as returned by
+     * {@link ZqElement#toByteArray()}.
+     * @return the encoded value.
+     */
+    byte[] toByteArray() {
+        domain.fromMontgomery(value, operand);
+        final int length = encoded.length;
+        for (int i = 0; i < length; ++i) {
+            // the i-th least significant byte
+            encoded[length - 1 - i] =
+                (byte) (operand[i / 4] >>> (8 * (i % 4)));
+        }
+        // the encoding is minimal, but holds at least one byte
+        int offset = 0;
+        while (offset < length - 1 && encoded[offset] == 0) {
+            offset++;
+        }
+        final byte[] retVal = new byte[length - offset];
+        System.arraycopy(encoded, offset, retVal, 0, retVal.length);
+        clear(encoded);
+        clear(operand);
+        return retVal;
+    }
+
+    /**
+     * Erases the value of the accumulator and its scratch space, which may
+     * hold secrets.
+     */
+    void clear() {
+        clear(value);
+        clear(operand);
+        clear(scratch);
+    }
+
+    private static void clear(final long[] a) {
+        for (int j = 0; j < a.length; ++j) {
+            a[j] = 0;
+        }
+    }
+
+    private static void clear(final byte[] a) {
+        for (int j = 0; j < a.length; ++j) {
+            a[j] = 0;
+        }
+    }
+
+    /**
+     * Converts an element to Montgomery representation.
+     * @param a an element of the accumulator's field.
+     * @param r the array receiving the representation of <code>a</code>.
+     * @throws IllegalArgumentException if <code>a</code> belongs to another
+     * field.
+     */
+    private void load(final ZqElement a, final long[] r) {
+        if (a.getField() != Zq && !a.getField().equals(Zq)) {
+            throw new IllegalArgumentException();
+        }
+        MontgomeryDomain.toLimbs(a.toBigInteger().toByteArray(), r);
+        domain.toMontgomery(r, r);
+    }
+
+    private void check(final ZqAccumulator a) {
+        if (a.domain != domain && !a.Zq.equals(Zq)) {
+            throw new IllegalArgumentException();
+        }
+    }
+}
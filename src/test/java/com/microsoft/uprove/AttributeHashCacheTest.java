@@ -0,0 +1,75 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+import junit.framework.TestCase;
+
+public class AttributeHashCacheTest extends TestCase {
+
+    public AttributeHashCacheTest(String name) {
+        super(name);
+    }
+
+    private static IssuerParametersInternal generateParameters() throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {0, 1});
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setSpecification("specification".getBytes());
+        return IssuerParametersInternal.decode(isp.generate().getIssuerParameters());
+    }
+
+    public void testCache() throws Exception {
+        IssuerParametersInternal ipi = generateParameters();
+        AttributeHashCache cache = ipi.getAttributeHashCache();
+        byte[] a = "attribute".getBytes();
+        byte[] ti = "token information".getBytes();
+
+        // disabled by default
+        ZqElement xi = ProtocolHelper.computeXi(ipi, 2, a);
+        ZqElement xt = ProtocolHelper.computeXt(ipi, ti);
+        assertEquals(0, cache.getSize());
+
+        ConfigImpl.setAttributeHashCacheSize(2);
+        try {
+            assertEquals(xi, ProtocolHelper.computeXi(ipi, 2, a));
+            assertEquals(xt, ProtocolHelper.computeXt(ipi, ti));
+            assertEquals(2, cache.getMissCount());
+            assertEquals(2, cache.getSize());
+
+            // the caller owns the returned values
+            ZqElement cached = ProtocolHelper.computeXi(ipi, 2, a);
+            assertEquals(xi, cached);
+            cached.addAssign(cached.getField().getOne());
+            assertEquals(xi, ProtocolHelper.computeXi(ipi, 2, a));
+            assertEquals(xt, ProtocolHelper.computeXt(ipi, ti));
+            assertEquals(3, cache.getHitCount());
+
+            // attribute and token information values don't share entries
+            assertEquals(ProtocolHelper.computeXt(ipi, a), ProtocolHelper.computeXt(ipi, a));
+            assertFalse(xi.equals(ProtocolHelper.computeXt(ipi, a)));
+            assertEquals(2, cache.getSize());
+
+            // directly encoded attributes and long values are not cached
+            long misses = cache.getMissCount();
+            ProtocolHelper.computeXi(ipi, 1, a);
+            byte[] large = new byte[AttributeHashCache.MAX_VALUE_LENGTH + 1];
+            ProtocolHelper.computeXi(ipi, 2, large);
+            ProtocolHelper.computeXi(ipi, 2, large);
+            assertEquals(misses, cache.getMissCount());
+        } finally {
+            ConfigImpl.setAttributeHashCacheSize(-1);
+        }
+    }
+}
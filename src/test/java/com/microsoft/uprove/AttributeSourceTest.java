@@ -0,0 +1,163 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class AttributeSourceTest extends TestCase {
+
+    public AttributeSourceTest(String name) {
+        super(name);
+    }
+
+    private static IssuerKeyAndParameters generateIssuerKeyAndParameters() throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {0, 1, 1});
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setSpecification("specification".getBytes());
+        return isp.generate();
+    }
+
+    private static File createFile(byte[] data) throws Exception {
+        File file = File.createTempFile("attribute", ".bin");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    public void testComputeXi() throws Exception {
+        IssuerParametersInternal ipi = IssuerParametersInternal.generate(generateIssuerKeyAndParameters().getIssuerParameters());
+        int[] lengths = new int[] {0, 1, AttributeSource.CHUNK_SIZE, 3 * AttributeSource.CHUNK_SIZE + 17,
+                AttributeSource.MAP_THRESHOLD + 5};
+        for (int i = 0; i < lengths.length; i++) {
+            byte[] value = RandomSource.getRandomBytes(lengths[i]);
+            FieldZq.ZqElement expected = ProtocolHelper.computeXi(ipi, 2, value);
+
+            // the source is read from its current position only
+            ByteBuffer buffer = ByteBuffer.allocate(value.length + 3);
+            buffer.position(3);
+            buffer.put(value);
+            buffer.position(3);
+            AttributeSource source = AttributeSource.fromByteBuffer(buffer);
+            assertEquals(value.length, source.getLength());
+            assertEquals(expected, ProtocolHelper.computeXi(ipi, 2, source));
+            assertEquals(expected, ProtocolHelper.computeXi(ipi, 2, source));
+            assertEquals(3, buffer.position());
+
+            File file = createFile(value);
+            source = AttributeSource.fromFile(file);
+            assertEquals(expected, ProtocolHelper.computeXi(ipi, 2, source));
+            assertEquals(expected, ProtocolHelper.computeXi(ipi, 2, source));
+
+            RandomAccessFile raf = new RandomAccessFile(createFile(buffer.array()), "r");
+            try {
+                source = AttributeSource.fromChannel(raf.getChannel(), 3, value.length);
+                assertEquals(expected, ProtocolHelper.computeXi(ipi, 2, source));
+            } finally {
+                raf.close();
+            }
+
+            source = AttributeSource.fromStream(new ByteArrayInputStream(value), value.length);
+            assertEquals(expected, ProtocolHelper.computeXi(ipi, 2, source));
+        }
+
+        // streams can be read once
+        AttributeSource source = AttributeSource.fromStream(new ByteArrayInputStream(new byte[10]), 10);
+        ProtocolHelper.computeXi(ipi, 3, source);
+        try {
+            ProtocolHelper.computeXi(ipi, 3, source);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        try {
+            ProtocolHelper.computeXi(ipi, 3, AttributeSource.fromStream(new ByteArrayInputStream(new byte[10]), 11));
+            fail();
+        } catch (EOFException eofe) {
+            // expected
+        }
+
+        // channels shorter than the declared length, whether read or mapped
+        RandomAccessFile raf = new RandomAccessFile(createFile(new byte[AttributeSource.MAP_THRESHOLD]), "r");
+        try {
+            ProtocolHelper.computeXi(ipi, 3, AttributeSource.fromChannel(raf.getChannel(), 1, 100));
+            try {
+                ProtocolHelper.computeXi(ipi, 3, AttributeSource.fromChannel(raf.getChannel(), 1, AttributeSource.MAP_THRESHOLD));
+                fail();
+            } catch (EOFException eofe) {
+                // expected
+            }
+            try {
+                ProtocolHelper.computeXi(ipi, 3, AttributeSource.fromChannel(raf.getChannel(), AttributeSource.MAP_THRESHOLD - 10, 11));
+                fail();
+            } catch (EOFException eofe) {
+                // expected
+            }
+        } finally {
+            raf.close();
+        }
+
+        // directly encoded attributes can't be streamed
+        try {
+            ProtocolHelper.computeXi(ipi, 1, AttributeSource.fromByteBuffer(ByteBuffer.wrap(new byte[] {1})));
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testIssuanceAndPresentation() throws Exception {
+        IssuerKeyAndParameters ikap = generateIssuerKeyAndParameters();
+        IssuerParameters ip = ikap.getIssuerParameters();
+        byte[] document = RandomSource.getRandomBytes(100000);
+        byte[][] attributes = new byte[][] {"first".getBytes(), "second".getBytes(), null};
+        AttributeSource[] sources = new AttributeSource[] {null, null, AttributeSource.fromFile(createFile(document))};
+
+        IssuerProtocolParameters ipp = new IssuerProtocolParameters(1, ikap, attributes, null, null);
+        ipp.setTokenAttributeSources(sources);
+        Issuer issuer = ipp.generate();
+        ProverProtocolParameters ppp = new ProverProtocolParameters(1, ip, attributes, null, null);
+        ppp.setTokenAttributeSources(sources);
+        Prover prover = ppp.generate();
+        UProveKeyAndToken upkt = prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())))[0];
+
+        // same token as with the materialized attribute
+        byte[][] materialized = new byte[][] {attributes[0], attributes[1], document};
+        int[] disclosed = new int[] {1};
+        byte[] message = "message".getBytes();
+        PresentationProof proof = PresentationProtocol.generatePresentationProof(ip, disclosed, message, null, upkt, attributes, sources);
+        PresentationProtocol.verifyPresentationProof(ip, disclosed, message, null, upkt.getToken(), proof);
+        proof = PresentationProtocol.generatePresentationProof(ip, new int[] {1, 3}, message, null, upkt, materialized);
+        PresentationProtocol.verifyPresentationProof(ip, new int[] {1, 3}, message, null, upkt.getToken(), proof);
+
+        // streamed attributes can't be disclosed
+        try {
+            PresentationProtocol.generatePresentationProof(ip, new int[] {3}, message, null, upkt, attributes, sources);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+}
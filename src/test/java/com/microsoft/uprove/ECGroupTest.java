@@ -0,0 +1,278 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+import junit.framework.TestCase;
+
+public class ECGroupTest extends TestCase {
+
+    private static final int[] SIZES = new int[] {256, 384, 521};
+
+    public ECGroupTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Encodes an affine point in uncompressed form.
+     */
+    private static byte[] encodeUncompressed(ECGroup group, BigInteger x, BigInteger y) {
+        int size = (group.getP().bitLength() + 7) / 8;
+        byte[] retVal = new byte[1 + 2 * size];
+        retVal[0] = 4;
+        byte[] xBytes = ProtocolHelper.getMagnitude(x);
+        byte[] yBytes = ProtocolHelper.getMagnitude(y);
+        System.arraycopy(xBytes, 0, retVal, 1 + size - xBytes.length, xBytes.length);
+        System.arraycopy(yBytes, 0, retVal, retVal.length - yBytes.length, yBytes.length);
+        return retVal;
+    }
+
+    /**
+     * Adds two affine points (null is the point at infinity) with the
+     * textbook formulas.
+     */
+    private static BigInteger[] affineAdd(ECGroup group, BigInteger[] s, BigInteger[] t) {
+        BigInteger p = group.getP();
+        if (s == null) {
+            return t;
+        }
+        if (t == null) {
+            return s;
+        }
+        BigInteger lambda;
+        if (s[0].equals(t[0])) {
+            if (s[1].add(t[1]).mod(p).signum() == 0) {
+                return null;
+            }
+            lambda = s[0].multiply(s[0]).multiply(BigInteger.valueOf(3)).add(group.getA())
+                .multiply(s[1].shiftLeft(1).modInverse(p)).mod(p);
+        } else {
+            lambda = t[1].subtract(s[1]).multiply(t[0].subtract(s[0]).modInverse(p)).mod(p);
+        }
+        BigInteger x = lambda.multiply(lambda).subtract(s[0]).subtract(t[0]).mod(p);
+        BigInteger y = lambda.multiply(s[0].subtract(x)).subtract(s[1]).mod(p);
+        return new BigInteger[] {x, y};
+    }
+
+    private static BigInteger[] affineMultiply(ECGroup group, BigInteger[] s, BigInteger k) {
+        BigInteger[] retVal = null;
+        for (int i = k.bitLength() - 1; i >= 0; i--) {
+            retVal = affineAdd(group, retVal, retVal);
+            if (k.testBit(i)) {
+                retVal = affineAdd(group, retVal, s);
+            }
+        }
+        return retVal;
+    }
+
+    private static GroupElement toElement(ECGroup group, BigInteger[] s) throws IOException {
+        return s == null ? group.getIdentity() : group.getElement(encodeUncompressed(group, s[0], s[1]));
+    }
+
+    public void testDefaultGroups() {
+        for (int i = 0; i < SIZES.length; i++) {
+            ECGroup group = DefaultECGroupFactory.getDefaultECGroup(SIZES[i]);
+            assertEquals(SIZES[i], group.getQ().bitLength());
+            group.validate();
+            assertEquals(1 + (SIZES[i] + 7) / 8, group.getMaxEncodedElementSize());
+        }
+        assertNull(DefaultECGroupFactory.getDefaultECGroup(160));
+    }
+
+    public void testArithmetic() throws IOException {
+        for (int i = 0; i < SIZES.length; i++) {
+            ECGroup group = DefaultECGroupFactory.getDefaultECGroup(SIZES[i]);
+            FieldZq Zq = group.getZq();
+            BigInteger[] g = new BigInteger[] {group.getGx(), group.getGy()};
+            GroupElement identity = group.getIdentity();
+
+            ZqElement e1 = Zq.getRandomElement(true);
+            ZqElement e2 = Zq.getRandomElement(true);
+            BigInteger[] a1 = affineMultiply(group, g, e1.toBigInteger());
+            BigInteger[] a2 = affineMultiply(group, g, e2.toBigInteger());
+            GroupElement p1 = group.getGenerator().exponentiate(e1);
+            GroupElement p2 = group.getGenerator().exponentiate(e2);
+            assertEquals(toElement(group, a1), p1);
+            assertEquals(toElement(group, a2), p2);
+            assertTrue(p1.isValid());
+
+            // addition, doubling, identity and inverse
+            assertEquals(toElement(group, affineAdd(group, a1, a2)), p1.multiply(p2));
+            assertEquals(toElement(group, affineAdd(group, a1, a1)), p1.multiply(p1));
+            assertEquals(p1, p1.multiply(identity));
+            assertEquals(p1, identity.multiply(p1));
+            assertEquals(identity, p1.multiply(p1.inverse()));
+            assertEquals(identity, identity.multiply(identity));
+            assertEquals(toElement(group, a1), p1);
+            assertFalse(p1.equals(p2));
+            assertFalse(p1.equals(identity));
+            assertFalse(identity.equals(p1));
+
+            // special exponents
+            assertEquals(identity, p1.exponentiate(Zq.getZero()));
+            assertEquals(p1, p1.exponentiate(Zq.getOne()));
+            assertEquals(p1.inverse(), p1.exponentiate(Zq.getOne().negate()));
+            assertEquals(identity, identity.exponentiate(e1));
+            assertEquals(group.getGenerator().exponentiate(e1.multiply(e2)), p1.exponentiate(e2));
+
+            // in place operations
+            GroupElement acc = p1.multiply(identity);
+            acc.multiplyAssign(acc);
+            assertEquals(p1.exponentiate(Zq.getElement(BigInteger.valueOf(2))), acc);
+            acc.exponentiateAssign(e2);
+            acc.inverseAssign();
+            assertEquals(p1.exponentiate(e2.add(e2).negate()), acc);
+            assertEquals(toElement(group, affineMultiply(group, g, e1.toBigInteger())), p1);
+        }
+    }
+
+    public void testEncoding() throws IOException {
+        for (int i = 0; i < SIZES.length; i++) {
+            ECGroup group = DefaultECGroupFactory.getDefaultECGroup(SIZES[i]);
+            FieldZq Zq = group.getZq();
+            int size = group.getMaxEncodedElementSize();
+
+            GroupElement identity = group.getIdentity();
+            assertTrue(Arrays.equals(new byte[] {0}, identity.toByteArray()));
+            assertEquals(identity, group.getElement(identity.toByteArray()));
+            assertTrue(identity.isValid());
+
+            for (int trial = 0; trial < 10; trial++) {
+                GroupElement point = group.getGenerator().exponentiate(Zq.getRandomElement(true));
+                byte[] encoded = point.toByteArray();
+                assertEquals(size, encoded.length);
+                assertEquals(encoded.length, point.length());
+                assertTrue(encoded[0] == 2 || encoded[0] == 3);
+                GroupElement decoded = group.getElement(encoded);
+                assertEquals(point, decoded);
+                assertEquals(point.hashCode(), decoded.hashCode());
+                assertTrue(Arrays.equals(encoded, point.inverse().inverse().toByteArray()));
+                // the inverse only differs by the parity of y
+                byte[] inverse = point.inverse().toByteArray();
+                assertEquals(5, encoded[0] + inverse[0]);
+                assertTrue(Arrays.equals(Arrays.copyOfRange(encoded, 1, size), Arrays.copyOfRange(inverse, 1, size)));
+            }
+
+            // generator in compressed form
+            byte[] encodedG = group.getGenerator().toByteArray();
+            assertEquals(group.getGy().testBit(0) ? 3 : 2, encodedG[0]);
+            assertEquals(group.getGx(), new BigInteger(1, Arrays.copyOfRange(encodedG, 1, size)));
+
+            // malformed encodings
+            byte[][] invalid = new byte[][] {
+                new byte[0],
+                new byte[] {2},
+                new byte[] {1},
+                Arrays.copyOf(encodedG, size - 1),
+                Arrays.copyOf(encodedG, size + 1),
+                encodeUncompressed(group, group.getGx(), group.getGy().add(BigInteger.ONE)),
+                encodeUncompressed(group, group.getGx(), group.getGy().add(group.getP()))
+            };
+            for (int j = 0; j < invalid.length; j++) {
+                try {
+                    group.getElement(invalid[j]);
+                    fail("invalid encoding " + j);
+                } catch (IOException ioe) {
+                    // expected
+                }
+            }
+            // x not on the curve: find one whose right-hand side is a non-residue
+            byte[] notOnCurve = encodedG.clone();
+            boolean rejected = false;
+            for (int x = 1; !rejected; x++) {
+                Arrays.fill(notOnCurve, 1, size, (byte) 0);
+                notOnCurve[size - 1] = (byte) x;
+                try {
+                    group.getElement(notOnCurve);
+                } catch (IOException ioe) {
+                    rejected = true;
+                }
+            }
+        }
+    }
+
+    public void testMultiExponentiate() {
+        ECGroup group = DefaultECGroupFactory.getDefaultECGroup(256);
+        FieldZq Zq = group.getZq();
+        for (int n = 1; n <= 5; n++) {
+            GroupElement[] bases = new GroupElement[n];
+            ZqElement[] exponents = new ZqElement[n];
+            GroupElement expected = group.getIdentity();
+            for (int i = 0; i < n; i++) {
+                bases[i] = group.getGenerator().exponentiate(Zq.getRandomElement(true));
+                exponents[i] = i == 1 ? null : (i == 2 ? Zq.getZero() : Zq.getRandomElement(true));
+                expected.multiplyAssign(exponents[i] == null ? bases[i] : bases[i].exponentiate(exponents[i]));
+            }
+            GroupElement[] copy = new GroupElement[n];
+            for (int i = 0; i < n; i++) {
+                copy[i] = bases[i].multiply(group.getIdentity());
+            }
+            assertEquals(expected, ProtocolHelper.computeProduct(bases, exponents));
+            assertTrue(Arrays.equals(copy, bases));
+        }
+    }
+
+    public void testAgainstJCE() throws Exception {
+        String[] names = new String[] {"secp256r1", "secp384r1", "secp521r1"};
+        for (int i = 0; i < SIZES.length; i++) {
+            ECGroup group = DefaultECGroupFactory.getDefaultECGroup(SIZES[i]);
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+            kpg.initialize(new ECGenParameterSpec(names[i]));
+            KeyPair kp = kpg.generateKeyPair();
+            BigInteger s = ((ECPrivateKey) kp.getPrivate()).getS();
+            java.security.spec.ECPoint w = ((ECPublicKey) kp.getPublic()).getW();
+            assertEquals(group.getElement(encodeUncompressed(group, w.getAffineX(), w.getAffineY())),
+                group.getGenerator().exponentiate(group.getZq().getElement(s)));
+        }
+    }
+
+    public void testProtocols() throws Exception {
+        for (int i = 0; i < SIZES.length; i++) {
+            IssuerSetupParameters isp = new IssuerSetupParameters();
+            isp.setGroup(DefaultECGroupFactory.getDefaultECGroup(SIZES[i]));
+            isp.setParametersUID("unique UID".getBytes());
+            isp.setHashAlgorithmUID("SHA-256");
+            isp.setEncodingBytes(new byte[] {0, 1, 1});
+            isp.setSpecification("specification".getBytes());
+            IssuerKeyAndParameters ikap = isp.generate();
+            IssuerParameters ip = ikap.getIssuerParameters();
+            ip.validate();
+
+            byte[][] attributes = new byte[][] {new byte[] {1, 2, 3}, "second".getBytes(), null};
+            byte[] tokenInformation = "token information".getBytes();
+            Issuer issuer = new IssuerProtocolParameters(2, ikap, attributes, tokenInformation, null).generate();
+            Prover prover = new ProverProtocolParameters(2, ip, attributes, tokenInformation, "prover information".getBytes()).generate();
+            UProveKeyAndToken[] upkt = prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())));
+
+            int[] disclosed = new int[] {2};
+            byte[] message = "message".getBytes();
+            PresentationProof proof = PresentationProtocol.generatePresentationProof(ip, disclosed, message, null, upkt[1], attributes);
+            PresentationProtocol.verifyPresentationProof(ip, disclosed, message, null, upkt[1].getToken(), proof);
+            try {
+                PresentationProtocol.verifyPresentationProof(ip, disclosed, "other message".getBytes(), null, upkt[1].getToken(), proof);
+                fail();
+            } catch (InvalidProofException ipe) {
+                // expected
+            }
+        }
+    }
+}
@@ -259,4 +259,132 @@ public class EndToEndTest extends TestCase {
     	}
     }
 
+    public void testBatchVerification() throws IOException, InvalidProofException, NoSuchProviderException, NoSuchAlgorithmException {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setEncodingBytes(new byte[] {0, 1, 1});
+        isp.setSpecification("specification".getBytes());
+        IssuerKeyAndParameters ikap = isp.generate();
+        IssuerParameters ip = ikap.getIssuerParameters();
+
+        int numberOfTokens = 4;
+        byte[][] attributes = new byte[][] {new byte[] {1, 2, 3}, "second".getBytes(), null};
+        byte[] tokenInformation = "token information".getBytes();
+        Issuer issuer = new IssuerProtocolParameters(numberOfTokens, ikap, attributes, tokenInformation, null).generate();
+        Prover prover = new ProverProtocolParameters(numberOfTokens, ip, attributes, tokenInformation, "prover information".getBytes()).generate();
+        UProveKeyAndToken[] upkt = prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())));
+
+        IssuerParameters[] ips = new IssuerParameters[numberOfTokens];
+        int[][] disclosed = new int[numberOfTokens][];
+        byte[][] messages = new byte[numberOfTokens][];
+        UProveToken[] tokens = new UProveToken[numberOfTokens];
+        PresentationProof[] proofs = new PresentationProof[numberOfTokens];
+        for (int i = 0; i < numberOfTokens; i++) {
+            ips[i] = ip;
+            disclosed[i] = i % 2 == 0 ? new int[] {2} : new int[] {1, 3};
+            messages[i] = ("message " + i).getBytes();
+            tokens[i] = upkt[i].getToken();
+            proofs[i] = PresentationProtocol.generatePresentationProof(ip, disclosed[i], messages[i], null, upkt[i], attributes);
+        }
+        boolean[] valid = PresentationProtocol.verifyPresentationProofs(ips, disclosed, messages, null, tokens, proofs);
+        for (int i = 0; i < numberOfTokens; i++) {
+            assertTrue(valid[i]);
+        }
+
+        // wrong message, wrong token, wrong disclosed indices
+        messages[0] = "wrong message".getBytes();
+        tokens[1] = upkt[2].getToken();
+        disclosed[3] = new int[] {1};
+        valid = PresentationProtocol.verifyPresentationProofs(ips, disclosed, messages, null, tokens, proofs);
+        assertTrue(Arrays.equals(new boolean[] {false, false, true, false}, valid));
+
+        try {
+            PresentationProtocol.verifyPresentationProofs(ips, disclosed, new byte[1][], null, tokens, proofs);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testBatchVerificationWithBadIndex() throws IOException, InvalidProofException, NoSuchProviderException, NoSuchAlgorithmException {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setEncodingBytes(new byte[] {1, 1});
+        isp.setSpecification("specification".getBytes());
+        IssuerKeyAndParameters ikap = isp.generate();
+        IssuerParameters ip = ikap.getIssuerParameters();
+
+        byte[][] attributes = new byte[][] {"first".getBytes(), "second".getBytes()};
+        Issuer issuer = new IssuerProtocolParameters(2, ikap, attributes, null, null).generate();
+        Prover prover = new ProverProtocolParameters(2, ip, attributes, null, null).generate();
+        UProveKeyAndToken[] upkt = prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())));
+
+        IssuerParameters[] ips = new IssuerParameters[] {ip, ip};
+        int[][] disclosed = new int[][] {{1}, {1}};
+        byte[][] messages = new byte[][] {"message 0".getBytes(), "message 1".getBytes()};
+        UProveToken[] tokens = new UProveToken[] {upkt[0].getToken(), upkt[1].getToken()};
+        PresentationProof[] proofs = new PresentationProof[2];
+        for (int i = 0; i < 2; i++) {
+            proofs[i] = PresentationProtocol.generatePresentationProof(ip, disclosed[i], messages[i], null, upkt[i], attributes);
+        }
+
+        // only 2 attributes exist: the second proof is reported invalid
+        // without affecting the first
+        disclosed[1] = new int[] {7};
+        boolean[] valid = PresentationProtocol.verifyPresentationProofs(ips, disclosed, messages, null, tokens, proofs);
+        assertTrue(Arrays.equals(new boolean[] {true, false}, valid));
+
+        disclosed[1] = new int[] {0};
+        valid = PresentationProtocol.verifyPresentationProofs(ips, disclosed, messages, null, tokens, proofs);
+        assertTrue(Arrays.equals(new boolean[] {true, false}, valid));
+
+        try {
+            PresentationProtocol.verifyPresentationProof(ip, new int[] {7}, messages[1], null, tokens[1], proofs[1]);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testBatchVerificationWithEqualParameters() throws IOException, InvalidProofException, NoSuchProviderException, NoSuchAlgorithmException {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setEncodingBytes(new byte[] {1, 1});
+        isp.setSpecification("specification".getBytes());
+        IssuerKeyAndParameters ikap = isp.generate();
+        IssuerParameters ip = ikap.getIssuerParameters();
+
+        // a separate but equal instance, as a Verifier decoding the same
+        // parameters twice would get
+        IssuerParameters ipCopy = new IssuerParameters();
+        ipCopy.setParametersUID((byte[]) ip.getParametersUID().clone());
+        ipCopy.setGroup(ip.getGroup());
+        ipCopy.setHashAlgorithmUID(ip.getHashAlgorithmUID());
+        ipCopy.setPublicKey((byte[][]) ip.getPublicKey().clone());
+        ipCopy.setEncodingBytes((byte[]) ip.getEncodingBytes().clone());
+        ipCopy.setProverIssuanceValues(ip.getProverIssuanceValues());
+        ipCopy.setSpecification((byte[]) ip.getSpecification().clone());
+
+        byte[][] attributes = new byte[][] {"first".getBytes(), "second".getBytes()};
+        Issuer issuer = new IssuerProtocolParameters(3, ikap, attributes, null, null).generate();
+        Prover prover = new ProverProtocolParameters(3, ip, attributes, null, null).generate();
+        UProveKeyAndToken[] upkt = prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())));
+
+        IssuerParameters[] ips = new IssuerParameters[] {ip, ipCopy, ip};
+        int[][] disclosed = new int[][] {{1}, {2}, {1, 2}};
+        byte[][] messages = new byte[3][];
+        UProveToken[] tokens = new UProveToken[3];
+        PresentationProof[] proofs = new PresentationProof[3];
+        for (int i = 0; i < 3; i++) {
+            messages[i] = ("message " + i).getBytes();
+            tokens[i] = upkt[i].getToken();
+            proofs[i] = PresentationProtocol.generatePresentationProof(ip, disclosed[i], messages[i], null, upkt[i], attributes);
+        }
+        boolean[] valid = PresentationProtocol.verifyPresentationProofs(ips, disclosed, messages, null, tokens, proofs);
+        assertTrue(Arrays.equals(new boolean[] {true, true, true}, valid));
+    }
+
 }
@@ -235,4 +235,39 @@ public class FieldZqTest extends TestCase {
         assertSame(a.getField(), d.getField());
     }
 
+    public void testRandomElements() {
+        // small fields reject many candidates; all values must show up
+        BigInteger[] smallQ = new BigInteger[] {BigInteger.valueOf(2), BigInteger.valueOf(13), BigInteger.valueOf(257)};
+        for (int k = 0; k < smallQ.length; k++) {
+            FieldZq field = FieldZq.getInstance(smallQ[k]);
+            int size = smallQ[k].intValue();
+            for (int nonZero = 0; nonZero <= 1; nonZero++) {
+                boolean[] seen = new boolean[size];
+                FieldZq.ZqElement[] values = field.getRandomElements(50 * size, nonZero == 1);
+                for (int i = 0; i < values.length; i++) {
+                    int v = values[i].toBigInteger().intValue();
+                    assertTrue(v >= nonZero && v < size);
+                    seen[v] = true;
+                }
+                for (int v = nonZero; v < size; v++) {
+                    assertTrue(seen[v]);
+                }
+            }
+        }
+
+        FieldZq.ZqElement[] values = Zq512.getRandomElements(100, true);
+        for (int i = 0; i < values.length; i++) {
+            assertTrue(values[i].toBigInteger().signum() > 0);
+            assertTrue(values[i].toBigInteger().compareTo(q512) < 0);
+        }
+        assertFalse(values[0].equals(values[1]));
+
+        try {
+            Zq.getRandomElements(0, false);
+            fail("where's my IAE?");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
 }
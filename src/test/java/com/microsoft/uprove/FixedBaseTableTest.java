@@ -0,0 +1,142 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+import junit.framework.TestCase;
+
+public class FixedBaseTableTest extends TestCase {
+
+    private final Subgroup Gq = DefaultSubgroupFactory.getDefaultSubroup(160);
+    private final FieldZq Zq = Gq.getZq();
+
+    public FixedBaseTableTest(String name) {
+        super(name);
+    }
+
+    public void testExponentiate() {
+        GroupElement base = Gq.getGenerator().exponentiate(Zq.getRandomElement(true));
+        for (int w = 1; w <= 8; w++) {
+            FixedBaseTable table = new FixedBaseTable(base, w);
+            assertEquals(Gq.getIdentity(), table.exponentiate(Zq.getZero()));
+            assertEquals(base, table.exponentiate(Zq.getOne()));
+            assertEquals(base.exponentiate(Zq.getOne().negate()), table.exponentiate(Zq.getOne().negate()));
+            for (int trial = 0; trial < 10; trial++) {
+                ZqElement e = Zq.getRandomElement(true);
+                assertEquals("w = " + w, base.exponentiate(e), table.exponentiate(e));
+            }
+        }
+    }
+
+    public void testMultiplyPower() {
+        GroupElement base = Gq.getGenerator();
+        FixedBaseTable table = new FixedBaseTable(base, 4);
+        ZqElement e = Zq.getRandomElement(true);
+        ZqElement f = Zq.getRandomElement(true);
+        GroupElement acc = base.exponentiate(f);
+        GroupElement result = table.multiplyPower(acc, e);
+        assertSame(acc, result);
+        assertEquals(base.exponentiate(e.add(f)), result);
+        assertEquals(Gq.getIdentity(), table.multiplyPower(null, Zq.getZero()));
+        assertEquals(Gq.getGenerator(), base);
+    }
+
+    public void testECGroup() {
+        ECGroup group = DefaultECGroupFactory.getDefaultECGroup(256);
+        FieldZq zq = group.getZq();
+        GroupElement base = group.getGenerator().exponentiate(zq.getRandomElement(true));
+        FixedBaseTable table = new FixedBaseTable(base, 5);
+        assertEquals(group.getIdentity(), table.exponentiate(zq.getZero()));
+        assertEquals(base, table.exponentiate(zq.getOne()));
+        for (int trial = 0; trial < 10; trial++) {
+            ZqElement e = zq.getRandomElement(true);
+            assertEquals(base.exponentiate(e), table.exponentiate(e));
+        }
+    }
+
+    public void testNoConstantTimeSelect() {
+        // an even modulus has no Montgomery form, so table entries could
+        // not be selected in constant time
+        Subgroup even = new Subgroup(BigInteger.valueOf(16), BigInteger.valueOf(3), BigInteger.valueOf(5));
+        assertFalse(even.canSelect());
+        assertTrue(even.getElementMemorySize() > 0);
+        assertEquals(0, FixedBaseTable.getWindow(even, Long.MAX_VALUE));
+        try {
+            new FixedBaseTable(even.getGenerator(), 4);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testGetWindow() {
+        assertEquals(0, FixedBaseTable.getWindow(Gq, 0));
+        for (int w = 1; w <= FixedBaseTable.MAX_WINDOW; w++) {
+            long size = FixedBaseTable.getSize(Gq, w) * Gq.getElementMemorySize();
+            assertEquals(w, FixedBaseTable.getWindow(Gq, size));
+            assertEquals(size, new FixedBaseTable(Gq.getGenerator(), w).getMemorySize());
+        }
+        assertEquals(FixedBaseTable.MAX_WINDOW, FixedBaseTable.getWindow(Gq, Long.MAX_VALUE));
+        try {
+            new FixedBaseTable(Gq.getGenerator(), FixedBaseTable.MAX_WINDOW + 1);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testIssuerParametersTables() throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {0, 1});
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setSpecification("specification".getBytes());
+        IssuerParameters ip = isp.generate().getIssuerParameters();
+        IssuerParametersInternal cached = IssuerParametersInternal.decode(ip);
+        assertNull(cached.getFixedBaseTable(cached.getGenerator()));
+
+        ConfigImpl.setFixedBaseMemoryBudget(1 << 20);
+        try {
+            // changing the budget drops parameters decoded with the old one
+            IssuerParametersInternal decoded = IssuerParametersInternal.decode(ip);
+            assertNotSame(cached, decoded);
+            assertNotNull(decoded.getFixedBaseTable(decoded.getGenerator()));
+            assertNull(cached.getFixedBaseTable(cached.getGenerator()));
+
+            IssuerParametersInternal ipi = IssuerParametersInternal.generate(ip);
+            PrimeOrderGroup group = ipi.getGroup();
+            FieldZq zq = group.getZq();
+            GroupElement[] g = ipi.getPublicKey();
+            assertNotNull(ipi.getFixedBaseTable(ipi.getGenerator()));
+            assertSame(ipi.getFixedBaseTable(g[0]), ipi.getFixedBaseTable(g[0]));
+            // only the Issuer parameters' own instances have a table
+            assertNull(ipi.getFixedBaseTable(group.getGenerator()));
+
+            GroupElement h = group.getGenerator().exponentiate(zq.getRandomElement(true));
+            GroupElement[] bases = new GroupElement[] {g[0], h, ipi.getGenerator(), g[1], g[2]};
+            ZqElement[] exponents = new ZqElement[] {zq.getRandomElement(true), zq.getRandomElement(true),
+                zq.getRandomElement(true), null, zq.getZero()};
+            assertEquals(ProtocolHelper.computeProduct(bases, exponents),
+                ProtocolHelper.computeProduct(ipi, bases, exponents));
+            ZqElement e = zq.getRandomElement(true);
+            assertEquals(g[1].exponentiate(e), ProtocolHelper.exponentiate(ipi, g[1], e));
+        } finally {
+            ConfigImpl.setFixedBaseMemoryBudget(-1);
+        }
+
+        // tables are disabled by default
+        IssuerParametersInternal ipi = IssuerParametersInternal.decode(ip);
+        assertNull(ipi.getFixedBaseTable(ipi.getGenerator()));
+    }
+}
@@ -0,0 +1,97 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+
+import junit.framework.TestCase;
+
+public class GroupRegistryTest extends TestCase {
+
+    public GroupRegistryTest(String name) {
+        super(name);
+    }
+
+    public void testSubgroupInterning() throws Exception {
+        Subgroup group = DefaultSubgroupFactory.getDefaultSubroup(256);
+        BigInteger p = group.getP();
+        BigInteger q = group.getQ();
+        BigInteger g = group.getG();
+
+        // equal parameters give the default group itself
+        Subgroup interned = Subgroup.getInstance(p, q, g);
+        assertSame(group, interned);
+        assertSame(group, Subgroup.getInstance(p.toByteArray(), q.toByteArray(), g.toByteArray()));
+        assertSame(group.getZq(), FieldZq.getInstance(q));
+
+        // the constructors still create distinct instances
+        Subgroup copy = new Subgroup(p, q, g);
+        assertNotSame(group, copy);
+        assertEquals(group, copy);
+        assertSame(group.getZq(), copy.getZq());
+        assertSame(group, GroupRegistry.intern(copy));
+
+        // different parameters are not merged
+        Subgroup other = Subgroup.getInstance(p, q, g.modPow(BigInteger.valueOf(2), p));
+        assertNotSame(group, other);
+        assertFalse(group.equals(other));
+
+        // elements from equal groups can still be combined
+        GroupElement a = group.getGenerator();
+        GroupElement b = copy.getGenerator();
+        assertEquals(a.multiply(a), a.multiply(b));
+    }
+
+    public void testFieldInterning() {
+        BigInteger q = DefaultSubgroupFactory.getDefaultSubroup(160).getQ();
+
+        // distinct but equal orders give the same field instance
+        FieldZq Zq = FieldZq.getInstance(new BigInteger(q.toByteArray()));
+        assertSame(Zq, FieldZq.getInstance(new BigInteger(q.toByteArray())));
+        assertSame(Zq, GroupRegistry.getField(new BigInteger(q.toByteArray())));
+        assertSame(Zq, GroupRegistry.intern(Zq));
+        assertNotSame(Zq, FieldZq.getInstance(q.add(BigInteger.valueOf(2))));
+
+        // invalid orders are still rejected
+        try {
+            FieldZq.getInstance(BigInteger.ONE);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        assertNull(GroupRegistry.getField(BigInteger.ONE));
+    }
+
+    public void testDecodedParametersShareGroup() throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {1});
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setParametersUID("UID".getBytes());
+        isp.setSpecification("specification".getBytes());
+        IssuerParameters ip = isp.generate().getIssuerParameters();
+        Subgroup group = (Subgroup) ip.getGroup();
+        IssuerParametersCache.clear();
+
+        IssuerParameters decoded = new IssuerParameters();
+        decoded.setParametersUID(ip.getParametersUID());
+        decoded.setGroup(new Subgroup(group.getP(),
+            group.getQ(), group.getG()));
+        decoded.setHashAlgorithmUID(ip.getHashAlgorithmUID());
+        decoded.setPublicKey(ip.getPublicKey());
+        decoded.setEncodingBytes(ip.getEncodingBytes());
+        decoded.setProverIssuanceValues(ip.getProverIssuanceValues());
+        decoded.setSpecification(ip.getSpecification());
+        assertSame(GroupRegistry.intern(group),
+            IssuerParametersInternal.generate(decoded).getGroup());
+        IssuerParametersCache.clear();
+    }
+}
@@ -0,0 +1,91 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class HashFunctionPoolTest extends TestCase {
+
+    public HashFunctionPoolTest(String name) {
+        super(name);
+    }
+
+    public void testReuse() throws Exception {
+        HashFunctionPool pool = new HashFunctionPool("SHA-256", FieldZqTest.Zq160);
+        HashFunction H = pool.take();
+        H.update("abc".getBytes());
+        byte[] expected = H.getByteDigest();
+        pool.release(H);
+        assertEquals(1, pool.getIdleCount());
+
+        // a released instance is handed out again, in its initial state
+        HashFunction H2 = pool.take();
+        assertSame(H, H2);
+        assertEquals(0, pool.getIdleCount());
+        H2.update("abc".getBytes());
+        assertTrue(Arrays.equals(expected, H2.getByteDigest()));
+
+        // instances handed back in the middle of a computation are reset
+        H2.update("garbage".getBytes());
+        pool.release(H2);
+        HashFunction H3 = pool.take();
+        H3.update("abc".getBytes());
+        assertTrue(Arrays.equals(expected, H3.getByteDigest()));
+
+        // instances in use are distinct
+        assertNotSame(H3, pool.take());
+
+        // the pool holds a bounded number of idle instances
+        HashFunction[] taken = new HashFunction[HashFunctionPool.MAX_IDLE + 1];
+        for (int i = 0; i < taken.length; i++) {
+            taken[i] = pool.take();
+        }
+        for (int i = 0; i < taken.length; i++) {
+            pool.release(taken[i]);
+        }
+        assertEquals(HashFunctionPool.MAX_IDLE, pool.getIdleCount());
+    }
+
+    public void testConcurrentUse() throws Exception {
+        final HashFunctionPool pool = new HashFunctionPool("SHA-256", FieldZqTest.Zq160);
+        HashFunction H = pool.take();
+        H.update("abc".getBytes());
+        final byte[] expected = H.getByteDigest();
+        pool.release(H);
+
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        HashFunction H = pool.take();
+                        H.update("abc".getBytes());
+                        if (!Arrays.equals(expected, H.getByteDigest())) {
+                            synchronized (failed) {
+                                failed[0] = true;
+                            }
+                        }
+                        pool.release(H);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        assertFalse(failed[0]);
+    }
+}
@@ -0,0 +1,60 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class HashMidstateTest extends TestCase {
+
+    public HashMidstateTest(String name) {
+        super(name);
+    }
+
+    public void testResume() throws Exception {
+        HashFunction H = HashFunctionImpl.getInstance("SHA-256", FieldZqTest.Zq160);
+        H.update("prefix".getBytes());
+        HashMidstate midstate = HashMidstate.capture(H);
+        assertNotNull(midstate);
+
+        HashFunction expected = HashFunctionImpl.getInstance("SHA-256", FieldZqTest.Zq160);
+        expected.update("prefix".getBytes());
+        expected.update("suffix".getBytes());
+        byte[] digest = expected.getByteDigest();
+
+        // every resumed instance starts from the captured state
+        for (int i = 0; i < 2; i++) {
+            HashFunction resumed = midstate.resume();
+            resumed.update("suffix".getBytes());
+            assertTrue(Arrays.equals(digest, resumed.getByteDigest()));
+        }
+    }
+
+    public void testXt() throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {1});
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setParametersUID("UID".getBytes());
+        isp.setSpecification("specification".getBytes());
+        IssuerParametersInternal ipi = IssuerParametersInternal.generate(isp.generate().getIssuerParameters());
+
+        for (int i = 0; i < 2; i++) {
+            byte[] TI = ("token information " + i).getBytes();
+            HashFunction H = HashFunctionImpl.getInstance("SHA-256", ipi.getGroup().getZq());
+            H.update((byte) 1);
+            H.update(ipi.getIssuerParametersDigest());
+            H.update(TI);
+            assertEquals(H.getZqDigest(), ProtocolHelper.computeXt(ipi, TI));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class IssuerParametersCacheTest extends TestCase {
+
+    public IssuerParametersCacheTest(String name) {
+        super(name);
+    }
+
+    private static IssuerParameters generateParameters(String uid) throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setEncodingBytes(new byte[] {0, 1});
+        isp.setParametersUID(uid.getBytes());
+        isp.setSpecification("specification".getBytes());
+        return isp.generate().getIssuerParameters();
+    }
+
+    private static IssuerParameters copy(IssuerParameters ip) {
+        IssuerParameters retVal = new IssuerParameters();
+        retVal.setParametersUID((byte[]) ip.getParametersUID().clone());
+        retVal.setGroup(ip.getGroup());
+        retVal.setHashAlgorithmUID(ip.getHashAlgorithmUID());
+        retVal.setPublicKey((byte[][]) ip.getPublicKey().clone());
+        retVal.setEncodingBytes((byte[]) ip.getEncodingBytes().clone());
+        retVal.setProverIssuanceValues(ip.getProverIssuanceValues());
+        retVal.setSpecification((byte[]) ip.getSpecification().clone());
+        return retVal;
+    }
+
+    public void testHitsAndMisses() throws Exception {
+        IssuerParameters ip1 = generateParameters("UID");
+        IssuerParameters ip2 = generateParameters("UID");
+        Config.clearIssuerParametersCache();
+
+        IssuerParametersInternal ipi = IssuerParametersInternal.generate(ip1);
+        assertEquals(0, Config.getIssuerParametersCacheHitCount());
+        assertEquals(1, Config.getIssuerParametersCacheMissCount());
+
+        // equal contents share the entry, whatever the instance
+        assertSame(ipi, IssuerParametersInternal.generate(ip1));
+        assertSame(ipi, IssuerParametersInternal.generate(copy(ip1)));
+        assertEquals(2, Config.getIssuerParametersCacheHitCount());
+
+        // same UID, different key
+        assertNotSame(ipi, IssuerParametersInternal.generate(ip2));
+        assertEquals(2, Config.getIssuerParametersCacheMissCount());
+        assertEquals(2, Config.getIssuerParametersCacheEntryCount());
+
+        // modifying the caller's arrays does not affect the cached entry
+        IssuerParameters modified = copy(ip1);
+        modified.getSpecification()[0] ^= 1;
+        IssuerParametersInternal other = IssuerParametersInternal.generate(modified);
+        assertNotSame(ipi, other);
+        modified.getSpecification()[0] ^= 1;
+        assertSame(ipi, IssuerParametersInternal.generate(modified));
+    }
+
+    public void testEntriesDoNotShareCallerArrays() throws Exception {
+        IssuerParameters ip = generateParameters("UID");
+        Config.clearIssuerParametersCache();
+
+        IssuerParameters first = copy(ip);
+        IssuerParametersInternal ipi = IssuerParametersInternal.generate(first);
+        byte[] digest = (byte[]) ipi.getIssuerParametersDigest().clone();
+
+        // the first caller modifying its parameters must not affect what
+        // later callers get from the cache
+        first.getParametersUID()[0] ^= 1;
+        first.getEncodingBytes()[0] ^= 1;
+        first.getSpecification()[0] ^= 1;
+        IssuerParametersInternal other = IssuerParametersInternal.generate(copy(ip));
+        assertSame(ipi, other);
+        assertTrue(Arrays.equals(ip.getParametersUID(), other.getParametersUID()));
+        assertTrue(Arrays.equals(ip.getEncodingBytes(), other.getEncodingBytes()));
+        assertTrue(Arrays.equals(ip.getSpecification(), other.getSpecification()));
+        assertTrue(Arrays.equals(digest, other.getIssuerParametersDigest()));
+        Config.clearIssuerParametersCache();
+    }
+
+    public void testLimits() throws Exception {
+        IssuerParameters ip1 = generateParameters("UID 1");
+        IssuerParameters ip2 = generateParameters("UID 2");
+        Config.clearIssuerParametersCache();
+
+        Config.setIssuerParametersCacheSize(1);
+        try {
+            IssuerParametersInternal ipi = IssuerParametersInternal.generate(ip1);
+            IssuerParametersInternal.generate(ip2);
+            assertEquals(1, Config.getIssuerParametersCacheEntryCount());
+            assertEquals(1, Config.getIssuerParametersCacheEvictionCount());
+            assertNotSame(ipi, IssuerParametersInternal.generate(ip1));
+
+            Config.setIssuerParametersCacheSize(0);
+            assertNotSame(IssuerParametersInternal.generate(ip1), IssuerParametersInternal.generate(ip1));
+            assertEquals(0, Config.getIssuerParametersCacheEntryCount());
+            assertEquals(0, Config.getIssuerParametersCacheHitCount());
+        } finally {
+            Config.setIssuerParametersCacheSize(-1);
+        }
+
+        Config.setIssuerParametersCacheTTL(1);
+        try {
+            IssuerParametersInternal ipi = IssuerParametersInternal.generate(ip1);
+            Thread.sleep(10);
+            assertNotSame(ipi, IssuerParametersInternal.generate(ip1));
+        } finally {
+            Config.setIssuerParametersCacheTTL(-1);
+        }
+        Config.clearIssuerParametersCache();
+    }
+}
@@ -0,0 +1,79 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+public class IssuerParametersValidationTest extends TestCase {
+
+    public IssuerParametersValidationTest(String name) {
+        super(name);
+    }
+
+    private static IssuerParameters generateParameters() throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {1, 1, 1, 1, 1});
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setParametersUID("UID".getBytes());
+        isp.setSpecification("specification".getBytes());
+        return isp.generate().getIssuerParameters();
+    }
+
+    private static class Listener implements ProgressListener {
+        int calls;
+        int lastCompleted;
+        int lastTotal;
+        public synchronized void progress(int completed, int total) {
+            calls++;
+            assertTrue(completed > lastCompleted);
+            lastCompleted = completed;
+            lastTotal = total;
+        }
+    }
+
+    public void testValidate() throws Exception {
+        IssuerParameters ip = generateParameters();
+        // g0, g1, ..., g5, gt, plus the two group steps
+        int total = ip.getPublicKey().length + 2;
+
+        Listener listener = new Listener();
+        ip.validate(null, listener);
+        assertEquals(total, listener.calls);
+        assertEquals(total, listener.lastCompleted);
+        assertEquals(total, listener.lastTotal);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            listener = new Listener();
+            ip.validate(executor, listener);
+            assertEquals(total, listener.calls);
+            assertEquals(total, listener.lastTotal);
+
+            // replace a public key element by one outside the group
+            byte[][] publicKey = (byte[][]) ip.getPublicKey().clone();
+            Subgroup group = (Subgroup) ip.getGroup();
+            publicKey[3] = group.getP().subtract(group.getG()).toByteArray();
+            ip.setPublicKey(publicKey);
+            try {
+                ip.validate(executor, null);
+                fail("invalid public key element accepted");
+            } catch (IllegalStateException ise) {
+                // expected
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
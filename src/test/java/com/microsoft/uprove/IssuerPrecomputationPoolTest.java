@@ -0,0 +1,117 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+import junit.framework.TestCase;
+
+public class IssuerPrecomputationPoolTest extends TestCase {
+
+    public IssuerPrecomputationPoolTest(String name) {
+        super(name);
+    }
+
+    private static IssuerKeyAndParameters generateIssuerKeyAndParameters() throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {0, 1});
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setSpecification("specification".getBytes());
+        return isp.generate();
+    }
+
+    public void testFillAndTake() throws Exception {
+        IssuerKeyAndParameters ikap = generateIssuerKeyAndParameters();
+        IssuerParametersInternal ipi = IssuerParametersInternal.generate(ikap.getIssuerParameters());
+        IssuerPrecomputationPool pool = new IssuerPrecomputationPool(ikap.getIssuerParameters(), 4, null);
+        assertEquals(4, pool.getCapacity());
+        assertEquals(0, pool.getSize());
+        pool.fill();
+        assertEquals(4, pool.getSize());
+
+        ZqElement[] w = new ZqElement[3];
+        GroupElement[] gw = new GroupElement[3];
+        assertEquals(3, pool.take(w, gw, 3));
+        assertEquals(1, pool.getSize());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ipi.getGenerator().exponentiate(w[i]), gw[i]);
+        }
+        assertEquals(1, pool.take(w, gw, 3));
+        assertEquals(0, pool.take(w, gw, 3));
+        assertEquals(0, pool.getSize());
+
+        try {
+            new IssuerPrecomputationPool(ikap.getIssuerParameters(), 0, null);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testIssuance() throws Exception {
+        IssuerKeyAndParameters ikap = generateIssuerKeyAndParameters();
+        IssuerParametersInternal ipi = IssuerParametersInternal.generate(ikap.getIssuerParameters());
+        byte[][] attributes = new byte[][] {"first".getBytes(), "second".getBytes()};
+        IssuerPrecomputationPool pool = new IssuerPrecomputationPool(ikap.getIssuerParameters(), 3, null);
+        pool.fill();
+
+        // the pool only covers part of the tokens
+        int numberOfTokens = 5;
+        IssuerProtocolParameters ipp = new IssuerProtocolParameters(numberOfTokens, ikap, attributes, null, null);
+        ipp.setPrecomputationPool(pool);
+        Issuer issuer = ipp.generate();
+        ProverProtocolParameters ppp = new ProverProtocolParameters(numberOfTokens, ikap.getIssuerParameters(), attributes, null, null);
+        Prover prover = ppp.generate();
+        UProveKeyAndToken[] tokens = prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())));
+        assertEquals(0, pool.getSize());
+        for (int i = 0; i < numberOfTokens; i++) {
+            assertTrue(ProtocolHelper.isTokenSignatureValid(ipi, UProveTokenInternal.generate(ipi, tokens[i].getToken())));
+        }
+
+        // a pool for another group is rejected
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {0, 1});
+        isp.setParametersUID("another UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setSpecification("specification".getBytes());
+        isp.setGroup(DefaultECGroupFactory.getDefaultECGroup(256));
+        ipp.setPrecomputationPool(new IssuerPrecomputationPool(isp.generate().getIssuerParameters(), 1, null));
+        try {
+            ipp.generate();
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testBackgroundRefill() throws Exception {
+        IssuerKeyAndParameters ikap = generateIssuerKeyAndParameters();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            IssuerPrecomputationPool pool = new IssuerPrecomputationPool(ikap.getIssuerParameters(), 4, executor);
+            ZqElement[] w = new ZqElement[1];
+            GroupElement[] gw = new GroupElement[1];
+            // taking from the empty pool starts a refill
+            assertEquals(0, pool.take(w, gw, 1));
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+            assertEquals(4, pool.getSize());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class MontgomeryDomainTest extends TestCase {
+
+    private final Random random = new Random(1234);
+
+    public MontgomeryDomainTest(String name) {
+        super(name);
+    }
+
+    private void checkModulus(BigInteger p) {
+        MontgomeryDomain domain = new MontgomeryDomain(p);
+        BigInteger[] values = new BigInteger[] {BigInteger.ZERO, BigInteger.ONE, p.subtract(BigInteger.ONE),
+            new BigInteger(p.bitLength() + 8, random).mod(p), new BigInteger(p.bitLength() + 8, random).mod(p)};
+        for (int i = 0; i < values.length; i++) {
+            long[] a = domain.toMontgomery(values[i]);
+            assertEquals(values[i], domain.fromMontgomery(a));
+            for (int j = 0; j < values.length; j++) {
+                long[] b = domain.toMontgomery(values[j]);
+                long[] r = new long[domain.getLength()];
+                domain.multiply(a, b, r);
+                assertEquals(values[i].multiply(values[j]).mod(p), domain.fromMontgomery(r));
+            }
+            // in place squaring
+            domain.multiply(a, a, a);
+            assertEquals(values[i].multiply(values[i]).mod(p), domain.fromMontgomery(a));
+        }
+        assertEquals(BigInteger.ONE, domain.fromMontgomery(domain.getOne()));
+    }
+
+    public void testMultiply() {
+        checkModulus(BigInteger.valueOf(3));
+        checkModulus(BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE));
+        checkModulus(BigInteger.ONE.shiftLeft(96).add(BigInteger.ONE));
+        for (int trial = 0; trial < 20; trial++) {
+            checkModulus(new BigInteger(1 + random.nextInt(600), random).setBit(0).setBit(1));
+        }
+        int[] sizes = new int[] {160, 256, 512};
+        for (int i = 0; i < sizes.length; i++) {
+            checkModulus(DefaultSubgroupFactory.getDefaultSubroup(sizes[i]).getP());
+        }
+    }
+
+    public void testSubgroupElements() throws Exception {
+        Subgroup Gq = DefaultSubgroupFactory.getDefaultSubroup(256);
+        BigInteger p = Gq.getP();
+        FieldZq Zq = Gq.getZq();
+        GroupElement a = Gq.getGenerator().exponentiate(Zq.getRandomElement(true));
+        GroupElement b = Gq.getGenerator().exponentiate(Zq.getRandomElement(true));
+        BigInteger expected = Subgroup.getElementValue(a).multiply(Subgroup.getElementValue(b)).mod(p);
+
+        GroupElement product = a.multiply(b);
+        assertEquals(expected, Subgroup.getElementValue(product));
+        assertEquals(Gq.getElement(product.toByteArray()), product);
+        assertEquals(product, Gq.getElement(product.toByteArray()));
+        assertEquals(Gq.getElement(product.toByteArray()).hashCode(), product.hashCode());
+
+        GroupElement acc = Gq.getIdentity().multiplyAssign(a);
+        assertEquals(a, acc);
+        acc.multiplyAssign(b);
+        assertEquals(product, acc);
+        acc.multiplyAssign(acc);
+        assertEquals(expected.multiply(expected).mod(p), Subgroup.getElementValue(acc));
+        {
+            FieldZq.ZqElement e = Zq.getRandomElement(true);
+            assertEquals(Subgroup.getElementValue(product).modPow(e.toBigInteger(), p),
+                Subgroup.getElementValue(product.exponentiate(e)));
+            acc.exponentiateAssign(e);
+            acc.multiplyAssign(Gq.getIdentity());
+            assertEquals(expected.multiply(expected).modPow(e.toBigInteger(), p), Subgroup.getElementValue(acc));
+        }
+        assertTrue(product.isValid());
+    }
+}
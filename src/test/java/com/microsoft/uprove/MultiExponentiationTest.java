@@ -0,0 +1,110 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+import junit.framework.TestCase;
+
+public class MultiExponentiationTest extends TestCase {
+
+    private final Subgroup Gq = DefaultSubgroupFactory.getDefaultSubroup(160);
+    private final FieldZq Zq = Gq.getZq();
+
+    public MultiExponentiationTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Computes the product one exponentiation at a time.
+     */
+    private GroupElement naiveProduct(GroupElement[] bases, ZqElement[] exponents) {
+        GroupElement retVal = Gq.getIdentity();
+        for (int i = 0; i < exponents.length; i++) {
+            retVal.multiplyAssign(exponents[i] != null ? bases[i].exponentiate(exponents[i]) : bases[i]);
+        }
+        return retVal;
+    }
+
+    private GroupElement[] getRandomBases(int n) {
+        GroupElement[] bases = new GroupElement[n];
+        for (int i = 0; i < n; i++) {
+            bases[i] = Gq.getGenerator().exponentiate(Zq.getRandomElement(true));
+        }
+        return bases;
+    }
+
+    public void testRecodeSlidingWindow() {
+        for (int w = 1; w <= 6; w++) {
+            for (int trial = 0; trial < 20; trial++) {
+                BigInteger e = Zq.getRandomElement(false).toBigInteger();
+                int[] digits = MultiExponentiation.recodeSlidingWindow(e, Zq.getQ().bitLength(), w);
+                BigInteger sum = BigInteger.ZERO;
+                for (int j = 0; j < digits.length; j++) {
+                    if (digits[j] != 0) {
+                        assertEquals(1, digits[j] % 2);
+                        assertTrue(digits[j] < (1 << w));
+                        sum = sum.add(BigInteger.valueOf(digits[j]).shiftLeft(j));
+                    }
+                }
+                assertEquals(e, sum);
+            }
+        }
+    }
+
+    public void testCompute() {
+        // small sizes use the interleaved method, large ones the bucket method
+        int[] sizes = new int[] {1, 2, 3, 7, 20, 300};
+        for (int s = 0; s < sizes.length; s++) {
+            GroupElement[] bases = getRandomBases(sizes[s]);
+            ZqElement[] exponents = Zq.getRandomElements(sizes[s], false);
+            assertEquals(naiveProduct(bases, exponents), MultiExponentiation.compute(bases, exponents));
+            assertEquals(naiveProduct(bases, exponents), ProtocolHelper.computeProduct(bases, exponents));
+        }
+    }
+
+    public void testSubgroupThreshold() {
+        // Subgroup switches from one modPow per base to the generic method
+        // at 8 exponents; null exponents do not count
+        for (int n = 6; n <= 10; n++) {
+            GroupElement[] bases = getRandomBases(n);
+            ZqElement[] exponents = Zq.getRandomElements(n, false);
+            exponents[0] = null;
+            assertEquals(naiveProduct(bases, exponents), Gq.multiExponentiate(bases, exponents));
+        }
+    }
+
+    public void testSpecialExponents() {
+        GroupElement[] bases = getRandomBases(5);
+        GroupElement[] copies = new GroupElement[bases.length];
+        for (int i = 0; i < bases.length; i++) {
+            copies[i] = Gq.getIdentity().multiply(bases[i]);
+        }
+        ZqElement[] exponents = new ZqElement[] {
+            Zq.getZero(), null, Zq.getOne(), Zq.getOne().negate(), Zq.getRandomElement(false)
+        };
+        assertEquals(naiveProduct(bases, exponents), MultiExponentiation.compute(bases, exponents));
+
+        // all zero exponents give the identity
+        assertEquals(Gq.getIdentity(), MultiExponentiation.compute(bases, new ZqElement[] {Zq.getZero(), Zq.getZero()}));
+
+        // extra bases are ignored
+        assertEquals(bases[0], MultiExponentiation.compute(bases, new ZqElement[] {null}));
+
+        // the bases are not modified
+        for (int i = 0; i < bases.length; i++) {
+            assertEquals(copies[i], bases[i]);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import junit.framework.TestCase;
+
+public class ParallelLoopTest extends TestCase {
+
+    public ParallelLoopTest(String name) {
+        super(name);
+    }
+
+    public void testRun() throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final int[] squares = new int[100];
+            ParallelLoop.run(pool, squares.length, new ParallelLoop.Body() {
+                public void run(int i) {
+                    squares[i] = i * i;
+                }
+            });
+            for (int i = 0; i < squares.length; i++) {
+                assertEquals(i * i, squares[i]);
+            }
+
+            try {
+                ParallelLoop.run(pool, 10, new ParallelLoop.Body() {
+                    public void run(int i) throws IOException {
+                        if (i == 7) {
+                            throw new IOException("seven");
+                        }
+                    }
+                });
+                fail();
+            } catch (IOException ioe) {
+                assertEquals("seven", ioe.getMessage());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // an executor that never runs anything leaves the work to the caller
+        final int[] count = new int[1];
+        ParallelLoop.run(new Executor() {
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        }, 10, new ParallelLoop.Body() {
+            public void run(int i) {
+                count[0]++;
+            }
+        });
+        assertEquals(10, count[0]);
+    }
+
+    private static UProveKeyAndToken[] issue(IssuerKeyAndParameters ikap, byte[][] attributes,
+            byte[][] w, byte[][] alpha, byte[][] beta1, byte[][] beta2, Executor executor) throws IOException {
+        IssuerProtocolParameters ipp = new IssuerProtocolParameters(w.length, ikap, attributes, null, null);
+        ipp.setExecutor(executor);
+        IssuerImpl issuer = (IssuerImpl) ipp.generate();
+        issuer.precomputation(w);
+        ProverProtocolParameters ppp = new ProverProtocolParameters(w.length, ikap.getIssuerParameters(), attributes, null, null);
+        ppp.setExecutor(executor);
+        ProverImpl prover = (ProverImpl) ppp.generate();
+        prover.precomputation(alpha, beta1, beta2);
+        return prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())));
+    }
+
+    public void testIssuance() throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {0, 1});
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setSpecification("specification".getBytes());
+        IssuerKeyAndParameters ikap = isp.generate();
+        FieldZq zq = ikap.getIssuerParameters().getGroup().getZq();
+
+        int numberOfTokens = 8;
+        byte[][] attributes = new byte[][] {"first".getBytes(), "second".getBytes()};
+        byte[][] w = ProtocolHelper.getEncodedArray(zq.getRandomElements(numberOfTokens, false));
+        byte[][] alpha = ProtocolHelper.getEncodedArray(zq.getRandomElements(numberOfTokens, true));
+        byte[][] beta1 = ProtocolHelper.getEncodedArray(zq.getRandomElements(numberOfTokens, false));
+        byte[][] beta2 = ProtocolHelper.getEncodedArray(zq.getRandomElements(numberOfTokens, false));
+
+        UProveKeyAndToken[] expected = issue(ikap, attributes, w, alpha, beta1, beta2, null);
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            UProveKeyAndToken[] actual = issue(ikap, attributes, w, alpha, beta1, beta2, pool);
+            assertTrue(Arrays.equals(expected, actual));
+        } finally {
+            pool.shutdown();
+        }
+
+        // the tokens are valid
+        IssuerParametersInternal ipi = IssuerParametersInternal.generate(ikap.getIssuerParameters());
+        for (int i = 0; i < numberOfTokens; i++) {
+            assertTrue(ProtocolHelper.isTokenSignatureValid(ipi, UProveTokenInternal.generate(ipi, expected[i].getToken())));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class PreparedTokenTest extends TestCase {
+
+    public PreparedTokenTest(String name) {
+        super(name);
+    }
+
+    private static void presentAndVerify(boolean supportDevice) throws Exception {
+        TestUtils.IssuedToken issued = TestUtils.issueToken(supportDevice, "token information".getBytes());
+        IssuerParameters ip = issued.ip;
+        UProveKeyAndToken upkt = issued.upkt;
+
+        PreparedToken token = new PreparedToken(ip, upkt, TestUtils.ATTRIBUTES);
+        assertSame(upkt, token.getKeyAndToken());
+        IssuerParametersInternal ipi = IssuerParametersInternal.generate(ip);
+        assertTrue(Arrays.equals(ProtocolHelper.computeTokenID(ipi, UProveTokenInternal.generate(ipi, upkt.getToken())), token.getTokenID()));
+
+        int[][] disclosed = new int[][] {{}, {1}, {2, 3}, {1, 2, 3}};
+        for (int i = 0; i < disclosed.length; i++) {
+            PresentationProof proof = PresentationProtocol.generatePresentationProof(token, disclosed[i], TestUtils.MESSAGE, TestUtils.DEVICE_MESSAGE);
+            PresentationProtocol.verifyPresentationProof(ip, disclosed[i], TestUtils.MESSAGE, TestUtils.DEVICE_MESSAGE, upkt.getToken(), proof);
+        }
+
+        PresentationPrecomputationPool pool = new PresentationPrecomputationPool(ip, upkt.getToken(), disclosed[1], 1, null);
+        pool.fill();
+        for (int i = 0; i < 2; i++) {
+            PresentationProof proof = PresentationProtocol.generatePresentationProof(token, disclosed[1], TestUtils.MESSAGE, TestUtils.DEVICE_MESSAGE, pool);
+            PresentationProtocol.verifyPresentationProof(ip, disclosed[1], TestUtils.MESSAGE, TestUtils.DEVICE_MESSAGE, upkt.getToken(), proof);
+        }
+    }
+
+    public void testPresentation() throws Exception {
+        presentAndVerify(false);
+    }
+
+    public void testDevicePresentation() throws Exception {
+        presentAndVerify(true);
+    }
+
+    public void testStreamedAttribute() throws Exception {
+        TestUtils.IssuedToken issued = TestUtils.issueToken(false, null);
+        IssuerParameters ip = issued.ip;
+        UProveKeyAndToken upkt = issued.upkt;
+
+        // a stream source can only be read once, which is when the token is prepared
+        byte[][] attributes = new byte[][] {TestUtils.ATTRIBUTES[0], TestUtils.ATTRIBUTES[1], null};
+        AttributeSource[] sources = new AttributeSource[] {null, null,
+            AttributeSource.fromStream(new ByteArrayInputStream(TestUtils.ATTRIBUTES[2]), TestUtils.ATTRIBUTES[2].length)};
+        PreparedToken token = new PreparedToken(ip, upkt, attributes, sources);
+        for (int i = 0; i < 2; i++) {
+            PresentationProof proof = PresentationProtocol.generatePresentationProof(token, new int[] {1}, TestUtils.MESSAGE, null);
+            PresentationProtocol.verifyPresentationProof(ip, new int[] {1}, TestUtils.MESSAGE, null, upkt.getToken(), proof);
+        }
+        try {
+            PresentationProtocol.generatePresentationProof(token, new int[] {3}, TestUtils.MESSAGE, null);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,81 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class PresentationPrecomputationPoolTest extends TestCase {
+
+    public PresentationPrecomputationPoolTest(String name) {
+        super(name);
+    }
+
+    private static void presentAndVerify(boolean supportDevice) throws Exception {
+        TestUtils.IssuedToken issued = TestUtils.issueToken(supportDevice, null);
+        IssuerParameters ip = issued.ip;
+        UProveKeyAndToken upkt = issued.upkt;
+
+        int[] disclosed = new int[] {2};
+        PresentationPrecomputationPool pool = new PresentationPrecomputationPool(ip, upkt.getToken(), disclosed, 2, null);
+        assertEquals(2, pool.getCapacity());
+        assertEquals(0, pool.getSize());
+        pool.fill();
+        assertEquals(2, pool.getSize());
+
+        // two proofs from the pool, then one computed on the spot
+        for (int i = 0; i < 3; i++) {
+            PresentationProof proof = PresentationProtocol.generatePresentationProof(ip, disclosed, TestUtils.MESSAGE, TestUtils.DEVICE_MESSAGE, upkt, TestUtils.ATTRIBUTES, pool);
+            PresentationProtocol.verifyPresentationProof(ip, disclosed, TestUtils.MESSAGE, TestUtils.DEVICE_MESSAGE, upkt.getToken(), proof);
+            assertEquals(Math.max(0, 1 - i), pool.getSize());
+        }
+
+        // the pool is tied to the disclosed attributes
+        try {
+            PresentationProtocol.generatePresentationProof(ip, new int[] {1}, TestUtils.MESSAGE, TestUtils.DEVICE_MESSAGE, upkt, TestUtils.ATTRIBUTES, pool);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testPresentation() throws Exception {
+        presentAndVerify(false);
+    }
+
+    public void testDevicePresentation() throws Exception {
+        presentAndVerify(true);
+    }
+
+    public void testBackgroundRefill() throws Exception {
+        TestUtils.IssuedToken issued = TestUtils.issueToken(false, null);
+        IssuerParameters ip = issued.ip;
+        UProveKeyAndToken upkt = issued.upkt;
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            int[] disclosed = new int[] {1, 3};
+            PresentationPrecomputationPool pool = new PresentationPrecomputationPool(ip, upkt.getToken(), disclosed, 3, executor);
+            // a proof from the empty pool starts a refill
+            PresentationProof proof = PresentationProtocol.generatePresentationProof(ip, disclosed, TestUtils.MESSAGE, null, upkt, TestUtils.ATTRIBUTES, pool);
+            PresentationProtocol.verifyPresentationProof(ip, disclosed, TestUtils.MESSAGE, null, upkt.getToken(), proof);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+            assertEquals(3, pool.getSize());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+public class PrimeOrderGroupTest extends TestCase {
+
+    public PrimeOrderGroupTest(String name) {
+        super(name);
+    }
+
+    public void testGetInvalidElements() throws Exception {
+        Subgroup group = DefaultSubgroupFactory.getDefaultSubroup(256);
+        BigInteger p = group.getP();
+        GroupElement g = group.getGenerator();
+        GroupElement g2 = g.multiply(g);
+        // -g and -g^2 have a component of order 2: their product is in the
+        // group, which is why elements must be checked one by one
+        GroupElement minusG = group.getElement(p.subtract(group.getG()).toByteArray());
+        GroupElement minusG2 = group.getElement(p.subtract(new BigInteger(1, g2.toByteArray())).toByteArray());
+        assertTrue(minusG.multiply(minusG2).isValid());
+        GroupElement other = DefaultSubgroupFactory.getDefaultSubroup(160).getGenerator();
+
+        GroupElement[] elements = new GroupElement[] {g, minusG, g2, minusG2, other, group.getIdentity()};
+        BitSet expected = new BitSet();
+        expected.set(1);
+        expected.set(3);
+        expected.set(4);
+        assertEquals(expected, group.getInvalidElements(elements, null));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            assertEquals(expected, group.getInvalidElements(elements, executor));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(group.getInvalidElements(new GroupElement[0], null).isEmpty());
+    }
+}
@@ -12,6 +12,7 @@
 package com.microsoft.uprove;
 
 import java.util.Arrays;
+import java.util.BitSet;
 
 import junit.framework.Assert;
 import junit.framework.TestCase;
@@ -35,6 +36,44 @@ public class ProtocolHelperTest extends TestCase {
 	   Assert.assertTrue(Arrays.equals(new int[] {}, ProtocolHelper.getUndisclosedIndices(0, new int[] {})));
    }
 
+   public void testGetInvalidTokenSignatures() throws Exception {
+       IssuerSetupParameters isp = new IssuerSetupParameters();
+       isp.setParametersUID("unique UID".getBytes());
+       isp.setHashAlgorithmUID("SHA-256");
+       isp.setEncodingBytes(new byte[] {1});
+       isp.setSpecification("specification".getBytes());
+       IssuerKeyAndParameters ikap = isp.generate();
+       IssuerParameters ip = ikap.getIssuerParameters();
+       IssuerParametersInternal ipi = IssuerParametersInternal.generate(ip);
+
+       int numberOfTokens = 4;
+       byte[][] attributes = new byte[][] {"attribute".getBytes()};
+       Issuer issuer = new IssuerProtocolParameters(numberOfTokens, ikap, attributes, null, null).generate();
+       Prover prover = new ProverProtocolParameters(numberOfTokens, ip, attributes, null, null).generate();
+       UProveKeyAndToken[] upkt = prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())));
+
+       UProveTokenInternal[] upti = new UProveTokenInternal[numberOfTokens];
+       for (int i = 0; i < numberOfTokens; i++) {
+           upti[i] = UProveTokenInternal.generate(ipi, upkt[i].getToken());
+       }
+       Assert.assertTrue(ProtocolHelper.getInvalidTokenSignatures(ipi, upti).isEmpty());
+
+       // tamper with the second and last tokens
+       UProveToken upt = upkt[1].getToken();
+       upt.setSigmaC(upkt[0].getToken().getSigmaC());
+       upti[1] = UProveTokenInternal.generate(ipi, upt);
+       upt = upkt[3].getToken();
+       upt.setProverInformation("other".getBytes());
+       upti[3] = UProveTokenInternal.generate(ipi, upt);
+       BitSet invalid = ProtocolHelper.getInvalidTokenSignatures(ipi, upti);
+       Assert.assertEquals(2, invalid.cardinality());
+       Assert.assertTrue(invalid.get(1));
+       Assert.assertTrue(invalid.get(3));
+       for (int i = 0; i < numberOfTokens; i++) {
+           Assert.assertEquals(!invalid.get(i), ProtocolHelper.isTokenSignatureValid(ipi, upti[i]));
+       }
+   }
+
    /* TODO: add this test
 	public void testGetMagnitude() throws IOException {
 		// zero
@@ -0,0 +1,79 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class RandomSourceImplTest extends TestCase {
+
+    public RandomSourceImplTest(String name) {
+        super(name);
+    }
+
+    protected void tearDown() {
+        ConfigImpl.setSecureRandomPerThread(null);
+        ConfigImpl.setSecureRandomReseedInterval(-1);
+    }
+
+    private static void assertDistinctAcrossThreads() throws InterruptedException {
+        final int threads = 4;
+        final int draws = 50;
+        final BigInteger[][] values = new BigInteger[threads][draws];
+        Thread[] t = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            t[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < draws; j++) {
+                        values[index][j] = new BigInteger(1, RandomSourceImpl.getRandomBytes(20));
+                    }
+                }
+            };
+            t[i].start();
+        }
+        Set<BigInteger> all = new HashSet<BigInteger>();
+        for (int i = 0; i < threads; i++) {
+            t[i].join();
+            all.addAll(Arrays.asList(values[i]));
+        }
+        assertEquals(threads * draws, all.size());
+    }
+
+    public void testShared() throws InterruptedException {
+        assertFalse(ConfigImpl.secureRandomPerThread());
+        assertDistinctAcrossThreads();
+    }
+
+    public void testPerThread() throws InterruptedException {
+        ConfigImpl.setSecureRandomPerThread(Boolean.TRUE);
+        assertTrue(ConfigImpl.secureRandomPerThread());
+        assertDistinctAcrossThreads();
+
+        // reseed on every draw
+        ConfigImpl.setSecureRandomReseedInterval(1);
+        assertEquals(1, ConfigImpl.secureRandomReseedInterval());
+        assertDistinctAcrossThreads();
+        RandomSourceImpl.seed("seed data".getBytes());
+        assertDistinctAcrossThreads();
+
+        assertTrue(RandomSourceImpl.getRandomBigInteger(160).bitLength() <= 160);
+        assertEquals(0, RandomSourceImpl.getRandomBytes(0).length);
+
+        ConfigImpl.setSecureRandomReseedInterval(-1);
+        assertEquals(1 << 20, ConfigImpl.secureRandomReseedInterval());
+    }
+}
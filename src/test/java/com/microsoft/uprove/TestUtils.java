@@ -21,6 +21,71 @@ public class TestUtils {
         super();
     }
 
+    /**
+     * Attribute values of the tokens issued by {@link #issueToken(boolean, byte[])}.
+     */
+    public static final byte[][] ATTRIBUTES = new byte[][] {"first".getBytes(), "second".getBytes(), "third".getBytes()};
+
+    /**
+     * Message signed by presentation proofs.
+     */
+    public static final byte[] MESSAGE = "message".getBytes();
+
+    /**
+     * Message signed by the Device in presentation proofs.
+     */
+    public static final byte[] DEVICE_MESSAGE = "message for Device".getBytes();
+
+    /**
+     * Issuer parameters and a token issued under them.
+     */
+    public static final class IssuedToken {
+        public final IssuerParameters ip;
+        public final UProveKeyAndToken upkt;
+
+        IssuedToken(IssuerParameters ip, UProveKeyAndToken upkt) {
+            this.ip = ip;
+            this.upkt = upkt;
+        }
+    }
+
+    /**
+     * Generates Issuer parameters with three attributes (the first one
+     * hashed), and issues one token with the {@link #ATTRIBUTES} values.
+     * @param supportDevice if <code>true</code>, the parameters support a
+     * Device, and a new Device is generated, registered with the
+     * {@link DeviceManager} and bound to the token.
+     * @param tokenInformation the token information, or <code>null</code>.
+     * @return the Issuer parameters and the issued token.
+     */
+    public static IssuedToken issueToken(boolean supportDevice, byte[] tokenInformation) throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {0, 1, 1});
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setSpecification("specification".getBytes());
+        isp.setSupportDevice(supportDevice);
+        IssuerKeyAndParameters ikap = isp.generate();
+        IssuerParameters ip = ikap.getIssuerParameters();
+
+        byte[] devicePublicKey = null;
+        byte[] deviceZetaParameter = null;
+        if (supportDevice) {
+            DeviceSetupParameters deviceSetupParams = new DeviceSetupParameters();
+            deviceSetupParams.setIssuerParameters(ip);
+            Device device = deviceSetupParams.generate();
+            deviceZetaParameter = device.GetDeviceParameter(ip.getProverIssuanceValues()[ip.getProverIssuanceValues().length-1]);
+            devicePublicKey = device.GetDevicePublicKey();
+            DeviceManager.RegisterDevice(device);
+        }
+
+        Issuer issuer = new IssuerProtocolParameters(1, ikap, ATTRIBUTES, tokenInformation, devicePublicKey).generate();
+        ProverProtocolParameters ppp = new ProverProtocolParameters(1, ip, ATTRIBUTES, tokenInformation, null);
+        ppp.setDeviceParameters(devicePublicKey, deviceZetaParameter);
+        Prover prover = ppp.generate();
+        UProveKeyAndToken upkt = prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())))[0];
+        return new IssuedToken(ip, upkt);
+    }
 
     /**
      * Returns a byte array of the 2 hex char in <code>s</code> repeated <code>n</code> times.
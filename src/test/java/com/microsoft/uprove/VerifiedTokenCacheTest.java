@@ -0,0 +1,158 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import junit.framework.TestCase;
+
+public class VerifiedTokenCacheTest extends TestCase {
+
+    public VerifiedTokenCacheTest(String name) {
+        super(name);
+    }
+
+    private static final byte[][] ATTRIBUTES = new byte[][] {"first".getBytes(), "second".getBytes()};
+    private static final byte[] MESSAGE = "message".getBytes();
+    private static final int[] DISCLOSED = new int[] {1};
+
+    private IssuerParameters ip;
+    private UProveKeyAndToken[] upkt;
+
+    protected void setUp() throws Exception {
+        IssuerSetupParameters isp = new IssuerSetupParameters();
+        isp.setEncodingBytes(new byte[] {0, 1});
+        isp.setParametersUID("unique UID".getBytes());
+        isp.setHashAlgorithmUID("SHA-256");
+        isp.setSpecification("specification".getBytes());
+        IssuerKeyAndParameters ikap = isp.generate();
+        ip = ikap.getIssuerParameters();
+        Issuer issuer = new IssuerProtocolParameters(2, ikap, ATTRIBUTES, null, null).generate();
+        Prover prover = new ProverProtocolParameters(2, ip, ATTRIBUTES, null, null).generate();
+        upkt = prover.generateTokens(issuer.generateThirdMessage(prover.generateSecondMessage(issuer.generateFirstMessage())));
+        VerifiedTokenCache.clear();
+    }
+
+    private static UProveToken copy(UProveToken upt) {
+        return new UProveToken((byte[]) upt.getIssuerParametersUID().clone(), (byte[]) upt.getPublicKey().clone(),
+            upt.getTokenInformation(), upt.getProverInformation(), (byte[]) upt.getSigmaZ().clone(),
+            (byte[]) upt.getSigmaC().clone(), (byte[]) upt.getSigmaR().clone(), upt.isDeviceProtected());
+    }
+
+    public void testCache() throws Exception {
+        PresentationProof proof = PresentationProtocol.generatePresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0], ATTRIBUTES);
+
+        // disabled by default
+        PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0].getToken(), proof);
+        assertEquals(0, VerifiedTokenCache.getSize());
+
+        ConfigImpl.setVerifiedTokenCacheSize(1);
+        try {
+            PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0].getToken(), proof);
+            assertEquals(1, VerifiedTokenCache.getMissCount());
+            assertEquals(1, VerifiedTokenCache.getSize());
+            PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, copy(upkt[0].getToken()), proof);
+            assertEquals(1, VerifiedTokenCache.getHitCount());
+
+            // a cached token still needs a valid proof
+            try {
+                PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, "other message".getBytes(), null, upkt[0].getToken(), proof);
+                fail();
+            } catch (InvalidProofException ipe) {
+                // expected
+            }
+
+            // a token with an invalid signature is not cached
+            UProveToken modified = copy(upkt[0].getToken());
+            modified.getSigmaR()[0] ^= 1;
+            try {
+                PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, modified, proof);
+                fail();
+            } catch (InvalidProofException ipe) {
+                // expected
+            }
+            assertNull(VerifiedTokenCache.get(IssuerParametersInternal.generate(ip), modified));
+
+            // batches use and fill the cache; the second token evicts the first
+            PresentationProof proof1 = PresentationProtocol.generatePresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[1], ATTRIBUTES);
+            boolean[] valid = PresentationProtocol.verifyPresentationProofs(
+                new IssuerParameters[] {ip, ip, ip}, new int[][] {DISCLOSED, DISCLOSED, DISCLOSED},
+                new byte[][] {MESSAGE, MESSAGE, MESSAGE}, null,
+                new UProveToken[] {upkt[0].getToken(), upkt[1].getToken(), modified},
+                new PresentationProof[] {proof, proof1, proof});
+            assertTrue(valid[0]);
+            assertTrue(valid[1]);
+            assertFalse(valid[2]);
+            assertEquals(3, VerifiedTokenCache.getHitCount());
+            assertEquals(1, VerifiedTokenCache.getSize());
+            assertEquals(1, VerifiedTokenCache.getEvictionCount());
+        } finally {
+            ConfigImpl.setVerifiedTokenCacheSize(-1);
+        }
+
+        // disabling the cache drops its entries
+        assertEquals(0, VerifiedTokenCache.getSize());
+    }
+
+    public void testDeviceProtectedFlag() throws Exception {
+        PresentationProof proof = PresentationProtocol.generatePresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0], ATTRIBUTES);
+        ConfigImpl.setVerifiedTokenCacheSize(10);
+        try {
+            PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0].getToken(), proof);
+            assertEquals(1, VerifiedTokenCache.getSize());
+
+            // the same token claiming Device protection is not the cached one
+            UProveToken flipped = copy(upkt[0].getToken());
+            flipped.setIsDeviceProtected(true);
+            try {
+                PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, flipped, proof);
+                fail();
+            } catch (InvalidProofException ipe) {
+                // expected
+            }
+            assertEquals(0, VerifiedTokenCache.getHitCount());
+        } finally {
+            ConfigImpl.setVerifiedTokenCacheSize(-1);
+        }
+        VerifiedTokenCache.clear();
+    }
+
+    public void testIssuerParametersCacheDisabled() throws Exception {
+        PresentationProof proof = PresentationProtocol.generatePresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0], ATTRIBUTES);
+        ConfigImpl.setVerifiedTokenCacheSize(10);
+        ConfigImpl.setIssuerParametersCacheSize(0);
+        try {
+            PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0].getToken(), proof);
+            PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0].getToken(), proof);
+            assertEquals(1, VerifiedTokenCache.getHitCount());
+        } finally {
+            ConfigImpl.setVerifiedTokenCacheSize(-1);
+            ConfigImpl.setIssuerParametersCacheSize(-1);
+        }
+        VerifiedTokenCache.clear();
+    }
+
+    public void testTTL() throws Exception {
+        PresentationProof proof = PresentationProtocol.generatePresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0], ATTRIBUTES);
+        ConfigImpl.setVerifiedTokenCacheSize(10);
+        ConfigImpl.setVerifiedTokenCacheTTL(1);
+        try {
+            PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0].getToken(), proof);
+            Thread.sleep(10);
+            PresentationProtocol.verifyPresentationProof(ip, DISCLOSED, MESSAGE, null, upkt[0].getToken(), proof);
+            assertEquals(0, VerifiedTokenCache.getHitCount());
+            assertEquals(1, VerifiedTokenCache.getEvictionCount());
+        } finally {
+            ConfigImpl.setVerifiedTokenCacheSize(-1);
+            ConfigImpl.setVerifiedTokenCacheTTL(-1);
+        }
+        VerifiedTokenCache.clear();
+    }
+}
@@ -0,0 +1,83 @@
+//*********************************************************
+//
+//    Copyright (c) Microsoft. All rights reserved.
+//    This code is licensed under the Apache License Version 2.0.
+//    THIS CODE IS PROVIDED *AS IS* WITHOUT WARRANTY OF
+//    ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING ANY
+//    IMPLIED WARRANTIES OF FITNESS FOR A PARTICULAR
+//    PURPOSE, MERCHANTABILITY, OR NON-INFRINGEMENT.
+//
+//*********************************************************
+
+package com.microsoft.uprove;
+
+import java.util.Arrays;
+
+import com.microsoft.uprove.FieldZq.ZqElement;
+
+import junit.framework.TestCase;
+
+public class ZqAccumulatorTest extends TestCase {
+
+    public ZqAccumulatorTest(String name) {
+        super(name);
+    }
+
+    private static final FieldZq[] FIELDS = new FieldZq[] {
+        FieldZqTest.Zq160, FieldZqTest.Zq256, FieldZqTest.Zq384, FieldZqTest.Zq512,
+        DefaultECGroupFactory.getDefaultECGroup(256).getZq()};
+
+    private static void assertSameValue(ZqElement expected, ZqAccumulator actual) {
+        assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+        assertEquals(expected, actual.toElement());
+    }
+
+    public void testArithmetic() {
+        for (int f = 0; f < FIELDS.length; f++) {
+            FieldZq Zq = FIELDS[f];
+            ZqElement minusOne = Zq.getOne().negate();
+            ZqElement[] values = new ZqElement[] {Zq.getZero(), Zq.getOne(), minusOne,
+                Zq.getRandomElement(false), Zq.getRandomElement(false)};
+            ZqAccumulator acc = new ZqAccumulator(Zq);
+            ZqAccumulator other = new ZqAccumulator(Zq);
+            assertSameValue(Zq.getZero(), acc);
+            for (int i = 0; i < values.length; i++) {
+                ZqElement a = values[i];
+                assertSameValue(a, acc.set(a));
+                assertSameValue(a.negate(), acc.set(a).negate());
+                for (int j = 0; j < values.length; j++) {
+                    ZqElement b = values[j];
+                    other.set(b);
+                    assertSameValue(a.add(b), acc.set(a).add(b));
+                    assertSameValue(a.add(b), acc.set(a).add(other));
+                    assertSameValue(a.subtract(b), acc.set(a).subtract(b));
+                    assertSameValue(a.subtract(b), acc.set(a).subtract(other));
+                    assertSameValue(a.multiply(b), acc.set(a).multiply(b));
+                    assertSameValue(a.multiply(b), acc.set(a).multiply(other));
+                    // r = -c * x + w
+                    assertSameValue(a.negate().multiply(b).add(minusOne),
+                        acc.set(other.set(a).negate()).multiply(b).add(minusOne));
+                }
+            }
+        }
+    }
+
+    public void testFieldMismatch() {
+        ZqAccumulator acc = new ZqAccumulator(FieldZqTest.Zq160);
+        try {
+            acc.add(FieldZqTest.Zq256.getOne());
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        try {
+            acc.multiply(new ZqAccumulator(FieldZqTest.Zq256));
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        // equal fields are interchangeable
+        FieldZq copy = FieldZq.getInstance(FieldZqTest.q160);
+        assertSameValue(copy.getOne(), acc.set(copy.getOne()));
+    }
+}